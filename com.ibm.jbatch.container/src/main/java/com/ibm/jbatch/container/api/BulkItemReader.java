@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.jbatch.container.api;
+
+import java.util.List;
+
+import javax.batch.api.chunk.ItemReader;
+
+/**
+ * An ItemReader that can hand back several items per call, for readers where
+ * each call has a cost of its own (a fetch, a query page, a buffer fill) that
+ * is better spread over many items.
+ *
+ * This is an extension of this batch container, not of the specification.  The
+ * container uses readItems() in place of readItem() for a chunk step with an
+ * item-count checkpoint policy; readItem() is still used with a custom
+ * checkpoint policy and when items are read one at a time after a rollback, so
+ * both have to be implemented and read from the same position.
+ *
+ * Item read listeners still see a beforeRead() and afterRead() for each item,
+ * but only the first beforeRead() comes before readItems() is called; the rest
+ * come after it returns, each just before the afterRead() for its item.  An
+ * exception from readItems() is skipped or retried as a single failed read, and
+ * one from a listener as a failed read of just the item it was called for.
+ */
+public interface BulkItemReader extends ItemReader {
+
+	/**
+	 * Reads up to max items.  max is never more than is left of the current
+	 * chunk, so checkpointInfo() afterwards is still at a chunk boundary.
+	 *
+	 * @param max the most items to return, at least 1
+	 * @return the items read, in order, or an empty list (or null) at the end of
+	 *         the input.  None of them may be null.
+	 * @throws Exception
+	 */
+	public List<Object> readItems(int max) throws Exception;
+}
@@ -262,6 +262,16 @@ public class JobOperatorImpl implements JobOperator {
 			logger.exiting(sourceClass, "getJobInstances", jobInstances);
 			return jobInstances;
 		} else {
+			// The instance ids used to be read in full and the page taken with subList(),
+			// which threw for a start past the last instance, so that still throws.
+			if (start > 0) {
+				int jobInstanceCount = isCurrentTagAdmin(helper) ? persistenceService.jobOperatorGetJobInstanceCount(jobName)
+						: persistenceService.jobOperatorGetJobInstanceCount(jobName, helper.getCurrentTag());
+				if (jobInstanceCount > 0 && start > jobInstanceCount) {
+					throw new IllegalArgumentException("Start " + start + " is past the last of the " + jobInstanceCount 
+							+ " instances of job " + jobName);
+				}
+			}
 			logger.fine("getJobInstances: Job Name " + jobName + " not found");
 			throw new NoSuchJobException( "Job Name " + jobName + " not found");
 		}
@@ -17,9 +17,11 @@
 package com.ibm.jbatch.container.artifact.proxy;
 
 import java.io.Serializable;
+import java.util.List;
 
 import javax.batch.api.chunk.ItemReader;
 
+import com.ibm.jbatch.container.api.BulkItemReader;
 import com.ibm.jbatch.container.exception.BatchContainerRuntimeException;
 
 public class ItemReaderProxy extends AbstractProxy<ItemReader> implements ItemReader {
@@ -68,4 +70,19 @@ public class ItemReaderProxy extends AbstractProxy<ItemReader> implements ItemRe
 		return this.delegate.readItem();
     }
 
+    /**
+     * @return true if readItems() can be used
+     */
+    public boolean isBulk() {
+        return this.delegate instanceof BulkItemReader;
+    }
+
+    /*
+     * Thrown as-is, as for readItem().
+     * @see com.ibm.jbatch.container.api.BulkItemReader#readItems(int)
+     */
+    public List<Object> readItems(int max) throws Exception {
+		return ((BulkItemReader) this.delegate).readItems(max);
+    }
+
 }
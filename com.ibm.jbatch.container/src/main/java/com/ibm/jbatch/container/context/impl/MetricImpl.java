@@ -22,7 +22,8 @@ public class MetricImpl implements Metric {
 	
 	private MetricType name;
 	
-	private long value;
+	// Items processed in parallel can update the same metric
+	private volatile long value;
 	
 	public MetricImpl(MetricType name, long value) {
 		this.name = name;
@@ -39,11 +40,11 @@ public class MetricImpl implements Metric {
 		return this.value;
 	}
 	
-	public void incValue() {
+	public synchronized void incValue() {
 		++this.value;
 	}
 	
-	public void incValueBy(long incValue) {
+	public synchronized void incValueBy(long incValue) {
 		this.value = this.value + incValue;
 	}
 }
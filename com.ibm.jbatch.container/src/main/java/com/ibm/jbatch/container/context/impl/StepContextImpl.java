@@ -51,6 +51,8 @@ public class StepContextImpl implements StepContext {
     private Properties properties = new Properties(); 
 
     private String batchletProcessRetVal = null;
+
+    private volatile long skippedCheckpointWriteCount = 0;
     
 	public final static String TOP_LEVEL_STEP_EXECUTION_ID_PROP = "com.ibm.jbatch.container.context.impl.StepContextImpl#getExecutionId";
 
@@ -203,4 +205,16 @@ public class StepContextImpl implements StepContext {
 		this.batchletProcessRetVal = batchletProcessRetVal;
 	}
 
+	/**
+	 * @return how many reader checkpoint, writer checkpoint and step status writes
+	 * a chunk step has left out so far because nothing had changed
+	 */
+	public long getSkippedCheckpointWriteCount() {
+		return skippedCheckpointWriteCount;
+	}
+
+	public void setSkippedCheckpointWriteCount(long skippedCheckpointWriteCount) {
+		this.skippedCheckpointWriteCount = skippedCheckpointWriteCount;
+	}
+
 }
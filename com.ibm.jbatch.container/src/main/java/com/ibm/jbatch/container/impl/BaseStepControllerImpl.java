@@ -41,6 +41,7 @@ import com.ibm.jbatch.container.context.impl.StepContextImpl;
 import com.ibm.jbatch.container.exception.BatchContainerRuntimeException;
 import com.ibm.jbatch.container.exception.BatchContainerServiceException;
 import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimePartitionExecution;
 import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
 import com.ibm.jbatch.container.persistence.PersistentDataWrapper;
 import com.ibm.jbatch.container.services.IBatchKernelService;
@@ -63,6 +64,9 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 	private final static String sourceClass = BatchletStepControllerImpl.class.getName();
 	private final static Logger logger = Logger.getLogger(sourceClass);
 
+	// Shared, since a PersistentDataWrapper is replaced rather than modified
+	private final static PersistentDataWrapper NO_PERSISTENT_USER_DATA = new PersistentDataWrapper(serializePersistentUserData(null));
+
 	protected RuntimeJobExecution jobExecutionImpl;
 	protected JobInstance jobInstance;
 
@@ -74,6 +78,9 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 
 	protected long rootJobExecutionId;
 
+	// Set for a lightweight partition, whose step status and step execution aren't persisted
+	protected final RuntimePartitionExecution inMemoryPartition;
+
 	protected static IBatchKernelService batchKernel = ServicesManagerImpl.getInstance().getBatchKernelService();
 
 	protected TransactionManagerAdapter	transactionManager = null;
@@ -87,6 +94,7 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 		this.jobInstance = jobExecution.getJobInstance();
 		this.stepContext = stepContext;
 		this.rootJobExecutionId = rootJobExecutionId;
+		this.inMemoryPartition = (jobExecution instanceof RuntimePartitionExecution) ? (RuntimePartitionExecution) jobExecution : null;
 		if (step == null) {
 			throw new IllegalArgumentException("Step parameter to ctor cannot be null.");
 		}
@@ -244,6 +252,9 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 	}
 	
 	private void startStep() {
+		if (inMemoryPartition != null) {
+			inMemoryPartition.setStep(stepStatus, stepContext);
+		}
 		// Update status
 		statusStarting();
 		//Set Step context properties
@@ -257,7 +268,9 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 		Timestamp startTS = new Timestamp(time);
 		stepContext.setStartTime(startTS);
 		
-		_persistenceManagementService.updateStepExecution(stepContext);
+		if (inMemoryPartition == null) {
+			_persistenceManagementService.updateStepExecution(stepContext);
+		}
 	}
 	
 
@@ -281,7 +294,7 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 	protected void updateBatchStatus(BatchStatus updatedBatchStatus) {
 		logger.fine("Updating batch status from : " + stepStatus.getBatchStatus() + ", to: " + updatedBatchStatus);
 		stepStatus.setBatchStatus(updatedBatchStatus);
-		_jobStatusService.updateStepStatus(stepStatus.getStepExecutionId(), stepStatus);
+		persistStepStatus();
 		stepContext.setBatchStatus(updatedBatchStatus);
 	}
 
@@ -291,13 +304,21 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 			logger.finer("In shouldStepBeExecuted() with stepContext =  " + this.stepContext);
 		}
 
-		this.stepStatus = _jobStatusService.getStepStatus(jobInstance.getInstanceId(), step.getId());
+		if (inMemoryPartition != null) {
+			this.stepStatus = inMemoryPartition.getPreviousStepStatus();
+		} else {
+			this.stepStatus = _jobStatusService.getStepStatus(jobInstance.getInstanceId(), step.getId());
+		}
 		if (stepStatus == null) {
 			logger.finer("No existing step status found.  Create new step execution and proceed to execution.");
 			// create new step execution
 			StepExecutionImpl stepExecution = getNewStepExecution(rootJobExecutionId, stepContext);
 			// create new step status for this run
-			stepStatus = _jobStatusService.createStepStatus(stepExecution.getStepExecutionId());
+			if (inMemoryPartition != null) {
+				stepStatus = new StepStatus(stepExecution.getStepExecutionId());
+			} else {
+				stepStatus = _jobStatusService.createStepStatus(stepExecution.getStepExecutionId());
+			}
 			((StepContextImpl) stepContext).setStepExecutionId(stepExecution.getStepExecutionId());
 			return true;
 		} else {
@@ -365,30 +386,61 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 
 	protected void statusStarting() {
 		stepStatus.setBatchStatus(BatchStatus.STARTING);
-		_jobStatusService.updateJobCurrentStep(jobInstance.getInstanceId(), step.getId());
-		_jobStatusService.updateStepStatus(stepStatus.getStepExecutionId(), stepStatus);
+		if (inMemoryPartition == null) {
+			_jobStatusService.updateJobCurrentStep(jobInstance.getInstanceId(), step.getId());
+		}
+		persistStepStatus();
 		stepContext.setBatchStatus(BatchStatus.STARTING);
 	}
 
 	protected void persistUserData() {
+		capturePersistentUserData();
+		persistStepStatus();
+	}
+
+	protected void persistStepStatus() {
+		if (inMemoryPartition == null) {
+			_jobStatusService.updateStepStatus(stepStatus.getStepExecutionId(), stepStatus);
+		}
+	}
+
+	/**
+	 * Serialize the current persistent user data onto the step status, without
+	 * persisting the step status itself.
+	 */
+	protected void capturePersistentUserData() {
+		stepStatus.setPersistentUserData(snapshotPersistentUserData());
+	}
+
+	/**
+	 * Serialize the current persistent user data, to set on the step status later.
+	 */
+	protected PersistentDataWrapper snapshotPersistentUserData() {
+		// Most steps have none, which serializes the same every time
+		if (stepContext.getPersistentUserData() == null) {
+			return NO_PERSISTENT_USER_DATA;
+		}
+		return new PersistentDataWrapper(serializePersistentUserData(stepContext.getPersistentUserData()));
+	}
+
+	private static byte[] serializePersistentUserData(Object persistentUserData) {
 		ByteArrayOutputStream persistentBAOS = new ByteArrayOutputStream();
 		ObjectOutputStream persistentDataOOS = null;
 
 		try {
 			persistentDataOOS = new ObjectOutputStream(persistentBAOS);
-			persistentDataOOS.writeObject(stepContext.getPersistentUserData());
+			persistentDataOOS.writeObject(persistentUserData);
 			persistentDataOOS.close();
 		} catch (Exception e) {
 			throw new BatchContainerServiceException("Cannot persist the persistent user data for the step.", e);
 		}
 
-		stepStatus.setPersistentUserData(new PersistentDataWrapper(persistentBAOS.toByteArray()));
-		_jobStatusService.updateStepStatus(stepStatus.getStepExecutionId(), stepStatus);
+		return persistentBAOS.toByteArray();
 	}
 
 	protected void persistExitStatusEndTimestampAndStepExecution() {
 		stepStatus.setExitStatus(stepContext.getExitStatus());
-		_jobStatusService.updateStepStatus(stepStatus.getStepExecutionId(), stepStatus);
+		persistStepStatus();
 
 		// set the end time metric before flushing
 		long time = System.currentTimeMillis();
@@ -399,10 +451,16 @@ public abstract class BaseStepControllerImpl implements IExecutionElementControl
 	} 
 
 	protected void persistStepExecution() {
-		_persistenceManagementService.updateStepExecution(stepContext);
+		if (inMemoryPartition == null) {
+			_persistenceManagementService.updateStepExecution(stepContext);
+		}
 	}
 
 	private StepExecutionImpl getNewStepExecution(long rootJobExecutionId, StepContextImpl stepContext) {
+		if (inMemoryPartition != null) {
+			// Its own negative id is as unique as it needs to be
+			return new StepExecutionImpl(rootJobExecutionId, inMemoryPartition.getExecutionId());
+		}
 		return _persistenceManagementService.createStepExecution(rootJobExecutionId, stepContext);
 	}
 
@@ -16,7 +16,6 @@
  */
 package com.ibm.jbatch.container.impl;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -39,15 +38,19 @@ import com.ibm.jbatch.container.IThreadRootController;
 import com.ibm.jbatch.container.callback.IJobEndCallbackService;
 import com.ibm.jbatch.container.exception.BatchContainerServiceException;
 import com.ibm.jbatch.container.jobinstance.JobExecutionHelper;
+import com.ibm.jbatch.container.jsl.impl.JobModelResolverImpl;
 import com.ibm.jbatch.container.jobinstance.RuntimeFlowInSplitExecution;
 import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimePartitionExecution;
 import com.ibm.jbatch.container.services.IBatchKernelService;
 import com.ibm.jbatch.container.services.IJobExecution;
+import com.ibm.jbatch.container.services.IJobStatusManagerService;
 import com.ibm.jbatch.container.services.IPersistenceManagerService;
 import com.ibm.jbatch.container.services.impl.NoOpBatchSecurityHelper;
 import com.ibm.jbatch.container.services.impl.RuntimeBatchJobUtil;
 import com.ibm.jbatch.container.servicesmanager.ServicesManager;
 import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
 import com.ibm.jbatch.container.util.BatchFlowInSplitWorkUnit;
 import com.ibm.jbatch.container.util.BatchPartitionWorkUnit;
 import com.ibm.jbatch.container.util.BatchWorkUnit;
@@ -66,6 +69,9 @@ public class BatchKernelImpl implements IBatchKernelService {
 	private final static String sourceClass = BatchKernelImpl.class.getName();
 	private final static Logger logger = Logger.getLogger(sourceClass);
 
+	private final static String DEFAULT_JSL_PARSER = "jaxb";
+	private final static String DEFAULT_PARTITION_MODE = "subjob";
+
 	private Map<Long, IThreadRootController> executionId2jobControllerMap = new ConcurrentHashMap<Long, IThreadRootController>();
 	private Set<Long> instanceIdExecutingSet = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
 
@@ -77,14 +83,19 @@ public class BatchKernelImpl implements IBatchKernelService {
 
 	private IPersistenceManagerService persistenceService = null;
 
+	private IJobStatusManagerService jobStatusService = null;
+
 	private BatchSecurityHelper batchSecurity = null;
 
 	private BatchJobUtil batchJobUtil = null;
 
+	private boolean inMemoryPartitionMode = false;
+
 	public BatchKernelImpl() {
 		executorService = servicesManager.getThreadPoolService();
 		callbackService = servicesManager.getJobCallbackService();
 		persistenceService = servicesManager.getPersistenceManagerService();
+		jobStatusService = servicesManager.getJobStatusManagerService();
 
 		// registering our implementation of the util class used to purge by apptag
 		batchJobUtil = new RuntimeBatchJobUtil();
@@ -100,6 +111,25 @@ public class BatchKernelImpl implements IBatchKernelService {
 	}
 
 	public void init(IBatchConfig pgcConfig) throws BatchContainerServiceException {
+		String jslParser = pgcConfig.getConfigProperties().getProperty(BatchContainerConstants.JSL_PARSER, DEFAULT_JSL_PARSER).trim();
+		if ("stax".equalsIgnoreCase(jslParser)) {
+			JobModelResolverImpl.setStreamingParser(true);
+		} else if ("jaxb".equalsIgnoreCase(jslParser)) {
+			JobModelResolverImpl.setStreamingParser(false);
+		} else {
+			throw new BatchContainerServiceException("Invalid JSL_PARSER setting: " + jslParser);
+		}
+		logger.config("Parsing job XML with " + jslParser.toLowerCase());
+
+		String partitionMode = pgcConfig.getConfigProperties().getProperty(BatchContainerConstants.PARTITION_MODE, DEFAULT_PARTITION_MODE).trim();
+		if ("lightweight".equalsIgnoreCase(partitionMode)) {
+			inMemoryPartitionMode = true;
+		} else if ("subjob".equalsIgnoreCase(partitionMode)) {
+			inMemoryPartitionMode = false;
+		} else {
+			throw new BatchContainerServiceException("Invalid PARTITION_MODE setting: " + partitionMode);
+		}
+		logger.config("Running partitions as " + (inMemoryPartitionMode ? "lightweight in-memory partitions" : "sub-jobs"));
 	}
 
 	@Override
@@ -212,6 +242,7 @@ public class BatchKernelImpl implements IBatchKernelService {
 		// Remove from executionId, instanceId map,set after job is done        
 		this.executionId2jobControllerMap.remove(jobExecution.getExecutionId());
 		this.instanceIdExecutingSet.remove(jobExecution.getInstanceId());
+		jobStatusService.unregisterRunningInstance(jobExecution.getInstanceId());
 
 		// AJM: ah - purge jobExecution from map here and flush to DB?
 		// edit: no long want a 2 tier for the jobexecution...do want it for step execution
@@ -262,86 +293,111 @@ public class BatchKernelImpl implements IBatchKernelService {
 
 
 	/**
-	 * Build a list of batch work units and set them up in STARTING state but don't start them yet.
+	 * Build a partition's batch work unit and set it up in STARTING state but don't start it yet.
 	 */
 
 	@Override
-	public List<BatchPartitionWorkUnit> buildNewParallelPartitions(PartitionsBuilderConfig config) 
+	public BatchPartitionWorkUnit buildNewParallelPartition(PartitionsBuilderConfig config, JSLJob parallelJob, int instance) 
 			throws JobRestartException, JobStartException {
 
-		List<JSLJob> jobModels = config.getJobModels();
-		Properties[] partitionPropertiesArray = config.getPartitionProperties();
-
-		List<BatchPartitionWorkUnit> batchWorkUnits = new ArrayList<BatchPartitionWorkUnit>(jobModels.size());
-
-		int instance = 0;
-		for (JSLJob parallelJob  : jobModels){
-			Properties partitionProps = (partitionPropertiesArray == null) ? null : partitionPropertiesArray[instance];    			
+		if (config.getPartitionStatuses() != null) {
+			return buildInMemoryPartition(config, parallelJob, instance, false);
+		}
 
-			if (logger.isLoggable(Level.FINER)) {
-				logger.finer("Starting execution for jobModel = " + parallelJob.toString());
-			}
-			RuntimeJobExecution jobExecution = JobExecutionHelper.startPartition(parallelJob, partitionProps);
-			jobExecution.setPartitionInstance(instance);
+		Properties[] partitionPropertiesArray = config.getPartitionProperties();
+		Properties partitionProps = (partitionPropertiesArray == null) ? null : partitionPropertiesArray[instance];    			
 
-			if (logger.isLoggable(Level.FINE)) {
-				logger.fine("JobExecution constructed: " + jobExecution);
-			}
-			BatchPartitionWorkUnit batchWork = new BatchPartitionWorkUnit(this, jobExecution, config);
+		if (logger.isLoggable(Level.FINER)) {
+			logger.finer("Starting execution for jobModel = " + parallelJob.toString());
+		}
+		RuntimeJobExecution jobExecution = JobExecutionHelper.startPartition(parallelJob, partitionProps);
+		jobExecution.setPartitionInstance(instance);
 
-			registerCurrentInstanceAndExecution(jobExecution, batchWork.getController());
-			
-			batchWorkUnits.add(batchWork);
-			instance++;
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("JobExecution constructed: " + jobExecution);
 		}
+		BatchPartitionWorkUnit batchWork = new BatchPartitionWorkUnit(this, jobExecution, config);
+
+		registerCurrentInstanceAndExecution(jobExecution, batchWork.getController());
 
-		return batchWorkUnits;
+		return batchWork;
 	}
 
 	@Override
-	public List<BatchPartitionWorkUnit> buildOnRestartParallelPartitions(PartitionsBuilderConfig config) throws JobRestartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException {
+	public BatchPartitionWorkUnit buildOnRestartParallelPartition(PartitionsBuilderConfig config, JSLJob parallelJob, int instance) 
+			throws JobRestartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException {
 
-		List<JSLJob> jobModels = config.getJobModels();
-		Properties[] partitionProperties = config.getPartitionProperties();
+		if (config.getPartitionStatuses() != null) {
+			if (config.getPartitionStatuses().isCompleted(instance)) {
+				logger.fine("This partition already completed: " + parallelJob.getId());
+				return null;
+			}
+			return buildInMemoryPartition(config, parallelJob, instance, false);
+		}
 
-		List<BatchPartitionWorkUnit> batchWorkUnits = new ArrayList<BatchPartitionWorkUnit>(jobModels.size());
+		Properties[] partitionProperties = config.getPartitionProperties();
+		Properties partitionProps = (partitionProperties == null) ? null : partitionProperties[instance];    
 
-		//for now let always use a Properties array. We can add some more convenience methods later for null properties and what not
+		try {
+			long execId = getMostRecentExecutionId(parallelJob);
+			if (execId == Long.MIN_VALUE) {
+				// The step stopped or failed before it got as far as this partition
+				return buildNewParallelPartition(config, parallelJob, instance);
+			}
 
-		int instance = 0;
-		for (JSLJob parallelJob  : jobModels){
+			RuntimeJobExecution jobExecution = null;
+			try {		
+				jobExecution = JobExecutionHelper.restartPartition(execId, parallelJob, partitionProps);
+				jobExecution.setPartitionInstance(instance);
+			} catch (NoSuchJobExecutionException e) {
+				String errorMsg = "Caught NoSuchJobExecutionException but this is an internal JobExecution so this shouldn't have happened: execId =" + execId;
+				logger.severe(errorMsg);
+				throw new IllegalStateException(errorMsg, e);
+			}
 
-			Properties partitionProps = (partitionProperties == null) ? null : partitionProperties[instance];    
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("JobExecution constructed: " + jobExecution);
+			}
 
-			try {
-				long execId = getMostRecentExecutionId(parallelJob);
+			BatchPartitionWorkUnit batchWork = new BatchPartitionWorkUnit(this, jobExecution, config);
+			registerCurrentInstanceAndExecution(jobExecution, batchWork.getController());
 
-				RuntimeJobExecution jobExecution = null;
-				try {		
-					jobExecution = JobExecutionHelper.restartPartition(execId, parallelJob, partitionProps);
-					jobExecution.setPartitionInstance(instance);
-				} catch (NoSuchJobExecutionException e) {
-					String errorMsg = "Caught NoSuchJobExecutionException but this is an internal JobExecution so this shouldn't have happened: execId =" + execId;
-					logger.severe(errorMsg);
-					throw new IllegalStateException(errorMsg, e);
-				}
+			return batchWork;
+		} catch (JobExecutionAlreadyCompleteException e) {
+			logger.fine("This execution already completed: " + parallelJob.getId());
+			return null;
+		}
+	}
 
-				if (logger.isLoggable(Level.FINE)) {
-					logger.fine("JobExecution constructed: " + jobExecution);
-				}
+	@Override
+	public BatchPartitionWorkUnit buildSpeculativeParallelPartition(PartitionsBuilderConfig config, JSLJob parallelJob, int instance) {
+		if (config.getPartitionStatuses() == null) {
+			throw new IllegalStateException("Only a lightweight partition can run a speculative copy: " + parallelJob.getId());
+		}
+		return buildInMemoryPartition(config, parallelJob, instance, true);
+	}
 
-				BatchPartitionWorkUnit batchWork = new BatchPartitionWorkUnit(this, jobExecution, config);
-				registerCurrentInstanceAndExecution(jobExecution, batchWork.getController());
+	/*
+	 * Nothing to insert or look up in the job repository.
+	 */
+	private BatchPartitionWorkUnit buildInMemoryPartition(PartitionsBuilderConfig config, JSLJob parallelJob, int instance, boolean speculativeCopy) {
+		Properties[] partitionProperties = config.getPartitionProperties();
+		Properties partitionProps = (partitionProperties == null) ? null : partitionProperties[instance];
+		RuntimePartitionExecution jobExecution = JobExecutionHelper.startPartitionInMemory(parallelJob, partitionProps, 
+				config.getJobInstanceId(), config.getPartitionStatuses(), instance);
+		if (speculativeCopy) {
+			jobExecution.setSpeculativeCopyOf(config.getRootJobExecutionId());
+		}
 
-				batchWorkUnits.add(batchWork);
-			} catch (JobExecutionAlreadyCompleteException e) {
-				logger.fine("This execution already completed: " + parallelJob.getId());
-			}
+		BatchPartitionWorkUnit batchWork = new BatchPartitionWorkUnit(this, jobExecution, config);
+		registerCurrentInstanceAndExecution(jobExecution, batchWork.getController());
 
-			instance++;
-		}
+		return batchWork;
+	}
 
-		return batchWorkUnits;
+	@Override
+	public boolean isInMemoryPartitionMode() {
+		return inMemoryPartitionMode;
 	}
 
 	@Override
@@ -382,7 +438,10 @@ public class BatchKernelImpl implements IBatchKernelService {
 		//job instance id. So there should be no way to directly start a subjob with particular
 		List<Long> instanceIds = persistenceService.jobOperatorGetJobInstanceIds(jobModel.getId(), 0, 2);
 
-		// Maybe we should blow up on '0' too?
+		// None if it was never started, since partitions are started only as threads free up
+		if (instanceIds.isEmpty()) {
+			return Long.MIN_VALUE;
+		}
 		if (instanceIds.size() > 1) {
 			String errorMsg = "Found " + instanceIds.size() + " entries for instance id = " + jobModel.getId() + ", which should not have happened.  Blowing up."; 
 			logger.severe(errorMsg);
@@ -448,6 +507,7 @@ public class BatchKernelImpl implements IBatchKernelService {
 			throw new IllegalStateException(errorMsg);
 		} else {
 			instanceIdExecutingSet.add(instanceId);
+			jobStatusService.registerRunningInstance(instanceId);
 			executionId2jobControllerMap.put(jobExecution.getExecutionId(), controller);
 		}
 	}
@@ -48,17 +48,25 @@ public class ChunkHelper {
 		String checkpointPolicy = chunk.getCheckpointPolicy();
 		
 		if (checkpointPolicy != null && !checkpointPolicy.isEmpty()) {
-			if (checkpointPolicy.equals("item")) {
+			if (checkpointPolicy.equals("item") || checkpointPolicy.equals("adaptive")) {
 				return false;
 			} else if (checkpointPolicy.equals("custom")) {
 				return true;
 			} else {
-				throw new IllegalArgumentException("The only supported attributed values for 'checkpoint-policy' are 'item' and 'custom'.");				
+				throw new IllegalArgumentException("The only supported attributed values for 'checkpoint-policy' are 'item', 'adaptive' and 'custom'.");				
 			}
 		} else {
 			return false;
 		}
     }
+
+    /**
+     * checkpoint-policy="adaptive" is an extension of this container: built-in like
+     * "item", but with the item-count only a starting point (see AdaptiveCheckpointAlgorithm).
+     */
+    public static boolean isAdaptiveCheckpointPolicy(Chunk chunk) {
+		return "adaptive".equals(chunk.getCheckpointPolicy());
+    }
     
     public static int getSkipLimit(Chunk chunk) {
     	return Integer.valueOf(chunk.getSkipLimit());
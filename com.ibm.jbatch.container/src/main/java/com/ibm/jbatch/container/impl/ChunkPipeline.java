@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.jbatch.container.exception.BatchContainerRuntimeException;
+
+/**
+ * Two stage pipeline for a chunk step: a thread of its own reads (and
+ * processes) chunks and hands them over a bounded queue to the step's thread,
+ * which writes them.  So the reader can be working on the next chunks while
+ * the writer works on this one.
+ *
+ * The reading thread is a plain thread rather than one from the thread pool
+ * service, since a bounded pool already busy with partitions could leave it
+ * waiting behind the very step that needs it.
+ *
+ * Each stage's busy time is kept so the step can report how well the two
+ * overlapped.
+ */
+class ChunkPipeline<T> {
+
+	private final static String sourceClass = ChunkPipeline.class.getName();
+	private final static Logger logger = Logger.getLogger(sourceClass);
+
+	/**
+	 * Called on the reading thread.
+	 */
+	interface Producer<T> {
+		T produce() throws Exception;
+
+		/**
+		 * @return true if nothing more should be read after this chunk
+		 */
+		boolean isLast(T chunk);
+	}
+
+	private static class Slot<T> {
+		final T chunk;
+		final Throwable failure;
+
+		Slot(T chunk, Throwable failure) {
+			this.chunk = chunk;
+			this.failure = failure;
+		}
+	}
+
+	private final Producer<T> producer;
+	private final BlockingQueue<Slot<T>> queue;
+	private final Thread thread;
+
+	private volatile boolean closed = false;
+	private volatile long readBusyNanos = 0;
+	private long writeWaitNanos = 0;
+	private long startNanos;
+	private long endNanos;
+
+	/**
+	 * @param depth how many read chunks can wait to be written
+	 */
+	ChunkPipeline(Producer<T> producer, int depth, String name) {
+		this.producer = producer;
+		this.queue = new ArrayBlockingQueue<Slot<T>>(depth);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+	}
+
+	void start() {
+		startNanos = System.nanoTime();
+		thread.start();
+	}
+
+	private void read() {
+		try {
+			while (!closed) {
+				long start = System.nanoTime();
+				T chunk = producer.produce();
+				readBusyNanos += System.nanoTime() - start;
+				queue.put(new Slot<T>(chunk, null));
+				if (producer.isLast(chunk)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// Closed while waiting for room
+		} catch (Throwable t) {
+			if (closed) {
+				logger.log(Level.FINE, "Ignoring failure reading after the pipeline was closed", t);
+				return;
+			}
+			try {
+				queue.put(new Slot<T>(null, t));
+			} catch (InterruptedException e) {
+				// Closed, nobody's waiting for it
+			}
+		}
+	}
+
+	/**
+	 * Called on the step's thread for the next chunk to write.  Rethrows what the
+	 * reading thread threw, if that's what's next.
+	 */
+	T take() {
+		Slot<T> slot;
+		long start = System.nanoTime();
+		try {
+			slot = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BatchContainerRuntimeException("Interrupted waiting for the next chunk to be read", e);
+		} finally {
+			writeWaitNanos += System.nanoTime() - start;
+		}
+		if (slot.failure instanceof RuntimeException) {
+			throw (RuntimeException) slot.failure;
+		} else if (slot.failure instanceof Error) {
+			throw (Error) slot.failure;
+		} else if (slot.failure != null) {
+			throw new BatchContainerRuntimeException(slot.failure);
+		}
+		return slot.chunk;
+	}
+
+	/**
+	 * Stops the reading thread, if it hasn't already stopped, and waits for it,
+	 * so the reader can be closed.  The current read finishes first.
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		endNanos = System.nanoTime();
+		thread.interrupt();
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return percentage of the time, from start to close, the reading thread spent reading
+	 */
+	int getReadUtilization() {
+		return percentOfElapsed(readBusyNanos);
+	}
+
+	/**
+	 * @return percentage of the time, from start to close, the step's thread spent writing
+	 * rather than waiting for something to write
+	 */
+	int getWriteUtilization() {
+		return percentOfElapsed(getElapsedNanos() - writeWaitNanos);
+	}
+
+	long getElapsedNanos() {
+		return (closed ? endNanos : System.nanoTime()) - startNanos;
+	}
+
+	private int percentOfElapsed(long nanos) {
+		long elapsed = getElapsedNanos();
+		return elapsed <= 0 ? 0 : (int) Math.max(0, Math.min(100, (nanos * 100) / elapsed));
+	}
+}
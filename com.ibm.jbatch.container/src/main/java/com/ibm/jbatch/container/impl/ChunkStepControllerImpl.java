@@ -16,14 +16,22 @@
  */
 package com.ibm.jbatch.container.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
-import java.io.Serializable;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,15 +60,19 @@ import com.ibm.jbatch.container.exception.BatchContainerRuntimeException;
 import com.ibm.jbatch.container.exception.BatchContainerServiceException;
 import com.ibm.jbatch.container.exception.TransactionManagementException;
 import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.persistence.AdaptiveCheckpointAlgorithm;
 import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataCodec;
 import com.ibm.jbatch.container.persistence.CheckpointDataKey;
 import com.ibm.jbatch.container.persistence.CheckpointManager;
 import com.ibm.jbatch.container.persistence.ItemCheckpointAlgorithm;
+import com.ibm.jbatch.container.persistence.PersistentDataWrapper;
 import com.ibm.jbatch.container.services.IPersistenceManagerService;
 import com.ibm.jbatch.container.servicesmanager.ServicesManager;
 import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.container.transaction.impl.DefaultNonTransactionalManager;
 import com.ibm.jbatch.container.util.PartitionDataWrapper;
-import com.ibm.jbatch.container.util.TCCLObjectInputStream;
 import com.ibm.jbatch.container.validation.ArtifactValidationException;
 import com.ibm.jbatch.jsl.model.Chunk;
 import com.ibm.jbatch.jsl.model.ItemProcessor;
@@ -76,11 +88,53 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
     protected static final int DEFAULT_TRAN_TIMEOUT_SECONDS = 180;  // From the spec Sec. 9.7
 
+	/**
+	 * Step property which, set to true, reads and processes the next chunks on a thread of
+	 * their own while this one is written.  See invokePipelinedChunks() for when it applies.
+	 */
+	public static final String PIPELINE_PROPERTY = "com.ibm.jbatch.container.chunk.pipeline";
+
+	/**
+	 * Step property for how many read chunks can be waiting to be written when pipelined.
+	 */
+	public static final String PIPELINE_DEPTH_PROPERTY = "com.ibm.jbatch.container.chunk.pipeline.depth";
+
+	protected static final int DEFAULT_PIPELINE_DEPTH = 1;
+
+	/**
+	 * Step property for how many threads process a chunk's items, when more than 1.
+	 * Ignored for a transactional step.  See processInParallel().
+	 */
+	public static final String PROCESSOR_THREADS_PROPERTY = "com.ibm.jbatch.container.chunk.processor.threads";
+
+	/**
+	 * Step properties for checkpoint-policy="adaptive": how long a chunk should take,
+	 * start to commit, and the fewest and most items it can have.  The item-count is
+	 * the size of the first chunk.
+	 */
+	public static final String ADAPTIVE_TARGET_MILLIS_PROPERTY = "com.ibm.jbatch.container.chunk.adaptive.target.millis";
+	public static final String ADAPTIVE_MIN_ITEMS_PROPERTY = "com.ibm.jbatch.container.chunk.adaptive.min.items";
+	public static final String ADAPTIVE_MAX_ITEMS_PROPERTY = "com.ibm.jbatch.container.chunk.adaptive.max.items";
+
+	/**
+	 * Step property which, set to true, finds the item behind a retry with rollback by
+	 * splitting the rolled back chunk in halves rather than going one item at a time.
+	 * See getNextChunkStatusBasedOnPrevious().
+	 */
+	public static final String BISECT_AFTER_ROLLBACK_PROPERTY = "com.ibm.jbatch.container.chunk.retry.bisect";
+
+	protected static final long DEFAULT_ADAPTIVE_TARGET_MILLIS = 1000;
+	protected static final int DEFAULT_ADAPTIVE_MAX_ITEMS = 10000;
+
+	// Largest chunk whose list to write is allocated at full size up front
+	private static final int MAX_PRESIZED_CHUNK = 1000;
+
 	private Chunk chunk = null;
 	private ItemReaderProxy readerProxy = null;
 	private ItemProcessorProxy processorProxy = null;
 	private ItemWriterProxy writerProxy = null;
 	private CheckpointManager checkpointManager;
+	private AdaptiveCheckpointAlgorithm adaptiveCheckpointAlgorithm = null;
 	private ServicesManager servicesManager = ServicesManagerImpl.getInstance();
 	private IPersistenceManagerService _persistenceManagerService = null;
 	private SkipHandler skipHandler = null;
@@ -97,7 +151,11 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	List<ItemReadListenerProxy> itemReadListeners = null;
 	List<ItemProcessListenerProxy> itemProcessListeners = null;
 	List<ItemWriteListenerProxy> itemWriteListeners = null;
+	// So the per-item loops over listeners don't each allocate an iterator for nothing
+	private boolean hasChunkListeners, hasItemReadListeners, hasItemProcessListeners, hasItemWriteListeners;
 	private RetryHandler retryHandler;
+	private ExecutorService processorExecutor = null;
+	private boolean bisectAfterRollback = false;
 
 	// metrics
 	long readCount = 0;
@@ -107,7 +165,16 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	long writeSkipCount = 0;
 
 	protected ChunkStatus currentChunkStatus;
-	protected SingleItemStatus currentItemStatus;
+	// Reset for each item rather than allocated afresh
+	protected SingleItemStatus currentItemStatus = new SingleItemStatus();
+	// What's been read of the chunk so far when it's processed after reading (bulk or parallel)
+	private List<Object> itemsReadBuffer = new ArrayList<Object>();
+	// The items being processed in parallel, and how each went; the statuses are
+	// kept, one for each position in the largest chunk so far, and reset for reuse
+	private List<Future<Object>> processResultsBuffer = new ArrayList<Future<Object>>();
+	private List<SingleItemStatus> itemStatusesBuffer = new ArrayList<SingleItemStatus>();
+	// How many items the last readItems() touched, skipped ones included
+	private int bulkReadTouched;
 
 	// Default is item-based policy
 	protected boolean customCheckpointPolicy = false;
@@ -141,6 +208,11 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			this.filtered = filtered;
 		}
 
+		public void reset() {
+			skipped = false;
+			filtered = false;
+		}
+
 		private boolean skipped = false;
 		private boolean filtered = false;
 	}
@@ -152,7 +224,8 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	 * 
 	 * One key usage is to maintain the state reflecting the sequence in which
 	 * we catch a retryable exception, rollback the previous chunk, process 1-item-at-a-time
-	 * until we reach "where we left off", then revert to normal chunk processing.
+	 * (or part by part, bisecting) until we reach "where we left off", then revert to normal
+	 * chunk processing.
 	 * 
 	 * Another usage is simply to communicate that the reader readItem() returned 'null', so
 	 * we're done the chunk.
@@ -169,6 +242,20 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			this.type = type;
 		}
 
+		/**
+		 * Back to a new NORMAL chunk's status, so a chunk following a normal one
+		 * doesn't need one of its own.
+		 */
+		void reset() {
+			type = ChunkStatusType.NORMAL;
+			finished = false;
+			retryableException = null;
+			markedForRollbackWithRetry = false;
+			itemsTouchedInCurrentChunk = 0;
+			itemsToProcessOneByOneAfterRollback = 0;
+			partsAfterRollback.clear();
+		}
+
 		public boolean isFinished() {
 			return finished;
 		}
@@ -189,9 +276,12 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			return retryableException;
 		}
 
+		// The first one's kept
 		public void markForRollbackWithRetry(Exception retryableException) {
-			this.markedForRollbackWithRetry = true;
-			this.retryableException = retryableException;
+			if (!this.markedForRollbackWithRetry) {
+				this.markedForRollbackWithRetry = true;
+				this.retryableException = retryableException;
+			}
 		}
 
 		public int getItemsTouchedInCurrentChunk() {
@@ -202,6 +292,10 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			this.itemsTouchedInCurrentChunk++;
 		}
 
+		public void incrementItemsTouchedInCurrentChunkBy(int items) {
+			this.itemsTouchedInCurrentChunk += items;
+		}
+
 		public int getItemsToProcessOneByOneAfterRollback() {
 			return itemsToProcessOneByOneAfterRollback;
 		}
@@ -211,12 +305,29 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			this.itemsToProcessOneByOneAfterRollback = itemsToProcessOneByOneAfterRollback;
 		}
 
+		public LinkedList<Integer> getPartsAfterRollback() {
+			return partsAfterRollback;
+		}
+
+		public void setPartsAfterRollback(LinkedList<Integer> partsAfterRollback) {
+			this.partsAfterRollback = partsAfterRollback;
+		}
+
+		/**
+		 * @return how many items this retry after rollback chunk is for
+		 */
+		public int getItemsInRetryChunk() {
+			return partsAfterRollback.isEmpty() ? 1 : partsAfterRollback.getFirst();
+		}
+
 		private boolean finished = false;
 		private Exception retryableException = null;
 
 		private boolean markedForRollbackWithRetry = false;
 		private int itemsTouchedInCurrentChunk = 0;
 		private int itemsToProcessOneByOneAfterRollback = 0; // For retry with rollback
+		// When bisecting, the sizes of the parts of the rolled back chunk still to go, this chunk's first
+		private LinkedList<Integer> partsAfterRollback = new LinkedList<Integer>();
 	}
 
 	/**
@@ -228,14 +339,20 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	 * @return an array list of objects to write
 	 */
 	private List<Object> readAndProcess() {
+		if (isBulkRead()) {
+			return readAndProcessInBulk();
+		}
+		if (processorExecutor != null && !currentChunkStatus.isRetryingAfterRollback()) {
+			return readAndProcessInParallel();
+		}
 		logger.entering(sourceClass, "readAndProcess");
 
-		List<Object> chunkToWrite = new ArrayList<Object>();
+		List<Object> chunkToWrite = newChunkToWrite();
 		Object itemRead = null;
 		Object itemProcessed = null;
 
 		while (true) {
-			currentItemStatus = new SingleItemStatus();
+			currentItemStatus.reset();
 			currentChunkStatus.incrementItemsTouchedInCurrentChunk();
 			itemRead = readItem();
 
@@ -244,7 +361,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			}
 
 			if (!currentItemStatus.isSkipped() && !currentChunkStatus.isFinished()) {
-				itemProcessed = processItem(itemRead);
+				itemProcessed = processItem(itemRead, currentItemStatus);
 
 				if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
 					break;
@@ -255,10 +372,12 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 				}
 			}
 
-			// Break out of the loop to deliver one-at-a-time processing after rollback.
+			// Break out of the loop to deliver one-at-a-time processing after rollback
+			// (or the current part, when bisecting).
 			// No point calling isReadyToCheckpoint(), we know we're done.  Let's not
 			// complicate the checkpoint algorithm to hold this logic, just break right here.
-			if (currentChunkStatus.isRetryingAfterRollback()) {
+			if (currentChunkStatus.isRetryingAfterRollback()
+					&& currentChunkStatus.getItemsTouchedInCurrentChunk() >= currentChunkStatus.getItemsInRetryChunk()) {
 				break;
 			}
 
@@ -270,7 +389,8 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			// The spec, in Sec. 11.10, Chunk with Custom Checkpoint Processing, clearly
 			// outlines that this gets called even when we've already read a null (which
 			// arguably is pointless).   But we'll follow the spec.
-			if (checkpointManager.isReadyToCheckpoint()) {
+			// A part of a rolled back chunk being bisected isn't cut short, though.
+			if (!currentChunkStatus.isRetryingAfterRollback() && checkpointManager.isReadyToCheckpoint()) {
 				break;
 			}
 
@@ -284,6 +404,233 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		return chunkToWrite;
 	}
 
+	/**
+	 * As readAndProcess(), but reading the whole chunk first and then processing
+	 * its items in parallel.  The checkpoint algorithm is asked after each read.
+	 * 
+	 * @return an array list of objects to write
+	 */
+	private List<Object> readAndProcessInParallel() {
+		logger.entering(sourceClass, "readAndProcessInParallel");
+
+		List<Object> itemsRead = itemsReadBuffer;
+		itemsRead.clear();
+
+		while (true) {
+			currentItemStatus.reset();
+			currentChunkStatus.incrementItemsTouchedInCurrentChunk();
+			Object itemRead = readItem();
+
+			if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
+				logger.exiting(sourceClass, "readAndProcessInParallel");
+				return Collections.emptyList();
+			}
+
+			if (!currentItemStatus.isSkipped() && !currentChunkStatus.isFinished()) {
+				itemsRead.add(itemRead);
+			}
+
+			if (stepContext.getBatchStatus().equals(BatchStatus.STOPPING)) {
+				currentChunkStatus.setFinished(true);
+			}
+
+			if (checkpointManager.isReadyToCheckpoint()) {
+				break;
+			}
+
+			if (currentChunkStatus.isFinished()) {
+				break;
+			}
+		}
+
+		List<Object> chunkToWrite = processInParallel(itemsRead);
+		itemsRead.clear();
+		logger.exiting(sourceClass, "readAndProcessInParallel", chunkToWrite);
+		return chunkToWrite;
+	}
+
+	/**
+	 * Bulk reads need the chunk's item count to know how much to ask for, and
+	 * go back to one item at a time after a rollback like everything else.
+	 */
+	private boolean isBulkRead() {
+		return readerProxy.isBulk() && !customCheckpointPolicy && !currentChunkStatus.isRetryingAfterRollback();
+	}
+
+	/**
+	 * @return the item-count of the current chunk, which varies with an adaptive checkpoint policy
+	 */
+	private int getChunkItemCount() {
+		return adaptiveCheckpointAlgorithm != null ? adaptiveCheckpointAlgorithm.getItemCount() : checkpointAtThisItemCount;
+	}
+
+	/**
+	 * A list for the items to write, sized for the whole chunk up front rather
+	 * than grown as it fills, within reason.
+	 */
+	private List<Object> newChunkToWrite() {
+		int capacity;
+		if (currentChunkStatus.isRetryingAfterRollback()) {
+			capacity = currentChunkStatus.getItemsInRetryChunk();
+		} else if (customCheckpointPolicy) {
+			capacity = 10;
+		} else {
+			capacity = Math.min(getChunkItemCount(), MAX_PRESIZED_CHUNK);
+		}
+		return new ArrayList<Object>(capacity);
+	}
+
+	/**
+	 * As readAndProcess(), but with a BulkItemReader: the chunk is read with as
+	 * few readItems() calls as the reader can manage, each asked for what is
+	 * left of the item count, then processed (in parallel, if so configured).
+	 * Each item read counts as touched, as does a failed read that was skipped
+	 * and the read that found the end of the input, same as reading one at a
+	 * time, so the metrics and the one-at-a-time replay after a rollback come
+	 * out the same.  The checkpoint algorithm is asked after each readItems().
+	 * 
+	 * @return an array list of objects to write
+	 */
+	private List<Object> readAndProcessInBulk() {
+		logger.entering(sourceClass, "readAndProcessInBulk");
+
+		List<Object> itemsRead = itemsReadBuffer;
+		itemsRead.clear();
+
+		while (true) {
+			currentItemStatus.reset();
+			int max = Math.max(1, getChunkItemCount() - currentChunkStatus.getItemsTouchedInCurrentChunk());
+			List<Object> batch = readItems(max);
+
+			if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
+				logger.exiting(sourceClass, "readAndProcessInBulk");
+				return Collections.emptyList();
+			}
+
+			int touched = bulkReadTouched;
+			currentChunkStatus.incrementItemsTouchedInCurrentChunkBy(touched);
+			if (batch != null) {
+				itemsRead.addAll(batch);
+			}
+
+			if (stepContext.getBatchStatus().equals(BatchStatus.STOPPING)) {
+				currentChunkStatus.setFinished(true);
+			}
+
+			if (checkpointManager.isReadyToCheckpoint(touched)) {
+				break;
+			}
+
+			if (currentChunkStatus.isFinished()) {
+				break;
+			}
+		}
+
+		List<Object> chunkToWrite;
+		if (processorExecutor != null) {
+			chunkToWrite = processInParallel(itemsRead);
+		} else {
+			chunkToWrite = new ArrayList<Object>(itemsRead.size());
+			for (Object itemRead : itemsRead) {
+				currentItemStatus.reset();
+				Object itemProcessed = processItem(itemRead, currentItemStatus);
+
+				if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
+					break;
+				}
+
+				if (!currentItemStatus.isSkipped() && !currentItemStatus.isFiltered()) {
+					chunkToWrite.add(itemProcessed);
+				}
+			}
+		}
+		itemsRead.clear();
+		logger.exiting(sourceClass, "readAndProcessInBulk", chunkToWrite);
+		return chunkToWrite;
+	}
+
+	/**
+	 * Runs the processor for each item on the processor threads, and puts the
+	 * results back in the order the items were read, leaving out the ones
+	 * filtered or skipped.  The processor and its item process listeners have
+	 * to be safe to call from several threads.
+	 * 
+	 * A failed item is skipped or retried here on the step thread, in item order,
+	 * so the skip and retry listeners and counts go just as they would one at a
+	 * time.  Once an item is marked for retry with rollback the items after it
+	 * aren't looked at, since the chunk is replayed one item at a time anyway;
+	 * those not yet started aren't processed at all, and those already running are
+	 * waited for, so none of them is still in the processor when the replay starts,
+	 * or still setting its status when the next chunk reuses it.
+	 */
+	private List<Object> processInParallel(List<Object> itemsRead) {
+		final AtomicBoolean abandoned = new AtomicBoolean();
+		List<Future<Object>> results = processResultsBuffer;
+		List<SingleItemStatus> itemStatuses = itemStatusesBuffer;
+		for (int i = 0; i < itemsRead.size(); i++) {
+			final Object itemRead = itemsRead.get(i);
+			final SingleItemStatus itemStatus;
+			if (i < itemStatuses.size()) {
+				itemStatus = itemStatuses.get(i);
+				itemStatus.reset();
+			} else {
+				itemStatus = new SingleItemStatus();
+				itemStatuses.add(itemStatus);
+			}
+			results.add(processorExecutor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return abandoned.get() ? null : callProcessor(itemRead, itemStatus);
+				}
+			}));
+		}
+
+		List<Object> chunkToWrite = new ArrayList<Object>(itemsRead.size());
+		try {
+			for (int i = 0; i < results.size(); i++) {
+				SingleItemStatus itemStatus = itemStatuses.get(i);
+				Object itemProcessed;
+				try {
+					itemProcessed = results.get(i).get();
+				} catch (ExecutionException e) {
+					if (!(e.getCause() instanceof Exception)) {
+						throw new BatchContainerRuntimeException(e.getCause());
+					}
+					itemProcessed = handleProcessException((Exception) e.getCause(), itemsRead.get(i), itemStatus);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new BatchContainerRuntimeException(e);
+				}
+
+				if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
+					break;
+				}
+
+				if (!itemStatus.isSkipped() && !itemStatus.isFiltered()) {
+					chunkToWrite.add(itemProcessed);
+				}
+			}
+		} finally {
+			// Those not started yet return straight away.  Cancelling instead wouldn't
+			// wait for those already running.
+			abandoned.set(true);
+			for (Future<Object> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					// An item after the one that ended the chunk; what it did doesn't count
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					// Some may still be running, so their statuses can't be reused
+					itemStatuses.clear();
+					break;
+				}
+			}
+			results.clear();
+		}
+		return chunkToWrite;
+	}
+
 	/**
 	 * Reads an item from the reader
 	 * 
@@ -295,71 +642,194 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 		try {
 			// call read listeners before and after the actual read
-			for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
-				readListenerProxy.beforeRead();
+			if (hasItemReadListeners) {
+				for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+					readListenerProxy.beforeRead();
+				}
 			}
 
 			itemRead = readerProxy.readItem();
 
-			for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
-				readListenerProxy.afterRead(itemRead);
+			if (hasItemReadListeners) {
+				for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+					readListenerProxy.afterRead(itemRead);
+				}
 			}
 
 			// itemRead == null means we reached the end of
 			// the readerProxy "resultset"
 			currentChunkStatus.setFinished(itemRead == null);
 		} catch (Exception e) {
-			stepContext.setException(e);
-			for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
-				readListenerProxy.onReadError(e);
-			}
-			if(!currentChunkStatus.isRetryingAfterRollback()) {
-				if (retryReadException(e)) {
-					if (!retryHandler.isRollbackException(e)) {
-						// retry without rollback
-						itemRead = readItem();
-					} else {
-						// retry with rollback
-						currentChunkStatus.markForRollbackWithRetry(e);
+			if (handleReadException(e)) {
+				// retry without rollback
+				itemRead = readItem();
+			}
+		} catch (Throwable e) {
+			throw new BatchContainerRuntimeException(e);
+		}
+
+		logger.exiting(sourceClass, "readItem", itemRead==null ? "<null>" : itemRead);
+		return itemRead;
+	}
+
+	/**
+	 * Reads up to max items from a bulk reader.  A bulk reader gets one
+	 * beforeRead() before the call; each item after the first gets its
+	 * beforeRead() once the reader has returned, just before its afterRead().
+	 * 
+	 * A failure in the listeners for one item is handled as a failed read of
+	 * that item alone: it gets its own onReadError() and is skipped (counted as
+	 * touched) or, retried without rollback, left out as if the read had moved
+	 * on past it, the way readItem() does it.  The items around it are kept.
+	 * How many items were touched is left in bulkReadTouched.
+	 * 
+	 * @return the items read, empty at the end of the input, or null if the read
+	 *         failed and was skipped or marked for retry with rollback
+	 */
+	private List<Object> readItems(int max) {
+		if (logger.isLoggable(Level.FINER)) {
+			logger.entering(sourceClass, "readItems", max);
+		}
+		List<Object> itemsRead = null;
+		bulkReadTouched = 1;
+
+		try {
+			if (hasItemReadListeners) {
+				for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+					readListenerProxy.beforeRead();
+				}
+			}
+
+			itemsRead = readerProxy.readItems(max);
+			if (itemsRead == null) {
+				itemsRead = new ArrayList<Object>(0);
+			} else if (itemsRead.size() > max) {
+				throw new IllegalStateException("Reader returned " + itemsRead.size() + " items when asked for at most " + max);
+			}
+
+			if (itemsRead.isEmpty()) {
+				if (hasItemReadListeners) {
+					for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+						readListenerProxy.afterRead(null);
 					}
 				}
-				else if(skipReadException(e)) {
-					currentItemStatus.setSkipped(true);
-					stepContext.getMetric(MetricImpl.MetricType.READ_SKIP_COUNT).incValue();
+				currentChunkStatus.setFinished(true);
+			}
+		} catch (Exception e) {
+			itemsRead = null;
+			if (handleReadException(e)) {
+				// retry without rollback
+				itemsRead = readItems(max);
+			}
+		} catch (Throwable e) {
+			throw new BatchContainerRuntimeException(e);
+		}
+
+		if (itemsRead != null && !itemsRead.isEmpty()) {
+			bulkReadTouched = itemsRead.size();
+			if (hasItemReadListeners) {
+				itemsRead = afterReadItems(itemsRead);
+			}
+		}
+
+		if (logger.isLoggable(Level.FINER)) {
+			logger.exiting(sourceClass, "readItems", itemsRead == null ? "<null>" : itemsRead.size());
+		}
+		return itemsRead;
+	}
 
+	/**
+	 * Calls the read listeners for each item of a bulk read, as readItems() describes.
+	 * 
+	 * @return the items that weren't skipped or retried, or null if the chunk was
+	 *         marked for retry with rollback
+	 */
+	private List<Object> afterReadItems(List<Object> itemsRead) {
+		// The reader's own list until an item has to be left out
+		List<Object> kept = itemsRead;
+		for (int i = 0; i < itemsRead.size(); i++) {
+			Object item = itemsRead.get(i);
+			try {
+				if (i > 0) {
+					for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+						readListenerProxy.beforeRead();
+					}
 				}
-				else {
-					throw new BatchContainerRuntimeException(e);
+				for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+					readListenerProxy.afterRead(item);
 				}
+				if (kept != itemsRead) {
+					kept.add(item);
+				}
+			} catch (Exception e) {
+				if (kept == itemsRead) {
+					kept = new ArrayList<Object>(itemsRead.subList(0, i));
+				}
+				if (handleReadException(e)) {
+					// retry without rollback, which would have read the next item
+					bulkReadTouched--;
+				} else if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
+					return null;
+				}
+			} catch (Throwable e) {
+				throw new BatchContainerRuntimeException(e);
 			}
-			else {
-				// coming from a rollback retry
-				if(skipReadException(e)) {
-					currentItemStatus.setSkipped(true);
-					stepContext.getMetric(MetricImpl.MetricType.READ_SKIP_COUNT).incValue();
+		}
+		return kept;
+	}
 
+	/**
+	 * Skips the failed read, marks the chunk for retry with rollback, or fails
+	 * the step, whichever the exception calls for.
+	 * 
+	 * @return true if the read should be retried without rollback
+	 */
+	private boolean handleReadException(Exception e) {
+		stepContext.setException(e);
+		for (ItemReadListenerProxy readListenerProxy : itemReadListeners) {
+			readListenerProxy.onReadError(e);
+		}
+		if(!currentChunkStatus.isRetryingAfterRollback()) {
+			if (retryReadException(e)) {
+				if (!retryHandler.isRollbackException(e)) {
+					// retry without rollback
+					return true;
+				} else {
+					// retry with rollback
+					currentChunkStatus.markForRollbackWithRetry(e);
 				}
-				else if (retryReadException(e)) {
-					if (!retryHandler.isRollbackException(e)) {
-						// retry without rollback
-						itemRead = readItem();
-					}
-					else {
-						// retry with rollback
-						currentChunkStatus.markForRollbackWithRetry(e);
-					}
+			}
+			else if(skipReadException(e)) {
+				currentItemStatus.setSkipped(true);
+				stepContext.getMetric(MetricImpl.MetricType.READ_SKIP_COUNT).incValue();
+
+			}
+			else {
+				throw new BatchContainerRuntimeException(e);
+			}
+		}
+		else {
+			// coming from a rollback retry
+			if(skipReadException(e)) {
+				currentItemStatus.setSkipped(true);
+				stepContext.getMetric(MetricImpl.MetricType.READ_SKIP_COUNT).incValue();
+
+			}
+			else if (retryReadException(e)) {
+				if (!retryHandler.isRollbackException(e)) {
+					// retry without rollback
+					return true;
 				}
 				else {
-					throw new BatchContainerRuntimeException(e);
+					// retry with rollback
+					currentChunkStatus.markForRollbackWithRetry(e);
 				}
 			}
-
-		} catch (Throwable e) {
-			throw new BatchContainerRuntimeException(e);
+			else {
+				throw new BatchContainerRuntimeException(e);
+			}
 		}
-
-		logger.exiting(sourceClass, "readItem", itemRead==null ? "<null>" : itemRead);
-		return itemRead;
+		return false;
 	}
 
 	/**
@@ -367,9 +837,11 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	 * 
 	 * @param itemRead
 	 *            the item read
+	 * @param itemStatus
+	 *            where a skip or filter is recorded
 	 * @return the processed item
 	 */
-	private Object processItem(Object itemRead) {
+	private Object processItem(Object itemRead, SingleItemStatus itemStatus) {
 		logger.entering(sourceClass, "processItem", itemRead);
 		Object processedItem = null;
 
@@ -379,64 +851,86 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		}
 
 		try {
+			processedItem = callProcessor(itemRead, itemStatus);
+		} catch (Exception e) {
+			processedItem = handleProcessException(e, itemRead, itemStatus);
+		} catch (Throwable e) {
+			throw new BatchContainerRuntimeException(e);
+		}
+
+		logger.exiting(sourceClass, "processItem", processedItem==null ? "<null>" : processedItem);
+		return processedItem;
+	}
 
-			// call process listeners before and after the actual process call
+	/**
+	 * The processor and the item process listeners around it, with any failure
+	 * left to handleProcessException().
+	 */
+	private Object callProcessor(Object itemRead, SingleItemStatus itemStatus) throws Exception {
+		// call process listeners before and after the actual process call
+		if (hasItemProcessListeners) {
 			for (ItemProcessListenerProxy processListenerProxy : itemProcessListeners) {
 				processListenerProxy.beforeProcess(itemRead);
 			}
+		}
 
-			processedItem = processorProxy.processItem(itemRead);
+		Object processedItem = processorProxy.processItem(itemRead);
 
-			if (processedItem == null) {
-				currentItemStatus.setFiltered(true);
-			}
+		if (processedItem == null) {
+			itemStatus.setFiltered(true);
+		}
 
+		if (hasItemProcessListeners) {
 			for (ItemProcessListenerProxy processListenerProxy : itemProcessListeners) {
 				processListenerProxy.afterProcess(itemRead, processedItem);
 			}
-		} catch (Exception e) {
-			for (ItemProcessListenerProxy processListenerProxy : itemProcessListeners) {
-				processListenerProxy.onProcessError(itemRead, e);
-			}
-			if(!currentChunkStatus.isRetryingAfterRollback()) {
-				if (retryProcessException(e, itemRead)) {
-					if (!retryHandler.isRollbackException(e)) {
-						processedItem = processItem(itemRead);
-					} else {
-						currentChunkStatus.markForRollbackWithRetry(e);
-					}
-				}
-				else if (skipProcessException(e, itemRead)) {
-					currentItemStatus.setSkipped(true);
-					stepContext.getMetric(MetricImpl.MetricType.PROCESS_SKIP_COUNT).incValue();
-				}
-				else {
-					throw new BatchContainerRuntimeException(e);
+		}
+		return processedItem;
+	}
+
+	/**
+	 * Skips or retries an item the processor failed on, or fails the step.
+	 * 
+	 * @return the item processed on a retry without rollback, otherwise null
+	 */
+	private Object handleProcessException(Exception e, Object itemRead, SingleItemStatus itemStatus) {
+		Object processedItem = null;
+		for (ItemProcessListenerProxy processListenerProxy : itemProcessListeners) {
+			processListenerProxy.onProcessError(itemRead, e);
+		}
+		if(!currentChunkStatus.isRetryingAfterRollback()) {
+			if (retryProcessException(e, itemRead)) {
+				if (!retryHandler.isRollbackException(e)) {
+					processedItem = processItem(itemRead, itemStatus);
+				} else {
+					currentChunkStatus.markForRollbackWithRetry(e);
 				}
 			}
+			else if (skipProcessException(e, itemRead)) {
+				itemStatus.setSkipped(true);
+				stepContext.getMetric(MetricImpl.MetricType.PROCESS_SKIP_COUNT).incValue();
+			}
 			else {
-				if (skipProcessException(e, itemRead)) {
-					currentItemStatus.setSkipped(true);
-					stepContext.getMetric(MetricImpl.MetricType.PROCESS_SKIP_COUNT).incValue();
-				} else if (retryProcessException(e, itemRead)) {
-
-					if (!retryHandler.isRollbackException(e)) {
-						// retry without rollback
-						processedItem = processItem(itemRead);
-					} else {
-						// retry with rollback
-						currentChunkStatus.markForRollbackWithRetry(e);
-					}
+				throw new BatchContainerRuntimeException(e);
+			}
+		}
+		else {
+			if (skipProcessException(e, itemRead)) {
+				itemStatus.setSkipped(true);
+				stepContext.getMetric(MetricImpl.MetricType.PROCESS_SKIP_COUNT).incValue();
+			} else if (retryProcessException(e, itemRead)) {
+
+				if (!retryHandler.isRollbackException(e)) {
+					// retry without rollback
+					processedItem = processItem(itemRead, itemStatus);
 				} else {
-					throw new BatchContainerRuntimeException(e);
+					// retry with rollback
+					currentChunkStatus.markForRollbackWithRetry(e);
 				}
+			} else {
+				throw new BatchContainerRuntimeException(e);
 			}
-
-		} catch (Throwable e) {
-			throw new BatchContainerRuntimeException(e);
 		}
-
-		logger.exiting(sourceClass, "processItem", processedItem==null ? "<null>" : processedItem);
 		return processedItem;
 	}
 
@@ -445,36 +939,42 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	 * 
 	 * @param theChunk
 	 *            the array list with all items processed ready to be written
+	 * @param chunkStatus
+	 *            the status of the chunk the items were read in
 	 */
-	private void writeChunk(List<Object> theChunk) {
+	private void writeChunk(List<Object> theChunk, ChunkStatus chunkStatus) {
 		logger.entering(sourceClass, "writeChunk", theChunk);
 		if (!theChunk.isEmpty()) {
 			try {
 
 				// call read listeners before and after the actual read
-				for (ItemWriteListenerProxy writeListenerProxy : itemWriteListeners) {
-					writeListenerProxy.beforeWrite(theChunk);
+				if (hasItemWriteListeners) {
+					for (ItemWriteListenerProxy writeListenerProxy : itemWriteListeners) {
+						writeListenerProxy.beforeWrite(theChunk);
+					}
 				}
 
 				writerProxy.writeItems(theChunk);
 
-				for (ItemWriteListenerProxy writeListenerProxy : itemWriteListeners) {
-					writeListenerProxy.afterWrite(theChunk);
+				if (hasItemWriteListeners) {
+					for (ItemWriteListenerProxy writeListenerProxy : itemWriteListeners) {
+						writeListenerProxy.afterWrite(theChunk);
+					}
 				}
 			} catch (Exception e) {
 				this.stepContext.setException(e);
 				for (ItemWriteListenerProxy writeListenerProxy : itemWriteListeners) {
 					writeListenerProxy.onWriteError(theChunk, e);
 				}
-				if(!currentChunkStatus.isRetryingAfterRollback()) {
+				if(!chunkStatus.isRetryingAfterRollback()) {
 
 					if (retryWriteException(e, theChunk)) {
 						if (!retryHandler.isRollbackException(e)) {
 							// retry without rollback
-							writeChunk(theChunk);
+							writeChunk(theChunk, chunkStatus);
 						} else {
 							// retry with rollback
-							currentChunkStatus.markForRollbackWithRetry(e);
+							chunkStatus.markForRollbackWithRetry(e);
 						}
 					} else if (skipWriteException(e, theChunk)) {
 						stepContext.getMetric(MetricImpl.MetricType.WRITE_SKIP_COUNT).incValueBy(1);
@@ -483,16 +983,22 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 					}
 
 				}
+				else if (theChunk.size() > 1 && (skipHandler.isSkippable(e) || (retryHandler.isRetryable(e) && retryHandler.isRollbackException(e)))) {
+					// Only when bisecting after a rollback.  Which of the items the writer failed on
+					// isn't known, so rather than skip or retry them all, this part of the rolled back
+					// chunk is rolled back in turn, to be split again until it's down to the one item.
+					chunkStatus.markForRollbackWithRetry(e);
+				}
 				else {
 					if (skipWriteException(e, theChunk)) {
 						stepContext.getMetric(MetricImpl.MetricType.WRITE_SKIP_COUNT).incValueBy(1);
 					} else if (retryWriteException(e, theChunk)) {
 						if (!retryHandler.isRollbackException(e)) {
 							// retry without rollback
-							writeChunk(theChunk);
+							writeChunk(theChunk, chunkStatus);
 						} else {
 							// retry with rollback
-							currentChunkStatus.markForRollbackWithRetry(e);
+							chunkStatus.markForRollbackWithRetry(e);
 						}
 					} else {
 						throw new BatchContainerRuntimeException(e);
@@ -510,6 +1016,19 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 	 * Prime the next chunk's ChunkStatus based on the previous one
 	 * (if there was one), particularly taking into account retry-with-rollback
 	 * and the one-at-a-time processing it entails.
+	 * 
+	 * With bisection, the rolled back chunk is instead split in two parts, each its
+	 * own chunk.  A part that is rolled back again is split again, and so on down
+	 * to the one item, which is retried or skipped as it would be one-at-a-time.
+	 * A part that commits is done with.  So a single bad item costs a couple of
+	 * transactions per halving rather than one per item in the chunk.
+	 * 
+	 * Read and process failures are tied to an item, so are skipped or retried on
+	 * the spot in a part as they would be one-at-a-time; only write failures have
+	 * to be narrowed down.
+	 * 
+	 * A chunk that follows a normal one, or the end of a retry, is by far the
+	 * usual case, and reuses the previous chunk's status rather than taking a new one.
 	 * @return the upcoming chunk's ChunkStatus
 	 */
 	private ChunkStatus getNextChunkStatusBasedOnPrevious() {
@@ -538,31 +1057,60 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			// the full portion of the original chunk.  So be careful to propagate this number if
 			// it already exists.
 			int numToProcessOneByOne = currentChunkStatus.getItemsToProcessOneByOneAfterRollback();
+			LinkedList<Integer> parts = new LinkedList<Integer>(currentChunkStatus.getPartsAfterRollback());
 			if (numToProcessOneByOne > 0) {
 				// Retry after rollback AFTER a previous retry after rollback
 				nextChunkStatus.setItemsToProcessOneByOneAfterRollback(numToProcessOneByOne);
+				if (!parts.isEmpty()) {
+					splitInHalves(parts, parts.removeFirst());
+				}
 			} else {
 				// "Normal" (i.e. the first) retry after rollback.
 				nextChunkStatus.setItemsToProcessOneByOneAfterRollback(currentChunkStatus.getItemsTouchedInCurrentChunk());
+				if (bisectAfterRollback) {
+					splitInHalves(parts, currentChunkStatus.getItemsTouchedInCurrentChunk());
+				}
 			}
+			nextChunkStatus.setPartsAfterRollback(parts);
 		} else if (currentChunkStatus.isRetryingAfterRollback()) {
-			// In this case the 'current' (actually the last) chunk was a single-item retry after rollback chunk,
-			// so we have to see if it's time to revert to normal processing.
+			// In this case the 'current' (actually the last) chunk was a single-item (or part) retry after
+			// rollback chunk, so we have to see if it's time to revert to normal processing.
 			int numToProcessOneByOne = currentChunkStatus.getItemsToProcessOneByOneAfterRollback();
-			if (numToProcessOneByOne == 1) {
+			int numProcessed = currentChunkStatus.getItemsInRetryChunk();
+			if (numToProcessOneByOne <= numProcessed) {
 				// we're done, revert to normal
-				nextChunkStatus = new ChunkStatus();
+				currentChunkStatus.reset();
+				nextChunkStatus = currentChunkStatus;
 			} else {
 				nextChunkStatus = new ChunkStatus(ChunkStatusType.RETRY_AFTER_ROLLBACK);
-				nextChunkStatus.setItemsToProcessOneByOneAfterRollback(numToProcessOneByOne - 1);
+				nextChunkStatus.setItemsToProcessOneByOneAfterRollback(numToProcessOneByOne - numProcessed);
+				LinkedList<Integer> parts = new LinkedList<Integer>(currentChunkStatus.getPartsAfterRollback());
+				if (!parts.isEmpty()) {
+					parts.removeFirst();
+				}
+				nextChunkStatus.setPartsAfterRollback(parts);
 			}
 		} else {
-			nextChunkStatus = new ChunkStatus();
+			currentChunkStatus.reset();
+			nextChunkStatus = currentChunkStatus;
 		}
 		
 		return nextChunkStatus;
 	}
 
+	/**
+	 * Puts the two halves of a part of items at the front of the parts to go,
+	 * the larger first.  A single item stays as it is.
+	 */
+	private static void splitInHalves(LinkedList<Integer> parts, int items) {
+		if (items > 1) {
+			parts.addFirst(items / 2);
+			parts.addFirst(items - items / 2);
+		} else {
+			parts.addFirst(1);
+		}
+	}
+
 	/**
 	 * Main Read-Process-Write loop
 	 * 
@@ -593,8 +1141,10 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 				transactionManager.begin();
 
-				for (ChunkListenerProxy chunkProxy : chunkListeners) {
-					chunkProxy.beforeChunk();
+				if (hasChunkListeners) {
+					for (ChunkListenerProxy chunkProxy : chunkListeners) {
+						chunkProxy.beforeChunk();
+					}
 				}
 
 				chunkToWrite = readAndProcess();
@@ -607,7 +1157,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 				// MR 1.0 Rev A clarified we'd only write a chunk with at least one item.
 				// See, e.g. Sec 11.6 of Spec
 				if (chunkToWrite.size() > 0) {
-					writeChunk(chunkToWrite);
+					writeChunk(chunkToWrite, currentChunkStatus);
 				}
 
 				if (currentChunkStatus.wasMarkedForRollbackWithRetry()) {
@@ -615,21 +1165,24 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 					continue;
 				}
 
-				for (ChunkListenerProxy chunkProxy : chunkListeners) {
-					chunkProxy.afterChunk();
+				if (hasChunkListeners) {
+					for (ChunkListenerProxy chunkProxy : chunkListeners) {
+						chunkProxy.afterChunk();
+					}
 				}
 
-				checkpointManager.checkpoint();
-
-				this.persistUserData();
+				// Reader checkpoint, writer checkpoint and step status (user data)
+				// go to the persistence layer as a single unit.
+				checkpoint(checkpointManager.captureReaderCheckpoint(), snapshotPersistentUserData());
 
 				transactionManager.commit();
 
 				checkpointManager.endCheckpoint();
+				stepContext.setSkippedCheckpointWriteCount(checkpointManager.getSkippedWriteCount());
 
 				invokeCollectorIfPresent();
 
-				updateNormalMetrics(chunkToWrite.size());
+				updateNormalMetrics(currentChunkStatus, chunkToWrite.size());
 
 				// exit loop when last record is written
 				if (currentChunkStatus.isFinished()) {
@@ -643,23 +1196,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 				}
 			}
 		} catch (Throwable t) {		
-			// Note we've already carefully handled skippable and retryable exceptions.  Anything surfacing to this
-			// level does not need to be considered as either.
-			try {
-				logger.log(Level.SEVERE, "Failure in Read-Process-Write Loop", t);
-				transactionManager.setRollbackOnly();
-
-				callReaderAndWriterCloseOnThrowable(t);
-
-				// Signature is onError(Exception) so only try to call if we have an Exception, but not an Error.
-				if (t instanceof Exception) {
-					callChunkListenerOnError((Exception)t);
-				}
-				// Let's not count only retry rollbacks but also non-retry rollbacks.
-				stepContext.getMetric(MetricImpl.MetricType.ROLLBACK_COUNT).incValue();
-			} finally {
-				transactionManager.rollback();
-			}
+			rollbackOnThrowable(t);
 			logger.exiting(sourceClass, "invokeChunk");
 			throw new BatchContainerRuntimeException("Failure in Read-Process-Write Loop", t);
 		} 
@@ -667,11 +1204,205 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		logger.finest("Exiting normally");
 		logger.exiting(sourceClass, "invokeChunk");
 	}
-	
-	private void updateNormalMetrics(int writeCount) {
 
-		int readCount = currentChunkStatus.getItemsTouchedInCurrentChunk();
-		if (currentChunkStatus.isFinished()) { 
+	private void rollbackOnThrowable(Throwable t) {
+		// Note we've already carefully handled skippable and retryable exceptions.  Anything surfacing to this
+		// level does not need to be considered as either.
+		try {
+			logger.log(Level.SEVERE, "Failure in Read-Process-Write Loop", t);
+			transactionManager.setRollbackOnly();
+
+			callReaderAndWriterCloseOnThrowable(t);
+
+			// Signature is onError(Exception) so only try to call if we have an Exception, but not an Error.
+			if (t instanceof Exception) {
+				callChunkListenerOnError((Exception)t);
+			}
+			// Let's not count only retry rollbacks but also non-retry rollbacks.
+			stepContext.getMetric(MetricImpl.MetricType.ROLLBACK_COUNT).incValue();
+		} finally {
+			transactionManager.rollback();
+		}
+	}
+
+	/**
+	 * A chunk read and processed on the pipeline's reading thread, waiting to be written.
+	 */
+	private class PipelinedChunk {
+		final List<Object> items;
+		final ChunkStatus status;
+		final byte[] readerCheckpoint;
+		final PersistentDataWrapper persistentUserData;
+
+		PipelinedChunk(List<Object> items, ChunkStatus status, byte[] readerCheckpoint, PersistentDataWrapper persistentUserData) {
+			this.items = items;
+			this.status = status;
+			this.readerCheckpoint = readerCheckpoint;
+			this.persistentUserData = persistentUserData;
+		}
+	}
+
+	/**
+	 * Whether the step asked to be pipelined and can be.  It can't if:
+	 * 
+	 * - it's transactional, since reading would be outside the chunk's transaction
+	 * - it has retryable exceptions, since retry with rollback repositions the reader
+	 *   at the last checkpoint, behind chunks already read
+	 * - it has a custom checkpoint algorithm, whose calls would interleave between
+	 *   chunks on the two threads
+	 * - it has an adaptive checkpoint policy, for the same reason: it times each chunk
+	 *   from its first read to its commit
+	 */
+	private boolean isPipelined() {
+		Properties p = stepContext.getProperties();
+		if (p == null || !Boolean.parseBoolean(p.getProperty(PIPELINE_PROPERTY))) {
+			return false;
+		}
+		String reason = null;
+		if (!(transactionManager instanceof DefaultNonTransactionalManager)) {
+			reason = "the step is transactional";
+		} else if (chunk.getRetryableExceptionClasses() != null) {
+			reason = "the step has retryable exceptions";
+		} else if (customCheckpointPolicy) {
+			reason = "the step has a custom checkpoint algorithm";
+		} else if (adaptiveCheckpointAlgorithm != null) {
+			reason = "the step has an adaptive checkpoint policy";
+		}
+		if (reason != null) {
+			logger.warning("Not pipelining step " + step.getId() + " since " + reason);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The Read-Process-Write loop as a two stage pipeline: chunks are read and
+	 * processed on a thread of their own while this one writes and checkpoints
+	 * the ones before.  
+	 * 
+	 * A chunk's reader checkpoint is taken on the reading thread at the chunk's
+	 * boundary, and only persisted once this thread has written that chunk, so a
+	 * restart starts after the last chunk written no matter how far ahead the reader got.
+	 * The persistent user data is serialized there and then too, and persisted with
+	 * it, so a restart gets the user data that goes with the reader checkpoint.  That
+	 * means what the writer and afterChunk() do to the user data is only persisted
+	 * with a later chunk, and they shouldn't change it in place: it could be being
+	 * serialized on the reading thread at the time.  The user data at the end of the
+	 * step is persisted as usual.
+	 * 
+	 * beforeChunk() is called on the reading thread before reading a chunk and 
+	 * afterChunk() here after writing it, so they interleave across chunks.
+	 */
+	private void invokePipelinedChunks() {
+		logger.entering(sourceClass, "invokePipelinedChunks");
+
+		ChunkPipeline<PipelinedChunk> pipeline = null;
+		try {
+			transactionManager.begin();
+			this.openReaderAndWriter();
+			transactionManager.commit();
+
+			int depth = DEFAULT_PIPELINE_DEPTH;
+			String depthProperty = stepContext.getProperties().getProperty(PIPELINE_DEPTH_PROPERTY);
+			if (depthProperty != null) {
+				depth = Integer.parseInt(depthProperty.trim());
+			}
+			pipeline = new ChunkPipeline<PipelinedChunk>(new ChunkPipeline.Producer<PipelinedChunk>() {
+				@Override
+				public PipelinedChunk produce() throws Exception {
+					return readAndProcessPipelinedChunk();
+				}
+
+				@Override
+				public boolean isLast(PipelinedChunk readChunk) {
+					return readChunk.status.isFinished();
+				}
+			}, depth, "Batch chunk reader [" + step.getId() + "]");
+			pipeline.start();
+
+			while (true) {
+				PipelinedChunk readChunk = pipeline.take();
+
+				setNextChunkTransactionTimeout();
+				transactionManager.begin();
+
+				if (readChunk.items.size() > 0) {
+					writeChunk(readChunk.items, readChunk.status);
+				}
+
+				if (hasChunkListeners) {
+					for (ChunkListenerProxy chunkProxy : chunkListeners) {
+						chunkProxy.afterChunk();
+					}
+				}
+
+				checkpoint(readChunk.readerCheckpoint, readChunk.persistentUserData);
+
+				transactionManager.commit();
+
+				checkpointManager.endCheckpoint();
+				stepContext.setSkippedCheckpointWriteCount(checkpointManager.getSkippedWriteCount());
+
+				invokeCollectorIfPresent();
+
+				updateNormalMetrics(readChunk.status, readChunk.items.size());
+
+				if (readChunk.status.isFinished()) {
+					pipeline.close();
+
+					transactionManager.begin();
+
+					writerProxy.close();
+					readerProxy.close();
+
+					transactionManager.commit();
+					break;
+				}
+			}
+		} catch (Throwable t) {
+			// The reader can't be closed while it might still be reading
+			if (pipeline != null) {
+				pipeline.close();
+			}
+			rollbackOnThrowable(t);
+			logger.exiting(sourceClass, "invokePipelinedChunks");
+			throw new BatchContainerRuntimeException("Failure in Read-Process-Write Loop", t);
+		} finally {
+			if (pipeline != null && logger.isLoggable(Level.FINE)) {
+				logger.fine("Pipelined step " + step.getId() + " ran for " + pipeline.getElapsedNanos() / 1000000 + " ms, reading was busy "
+						+ pipeline.getReadUtilization() + "% of the time and writing " + pipeline.getWriteUtilization() + "%");
+			}
+		}
+
+		logger.exiting(sourceClass, "invokePipelinedChunks");
+	}
+
+	/**
+	 * The reading thread's half of the loop in invokeChunk(), for one chunk.
+	 * 
+	 * While pipelining, currentChunkStatus is only ever used on the reading thread:
+	 * each chunk gets a new one that's handed over with it, and it's the chunk's own
+	 * that the writing thread uses.
+	 */
+	private PipelinedChunk readAndProcessPipelinedChunk() throws Exception {
+		currentChunkStatus = new ChunkStatus();
+
+		checkpointManager.beginCheckpoint();
+
+		if (hasChunkListeners) {
+			for (ChunkListenerProxy chunkProxy : chunkListeners) {
+				chunkProxy.beforeChunk();
+			}
+		}
+
+		List<Object> items = readAndProcess();
+		return new PipelinedChunk(items, currentChunkStatus, checkpointManager.captureReaderCheckpoint(), snapshotPersistentUserData());
+	}
+
+	private void updateNormalMetrics(ChunkStatus chunkStatus, int writeCount) {
+
+		int readCount = chunkStatus.getItemsTouchedInCurrentChunk();
+		if (chunkStatus.isFinished()) { 
 			readCount--;
 		}
 		int filterCount = readCount - writeCount;
@@ -741,7 +1472,81 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		
 		initializeCheckpointManager();
 		
-		invokeChunk();
+		initializeProcessorExecutor();
+
+		Properties p = stepContext.getProperties();
+		bisectAfterRollback = p != null && Boolean.parseBoolean(p.getProperty(BISECT_AFTER_ROLLBACK_PROPERTY));
+		try {
+			if (isPipelined()) {
+				invokePipelinedChunks();
+			} else {
+				invokeChunk();
+			}
+		} finally {
+			if (processorExecutor != null) {
+				processorExecutor.shutdown();
+			}
+			if (adaptiveCheckpointAlgorithm != null && logger.isLoggable(Level.FINE)) {
+				logger.fine("Adaptive checkpointing for step " + step.getId() + " was aiming for chunks of " + adaptiveCheckpointAlgorithm.getItemCount()
+						+ " items at the end, having used from " + adaptiveCheckpointAlgorithm.getSmallestItemCount() + " to "
+						+ adaptiveCheckpointAlgorithm.getLargestItemCount());
+			}
+		}
+	}
+
+	private void initializeProcessorExecutor() {
+		Properties p = stepContext.getProperties();
+		String threadsProperty = p == null ? null : p.getProperty(PROCESSOR_THREADS_PROPERTY);
+		if (threadsProperty == null || processorProxy == null) {
+			return;
+		}
+		int threads = Integer.parseInt(threadsProperty.trim());
+		if (threads <= 1) {
+			return;
+		}
+		if (!(transactionManager instanceof DefaultNonTransactionalManager)) {
+			// The processor threads would be outside the chunk's transaction
+			logger.warning("Processing items of step " + step.getId() + " on the step thread since the step is transactional");
+			return;
+		}
+		logger.fine("Processing items of step " + step.getId() + " on " + threads + " threads");
+		final String threadName = "Batch item processor [" + step.getId() + "] ";
+		final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		processorExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName + count.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setContextClassLoader(contextClassLoader);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * The last checkpoint has usually written the step status with the final user
+	 * data already, in which case there's no need to write it again.
+	 */
+	@Override
+	protected void persistUserData() {
+		PersistentDataWrapper userData = snapshotPersistentUserData();
+		stepStatus.setPersistentUserData(userData);
+		if (inMemoryPartition != null) {
+			// Its step status is recorded by the partitioned step; a restart takes the
+			// user data from the checkpoint, whether or not it got that far.
+			if (checkpointManager != null) {
+				checkpointManager.persistUserData(userData.getPersistentDataBytes());
+			}
+		} else if (checkpointManager != null && checkpointManager.isStepStatusUnchanged(stepStatus)) {
+			logger.fine("Step status unchanged since the last checkpoint, not persisting it again");
+		} else {
+			persistStepStatus();
+		}
+		if (checkpointManager != null && logger.isLoggable(Level.FINE)) {
+			logger.fine("Checkpoint writes skipped as unchanged for step " + step.getId() + ": " + stepContext.getSkippedCheckpointWriteCount());
+		}
 	}
 
 	private void initializeCheckpointManager() {
@@ -752,7 +1557,27 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		int timeLimitSeconds = ChunkHelper.getTimeLimit(chunk);
 		customCheckpointPolicy = ChunkHelper.isCustomCheckpointPolicy(chunk);  // Supplies default if needed
 
-		if (!customCheckpointPolicy) {
+		// A related piece of data we'll calculate here is the tran timeout.   Though we won't include
+		// it in the checkpoint manager since we'll set it directly on the tran mgr before each chunk.
+		// The adaptive policy keeps its chunks well within it.
+		stepPropertyTranTimeoutSeconds = initStepTransactionTimeout();
+
+		if (ChunkHelper.isAdaptiveCheckpointPolicy(chunk)) {
+
+			Properties p = stepContext.getProperties() == null ? new Properties() : stepContext.getProperties();
+			adaptiveCheckpointAlgorithm = new AdaptiveCheckpointAlgorithm();
+			adaptiveCheckpointAlgorithm.setItemCount(checkpointAtThisItemCount);
+			adaptiveCheckpointAlgorithm.setTimeLimitSeconds(timeLimitSeconds);
+			adaptiveCheckpointAlgorithm.setTransactionTimeoutSeconds(stepPropertyTranTimeoutSeconds);
+			adaptiveCheckpointAlgorithm.setTargetMillis(Long.parseLong(p.getProperty(ADAPTIVE_TARGET_MILLIS_PROPERTY,
+					Long.toString(DEFAULT_ADAPTIVE_TARGET_MILLIS)).trim()));
+			adaptiveCheckpointAlgorithm.setMinItemCount(Integer.parseInt(p.getProperty(ADAPTIVE_MIN_ITEMS_PROPERTY, "1").trim()));
+			adaptiveCheckpointAlgorithm.setMaxItemCount(Integer.parseInt(p.getProperty(ADAPTIVE_MAX_ITEMS_PROPERTY,
+					Integer.toString(DEFAULT_ADAPTIVE_MAX_ITEMS)).trim()));
+			logger.fine("Initialize checkpoint manager with adaptive policy, starting at item-count=" + checkpointAtThisItemCount);
+			checkpointAlgorithm = adaptiveCheckpointAlgorithm;
+
+		} else if (!customCheckpointPolicy) {
 
 			ItemCheckpointAlgorithm ica = new ItemCheckpointAlgorithm();
 			ica.setItemCount(checkpointAtThisItemCount);
@@ -786,12 +1611,62 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		}	
 		
 		// Finally, for both policies now
-		checkpointManager = new CheckpointManager(readerProxy, writerProxy, checkpointAlgorithm, jobExecutionImpl.getExecutionId(), jobExecutionImpl
-					.getJobInstance().getInstanceId(), step.getId());
-		
-		// A related piece of data we'll calculate here is the tran timeout.   Though we won't include
-		// it in the checkpoint manager since we'll set it directly on the tran mgr before each chunk.
-		stepPropertyTranTimeoutSeconds = initStepTransactionTimeout();
+		checkpointManager = new CheckpointManager(readerProxy, writerProxy, checkpointAlgorithm, jobExecutionImpl.getExecutionId(), 
+				checkpointInstanceId(), checkpointStepName());
+	}
+
+	/*
+	 * A lightweight partition has no job instance of its own in the job repository, so
+	 * its checkpoints go under the partitioned step's, one set per partition.
+	 */
+	private long checkpointInstanceId() {
+		if (inMemoryPartition != null) {
+			return inMemoryPartition.getParentInstanceId();
+		}
+		return jobExecutionImpl.getJobInstance().getInstanceId();
+	}
+
+	private String checkpointStepName() {
+		if (inMemoryPartition != null) {
+			return inMemoryPartition.getCheckpointStepName(step.getId());
+		}
+		return step.getId();
+	}
+
+	/*
+	 * Harden a chunk's checkpoints along with the user data as of its end.  That goes
+	 * on the step status, except for a lightweight partition, whose status is only
+	 * recorded by the partitioned step when the partition ends: there it's a checkpoint
+	 * of its own, so that a partition cut short keeps the user data to go with its
+	 * reader and writer checkpoints.
+	 */
+	private void checkpoint(byte[] readerToken, PersistentDataWrapper userData) {
+		stepStatus.setPersistentUserData(userData);
+		if (inMemoryPartition == null) {
+			checkpointManager.checkpoint(stepStatus, readerToken);
+		} else {
+			checkpointManager.checkpointWithUserData(readerToken, userData.getPersistentDataBytes());
+		}
+	}
+
+	/*
+	 * A lightweight partition that has checkpointed its user data restarts with that,
+	 * being at least as recent as any the partitioned step recorded for it.
+	 */
+	@Override
+	protected boolean shouldStepBeExecuted() {
+		if (!super.shouldStepBeExecuted()) {
+			return false;
+		}
+		if (inMemoryPartition != null) {
+			CheckpointDataKey userDataChkptDK = new CheckpointDataKey(checkpointInstanceId(), checkpointStepName(), "USERDATA");
+			CheckpointData userDataChkptData = servicesManager.getPersistenceManagerService().getCheckpointData(userDataChkptDK);
+			if (userDataChkptData != null) {
+				stepStatus.setPersistentUserData(new PersistentDataWrapper(userDataChkptData.getRestartToken()));
+				((StepContextImpl) stepContext).setPersistentUserData(stepStatus.getPersistentUserData());
+			}
+		}
+		return true;
 	}
 
 
@@ -864,6 +1739,10 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 		this.itemReadListeners = jobExecutionImpl.getListenerFactory().getItemReadListeners(step, injectionRef, stepContext);
 		this.itemProcessListeners = jobExecutionImpl.getListenerFactory().getItemProcessListeners(step, injectionRef, stepContext);
 		this.itemWriteListeners = jobExecutionImpl.getListenerFactory().getItemWriteListeners(step, injectionRef, stepContext);
+		this.hasChunkListeners = !chunkListeners.isEmpty();
+		this.hasItemReadListeners = !itemReadListeners.isEmpty();
+		this.hasItemProcessListeners = !itemProcessListeners.isEmpty();
+		this.hasItemWriteListeners = !itemWriteListeners.isEmpty();
 
 		if (logger.isLoggable(Level.FINE)) {
 			logger.fine("Setting contexts for chunk artifacts");
@@ -891,7 +1770,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			logger.entering(sourceClass, sourceMethod);
 
 		_persistenceManagerService = servicesManager.getPersistenceManagerService();
-		readerChkptDK = new CheckpointDataKey(jobExecutionImpl.getJobInstance().getInstanceId(), step.getId(), "READER");
+		readerChkptDK = new CheckpointDataKey(checkpointInstanceId(), checkpointStepName(), "READER");
 		CheckpointData readerChkptData = _persistenceManagerService.getCheckpointData(readerChkptDK);
 		try {
 
@@ -899,12 +1778,8 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			if (readerChkptData != null) {
 
 				byte[] readertoken = readerChkptData.getRestartToken();
-				ByteArrayInputStream readerChkptBA = new ByteArrayInputStream(readertoken);
-				TCCLObjectInputStream readerOIS = null;
 				try {
-					readerOIS = new TCCLObjectInputStream(readerChkptBA);
-					readerProxy.open((Serializable) readerOIS.readObject());
-					readerOIS.close();
+					readerProxy.open(CheckpointDataCodec.decodeToken(readertoken));
 				} catch (Exception ex) {
 					// is this what I should be throwing here?
 							throw new BatchContainerServiceException("Cannot persist the checkpoint data for [" + step.getId() + "]", ex);
@@ -919,19 +1794,15 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			throw new IllegalStateException("Expected CheckpointData but found" + readerChkptData );
 		}
 
-		writerChkptDK = new CheckpointDataKey(jobExecutionImpl.getJobInstance().getInstanceId(), step.getId(), "WRITER");
+		writerChkptDK = new CheckpointDataKey(checkpointInstanceId(), checkpointStepName(), "WRITER");
 		CheckpointData writerChkptData = _persistenceManagerService.getCheckpointData(writerChkptDK);
 
 		try {
 			// check for data in backing store
 			if (writerChkptData != null) {
 				byte[] writertoken = writerChkptData.getRestartToken();
-				ByteArrayInputStream writerChkptBA = new ByteArrayInputStream(writertoken);
-				TCCLObjectInputStream writerOIS = null;
 				try {
-					writerOIS = new TCCLObjectInputStream(writerChkptBA);
-					writerProxy.open((Serializable) writerOIS.readObject());
-					writerOIS.close();
+					writerProxy.open(CheckpointDataCodec.decodeToken(writertoken));
 				} catch (Exception ex) {
 					// is this what I should be throwing here?
 							throw new BatchContainerServiceException("Cannot persist the checkpoint data for [" + step.getId() + "]", ex);
@@ -970,7 +1841,8 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 	}
 
-	boolean skipReadException(Exception e) {
+	// Synchronized as a pipelined step skips on both threads
+	synchronized boolean skipReadException(Exception e) {
 
 		try {
 			skipHandler.handleExceptionRead(e);
@@ -994,7 +1866,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 	}
 
-	boolean skipProcessException(Exception e, Object record) {
+	synchronized boolean skipProcessException(Exception e, Object record) {
 
 		try {
 			skipHandler.handleExceptionWithRecordProcess(e, record);
@@ -1006,7 +1878,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 	}
 
-	boolean retryProcessException(Exception e, Object record) {
+	synchronized boolean retryProcessException(Exception e, Object record) {
 
 		try {
 			retryHandler.handleExceptionProcess(e, record);
@@ -1018,7 +1890,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 	}
 
-	boolean skipWriteException(Exception e, List<Object> chunkToWrite) {
+	synchronized boolean skipWriteException(Exception e, List<Object> chunkToWrite) {
 
 		try {
 			skipHandler.handleExceptionWithRecordListWrite(e, chunkToWrite);
@@ -1083,19 +1955,15 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 	private void positionReaderAtCheckpoint() {
 		_persistenceManagerService = servicesManager.getPersistenceManagerService();
-		readerChkptDK = new CheckpointDataKey(jobExecutionImpl.getJobInstance().getInstanceId(), step.getId(), "READER");
+		readerChkptDK = new CheckpointDataKey(checkpointInstanceId(), checkpointStepName(), "READER");
 
 		CheckpointData readerData = _persistenceManagerService.getCheckpointData(readerChkptDK);
 		try {
 			// check for data in backing store
 			if (readerData != null) {
 				byte[] readertoken = readerData.getRestartToken();
-				ByteArrayInputStream readerChkptBA = new ByteArrayInputStream(readertoken);
-				TCCLObjectInputStream readerOIS = null;
 				try {
-					readerOIS = new TCCLObjectInputStream(readerChkptBA);
-					readerProxy.open((Serializable) readerOIS.readObject());
-					readerOIS.close();
+					readerProxy.open(CheckpointDataCodec.decodeToken(readertoken));
 				} catch (Exception ex) {
 					// is this what I should be throwing here?
 							throw new BatchContainerServiceException("Cannot persist the checkpoint data for [" + step.getId() + "]", ex);
@@ -1112,7 +1980,7 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 
 	private void positionWriterAtCheckpoint() {
 		_persistenceManagerService = servicesManager.getPersistenceManagerService();
-		writerChkptDK = new CheckpointDataKey(jobExecutionImpl.getJobInstance().getInstanceId(), step.getId(), "WRITER");
+		writerChkptDK = new CheckpointDataKey(checkpointInstanceId(), checkpointStepName(), "WRITER");
 
 		CheckpointData writerData =  _persistenceManagerService.getCheckpointData(writerChkptDK);
 
@@ -1120,12 +1988,8 @@ public class ChunkStepControllerImpl extends SingleThreadedStepControllerImpl {
 			// check for data in backing store
 			if (writerData != null) {
 				byte[] writertoken = writerData.getRestartToken();
-				ByteArrayInputStream writerChkptBA = new ByteArrayInputStream(writertoken);
-				TCCLObjectInputStream writerOIS = null;
 				try {
-					writerOIS = new TCCLObjectInputStream(writerChkptBA);
-					writerProxy.open((Serializable) writerOIS.readObject());
-					writerOIS.close();
+					writerProxy.open(CheckpointDataCodec.decodeToken(writertoken));
 				} catch (Exception ex) {
 					// is this what I should be throwing here?
 							throw new BatchContainerServiceException("Cannot persist the checkpoint data for [" + step.getId() + "]", ex);
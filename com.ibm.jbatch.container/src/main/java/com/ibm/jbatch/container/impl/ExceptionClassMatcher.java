@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An include/exclude list of exception classes, as in skippable-exception-classes,
+ * retryable-exception-classes and no-rollback-exception-classes: an exception
+ * matches if it is an instance of an included class and not of an excluded one.
+ *
+ * The class names are loaded once, with the thread context class loader of the
+ * thread creating the matcher (the step's), rather than for every exception
+ * checked.  A name that can't be loaded matches nothing, as before.  The answer
+ * for each concrete exception class is remembered, so one seen before costs a
+ * single lookup, from whichever thread.
+ */
+public final class ExceptionClassMatcher {
+
+	private static final String className = ExceptionClassMatcher.class.getName();
+	private static Logger logger = Logger.getLogger(ExceptionClassMatcher.class.getPackage().getName());
+
+	private final Class<?>[] includes;
+	private final Class<?>[] excludes;
+	private final ConcurrentMap<Class<?>, Boolean> matches = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	public ExceptionClassMatcher(Collection<String> includeClassNames, Collection<String> excludeClassNames) {
+		ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+		this.includes = loadClasses(tccl, includeClassNames);
+		this.excludes = loadClasses(tccl, excludeClassNames);
+	}
+
+	public boolean matches(Exception e) {
+		Class<?> exClass = e.getClass();
+		Boolean match = matches.get(exClass);
+		if (match == null) {
+			match = isAssignableToAny(includes, exClass) && !isAssignableToAny(excludes, exClass);
+			matches.put(exClass, match);
+		}
+		return match;
+	}
+
+	private static boolean isAssignableToAny(Class<?>[] classes, Class<?> exClass) {
+		for (Class<?> clazz : classes) {
+			if (clazz.isAssignableFrom(exClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Class<?>[] loadClasses(ClassLoader tccl, Collection<String> classNames) {
+		List<Class<?>> classes = new ArrayList<Class<?>>(classNames.size());
+		for (String exClassName : classNames) {
+			try {
+				classes.add(tccl.loadClass(exClassName));
+			} catch (ClassNotFoundException cnf) {
+				logger.logp(Level.FINE, className, "loadClasses", cnf.getLocalizedMessage());
+			}
+		}
+		return classes.toArray(new Class<?>[classes.size()]);
+	}
+}
@@ -147,7 +147,9 @@ public abstract class JobThreadRootControllerImpl implements IThreadRootControll
 		String restartOn = jobContext.getRestartOn();	
 		logger.fine("Logging JSL stop(): exitStatus = " + jobContext.getExitStatus() + ", restartOn = " +restartOn );
 		batchStatusStopping();
-		jobStatusService.updateJobStatusFromJSLStop(jobInstanceId, restartOn);
+		if (isPersistent()) {
+			jobStatusService.updateJobStatusFromJSLStop(jobInstanceId, restartOn);
+		}
 		return;
 	}
 
@@ -157,7 +159,17 @@ public abstract class JobThreadRootControllerImpl implements IThreadRootControll
 		Timestamp timestamp = new Timestamp(time);
 		jobExecution.setLastUpdateTime(timestamp);
 		jobExecution.setStartTime(timestamp);
-		persistenceService.markJobStarted(jobExecution.getExecutionId(), timestamp);
+		if (isPersistent()) {
+			persistenceService.markJobStarted(jobExecution.getExecutionId(), timestamp);
+		}
+	}
+
+	/**
+	 * @return false for an execution that lives only in memory, with nothing of
+	 * its own in the job repository to keep up to date
+	 */
+	protected boolean isPersistent() {
+		return true;
 	}
 
 	/*
@@ -211,15 +223,19 @@ public abstract class JobThreadRootControllerImpl implements IThreadRootControll
 
 		// Perhaps these should be coordinated in a tran but probably better still would be
 		// rethinking the table design to let the database provide us consistently with a single update.
-		jobStatusService.updateJobBatchStatus(jobInstanceId, batchStatus);
-		jobStatusService.updateJobExecutionStatus(jobExecution.getInstanceId(), jobContext.getBatchStatus(), jobContext.getExitStatus());
+		if (isPersistent()) {
+			jobStatusService.updateJobBatchStatus(jobInstanceId, batchStatus);
+			jobStatusService.updateJobExecutionStatus(jobExecution.getInstanceId(), jobContext.getBatchStatus(), jobContext.getExitStatus());
+		}
 
 		if (batchStatus.equals(BatchStatus.COMPLETED) || batchStatus.equals(BatchStatus.STOPPED) ||  
 				batchStatus.equals(BatchStatus.FAILED)) {
 
 			jobExecution.setEndTime(timestamp);
-			persistenceService.updateWithFinalExecutionStatusesAndTimestamps(jobExecution.getExecutionId(), 
-					batchStatus, jobContext.getExitStatus(), timestamp);
+			if (isPersistent()) {
+				persistenceService.updateWithFinalExecutionStatusesAndTimestamps(jobExecution.getExecutionId(), 
+						batchStatus, jobContext.getExitStatus(), timestamp);
+			}
 		} else {
 			throw new IllegalStateException("Not expected to encounter batchStatus of " + batchStatus +" at this point.  Aborting.");
 		}
@@ -265,7 +281,9 @@ public abstract class JobThreadRootControllerImpl implements IThreadRootControll
 		long time = System.currentTimeMillis();
 		Timestamp timestamp = new Timestamp(time);
 		jobExecution.setLastUpdateTime(timestamp);
-		persistenceService.updateBatchStatusOnly(jobExecution.getExecutionId(), BatchStatus.STOPPING, timestamp);
+		if (isPersistent()) {
+			persistenceService.updateBatchStatusOnly(jobExecution.getExecutionId(), BatchStatus.STOPPING, timestamp);
+		}
 	}
 
 
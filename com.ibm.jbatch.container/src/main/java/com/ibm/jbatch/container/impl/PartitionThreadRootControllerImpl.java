@@ -17,10 +17,12 @@
 package com.ibm.jbatch.container.impl;
 
 import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimePartitionExecution;
 import com.ibm.jbatch.container.util.PartitionsBuilderConfig;
 
 /**
- * Currently there's no special function on top of the subjob required of the partition.
+ * A partition run as a subjob needs nothing special on top of the subjob.  A lightweight
+ * partition has no rows of its own in the job repository, so it skips persisting them.
  *
  */
 public class PartitionThreadRootControllerImpl extends JobThreadRootControllerImpl {
@@ -31,4 +33,9 @@ public class PartitionThreadRootControllerImpl extends JobThreadRootControllerIm
 		super(jobExecution, config.getAnalyzerQueue());
 	}
 
+	@Override
+	protected boolean isPersistent() {
+		return !(jobExecution instanceof RuntimePartitionExecution);
+	}
+
 }
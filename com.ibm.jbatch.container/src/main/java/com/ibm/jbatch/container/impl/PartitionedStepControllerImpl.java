@@ -17,10 +17,14 @@
 package com.ibm.jbatch.container.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,11 +43,14 @@ import com.ibm.jbatch.container.artifact.proxy.PartitionMapperProxy;
 import com.ibm.jbatch.container.artifact.proxy.PartitionReducerProxy;
 import com.ibm.jbatch.container.artifact.proxy.ProxyFactory;
 import com.ibm.jbatch.container.artifact.proxy.StepListenerProxy;
+import com.ibm.jbatch.container.context.impl.MetricImpl;
 import com.ibm.jbatch.container.context.impl.StepContextImpl;
 import com.ibm.jbatch.container.exception.BatchContainerRuntimeException;
 import com.ibm.jbatch.container.exception.BatchContainerServiceException;
 import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimePartitionExecution;
 import com.ibm.jbatch.container.jsl.CloneUtility;
+import com.ibm.jbatch.container.status.PartitionStatuses;
 import com.ibm.jbatch.container.util.BatchPartitionPlan;
 import com.ibm.jbatch.container.util.BatchPartitionWorkUnit;
 import com.ibm.jbatch.container.util.BatchWorkUnit;
@@ -67,6 +74,38 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 	private static final int DEFAULT_PARTITION_INSTANCES = 1;
 	private static final int DEFAULT_THREADS = 0; //0 means default to number of instances
 
+	/**
+	 * Step property which, set to true, makes the partition plan's partitions a queue of
+	 * work ranges that the plan's threads claim one at a time until it's drained, rather
+	 * than a fixed division of the work.  A mapper can then publish many more, smaller
+	 * ranges than there are threads, and a thread whose ranges turn out quick just claims
+	 * more, so one large range doesn't leave a single partition running long after the
+	 * rest.  See preparePartitions().
+	 */
+	public static final String WORK_QUEUE_PROPERTY = "com.ibm.jbatch.container.partition.workQueue";
+
+	// How often the finished ranges of a work queue are persisted, at most
+	private static final long WORK_QUEUE_CHECKPOINT_MILLIS = 1000;
+
+	/**
+	 * Step property which, set to true, declares the step's partitions idempotent: once
+	 * there are no more partitions to start, one reading items at well under the rate of
+	 * its peers is run a second time, from the beginning, on a free thread.  Whichever
+	 * copy completes first counts, and the other is stopped and what it did discarded, so
+	 * the partitions' readers and writers must cope with a range being processed twice.
+	 * Only lightweight partitions without an analyzer are copied, see preparePartitions().
+	 */
+	public static final String SPECULATIVE_PROPERTY = "com.ibm.jbatch.container.partition.speculative";
+
+	// How often the running partitions are checked for stragglers
+	private static final long SPECULATION_CHECK_MILLIS = 100;
+
+	// A partition is a straggler reading at under this fraction of the median rate of those finished
+	private static final double STRAGGLER_RATE = 0.5;
+
+	// Before this, a partition's rate says little, and a copy would hardly have time to pay off
+	private static final long MIN_STRAGGLER_MILLIS = 1000;
+
 	private PartitionPlan plan = null;
 
 	private int partitions = DEFAULT_PARTITION_INSTANCES;
@@ -74,7 +113,24 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 
 	private Properties[] partitionProperties = null;
 
-	private volatile List<BatchPartitionWorkUnit> parallelBatchWorkUnits;
+	private PartitionsBuilderConfig partitionsConfig = null;
+	private boolean restart = false;
+	private boolean workQueue = false;
+	private boolean speculative = false;
+	private int nextPartition = 0;
+	private long lastWorkQueueCheckpoint = 0;
+
+	// Items read per millisecond by each partition that completed in this execution
+	private final List<Double> finishedRates = new ArrayList<Double>();
+	// Partitions a speculative copy has been started for, at most one each
+	private final Set<Integer> speculatedPartitions = new HashSet<Integer>();
+	// Copies that lost to the other copy of their partition, still to finish
+	private final Set<BatchPartitionWorkUnit> discardedCopies = new HashSet<BatchPartitionWorkUnit>();
+	// Speculative copies that won, whose checkpoints go once the step's done with
+	private final List<RuntimePartitionExecution> winningCopies = new ArrayList<RuntimePartitionExecution>();
+
+	// Partitions built and not yet finished, at most one per thread
+	final List<BatchPartitionWorkUnit> runningWork = new ArrayList<BatchPartitionWorkUnit>();
 
 	private PartitionReducerProxy partitionReducerProxy = null;
 
@@ -83,10 +139,13 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 
 	private PartitionAnalyzerProxy analyzerProxy = null;
 
-	final List<JSLJob> subJobs = new ArrayList<JSLJob>();
 	protected List<StepListenerProxy> stepListeners = null;
 
-	List<BatchPartitionWorkUnit> finishedWork = new ArrayList<BatchPartitionWorkUnit>();
+	private boolean failingPartitionSeen = false;
+	private boolean stoppedPartitionSeen = false;
+
+	// How the lightweight partitions of this execution have ended so far
+	private PartitionStatuses recordedPartitions = null;
 	
 	BlockingQueue<BatchPartitionWorkUnit> finishedWorkQueue = null;
 
@@ -101,23 +160,21 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 
 		// It's possible we may try to stop a partitioned step before any
 		// sub steps have been started.
-		synchronized (subJobs) {
-
-			if (parallelBatchWorkUnits != null) {
-				for (BatchWorkUnit subJob : parallelBatchWorkUnits) {
-					long jobExecutionId = -1;
-					try {
-						jobExecutionId = subJob.getJobExecutionImpl().getExecutionId();
-						batchKernel.stopJob(jobExecutionId);
-					} catch (JobExecutionNotRunningException e) {
-						logger.fine("Caught exception trying to stop subjob: " + jobExecutionId + ", which was not running.");
-						// We want to stop all running sub steps. 
-						// We do not want to throw an exception if a sub step has already been completed.
-					} catch (Exception e) {
-						// TODO - Is this what we want to know.  
-						// Blow up if it happens to force the issue.
-						throw new IllegalStateException(e);
-					}
+		synchronized (runningWork) {
+
+			for (BatchWorkUnit subJob : runningWork) {
+				long jobExecutionId = -1;
+				try {
+					jobExecutionId = subJob.getJobExecutionImpl().getExecutionId();
+					batchKernel.stopJob(jobExecutionId);
+				} catch (JobExecutionNotRunningException e) {
+					logger.fine("Caught exception trying to stop subjob: " + jobExecutionId + ", which was not running.");
+					// We want to stop all running sub steps. 
+					// We do not want to throw an exception if a sub step has already been completed.
+				} catch (Exception e) {
+					// TODO - Is this what we want to know.  
+					// Blow up if it happens to force the issue.
+					throw new IllegalStateException(e);
 				}
 			}
 		}
@@ -290,11 +347,20 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 		}
 		this.finishedWorkQueue = new LinkedBlockingQueue<BatchPartitionWorkUnit>();
 
-		// Build all sub jobs from partitioned step
-		buildSubJobBatchWorkUnits();
+		// Set up to build the sub jobs as there are threads for them
+		preparePartitions();
 
 		// kick off the threads
-		executeAndWaitForCompletion();
+		try {
+			executeAndWaitForCompletion();
+		} finally {
+			if (recordedPartitions != null) {
+				stepStatus.setPartitionStatuses(recordedPartitions);
+			}
+			for (RuntimePartitionExecution copy : winningCopies) {
+				deleteCheckpoints(copy);
+			}
+		}
 
 		// Deal with the results.
 		checkFinishedPartitions();
@@ -305,59 +371,117 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 		}
 	}
 
-	private void buildSubJobBatchWorkUnits() throws JobRestartException, JobStartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException  {
-		synchronized (subJobs) {		
-			//check if we've already issued a stop
-			if (jobExecutionImpl.getJobContext().getBatchStatus().equals(BatchStatus.STOPPING)){
-				logger.fine("Step already in STOPPING state, exiting from buildSubJobBatchWorkUnits() before beginning execution");
-				return;
-			}
+	/*
+	 * The ranges of a work queue always run as lightweight partitions, as rows in the job
+	 * repository for each of many small ranges would cost more than the ranges save.  The
+	 * threads claim them in order as they free up (see buildNextPartition()), and which
+	 * have finished is persisted as they go, so a restart runs only those that didn't,
+	 * each from its last checkpoint.  Only finished ranges are persisted, at most once a
+	 * second (see checkpointWorkQueue()), not claimed ones: a restart runs every range that
+	 * didn't finish whether or not it was claimed, and a claimed range's checkpoints are
+	 * already in the job repository under its own step name.
+	 * 
+	 * Speculative copies need lightweight partitions too, as a sub job in the job repository
+	 * can only have one execution running at a time, and no analyzer, which would be sent
+	 * the collector data and status of both copies.
+	 */
+	private void preparePartitions() {
+		partitionsConfig = new PartitionsBuilderConfig(partitionProperties, analyzerStatusQueue, finishedWorkQueue, jobExecutionImpl.getExecutionId());
+
+		Properties stepProperties = stepContext.getProperties();
+		workQueue = stepProperties != null && Boolean.parseBoolean(stepProperties.getProperty(WORK_QUEUE_PROPERTY));
+		lastWorkQueueCheckpoint = System.currentTimeMillis();
+
+		// A restart carries on in the mode the step started in, since that's where its partitions' statuses are
+		restart = stepStatus.getStartCount() > 1 && !plan.getPartitionsOverride();
+		boolean inMemory = restart ? stepStatus.getPartitionStatuses() != null : (workQueue || batchKernel.isInMemoryPartitionMode());
+		if (!inMemory) {
+			stepStatus.setPartitionStatuses(null);
+		} else if (!restart) {
+			stepStatus.setPartitionStatuses(new PartitionStatuses(stepStatus.getStartCount()));
+		}
+		if (inMemory) {
+			partitionsConfig.setPartitionStatuses(stepStatus.getPartitionStatuses(), jobExecutionImpl.getInstanceId());
+			recordedPartitions = stepStatus.getPartitionStatuses().copy();
+		}
 
-			for (int instance = 0; instance < partitions; instance++) {
-				subJobs.add(PartitionedStepBuilder.buildPartitionSubJob(jobExecutionImpl.getJobContext(), stepContext, step, instance));
+		if (stepProperties != null && Boolean.parseBoolean(stepProperties.getProperty(SPECULATIVE_PROPERTY))) {
+			if (inMemory && analyzerProxy == null) {
+				speculative = true;
+			} else {
+				logger.warning("Not running speculative copies of the partitions of step " + step.getId() 
+						+ ", which needs lightweight partitions and no partition analyzer");
 			}
+		}
+	}
 
-			PartitionsBuilderConfig config = new PartitionsBuilderConfig(subJobs, partitionProperties, analyzerStatusQueue, finishedWorkQueue, jobExecutionImpl.getExecutionId());
-			// Then build all the subjobs but do not start them yet
-			if (stepStatus.getStartCount() > 1 && !plan.getPartitionsOverride()) {
-				parallelBatchWorkUnits = batchKernel.buildOnRestartParallelPartitions(config);
-			} else {
-				parallelBatchWorkUnits = batchKernel.buildNewParallelPartitions(config);
+	/*
+	 * Builds the sub job and work unit of the next partition still to run, so that only
+	 * as many exist at a time as there are threads.  Partitions that completed in a
+	 * previous execution are passed over.
+	 * 
+	 * @return null once there are none left to run, or the step is stopping
+	 */
+	private BatchPartitionWorkUnit buildNextPartition() throws JobRestartException, JobStartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException {
+		synchronized (runningWork) {
+			while (nextPartition < partitions) {
+				//check if we've already issued a stop
+				if (jobExecutionImpl.getJobContext().getBatchStatus().equals(BatchStatus.STOPPING)){
+					logger.fine("Step in STOPPING state, not starting any more partitions");
+					return null;
+				}
+
+				int instance = nextPartition++;
+				JSLJob subJob = PartitionedStepBuilder.buildPartitionSubJob(jobExecutionImpl.getJobContext(), stepContext, step, instance);
+				BatchPartitionWorkUnit batchWork = null;
+				if (restart) {
+					batchWork = batchKernel.buildOnRestartParallelPartition(partitionsConfig, subJob, instance);
+				} else {
+					batchWork = batchKernel.buildNewParallelPartition(partitionsConfig, subJob, instance);
+				}
+
+				if (batchWork != null) {
+					runningWork.add(batchWork);
+					return batchWork;
+				}
+				numPreviouslyCompleted++;
 			}
+			return null;
+		}
+	}
 
-			// NOTE:  At this point I might not have as many work units as I had partitions, since some may have already completed.
+	private void submitPartition(BatchPartitionWorkUnit batchWork) throws JobRestartException {
+		if (restart) {
+			batchKernel.restartGeneratedJob(batchWork);
+		} else {
+			batchKernel.startGeneratedJob(batchWork);
 		}
 	}
 
-	private void executeAndWaitForCompletion() throws JobRestartException {
+	private void executeAndWaitForCompletion() throws JobRestartException, JobStartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException {
 		
 		if (jobExecutionImpl.getJobContext().getBatchStatus().equals(BatchStatus.STOPPING)){
 			logger.fine("Step already in STOPPING state, exiting from executeAndWaitForCompletion() before beginning execution");
 			return;
 		}
 		
-		int numTotalForThisExecution = parallelBatchWorkUnits.size();
-		this.numPreviouslyCompleted = partitions - numTotalForThisExecution; 
-		int numCurrentCompleted = 0;
-		int numCurrentSubmitted = 0;
+		int numCurrentRunning = 0;
 
-		logger.fine("Calculated that " + numPreviouslyCompleted + " partitions are already complete out of total # = " 
-				+ partitions + ", with # remaining =" + numTotalForThisExecution);
+		//Start up to to the max num we are allowed from the num threads attribute
+		for (int i=0; i < this.threads; i++) {
+			BatchPartitionWorkUnit batchWork = buildNextPartition();
+			if (batchWork == null) {
+				break;
+			}
+			submitPartition(batchWork);
+			numCurrentRunning++;
+		}
 
-		if (numTotalForThisExecution == 0) {
+		if (numCurrentRunning == 0) {
 			logger.finer("All partitions have already completed on a previous execution.  Returning");
 			return;
 		}
 
-		//Start up to to the max num we are allowed from the num threads attribute
-		for (int i=0; i < this.threads && i < numTotalForThisExecution; i++, numCurrentSubmitted++) {
-			if (stepStatus.getStartCount() > 1 && !plan.getPartitionsOverride()) {
-				batchKernel.restartGeneratedJob(parallelBatchWorkUnits.get(i));
-			} else {
-				batchKernel.startGeneratedJob(parallelBatchWorkUnits.get(i));
-			}
-		}
-
 		boolean readyToSubmitAnother = false;
 		boolean exceptionThrownAnalyzingCollectorData = false;
 		boolean exceptionThrownAnalyzingStatus = false;
@@ -389,17 +513,30 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 							logger.warning("Caught exception calling analyzeStatus(), catching and continuing.  Will even continue starting new partitions if there are more to run.");
 						}
 						logger.fine("Analyze status called for completed partition: batchStatus= " + dataWrapper.getBatchstatus() + ", exitStatus = " + dataWrapper.getExitStatus());
-						finishedWork.add(finishedWorkQueue.take());  // Shouldn't be a a long wait.
+						partitionFinished(finishedWorkQueue.take());  // Shouldn't be a a long wait.
 						readyToSubmitAnother = true;
 					} else {
 						logger.warning("Invalid partition state");
 						throw new IllegalStateException("Invalid partition state");
 					}
+				} else if (speculative) {
+					// Look for stragglers while waiting
+					BatchPartitionWorkUnit finished = finishedWorkQueue.poll(SPECULATION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+					if (finished == null) {
+						BatchPartitionWorkUnit copy = buildSpeculativeCopy();
+						if (copy != null) {
+							submitPartition(copy);
+							numCurrentRunning++;
+						}
+						continue;
+					}
+					partitionFinished(finished);
+					readyToSubmitAnother = true;
 				} else {
 					logger.fine("No analyzer, proceeding on finishedWorkQueue path");
 					// block until at least one thread has finished to
-					// submit more batch work. hold on to the finished work to look at later
-					finishedWork.add(finishedWorkQueue.take());
+					// submit more batch work.
+					partitionFinished(finishedWorkQueue.take());
 					readyToSubmitAnother = true;
 				}
 			} catch (InterruptedException e) {
@@ -408,20 +545,15 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 			}
 
 			if (readyToSubmitAnother) {
-				numCurrentCompleted++;
-				logger.fine("Ready to submit another (if there is another left to submit); numCurrentCompleted = " + numCurrentCompleted);
-				if (numCurrentCompleted < numTotalForThisExecution) {
-					if (numCurrentSubmitted < numTotalForThisExecution) {
-						logger.fine("Submitting # " + numCurrentSubmitted + " out of " + numTotalForThisExecution + " total for this execution");
-						if (stepStatus.getStartCount() > 1) {
-							batchKernel.restartGeneratedJob(parallelBatchWorkUnits.get(numCurrentSubmitted++));
-						} else {
-							batchKernel.startGeneratedJob(parallelBatchWorkUnits.get(numCurrentSubmitted++));
-						}
-						readyToSubmitAnother = false;
-					}
-				} else {
-					logger.fine("Finished... breaking out of loop");
+				numCurrentRunning--;
+				BatchPartitionWorkUnit batchWork = buildNextPartition();
+				if (batchWork != null) {
+					logger.fine("Submitting partition " + batchWork.getJobExecutionImpl().getPartitionInstance() + " out of " + partitions);
+					submitPartition(batchWork);
+					numCurrentRunning++;
+					readyToSubmitAnother = false;
+				} else if (numCurrentRunning == 0) {
+					logger.fine("Finished... breaking out of loop, with " + numPreviouslyCompleted + " partitions already complete out of " + partitions);
 					break;
 				}
 			} else {
@@ -438,34 +570,205 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 		}
 	}        
 
+	/*
+	 * Once every partition's been started, and while there's a thread free, starts a second
+	 * copy of the partition reading slowest, if it's well behind those that finished.
+	 * 
+	 * @return null if there's no straggler to copy
+	 */
+	private BatchPartitionWorkUnit buildSpeculativeCopy() {
+		synchronized (runningWork) {
+			if (nextPartition < partitions || runningWork.size() >= threads || finishedRates.size() < 2
+					|| jobExecutionImpl.getJobContext().getBatchStatus().equals(BatchStatus.STOPPING)) {
+				return null;
+			}
+
+			long now = System.currentTimeMillis();
+			RuntimePartitionExecution straggler = null;
+			double stragglerRate = Double.MAX_VALUE;
+			for (BatchPartitionWorkUnit running : runningWork) {
+				RuntimePartitionExecution partition = (RuntimePartitionExecution) running.getJobExecutionImpl();
+				if (speculatedPartitions.contains(partition.getPartitionInstance()) || runningMillis(partition, now) < MIN_STRAGGLER_MILLIS) {
+					continue;
+				}
+				double rate = itemsPerMilli(partition, now);
+				if (rate >= 0 && rate < stragglerRate) {
+					straggler = partition;
+					stragglerRate = rate;
+				}
+			}
+
+			List<Double> rates = new ArrayList<Double>(finishedRates);
+			Collections.sort(rates);
+			double medianRate = rates.get(rates.size() / 2);
+			if (straggler == null || stragglerRate >= medianRate * STRAGGLER_RATE) {
+				return null;
+			}
+
+			int instance = straggler.getPartitionInstance();
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Partition " + instance + " of step " + step.getId() + " is reading " + stragglerRate * 1000 
+						+ " items/s against a median of " + medianRate * 1000 + ", starting a speculative copy");
+			}
+			JSLJob subJob = PartitionedStepBuilder.buildPartitionSubJob(jobExecutionImpl.getJobContext(), stepContext, step, instance);
+			BatchPartitionWorkUnit copy = batchKernel.buildSpeculativeParallelPartition(partitionsConfig, subJob, instance);
+			speculatedPartitions.add(instance);
+			runningWork.add(copy);
+			return copy;
+		}
+	}
+
+	/*
+	 * @return -1 until the partition's step has started, or if it's not a chunk step
+	 */
+	private static double itemsPerMilli(RuntimePartitionExecution partition, long now) {
+		long millis = runningMillis(partition, now);
+		MetricImpl readCount = partition.getStepContext() == null ? null : partition.getStepContext().getMetric(MetricImpl.MetricType.READ_COUNT);
+		if (millis < 0 || readCount == null) {
+			return -1;
+		}
+		return (double) readCount.getValue() / Math.max(1, millis);
+	}
+
+	private static long runningMillis(RuntimePartitionExecution partition, long now) {
+		StepContextImpl partitionStepContext = partition.getStepContext();
+		if (partitionStepContext == null || partitionStepContext.getStartTimeTS() == null) {
+			return -1;
+		}
+		return now - partitionStepContext.getStartTimeTS().getTime();
+	}
+
+	/*
+	 * Settles which of the copies of a partition run speculatively counts: the first to
+	 * complete, or else whichever ends last.  A copy that completes while the other's still
+	 * running stops it, so that it's discarded as it ends.
+	 * 
+	 * @return false if the copy just finished is to be discarded
+	 */
+	private boolean isSpeculationWinner(BatchPartitionWorkUnit subJob, BatchStatus batchStatus) {
+		int instance = subJob.getJobExecutionImpl().getPartitionInstance();
+		if (discardedCopies.remove(subJob)) {
+			logger.fine("Discarding the copy of partition " + instance + " that lost");
+			return false;
+		}
+
+		BatchPartitionWorkUnit otherCopy = null;
+		synchronized (runningWork) {
+			for (BatchPartitionWorkUnit running : runningWork) {
+				if (running.getJobExecutionImpl().getPartitionInstance() == instance) {
+					otherCopy = running;
+				}
+			}
+		}
+		if (otherCopy == null) {
+			return true;
+		}
+		if (!batchStatus.equals(BatchStatus.COMPLETED)) {
+			logger.fine("Discarding a copy of partition " + instance + " that ended " + batchStatus + ", as the other's still running");
+			return false;
+		}
+
+		discardedCopies.add(otherCopy);
+		long loserExecutionId = otherCopy.getJobExecutionImpl().getExecutionId();
+		try {
+			batchKernel.stopJob(loserExecutionId);
+		} catch (JobExecutionNotRunningException e) {
+			logger.fine("Copy " + loserExecutionId + " of partition " + instance + " had already finished, so wasn't stopped.");
+		}
+		return true;
+	}
+
+	/*
+	 * Takes what's needed from a partition as it finishes, so its work unit can go.
+	 */
+	private void partitionFinished(BatchPartitionWorkUnit subJob) {
+		synchronized (runningWork) {
+			runningWork.remove(subJob);
+		}
+
+		BatchStatus batchStatus = subJob.getJobExecutionImpl().getJobContext().getBatchStatus();
+		logger.fine("Subjob " + subJob.getJobExecutionImpl().getExecutionId() + " ended with status '" + batchStatus);
+		if (speculative) {
+			boolean winner = isSpeculationWinner(subJob, batchStatus);
+			RuntimePartitionExecution partition = (RuntimePartitionExecution) subJob.getJobExecutionImpl();
+			if (partition.isSpeculativeCopy()) {
+				if (winner) {
+					winningCopies.add(partition);
+				} else {
+					deleteCheckpoints(partition);
+				}
+			}
+			if (!winner) {
+				return;
+			}
+		}
+		if (batchStatus.equals(BatchStatus.FAILED)) {
+			failingPartitionSeen = true;
+			stepContext.setBatchStatus(BatchStatus.FAILED);
+		} 
+		// This code seems to suggest it might be valid for a partition to end up in STOPPED state without 
+		// the "top-level" step having been aware of this.   It's unclear from the spec if this is even possible
+		// or a desirable spec interpretation.  Nevertheless, we'll code it as such noting the ambiguity.
+		// 
+		// However, in the RI at least, we won't bother updating the step level BatchStatus, since to date we 
+		// would only transition the status in such a way independently.
+		if (batchStatus.equals(BatchStatus.STOPPED)) {
+			stoppedPartitionSeen = true;
+		}
+
+		// Lightweight partitions have nothing in the job repository of their own, so how each one
+		// ended goes in this step's status, to be persisted along with it.
+		if (recordedPartitions != null) {
+			RuntimePartitionExecution partition = (RuntimePartitionExecution) subJob.getJobExecutionImpl();
+			if (partition.getStepStatus() != null) {
+				recordedPartitions.record(partition.getPartitionInstance(), partition.getStepStatus(), partition.getStepContext().getMetrics());
+			}
+			if (speculative && batchStatus.equals(BatchStatus.COMPLETED)) {
+				double rate = itemsPerMilli(partition, System.currentTimeMillis());
+				if (rate >= 0) {
+					finishedRates.add(rate);
+				}
+			}
+			if (workQueue) {
+				checkpointWorkQueue();
+			}
+		}
+	}
+
+	/*
+	 * A speculative copy's checkpoints are under a step name of its own (see
+	 * RuntimePartitionExecution.getCheckpointStepName()), which nothing reads once it's
+	 * ended: if it lost it's discarded, and if it won the partition's recorded as complete.
+	 */
+	private void deleteCheckpoints(RuntimePartitionExecution copy) {
+		_persistenceManagementService.deleteCheckpointData(copy.getParentInstanceId(), copy.getCheckpointStepName(step.getId()));
+	}
+
+	/*
+	 * Persists the ranges finished so far, rather than only at the end of the step, but no
+	 * more often than WORK_QUEUE_CHECKPOINT_MILLIS, since it's the whole step status each time.
+	 * The completed ranges in it are runs of consecutive ones (see PartitionStatuses), so it
+	 * stays small however many ranges there are.
+	 */
+	private void checkpointWorkQueue() {
+		long now = System.currentTimeMillis();
+		if (now - lastWorkQueueCheckpoint < WORK_QUEUE_CHECKPOINT_MILLIS) {
+			return;
+		}
+		stepStatus.setPartitionStatuses(recordedPartitions.copy());
+		persistStepStatus();
+		lastWorkQueueCheckpoint = now;
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Persisted the work queue of step " + step.getId() + " with " + nextPartition + " of " + partitions + " ranges claimed");
+		}
+	}
+
 	private void checkFinishedPartitions() {
 
 		/**
 		 * check the batch status of each subJob after it's done to see if we need to issue a rollback
 		 * start rollback if any have stopped or failed
 		 */
-		boolean failingPartitionSeen = false;
-		boolean stoppedPartitionSeen = false;
-		
-		for (final BatchWorkUnit subJob : finishedWork) {
-			BatchStatus batchStatus = subJob.getJobExecutionImpl().getJobContext().getBatchStatus();
-			logger.fine("Subjob " + subJob.getJobExecutionImpl().getExecutionId() + " ended with status '" + batchStatus);
-			// Keep looping, just to see the log messages perhaps.
-			if (batchStatus.equals(BatchStatus.FAILED)) {
-				failingPartitionSeen = true;
-				stepContext.setBatchStatus(BatchStatus.FAILED);
-			} 
-			// This code seems to suggest it might be valid for a partition to end up in STOPPED state without 
-			// the "top-level" step having been aware of this.   It's unclear from the spec if this is even possible
-			// or a desirable spec interpretation.  Nevertheless, we'll code it as such noting the ambiguity.
-			// 
-			// However, in the RI at least, we won't bother updating the step level BatchStatus, since to date we 
-			// would only transition the status in such a way independently.
-			if (batchStatus.equals(BatchStatus.STOPPED)) {
-				stoppedPartitionSeen = true;
-			}
-		}
-
 		if (failingPartitionSeen) {
 			rollbackPartitionedStepAndThrowExc("One or more partitions failed");
 		} else if (stoppedPartitionSeen) {
@@ -577,7 +880,21 @@ public class PartitionedStepControllerImpl extends BaseStepControllerImpl {
 	
 	@Override
 	protected void persistStepExecution() {
-		// Call special aggregating method
-		_persistenceManagementService.updateWithFinalPartitionAggregateStepExecution(rootJobExecutionId, stepContext);
+		PartitionStatuses partitionStatuses = stepStatus.getPartitionStatuses();
+		if (partitionStatuses == null) {
+			// Call special aggregating method
+			_persistenceManagementService.updateWithFinalPartitionAggregateStepExecution(rootJobExecutionId, stepContext);
+			return;
+		}
+		// Lightweight partitions, whose metrics are already added up
+		for (MetricImpl.MetricType type : MetricImpl.MetricType.values()) {
+			MetricImpl metric = stepContext.getMetric(type);
+			if (metric == null) {
+				stepContext.addMetric(type, partitionStatuses.getMetric(type));
+			} else {
+				metric.incValueBy(partitionStatuses.getMetric(type) - metric.getValue());
+			}
+		}
+		_persistenceManagementService.updateStepExecution(stepContext);
 	}
 }
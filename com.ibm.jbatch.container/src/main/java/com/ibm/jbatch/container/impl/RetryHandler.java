@@ -17,7 +17,6 @@
 package com.ibm.jbatch.container.impl;
 
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -69,6 +68,8 @@ public class RetryHandler {
 	private Set<String> _retryNoRBExcludeExceptions = null;
 	private Set<String> _retryIncludeExceptions = null;
 	private Set<String> _retryExcludeExceptions = null;
+	private ExceptionClassMatcher _retryableExceptions = null;
+	private ExceptionClassMatcher _noRollbackExceptions = null;
 	private int _retryLimit = Integer.MIN_VALUE;
 	private long _retryCount = 0;
 	private Exception _retryException = null;
@@ -205,6 +206,9 @@ public class RetryHandler {
             logger.logp(Level.FINE, className, mName, "added include no rollback exception " + includeExNoRB
                     + "; added exclude no rollback exception " + excludeExNoRB);
         }
+
+        _retryableExceptions = new ExceptionClassMatcher(_retryIncludeExceptions, _retryExcludeExceptions);
+        _noRollbackExceptions = new ExceptionClassMatcher(_retryNoRBIncludeExceptions, _retryNoRBExcludeExceptions);
 	        
 	    if(logger.isLoggable(Level.FINER)) {
 	      logger.exiting(className, mName, this.toString());
@@ -324,13 +328,13 @@ public class RetryHandler {
 	   * Check the retryable exception lists to determine whether
 	   * the given Exception is retryable.
 	   */
-	  private boolean isRetryable(Exception e)
+	  public boolean isRetryable(Exception e)
 	  {
 	    final String mName = "isRetryable";
 
 	    String exClassName = e.getClass().getName();
 	    
-	    boolean retVal = containsException(_retryIncludeExceptions, e) && !containsException(_retryExcludeExceptions, e);
+	    boolean retVal = _retryableExceptions.matches(e);
 	    
 	    if(logger.isLoggable(Level.FINE)) 
 	      logger.logp(Level.FINE, className, mName, mName + ": " + retVal + ": " + exClassName);
@@ -344,7 +348,7 @@ public class RetryHandler {
 
 		  String exClassName = e.getClass().getName();
 		  
-		  boolean retVal = containsException(_retryNoRBIncludeExceptions, e) && !containsException(_retryNoRBExcludeExceptions, e);
+		  boolean retVal = _noRollbackExceptions.matches(e);
 			  
 		  if(logger.isLoggable(Level.FINE)) 
 		    logger.logp(Level.FINE, className, mName, mName + ": " + retVal + ": " + exClassName);
@@ -352,31 +356,6 @@ public class RetryHandler {
 		  return retVal;
 	  }
 	  
-	  /**
-	   * Check whether given exception is in the specified exception list 
-	   */
-	  private boolean containsException(Set<String> retryList, Exception e)
-	  {
-	    final String mName = "containsException";
-	    boolean retVal = false;
-
-	    for ( Iterator it = retryList.iterator(); it.hasNext(); ) {
-	        String exClassName = (String) it.next();
-	       
-	        try {
-	        	if (retVal = Thread.currentThread().getContextClassLoader().loadClass(exClassName).isInstance(e))
-	        		break;
-	        } catch (ClassNotFoundException cnf) {
-	        	logger.logp(Level.FINE, className, mName, cnf.getLocalizedMessage());
-	        }
-	    }
-
-	    if(logger.isLoggable(Level.FINE)) 
-	      logger.logp(Level.FINE, className, mName, mName + ": " + retVal );
-
-	    return retVal;
-	  }
-
 	  /**
 	   * Check if the retry limit has been reached.
 	   *
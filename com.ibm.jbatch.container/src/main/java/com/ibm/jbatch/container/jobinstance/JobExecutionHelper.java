@@ -16,7 +16,9 @@
  */
 package com.ibm.jbatch.container.jobinstance;
 
+import java.sql.Timestamp;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +43,7 @@ import com.ibm.jbatch.container.services.IPersistenceManagerService;
 import com.ibm.jbatch.container.servicesmanager.ServicesManager;
 import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
 import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.PartitionStatuses;
 import com.ibm.jbatch.jsl.model.JSLJob;
 import com.ibm.jbatch.jsl.model.JSLProperties;
 
@@ -58,6 +61,9 @@ public class JobExecutionHelper {
 			servicesManager.getPersistenceManagerService();
 	private static IBatchKernelService _batchKernelService = servicesManager.getBatchKernelService();
 
+	// Ids for partitions run in memory, counting down from -1
+	private static final AtomicLong lastInMemoryId = new AtomicLong();
+
 
 	private static ModelNavigator<JSLJob> getResolvedJobNavigator(String jobXml, Properties jobParameters, boolean parallelExecution) {
 
@@ -171,6 +177,35 @@ public class JobExecutionHelper {
 		logger.exiting(CLASSNAME, "startPartition", executionHelper);
 		return executionHelper;
 	}
+
+	/**
+	 * As startPartition, or restartPartition when the partition has run before, but
+	 * with nothing written to the job repository.
+	 */
+	public static RuntimePartitionExecution startPartitionInMemory(JSLJob jobModel, Properties jobParameters, long parentInstanceId, 
+			PartitionStatuses partitionStatuses, int partitionInstance) {
+		logger.entering(CLASSNAME, "startPartitionInMemory", new Object[]{jobModel, partitionInstance});
+
+		ModelNavigator<JSLJob> jobNavigator = getResolvedJobNavigator(jobModel, jobParameters, true);
+		JobContextImpl jobContext = getJobContext(jobNavigator);
+
+		long id = lastInMemoryId.decrementAndGet();
+		JobInstanceImpl jobInstance = new JobInstanceImpl(id);
+		jobInstance.setJobName(jobNavigator.getRootModelElement().getId());
+
+		RuntimePartitionExecution executionHelper = 
+				new RuntimePartitionExecution(jobInstance, id, parentInstanceId, partitionStatuses, partitionInstance);
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		executionHelper.setBatchStatus(jobContext.getBatchStatus().name());
+		executionHelper.setCreateTime(now);
+		executionHelper.setLastUpdateTime(now);
+		executionHelper.setJobParameters(jobParameters);
+
+		executionHelper.prepareForExecution(jobContext);
+
+		logger.exiting(CLASSNAME, "startPartitionInMemory", executionHelper);
+		return executionHelper;
+	}
 	
 	public static RuntimeJobExecution restartJob(long executionId, JSLJob gennedJobModel) throws JobRestartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException, NoSuchJobExecutionException {
 		return restartExecution(executionId, null, null, false, false);
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.jobinstance;
+
+import javax.batch.runtime.JobInstance;
+
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.impl.PartitionedStepBuilder;
+import com.ibm.jbatch.container.status.PartitionStatuses;
+import com.ibm.jbatch.container.status.StepStatus;
+
+/**
+ * A partition run in memory (PARTITION_MODE=lightweight): its job instance, execution
+ * and job status exist only here, under negative ids that can't clash with those
+ * from the job repository.  The partition's step keeps its step status and step
+ * context here rather than persisting them, for the partitioned step on the main
+ * thread to record in its PartitionStatuses, and its checkpoints go under the
+ * partitioned step's job instance.
+ */
+public class RuntimePartitionExecution extends RuntimeJobExecution {
+
+	private final long parentInstanceId;
+	private final PartitionStatuses partitionStatuses;
+
+	// For a speculative copy, the execution of the partitioned step that started it
+	private long speculativeCopyOf = 0;
+
+	private volatile StepStatus stepStatus;
+	private volatile StepContextImpl stepContext;
+
+	public RuntimePartitionExecution(JobInstance jobInstance, long executionId, long parentInstanceId,
+			PartitionStatuses partitionStatuses, int partitionInstance) {
+		super(jobInstance, executionId);
+		this.parentInstanceId = parentInstanceId;
+		this.partitionStatuses = partitionStatuses;
+		setPartitionInstance(partitionInstance);
+	}
+
+	/**
+	 * @return the job instance of the partitioned step, which the checkpoints are kept under
+	 */
+	public long getParentInstanceId() {
+		return parentInstanceId;
+	}
+
+	/**
+	 * Makes this a second copy of a partition that's already running, which starts the
+	 * partition over from the beginning and keeps checkpoints of its own, so neither copy
+	 * sees the other's.
+	 * 
+	 * @param rootJobExecutionId the execution of the partitioned step starting the copy
+	 */
+	public void setSpeculativeCopyOf(long rootJobExecutionId) {
+		this.speculativeCopyOf = rootJobExecutionId;
+	}
+
+	public boolean isSpeculativeCopy() {
+		return speculativeCopyOf != 0;
+	}
+
+	public String getCheckpointStepName(String stepId) {
+		String name = partitionStatuses.getCheckpointStepName(stepId, getPartitionInstance());
+		if (isSpeculativeCopy()) {
+			name = name + PartitionedStepBuilder.JOB_ID_SEPARATOR + "copy" + speculativeCopyOf;
+		}
+		return name;
+	}
+
+	/**
+	 * @return the step status the partition ended with last time, or null if it hasn't run
+	 * before or this is a speculative copy
+	 */
+	public StepStatus getPreviousStepStatus() {
+		if (isSpeculativeCopy()) {
+			return null;
+		}
+		return partitionStatuses.getStepStatus(getPartitionInstance());
+	}
+
+	/**
+	 * Called by the partition's step as it starts.
+	 */
+	public void setStep(StepStatus stepStatus, StepContextImpl stepContext) {
+		this.stepStatus = stepStatus;
+		this.stepContext = stepContext;
+	}
+
+	/**
+	 * @return the partition step's status, or null if the step never started
+	 */
+	public StepStatus getStepStatus() {
+		return stepStatus;
+	}
+
+	public StepContextImpl getStepContext() {
+		return stepContext;
+	}
+}
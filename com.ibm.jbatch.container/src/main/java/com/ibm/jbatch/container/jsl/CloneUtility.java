@@ -20,21 +20,32 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
 
+import com.ibm.jbatch.jsl.model.Analyzer;
 import com.ibm.jbatch.jsl.model.Batchlet;
 import com.ibm.jbatch.jsl.model.CheckpointAlgorithm;
 import com.ibm.jbatch.jsl.model.Chunk;
+import com.ibm.jbatch.jsl.model.Collector;
+import com.ibm.jbatch.jsl.model.Decision;
 import com.ibm.jbatch.jsl.model.End;
 import com.ibm.jbatch.jsl.model.ExceptionClassFilter;
 import com.ibm.jbatch.jsl.model.Fail;
+import com.ibm.jbatch.jsl.model.Flow;
 import com.ibm.jbatch.jsl.model.ItemProcessor;
 import com.ibm.jbatch.jsl.model.ItemReader;
 import com.ibm.jbatch.jsl.model.ItemWriter;
+import com.ibm.jbatch.jsl.model.JSLJob;
 import com.ibm.jbatch.jsl.model.JSLProperties;
 import com.ibm.jbatch.jsl.model.Listener;
 import com.ibm.jbatch.jsl.model.Listeners;
 import com.ibm.jbatch.jsl.model.Next;
 import com.ibm.jbatch.jsl.model.ObjectFactory;
+import com.ibm.jbatch.jsl.model.Partition;
+import com.ibm.jbatch.jsl.model.PartitionMapper;
+import com.ibm.jbatch.jsl.model.PartitionPlan;
+import com.ibm.jbatch.jsl.model.PartitionReducer;
 import com.ibm.jbatch.jsl.model.Property;
+import com.ibm.jbatch.jsl.model.Split;
+import com.ibm.jbatch.jsl.model.Step;
 import com.ibm.jbatch.jsl.model.Stop;
 
 
@@ -246,6 +257,136 @@ public class CloneUtility {
     }
 
 
+    /**
+     * A deep copy of the whole job, for a caller that will go on to change it
+     * (e.g. resolving its properties) without affecting the original.
+     */
+    public static JSLJob cloneJob(JSLJob job) {
+        JSLJob newJob = jslFactory.createJSLJob();
+
+        newJob.setId(job.getId());
+        newJob.setVersion(job.getVersion());
+        newJob.setRestartable(job.getRestartable());
+        newJob.setProperties(cloneJSLProperties(job.getProperties()));
+        newJob.setListeners(cloneListeners(job.getListeners()));
+        cloneExecutionElements(job.getExecutionElements(), newJob.getExecutionElements());
+
+        return newJob;
+    }
+
+    private static void cloneExecutionElements(List<ExecutionElement> executionElements, List<ExecutionElement> newExecutionElements) {
+        for (ExecutionElement executionElement : executionElements) {
+            if (executionElement instanceof Step) {
+                newExecutionElements.add(cloneStep((Step) executionElement));
+            } else if (executionElement instanceof Flow) {
+                newExecutionElements.add(cloneFlow((Flow) executionElement));
+            } else if (executionElement instanceof Split) {
+                newExecutionElements.add(cloneSplit((Split) executionElement));
+            } else if (executionElement instanceof Decision) {
+                newExecutionElements.add(cloneDecision((Decision) executionElement));
+            }
+        }
+    }
+
+    private static Step cloneStep(Step step) {
+        Step newStep = jslFactory.createStep();
+
+        newStep.setId(step.getId());
+        newStep.setStartLimit(step.getStartLimit());
+        newStep.setAllowStartIfComplete(step.getAllowStartIfComplete());
+        newStep.setNextFromAttribute(step.getNextFromAttribute());
+        newStep.setProperties(cloneJSLProperties(step.getProperties()));
+        newStep.setListeners(cloneListeners(step.getListeners()));
+        if (step.getBatchlet() != null) {
+            newStep.setBatchlet(cloneBatchlet(step.getBatchlet()));
+        }
+        if (step.getChunk() != null) {
+            newStep.setChunk(cloneChunk(step.getChunk()));
+        }
+        newStep.setPartition(clonePartition(step.getPartition()));
+        cloneControlElements(step.getTransitionElements(), newStep.getTransitionElements());
+
+        return newStep;
+    }
+
+    private static Flow cloneFlow(Flow flow) {
+        Flow newFlow = jslFactory.createFlow();
+
+        newFlow.setId(flow.getId());
+        newFlow.setNextFromAttribute(flow.getNextFromAttribute());
+        cloneExecutionElements(flow.getExecutionElements(), newFlow.getExecutionElements());
+        cloneControlElements(flow.getTransitionElements(), newFlow.getTransitionElements());
+
+        return newFlow;
+    }
+
+    private static Split cloneSplit(Split split) {
+        Split newSplit = jslFactory.createSplit();
+
+        newSplit.setId(split.getId());
+        newSplit.setNextFromAttribute(split.getNextFromAttribute());
+        for (Flow flow : split.getFlows()) {
+            newSplit.getFlows().add(cloneFlow(flow));
+        }
+
+        return newSplit;
+    }
+
+    private static Decision cloneDecision(Decision decision) {
+        Decision newDecision = jslFactory.createDecision();
+
+        newDecision.setId(decision.getId());
+        newDecision.setRef(decision.getRef());
+        newDecision.setProperties(cloneJSLProperties(decision.getProperties()));
+        cloneControlElements(decision.getTransitionElements(), newDecision.getTransitionElements());
+
+        return newDecision;
+    }
+
+    private static Partition clonePartition(Partition partition) {
+        if (partition == null) {
+            return null;
+        }
+
+        Partition newPartition = jslFactory.createPartition();
+
+        if (partition.getMapper() != null) {
+            PartitionMapper newMapper = jslFactory.createPartitionMapper();
+            newMapper.setRef(partition.getMapper().getRef());
+            newMapper.setProperties(cloneJSLProperties(partition.getMapper().getProperties()));
+            newPartition.setMapper(newMapper);
+        }
+        if (partition.getPlan() != null) {
+            PartitionPlan newPlan = jslFactory.createPartitionPlan();
+            newPlan.setPartitions(partition.getPlan().getPartitions());
+            newPlan.setThreads(partition.getPlan().getThreads());
+            for (JSLProperties planProperties : partition.getPlan().getProperties()) {
+                newPlan.getProperties().add(cloneJSLProperties(planProperties));
+            }
+            newPartition.setPlan(newPlan);
+        }
+        if (partition.getCollector() != null) {
+            Collector newCollector = jslFactory.createCollector();
+            newCollector.setRef(partition.getCollector().getRef());
+            newCollector.setProperties(cloneJSLProperties(partition.getCollector().getProperties()));
+            newPartition.setCollector(newCollector);
+        }
+        if (partition.getAnalyzer() != null) {
+            Analyzer newAnalyzer = jslFactory.createAnalyzer();
+            newAnalyzer.setRef(partition.getAnalyzer().getRef());
+            newAnalyzer.setProperties(cloneJSLProperties(partition.getAnalyzer().getProperties()));
+            newPartition.setAnalyzer(newAnalyzer);
+        }
+        if (partition.getReducer() != null) {
+            PartitionReducer newReducer = jslFactory.createPartitionReducer();
+            newReducer.setRef(partition.getReducer().getRef());
+            newReducer.setProperties(cloneJSLProperties(partition.getReducer().getProperties()));
+            newPartition.setReducer(newReducer);
+        }
+
+        return newPartition;
+    }
+
     /**
      * Creates a java.util.Properties map from a com.ibm.jbatch.jsl.model.Properties
      * object.
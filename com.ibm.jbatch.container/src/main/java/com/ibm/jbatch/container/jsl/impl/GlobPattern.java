@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.jbatch.container.jsl.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An exit status pattern, '*' matching any run of characters and '?' any one, with
+ * no escaping, compiled once so that matching doesn't take it apart every time.
+ *
+ * Patterns that are a literal, a literal and a trailing '*' or a leading '*' and
+ * a literal, which is nearly all of them, match with a single String comparison.
+ * Anything else is split at the '*'s into segments: the first has to match at
+ * the start, the last at the end and those in between in order, each as early
+ * as it can, which is all a '*' can ever need and never has to back up.
+ */
+public final class GlobPattern {
+
+	private enum Kind { LITERAL, PREFIX, SUFFIX, SEGMENTS }
+
+	private final String pattern;
+	private final Kind kind;
+
+	// The literal part, for the fast paths
+	private final String literal;
+
+	// For SEGMENTS, the parts between the '*'s, with the first and last empty if the pattern starts or ends with one
+	private final String[] segments;
+
+	private GlobPattern(String pattern, Kind kind, String literal, String[] segments) {
+		this.pattern = pattern;
+		this.kind = kind;
+		this.literal = literal;
+		this.segments = segments;
+	}
+
+	/**
+	 * A null or empty pattern compiles, but can't be matched against, as for
+	 * GlobPatternMatcherImpl.
+	 */
+	public static GlobPattern compile(String pattern) {
+		if (pattern == null || pattern.length() == 0) {
+			return new GlobPattern(pattern, Kind.LITERAL, pattern, null);
+		}
+
+		// Normalize away consecutive '*' chars
+		String normalized = pattern;
+		while (normalized.indexOf("**") >= 0) {
+			normalized = normalized.replace("**", "*");
+		}
+
+		int firstAsterisk = normalized.indexOf('*');
+		int lastAsterisk = normalized.lastIndexOf('*');
+		if (normalized.indexOf('?') < 0) {
+			if (firstAsterisk < 0) {
+				return new GlobPattern(pattern, Kind.LITERAL, normalized, null);
+			} else if (firstAsterisk == lastAsterisk && firstAsterisk == normalized.length() - 1) {
+				return new GlobPattern(pattern, Kind.PREFIX, normalized.substring(0, firstAsterisk), null);
+			} else if (firstAsterisk == lastAsterisk && firstAsterisk == 0) {
+				return new GlobPattern(pattern, Kind.SUFFIX, normalized.substring(1), null);
+			}
+		}
+
+		List<String> segments = new ArrayList<String>();
+		int start = 0;
+		for (int asterisk = firstAsterisk; asterisk >= 0; asterisk = normalized.indexOf('*', start)) {
+			segments.add(normalized.substring(start, asterisk));
+			start = asterisk + 1;
+		}
+		segments.add(normalized.substring(start));
+		return new GlobPattern(pattern, Kind.SEGMENTS, null, segments.toArray(new String[segments.size()]));
+	}
+
+	public boolean matches(String toMatch) {
+		if ((pattern == null) || (pattern.length() == 0) ||
+				(toMatch == null) || (toMatch.length() == 0)) {
+			throw new IllegalArgumentException("Pattern = " + pattern +
+					"and string to match = " + toMatch +
+			", but both pattern and to-match String are required to be non-null Strings with length >=1 ");
+		}
+
+		switch (kind) {
+		case LITERAL:
+			return toMatch.equals(literal);
+		case PREFIX:
+			return toMatch.startsWith(literal);
+		case SUFFIX:
+			return toMatch.endsWith(literal);
+		default:
+			return matchSegments(toMatch);
+		}
+	}
+
+	private boolean matchSegments(String toMatch) {
+		if (segments.length == 1) {
+			// No '*', only '?'
+			return toMatch.length() == segments[0].length() && matchesAt(toMatch, 0, segments[0]);
+		}
+
+		String first = segments[0];
+		String last = segments[segments.length - 1];
+		int end = toMatch.length() - last.length();
+		if (end < first.length() || !matchesAt(toMatch, 0, first) || !matchesAt(toMatch, end, last)) {
+			return false;
+		}
+
+		int from = first.length();
+		for (int i = 1; i < segments.length - 1; i++) {
+			String segment = segments[i];
+			int found = -1;
+			for (int at = from; at + segment.length() <= end; at++) {
+				if (matchesAt(toMatch, at, segment)) {
+					found = at;
+					break;
+				}
+			}
+			if (found < 0) {
+				return false;
+			}
+			from = found + segment.length();
+		}
+		return true;
+	}
+
+	/*
+	 * @return whether the segment, which has no '*', matches toMatch at the offset
+	 */
+	private static boolean matchesAt(String toMatch, int offset, String segment) {
+		for (int i = 0; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+			if (c != '?' && c != toMatch.charAt(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
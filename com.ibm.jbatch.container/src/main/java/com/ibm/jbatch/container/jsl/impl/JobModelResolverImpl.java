@@ -22,48 +22,62 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.transform.stream.StreamSource;
 
 
+import com.ibm.jbatch.container.jsl.CloneUtility;
 import com.ibm.jbatch.container.jsl.ModelResolver;
 import com.ibm.jbatch.jsl.model.JSLJob;
 import com.ibm.jbatch.jsl.model.Step;
-import com.ibm.jbatch.jsl.util.ValidatorHelper;
+import com.ibm.jbatch.jsl.util.JSLContextHelper;
 import com.ibm.jbatch.jsl.util.JSLValidationEventHandler;
 
 public class JobModelResolverImpl implements ModelResolver<JSLJob> {
-    
+
+    // How many distinct job XMLs have their validated models kept
+    private static final int MAX_CACHED_MODELS = 100;
+
+    /*
+     * Validated models by the job XML they came from, least recently used first.
+     * These are never handed out, only copies of them, since whoever resolves
+     * a model goes on to change it.  Guarded by itself.
+     */
+    private static final Map<String, JSLJob> modelCache = new LinkedHashMap<String, JSLJob>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JSLJob> eldest) {
+            return size() > MAX_CACHED_MODELS;
+        }
+    };
+
+    // Whether to parse with the StaxJobParser rather than JAXB, per JSL_PARSER
+    private static volatile boolean streamingParser = false;
+
     public JobModelResolverImpl() {
         super();
     }    
+
+    public static void setStreamingParser(boolean streamingParser) {
+        JobModelResolverImpl.streamingParser = streamingParser;
+    }
     
     private JSLJob unmarshalJobXML(String jobXML) {
         Object result = null;
         JSLJob job = null;
         JSLValidationEventHandler handler = new JSLValidationEventHandler();
         try {
-            JAXBContext ctx = JAXBContext.newInstance("com.ibm.jbatch.jsl.model");
-            Unmarshaller u = ctx.createUnmarshaller();
-            u.setSchema(ValidatorHelper.getXJCLSchema());
-
-            u.setEventHandler(handler);
-
-            // Use this for anonymous type
-            //job = (Job)u.unmarshal(new StreamSource(new StringReader(jobXML)));
-
             // Use this for named complex type
-            result = u.unmarshal(new StreamSource(new StringReader(jobXML)));
+            result = JSLContextHelper.unmarshal(jobXML, handler);
 
         } catch (JAXBException e) {
             throw new IllegalArgumentException("Exception unmarshalling jobXML", e);
@@ -116,15 +130,33 @@ public class JobModelResolverImpl implements ModelResolver<JSLJob> {
     }
 
        
+    /**
+     * Parsing and validating the same job XML gives the same model every time, so
+     * it's only done once; each caller gets a copy of its own to change.
+     */
     @Override
     public JSLJob resolveModel(String jobXML) {        
     	
+    	JSLJob cachedJob;
+    	synchronized (modelCache) {
+    		cachedJob = modelCache.get(jobXML);
+    	}
+    	if (cachedJob == null) {
+    		cachedJob = unmarshalJobXMLPrivileged(jobXML);
+    		synchronized (modelCache) {
+    			modelCache.put(jobXML, cachedJob);
+    		}
+    	}
+    	return CloneUtility.cloneJob(cachedJob);
+    }
+
+    private JSLJob unmarshalJobXMLPrivileged(String jobXML) {
     	final String finalJobXML = jobXML;
     	JSLJob jslJob = AccessController.doPrivileged(
     	
 		          new PrivilegedAction<JSLJob>() {
 		              public JSLJob run() {
-		            	  return  unmarshalJobXML(finalJobXML);
+		            	  return streamingParser ? new StaxJobParser().parse(finalJobXML) : unmarshalJobXML(finalJobXML);
 		              }
 		          });
         
@@ -24,6 +24,7 @@ import javax.xml.namespace.QName;
 
 import com.ibm.jbatch.container.jsl.ModelSerializer;
 import com.ibm.jbatch.jsl.model.JSLJob;
+import com.ibm.jbatch.jsl.util.JSLContextHelper;
 import com.ibm.jbatch.jsl.util.ValidatorHelper;
 import com.ibm.jbatch.jsl.util.JSLValidationEventHandler;
 
@@ -51,7 +52,7 @@ public class JobModelSerializerImpl implements ModelSerializer<JSLJob> {
     	String resultXML = null;
     	JSLValidationEventHandler handler = new JSLValidationEventHandler();
     	try {
-    		JAXBContext ctx = JAXBContext.newInstance("com.ibm.jbatch.jsl.model");
+    		JAXBContext ctx = JSLContextHelper.getJSLContext();
     		Marshaller m = ctx.createMarshaller();
     		m.setSchema(ValidatorHelper.getXJCLSchema());
     		m.setEventHandler(handler);
@@ -22,20 +22,16 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.URL;
 import java.util.Properties;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.transform.stream.StreamSource;
 
 
 import com.ibm.jbatch.container.jsl.ModelResolver;
 import com.ibm.jbatch.jsl.model.Step;
-import com.ibm.jbatch.jsl.util.ValidatorHelper;
+import com.ibm.jbatch.jsl.util.JSLContextHelper;
 import com.ibm.jbatch.jsl.util.JSLValidationEventHandler;
 
 //FIXME: basically identical to JobModelResolverImpl
@@ -102,17 +98,8 @@ public class StepModelResolverImpl implements ModelResolver<Step> {
         Step step = null;
         JSLValidationEventHandler handler = new JSLValidationEventHandler();
         try {
-            JAXBContext ctx = JAXBContext.newInstance("com.ibm.jbatch.jsl.model");
-            Unmarshaller u = ctx.createUnmarshaller();
-            u.setSchema(ValidatorHelper.getXJCLSchema());
-
-            u.setEventHandler(handler);
-
-            // Use this for anonymous type
-            //job = (Job)u.unmarshal(new StreamSource(new StringReader(jobXML)));
-
             // Use this for named complex type
-            result = u.unmarshal(new StreamSource(new StringReader(stepXML)));
+            result = JSLContextHelper.unmarshal(stepXML, handler);
 
         } catch (JAXBException e) {
             throw new IllegalArgumentException("Exception unmarshalling jobXML", e);
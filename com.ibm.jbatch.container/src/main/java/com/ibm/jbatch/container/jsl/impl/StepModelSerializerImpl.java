@@ -26,6 +26,7 @@ import javax.xml.namespace.QName;
 
 import com.ibm.jbatch.container.jsl.ModelSerializer;
 import com.ibm.jbatch.jsl.model.Step;
+import com.ibm.jbatch.jsl.util.JSLContextHelper;
 import com.ibm.jbatch.jsl.util.ValidatorHelper;
 import com.ibm.jbatch.jsl.util.JSLValidationEventHandler;
 
@@ -40,7 +41,7 @@ public class StepModelSerializerImpl implements ModelSerializer<Step> {
     	String resultXML = null;
     	JSLValidationEventHandler handler = new JSLValidationEventHandler();
     	try {
-    		JAXBContext ctx = JAXBContext.newInstance("com.ibm.jbatch.jsl.model");
+    		JAXBContext ctx = JSLContextHelper.getJSLContext();
     		Marshaller m = ctx.createMarshaller();
     		m.setSchema(ValidatorHelper.getXJCLSchema());
     		m.setEventHandler(handler);
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.modelresolver.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A string with #{jobParameters['name']}-style substitutions in it, parsed once
+ * into the literal text and the references between, so resolving it is one pass
+ * through the parts into a StringBuilder.
+ *
+ * Resolves the way rescanning the string for each reference did: a reference
+ * that's unresolved or empty takes its default (the ?:...; after it) if it has
+ * one, else becomes "", and the string is left as it is from the first #{ that
+ * isn't a reference it knows, including #{partitionPlan[...]} outside a
+ * partitioned step, which is then resolved per partition, except for the same
+ * references as were resolved before it.  What a reference resolves to is never
+ * itself searched for references.
+ *
+ * Parsed templates are shared by the string they were parsed from, so a job
+ * definition's attributes are only parsed the first time it's started, and its
+ * partitions reuse them.
+ */
+final class PropertyTemplate {
+
+	private enum PropertyType {
+		JOB_PARAMETERS("#{jobParameters['"),
+		SYSTEM_PROPERTIES("#{systemProperties['"),
+		JOB_PROPERTIES("#{jobProperties['"),
+		PARTITION_PROPERTIES("#{partitionPlan['");
+
+		final String prefix;
+
+		PropertyType(String prefix) {
+			this.prefix = prefix;
+		}
+	}
+
+	private static final String REFERENCE_END = "']}";
+
+	// How many distinct strings have their templates kept
+	private static final int MAX_CACHED_TEMPLATES = 1000;
+
+	// Least recently used first; guarded by itself
+	private static final Map<String, PropertyTemplate> templateCache = new LinkedHashMap<String, PropertyTemplate>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PropertyTemplate> eldest) {
+			return size() > MAX_CACHED_TEMPLATES;
+		}
+	};
+
+	private static class Reference {
+		final PropertyType type;
+		final String name;
+		// Where it is in the source, for leaving the rest of it unresolved
+		final int start;
+		final int end;
+		final PropertyTemplate defaultValue;
+		final boolean defaultTerminated;
+
+		Reference(PropertyType type, String name, int start, int end, PropertyTemplate defaultValue, boolean defaultTerminated) {
+			this.type = type;
+			this.name = name;
+			this.start = start;
+			this.end = end;
+			this.defaultValue = defaultValue;
+			this.defaultTerminated = defaultTerminated;
+		}
+	}
+
+	private final String source;
+	// Literal Strings and References, in order
+	private final Object[] parts;
+	// From a #{ that isn't a reference on, or null
+	private final String unparsed;
+	// Whether any of the source can be left unresolved
+	private final boolean partial;
+
+	private PropertyTemplate(String source, List<Object> parts, String unparsed) {
+		this.source = source;
+		this.parts = parts.toArray();
+		this.unparsed = unparsed;
+		boolean partial = unparsed != null;
+		for (Object part : parts) {
+			partial |= part instanceof Reference && ((Reference) part).type == PropertyType.PARTITION_PROPERTIES;
+		}
+		this.partial = partial;
+	}
+
+	/**
+	 * @return the template for str, parsed now if it isn't cached already
+	 */
+	static PropertyTemplate forString(String str) {
+		PropertyTemplate template;
+		synchronized (templateCache) {
+			template = templateCache.get(str);
+		}
+		if (template == null) {
+			template = parse(str);
+			synchronized (templateCache) {
+				templateCache.put(str, template);
+			}
+		}
+		return template;
+	}
+
+	private static PropertyTemplate parse(String str) {
+		List<Object> parts = new ArrayList<Object>();
+		int literalStart = 0;
+		String unparsed = null;
+
+		while (true) {
+			int start = str.indexOf("#{", literalStart);
+			if (start == -1) {
+				break;
+			}
+			PropertyType type = null;
+			for (PropertyType each : PropertyType.values()) {
+				if (str.startsWith(each.prefix, start)) {
+					type = each;
+					break;
+				}
+			}
+			int nameStart = type == null ? -1 : start + type.prefix.length();
+			int nameEnd = type == null ? -1 : str.indexOf(REFERENCE_END, nameStart);
+			if (nameEnd == -1) {
+				unparsed = str.substring(literalStart);
+				literalStart = str.length();
+				break;
+			}
+
+			// An optional ?:<default-value-expression>; after it
+			int end = nameEnd + REFERENCE_END.length();
+			PropertyTemplate defaultValue = null;
+			boolean defaultTerminated = true;
+			if (str.startsWith("?:", end)) {
+				int defaultEnd = str.indexOf(";", end + 2);
+				if (defaultEnd == -1) {
+					defaultTerminated = false;
+					end = str.length();
+				} else {
+					defaultValue = parse(str.substring(end + 2, defaultEnd));
+					end = defaultEnd + 1;
+				}
+			}
+
+			if (start > literalStart) {
+				parts.add(str.substring(literalStart, start));
+			}
+			parts.add(new Reference(type, str.substring(nameStart, nameEnd), start, end, defaultValue, defaultTerminated));
+			literalStart = end;
+		}
+
+		if (literalStart < str.length()) {
+			parts.add(str.substring(literalStart));
+		}
+		return new PropertyTemplate(str, parts, unparsed);
+	}
+
+	/**
+	 * @param submittedProps
+	 *            the job parameters, or in a partition, its partition plan properties
+	 * @param xmlProperties
+	 *            the resolved properties in scope
+	 * @param isPartitionedStep
+	 *            whether to resolve #{partitionPlan[...]} references
+	 */
+	String resolve(Properties submittedProps, Properties xmlProperties, boolean isPartitionedStep) {
+		StringBuilder result = new StringBuilder(source.length());
+		String[] values = partial ? new String[parts.length] : null;
+		for (int i = 0; i < parts.length; i++) {
+			if (parts[i] instanceof String) {
+				result.append((String) parts[i]);
+				continue;
+			}
+
+			Reference reference = (Reference) parts[i];
+			if (reference.type == PropertyType.PARTITION_PROPERTIES && !isPartitionedStep) {
+				return result.append(replaceResolved(source.substring(reference.start), values, i)).toString();
+			}
+			if (!reference.defaultTerminated) {
+				throw new IllegalArgumentException("The default property expression is not properly terminated with ';'");
+			}
+
+			String value = resolveReference(reference, submittedProps, xmlProperties);
+			if (value.length() == 0 && reference.defaultValue != null) {
+				value = reference.defaultValue.resolve(submittedProps, xmlProperties, isPartitionedStep);
+			}
+			if (values != null) {
+				values[i] = value;
+			}
+			result.append(value);
+		}
+		if (unparsed != null) {
+			result.append(replaceResolved(unparsed, values, parts.length));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return what's left unresolved with the same references as the first
+	 *         count parts replaced all the same
+	 */
+	private String replaceResolved(String unresolved, String[] values, int count) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] != null) {
+				Reference reference = (Reference) parts[i];
+				unresolved = unresolved.replace(source.substring(reference.start, reference.end), values[i]);
+			}
+		}
+		return unresolved;
+	}
+
+	private static String resolveReference(Reference reference, Properties submittedProps, Properties xmlProperties) {
+		String value = null;
+		switch (reference.type) {
+		case JOB_PARAMETERS:
+		case PARTITION_PROPERTIES: // The submitted props carry the partition props in a partition
+			if (submittedProps != null) {
+				value = submittedProps.getProperty(reference.name);
+			}
+			break;
+		case JOB_PROPERTIES:
+			if (xmlProperties != null) {
+				value = xmlProperties.getProperty(reference.name);
+			}
+			break;
+		case SYSTEM_PROPERTIES:
+			value = System.getProperty(reference.name);
+			break;
+		}
+		return value != null ? value : AbstractPropertyResolver.UNRESOLVED_PROP_VALUE;
+	}
+}
@@ -17,7 +17,6 @@
 package com.ibm.jbatch.container.navigator;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,9 +25,8 @@ import com.ibm.batch.container.annotation.TCKExperimentProperty;
 import com.ibm.jbatch.container.jsl.ExecutionElement;
 import com.ibm.jbatch.container.jsl.IllegalTransitionException;
 import com.ibm.jbatch.container.jsl.Transition;
-import com.ibm.jbatch.container.jsl.TransitionElement;
-import com.ibm.jbatch.container.jsl.impl.GlobPatternMatcherImpl;
 import com.ibm.jbatch.container.jsl.impl.TransitionImpl;
+import com.ibm.jbatch.container.navigator.ExecutionGraph.CompiledTransition;
 import com.ibm.jbatch.container.status.ExecutionStatus;
 import com.ibm.jbatch.container.status.ExtendedBatchStatus;
 import com.ibm.jbatch.jsl.model.*;
@@ -39,7 +37,7 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 
 	private Map<String, ExecutionElement> alreadyExecutedElements = new HashMap<String, ExecutionElement>();
 
-	public ExecutionElement getFirstExecutionElement(List<ExecutionElement> peerExecutionElements, String restartOn) throws IllegalTransitionException {
+	public ExecutionElement getFirstExecutionElement(ExecutionGraph peerExecutionElements, String restartOn) throws IllegalTransitionException {
 		final String method = "getFirstExecutionElement";
 
 		logger.fine(method + " , restartOn = " + restartOn);
@@ -47,14 +45,13 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 		ExecutionElement startElement = null;
 
 		if (restartOn != null) {
-			startElement = getExecutionElementFromId(peerExecutionElements, restartOn);
+			startElement = getExecutionElementFromId(restartOn, peerExecutionElements.getElement(restartOn));
 			if (startElement == null) {
 				throw new IllegalStateException("Didn't find an execution element maching restart-on designated element: " + restartOn);
 			}
 		} else {
-			if (peerExecutionElements.size() > 0) {
-				startElement = peerExecutionElements.get(0);
-			} else {
+			startElement = peerExecutionElements.getFirstElement();
+			if (startElement == null) {
 				logger.fine(method + " , Container appears to contain no execution elements.  Returning.");
 				return null;
 			}
@@ -90,7 +87,7 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 	 * @return
 	 * @throws IllegalTransitionException
 	 */
-	public Transition getNextTransition(ExecutionElement currentElem, List<ExecutionElement> peerExecutionElements, ExecutionStatus currentStatus)
+	public Transition getNextTransition(ExecutionElement currentElem, ExecutionGraph peerExecutionElements, ExecutionStatus currentStatus)
 			throws IllegalTransitionException {
 		final String method = "getNextTransition";
 
@@ -102,25 +99,25 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 
 		ExecutionElement nextExecutionElement = null;
 
-		List<TransitionElement> transitionElements = currentElem.getTransitionElements();
+		ExecutionGraph.Node node = peerExecutionElements.getNode(currentElem);
 
 		// Check the transition elements first.
-		if (!transitionElements.isEmpty()) {
-			for (TransitionElement t : transitionElements) {
-				logger.fine(method + " Trying to match next transition element: " + t);
-
-				boolean isMatched = matchExitStatusAgainstOnAttribute(currentStatus.getExitStatus(), t);
-				if (isMatched) {
-					if (t instanceof Next) {
-						Next next = (Next)t;
-						nextExecutionElement = getExecutionElementFromId(peerExecutionElements, next.getTo());
-						returnTransition.setNextExecutionElement(nextExecutionElement);
-						break;
-					} else {
-						returnTransition.setTransitionElement(t);
-					}
-					return returnTransition;
+		for (int i = 0; i < node.getTransitionCount(); i++) {
+			CompiledTransition t = node.getTransition(i);
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine(method + " Trying to match next transition element: " + t.getTransitionElement());
+			}
+
+			boolean isMatched = matchExitStatusAgainstOnAttribute(currentStatus.getExitStatus(), t);
+			if (isMatched) {
+				if (t.isNext()) {
+					nextExecutionElement = getExecutionElementFromId(t.getToId(), t.getTo());
+					returnTransition.setNextExecutionElement(nextExecutionElement);
+					break;
+				} else {
+					returnTransition.setTransitionElement(t.getTransitionElement());
 				}
+				return returnTransition;
 			}
 		}
 
@@ -132,7 +129,7 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 				return returnTransition;
 			} else {
 				logger.fine("Didn't match transition element, check @next attribute now.");
-				nextExecutionElement = getNextExecutionElemFromAttribute(peerExecutionElements, currentElem);
+				nextExecutionElement = getNextExecutionElemFromAttribute(node, currentElem);
 				returnTransition.setNextExecutionElement(nextExecutionElement);
 			}
 		}
@@ -161,15 +158,16 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 	}
 
 
-	private ExecutionElement getExecutionElementFromId(List<ExecutionElement> executionElements, String id)
+	/*
+	 * @param elem the element the graph found with the id, if any
+	 */
+	private ExecutionElement getExecutionElementFromId(String id, ExecutionElement elem)
 			throws IllegalTransitionException {
 		if (id != null) {
 			logger.finer("attribute value is " + id);
-			for (ExecutionElement elem : executionElements) {
-				if (elem.getId().equals(id)) {
-					validateElementType(elem);
-					return elem;
-				}
+			if (elem != null) {
+				validateElementType(elem);
+				return elem;
 			}
 			logger.warning("No execution element found with id = " + id);
 			throw new IllegalTransitionException("No execution element found with id = " + id);
@@ -179,65 +177,25 @@ public abstract class AbstractNavigatorImpl<T> implements ModelNavigator<T> {
 		}
 	}
 
-	private static boolean matchSpecifiedExitStatus(String currentStepExitStatus, String exitStatusPattern) {
-
-		logger.finer("matchSpecifiedExitStatus, matching current exitStatus  " + currentStepExitStatus + " against pattern: " + exitStatusPattern);
-
-		GlobPatternMatcherImpl matcher = new GlobPatternMatcherImpl();
-		boolean match = matcher.matchWithoutBackslashEscape(currentStepExitStatus, exitStatusPattern);
-
-		if (match) {
-			logger.finer("matchSpecifiedExitStatus, match=YES");
-			return true;
-		}
-		else {
-			logger.finer("matchSpecifiedExitStatus, match=NO");
-			return false;
-		}
-	}
-
-	private boolean matchExitStatusAgainstOnAttribute(String exitStatus, TransitionElement elem) {
-		logger.fine("Trying to match exitStatus = " + exitStatus + " , against transition element: " + elem);
-		String exitStatusToMatch = null;
-
-		if (elem instanceof End) {
-			exitStatusToMatch = ((End) elem).getOn();
-		} else if (elem instanceof Fail) {
-			exitStatusToMatch = ((Fail) elem).getOn();
-			return matchSpecifiedExitStatus(exitStatus, exitStatusToMatch);
-		} else if (elem instanceof Stop) {
-			exitStatusToMatch = ((Stop) elem).getOn();
-		} else if (elem instanceof Next) {
-			exitStatusToMatch = ((Next) elem).getOn();
-		} else {
-			throw new IllegalStateException("Shouldn't be possible to get here. Unknown transition element,  " + elem.toString());
+	private boolean matchExitStatusAgainstOnAttribute(String exitStatus, CompiledTransition elem) {
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Trying to match exitStatus = " + exitStatus + " , against transition element: " + elem.getTransitionElement());
 		}
 
-		boolean match = matchSpecifiedExitStatus(exitStatus, exitStatusToMatch);
+		boolean match = elem.matches(exitStatus);
 		String logMsg = match ? "Matched" : "Didn't match";
 		logger.fine(logMsg);
 		return match;
 	}
 
-	private ExecutionElement getNextExecutionElemFromAttribute(List<ExecutionElement> peerExecutionElements, ExecutionElement currentElem) throws IllegalTransitionException {
-		ExecutionElement nextExecutionElement = null;
-		String nextAttrId = null;
-		if (currentElem instanceof Step) {
-			nextAttrId = ((Step) currentElem).getNextFromAttribute();
-			nextExecutionElement = getExecutionElementFromId(peerExecutionElements, nextAttrId);
-		} else if (currentElem instanceof Split) {
-			nextAttrId = ((Split) currentElem).getNextFromAttribute();
-			nextExecutionElement = getExecutionElementFromId(peerExecutionElements, nextAttrId);
-		} else if (currentElem instanceof Flow) {
-			nextAttrId = ((Flow) currentElem).getNextFromAttribute();
-			nextExecutionElement = getExecutionElementFromId(peerExecutionElements, nextAttrId);
-		} else if (currentElem instanceof Decision) {
-			// Nothing special to do in this case.
-		}
+	private ExecutionElement getNextExecutionElemFromAttribute(ExecutionGraph.Node node, ExecutionElement currentElem) throws IllegalTransitionException {
+		ExecutionElement nextExecutionElement = getExecutionElementFromId(node.getNextId(), node.getNext());
 
 		validateElementType(nextExecutionElement);
 
-		logger.fine("From currentElem = " + currentElem + " , return @next attribute execution element: " + nextExecutionElement);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("From currentElem = " + currentElem + " , return @next attribute execution element: " + nextExecutionElement);
+		}
 		return nextExecutionElement;
 	}
 
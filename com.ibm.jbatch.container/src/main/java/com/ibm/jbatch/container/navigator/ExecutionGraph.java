@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.jbatch.container.navigator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.jbatch.container.jsl.ExecutionElement;
+import com.ibm.jbatch.container.jsl.TransitionElement;
+import com.ibm.jbatch.container.jsl.impl.GlobPattern;
+import com.ibm.jbatch.jsl.model.End;
+import com.ibm.jbatch.jsl.model.Fail;
+import com.ibm.jbatch.jsl.model.Flow;
+import com.ibm.jbatch.jsl.model.Next;
+import com.ibm.jbatch.jsl.model.Split;
+import com.ibm.jbatch.jsl.model.Step;
+import com.ibm.jbatch.jsl.model.Stop;
+
+/**
+ * The execution elements of a job or flow, once their properties are resolved,
+ * compiled for navigating between them: each element's transition elements
+ * with their exit status patterns compiled, and the elements their next and
+ * @next attributes name looked up, so that a transition is never more than a
+ * match against each pattern in turn.
+ *
+ * Nothing's checked here that wasn't checked as the transition was taken
+ * before: a next naming no element is only an error if it's taken, so the
+ * name's kept for the navigator to report.  Where two elements share an id,
+ * the first is the one any transition goes to, as when the list was searched.
+ */
+public final class ExecutionGraph {
+
+	private final List<ExecutionElement> elements;
+	private final Map<String, ExecutionElement> elementsById;
+	private final Map<ExecutionElement, Node> nodes;
+
+	public ExecutionGraph(List<ExecutionElement> elements) {
+		Map<String, ExecutionElement> elementsById = new HashMap<String, ExecutionElement>();
+		for (ExecutionElement elem : elements) {
+			if (!elementsById.containsKey(elem.getId())) {
+				elementsById.put(elem.getId(), elem);
+			}
+		}
+		Map<ExecutionElement, Node> nodes = new IdentityHashMap<ExecutionElement, Node>();
+		for (ExecutionElement elem : elements) {
+			nodes.put(elem, new Node(elem, elementsById));
+		}
+
+		this.elements = Collections.unmodifiableList(new ArrayList<ExecutionElement>(elements));
+		this.elementsById = Collections.unmodifiableMap(elementsById);
+		this.nodes = Collections.unmodifiableMap(nodes);
+	}
+
+	/**
+	 * @return null if there are no elements
+	 */
+	public ExecutionElement getFirstElement() {
+		return elements.isEmpty() ? null : elements.get(0);
+	}
+
+	/**
+	 * @return null if no element has the id
+	 */
+	public ExecutionElement getElement(String id) {
+		return elementsById.get(id);
+	}
+
+	/**
+	 * @param elem one of the graph's elements, or else it's compiled on the spot
+	 */
+	public Node getNode(ExecutionElement elem) {
+		Node node = nodes.get(elem);
+		return node != null ? node : new Node(elem, elementsById);
+	}
+
+	public static final class Node {
+
+		private final CompiledTransition[] transitions;
+		private final String nextId;
+		private final ExecutionElement next;
+
+		private Node(ExecutionElement elem, Map<String, ExecutionElement> elementsById) {
+			List<TransitionElement> transitionElements = elem.getTransitionElements();
+			transitions = new CompiledTransition[transitionElements.size()];
+			for (int i = 0; i < transitions.length; i++) {
+				transitions[i] = new CompiledTransition(transitionElements.get(i), elementsById);
+			}
+
+			if (elem instanceof Step) {
+				nextId = ((Step) elem).getNextFromAttribute();
+			} else if (elem instanceof Split) {
+				nextId = ((Split) elem).getNextFromAttribute();
+			} else if (elem instanceof Flow) {
+				nextId = ((Flow) elem).getNextFromAttribute();
+			} else {
+				// A Decision has no @next
+				nextId = null;
+			}
+			next = nextId == null ? null : elementsById.get(nextId);
+		}
+
+		int getTransitionCount() {
+			return transitions.length;
+		}
+
+		CompiledTransition getTransition(int i) {
+			return transitions[i];
+		}
+
+		/**
+		 * @return the @next attribute, or null for none or a Decision
+		 */
+		public String getNextId() {
+			return nextId;
+		}
+
+		/**
+		 * @return the element the @next attribute names, or null if there's none of that id
+		 */
+		public ExecutionElement getNext() {
+			return next;
+		}
+	}
+
+	public static final class CompiledTransition {
+
+		private final TransitionElement transitionElement;
+		private final GlobPattern on;
+		private final String toId;
+		private final ExecutionElement to;
+
+		private CompiledTransition(TransitionElement transitionElement, Map<String, ExecutionElement> elementsById) {
+			this.transitionElement = transitionElement;
+			if (transitionElement instanceof End) {
+				on = GlobPattern.compile(((End) transitionElement).getOn());
+			} else if (transitionElement instanceof Fail) {
+				on = GlobPattern.compile(((Fail) transitionElement).getOn());
+			} else if (transitionElement instanceof Stop) {
+				on = GlobPattern.compile(((Stop) transitionElement).getOn());
+			} else if (transitionElement instanceof Next) {
+				on = GlobPattern.compile(((Next) transitionElement).getOn());
+			} else {
+				throw new IllegalStateException("Shouldn't be possible to get here. Unknown transition element,  " + transitionElement.toString());
+			}
+			toId = transitionElement instanceof Next ? ((Next) transitionElement).getTo() : null;
+			to = toId == null ? null : elementsById.get(toId);
+		}
+
+		public TransitionElement getTransitionElement() {
+			return transitionElement;
+		}
+
+		public boolean matches(String exitStatus) {
+			return on.matches(exitStatus);
+		}
+
+		public boolean isNext() {
+			return transitionElement instanceof Next;
+		}
+
+		/**
+		 * @return the to attribute of a next element
+		 */
+		public String getToId() {
+			return toId;
+		}
+
+		/**
+		 * @return the element a next element goes to, or null if there's none of that id
+		 */
+		public ExecutionElement getTo() {
+			return to;
+		}
+	}
+}
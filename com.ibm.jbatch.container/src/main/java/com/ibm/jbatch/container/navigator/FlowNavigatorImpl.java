@@ -30,8 +30,12 @@ public class FlowNavigatorImpl extends AbstractNavigatorImpl<Flow> implements Mo
 	private final static Logger logger = Logger.getLogger(FlowNavigatorImpl.class.getName());
 	private Flow flow = null;
 
+	// Compiled once, as the flow is resolved before it's navigated
+	private final ExecutionGraph graph;
+
 	public FlowNavigatorImpl(Flow flow) {
 		this.flow = flow;
+		this.graph = new ExecutionGraph(flow.getExecutionElements());
 	}
 
 	public String toString() {
@@ -42,7 +46,7 @@ public class FlowNavigatorImpl extends AbstractNavigatorImpl<Flow> implements Mo
 	public ExecutionElement getFirstExecutionElement(String restartOn)
 			throws IllegalTransitionException {
 		logger.fine("Getting first execution element in flow, restartOn = " + restartOn);
-		ExecutionElement firstElem = getFirstExecutionElement(flow.getExecutionElements(), restartOn);
+		ExecutionElement firstElem = getFirstExecutionElement(graph, restartOn);
 		logger.fine("Got first execution element in flow = " + firstElem.getId());
 		return firstElem;
 	}
@@ -55,7 +59,7 @@ public class FlowNavigatorImpl extends AbstractNavigatorImpl<Flow> implements Mo
 		if (logger.isLoggable(Level.FINE)) {
 			logger.fine("Getting next transition in flow, currentExecutionElem = " + currentExecutionElem);
 		}
-		Transition nextTransition = getNextTransition(currentExecutionElem, flow.getExecutionElements(), currentStatus);
+		Transition nextTransition = getNextTransition(currentExecutionElem, graph, currentStatus);
 		logger.fine("Got next transition in flow = " + nextTransition);
 		return nextTransition;
 	}
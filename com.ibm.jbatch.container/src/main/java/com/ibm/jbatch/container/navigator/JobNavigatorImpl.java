@@ -31,8 +31,12 @@ public class JobNavigatorImpl extends AbstractNavigatorImpl<JSLJob> implements M
 	private final static Logger logger = Logger.getLogger(JobNavigatorImpl.class.getName());
 	private JSLJob job = null;
 
+	// Compiled once, as the job is resolved before it's navigated
+	private final ExecutionGraph graph;
+
 	public JobNavigatorImpl(JSLJob job) {
 		this.job = job;
+		this.graph = new ExecutionGraph(job.getExecutionElements());
 	}
 	
 	public String toString() {
@@ -43,7 +47,7 @@ public class JobNavigatorImpl extends AbstractNavigatorImpl<JSLJob> implements M
 	public ExecutionElement getFirstExecutionElement(String restartOn)
 			throws IllegalTransitionException {
 		logger.fine("Getting first execution element in job, restartOn = " + restartOn);
-		ExecutionElement firstElem = getFirstExecutionElement(job.getExecutionElements(), restartOn);
+		ExecutionElement firstElem = getFirstExecutionElement(graph, restartOn);
 		logger.fine("Got first execution element in job = " + firstElem.getId());
 		return firstElem;
 	}
@@ -60,7 +64,7 @@ public class JobNavigatorImpl extends AbstractNavigatorImpl<JSLJob> implements M
 		if (logger.isLoggable(Level.FINE)) {
 			logger.fine("Getting next transition in job, currentExecutionElem = " + currentExecutionElem);
 		}
-		Transition nextTransition = getNextTransition(currentExecutionElem, job.getExecutionElements(), currentStatus);
+		Transition nextTransition = getNextTransition(currentExecutionElem, graph, currentStatus);
 		logger.fine("Got next transition in job = " + nextTransition);
 		return nextTransition;
 	}
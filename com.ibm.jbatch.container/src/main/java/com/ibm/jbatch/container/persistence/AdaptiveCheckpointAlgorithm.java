@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.jbatch.container.persistence;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.batch.api.chunk.CheckpointAlgorithm;
+
+/**
+ * The built-in checkpoint-policy="adaptive": sizes each chunk so that it takes
+ * about the target time from start to commit, rather than a fixed item-count.
+ *
+ * Each chunk is measured in two parts, the time per item to read, process and
+ * write it, and the time from the checkpoint to the end of the commit, which
+ * doesn't depend much on the number of items.  Both are smoothed across chunks
+ * and the next chunk gets as many items as fit in the target after the commit:
+ *
+ *   items = (target - commit time) / time per item
+ *
+ * bounded by the minimum and maximum, and to at most double the last chunk so a
+ * couple of unusually fast items don't make for one enormous chunk.
+ *
+ * The target is capped at half the transaction timeout, and a chunk still
+ * going at that point is checkpointed whatever its size, so a chunk that turns
+ * out slower than predicted still commits before its transaction times out.
+ * A time-limit, if given, also applies as it does for the item policy.
+ */
+public final class AdaptiveCheckpointAlgorithm implements CheckpointAlgorithm {
+
+	private static final String className = AdaptiveCheckpointAlgorithm.class.getName();
+	private static Logger logger = Logger.getLogger(AdaptiveCheckpointAlgorithm.class.getPackage().getName());
+
+	// Weight of the latest chunk in the smoothed costs
+	private static final double SMOOTHING = 0.5;
+
+	private int itemCount;
+	private int minItemCount = 1;
+	private int maxItemCount = Integer.MAX_VALUE;
+	private long targetNanos;
+	private int timeLimitSeconds;
+	private long timeoutNanos = Long.MAX_VALUE;
+
+	private long itemsRead = 0;
+	private long checkpointBeginTime = 0;
+	private long commitBeginTime = 0;
+	private double nanosPerItem = -1;
+	private double commitNanos = -1;
+
+	// What was chosen over the step, for reporting
+	private int smallestItemCount = Integer.MAX_VALUE;
+	private int largestItemCount = 0;
+
+	/**
+	 * @param itemCount the size of the first chunk, before anything's been measured
+	 */
+	public void setItemCount(int itemCount) {
+		this.itemCount = itemCount;
+	}
+
+	public void setMinItemCount(int minItemCount) {
+		this.minItemCount = Math.max(1, minItemCount);
+	}
+
+	public void setMaxItemCount(int maxItemCount) {
+		this.maxItemCount = maxItemCount;
+	}
+
+	public void setTargetMillis(long targetMillis) {
+		this.targetNanos = targetMillis * 1000000L;
+	}
+
+	public void setTimeLimitSeconds(int timeLimitSeconds) {
+		this.timeLimitSeconds = timeLimitSeconds;
+	}
+
+	/**
+	 * @param timeoutSeconds the transaction timeout each chunk runs under, 0 for none
+	 */
+	public void setTransactionTimeoutSeconds(int timeoutSeconds) {
+		this.timeoutNanos = timeoutSeconds > 0 ? timeoutSeconds * 1000000000L / 2 : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the number of items the current chunk is aiming for
+	 */
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public int getSmallestItemCount() {
+		return smallestItemCount;
+	}
+
+	public int getLargestItemCount() {
+		return largestItemCount;
+	}
+
+	@Override
+	public void beginCheckpoint() throws Exception {
+		itemCount = Math.max(minItemCount, Math.min(maxItemCount, itemCount));
+		smallestItemCount = Math.min(smallestItemCount, itemCount);
+		largestItemCount = Math.max(largestItemCount, itemCount);
+		checkpointBeginTime = System.nanoTime();
+		commitBeginTime = 0;
+		itemsRead = 0;
+	}
+
+	@Override
+	public boolean isReadyToCheckpoint() throws Exception {
+		itemsRead++;
+
+		if (itemsRead >= itemCount) {
+			return true;
+		}
+
+		long elapsed = System.nanoTime() - checkpointBeginTime;
+		if (elapsed >= timeoutNanos) {
+			logger.fine("ADAPTIVECHKPT: checkpointing early, at half the transaction timeout");
+			return true;
+		}
+		if (timeLimitSeconds > 0 && elapsed / 1000000000L >= timeLimitSeconds) {
+			logger.fine("ADAPTIVECHKPT: time checkpoint hit");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Called as the chunk's checkpoint is about to be persisted and committed,
+	 * which divides its time between the items and the commit.
+	 */
+	public void commitStarting() {
+		commitBeginTime = System.nanoTime();
+	}
+
+	@Override
+	public void endCheckpoint() throws Exception {
+		if (commitBeginTime == 0 || itemsRead == 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		nanosPerItem = smooth(nanosPerItem, (double) (commitBeginTime - checkpointBeginTime) / itemsRead);
+		commitNanos = smooth(commitNanos, now - commitBeginTime);
+
+		long target = Math.min(targetNanos, timeoutNanos);
+		long fits = (long) ((target - commitNanos) / Math.max(1.0, nanosPerItem));
+		int next = (int) Math.max(minItemCount, Math.min(Math.min(maxItemCount, 2L * itemCount), fits));
+
+		if (logger.isLoggable(Level.FINE) && next != itemCount) {
+			logger.logp(Level.FINE, className, "endCheckpoint", "ADAPTIVECHKPT: " + itemsRead + " items at " + (long) nanosPerItem / 1000
+					+ " us/item and " + (long) commitNanos / 1000 + " us to commit, next chunk " + next + " items");
+		}
+		itemCount = next;
+	}
+
+	@Override
+	public int checkpointTimeout() throws Exception {
+		return 0;
+	}
+
+	private static double smooth(double average, double latest) {
+		return average < 0 ? latest : SMOOTHING * latest + (1 - SMOOTHING) * average;
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ibm.jbatch.container.util.TCCLObjectInputStream;
+
+/**
+ * Binary format for checkpoints, replacing the Java serialization of the
+ * reader/writer checkpointInfo() and then again of the CheckpointData holding it.
+ *
+ * Both the restart token and the CheckpointData row get a small versioned header.
+ * Tokens that are a Long, Integer, String, byte[] or small HashMap/LinkedHashMap
+ * of those are written directly; anything else falls back to Java serialization
+ * inside the envelope.
+ *
+ * Data written before this format existed starts with the Java serialization
+ * stream magic (0xACED), which neither header can be mistaken for, so it's still
+ * read the old way.
+ */
+public final class CheckpointDataCodec {
+
+	private static final byte TOKEN_MAGIC = (byte) 0xCB;
+	private static final byte ROW_MAGIC = (byte) 0xCC;
+	private static final byte VERSION = 1;
+
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_LONG = 1;
+	private static final byte TAG_INTEGER = 2;
+	private static final byte TAG_STRING = 3;
+	private static final byte TAG_BYTES = 4;
+	private static final byte TAG_HASHMAP = 5;
+	private static final byte TAG_LINKEDHASHMAP = 6;
+	private static final byte TAG_SERIALIZED = 7;
+
+	/**
+	 * Maps bigger than this are left to Java serialization.
+	 */
+	private static final int MAX_MAP_ENTRIES = 256;
+
+	private static final String UTF8 = "UTF-8";
+
+	private CheckpointDataCodec() {
+	}
+
+	/**
+	 * @param token checkpointInfo() from a reader or writer, possibly null
+	 * @return the token in the compact format
+	 */
+	public static byte[] encodeToken(Serializable token) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeByte(TOKEN_MAGIC);
+		out.writeByte(VERSION);
+		writeValue(out, token);
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Reads a token written by {@link #encodeToken(Serializable)}, or a plain
+	 * Java serialized one from before.  Classes are resolved with the thread
+	 * context classloader, as they always have been for checkpoints.
+	 */
+	public static Serializable decodeToken(byte[] bytes) throws IOException, ClassNotFoundException {
+		if (bytes.length >= 2 && bytes[0] == TOKEN_MAGIC) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2));
+			checkVersion(bytes[1]);
+			return (Serializable) readValue(in);
+		}
+		return javaDeserialize(bytes, true);
+	}
+
+	/**
+	 * @return the CheckpointData, restart token included, as one compact record
+	 */
+	public static byte[] encode(CheckpointData data) throws IOException {
+		byte[] token = data.getRestartToken();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(64 + (token == null ? 0 : token.length));
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeByte(ROW_MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(data.getjobInstanceId());
+		out.writeUTF(data.getStepName());
+		out.writeUTF(data.getBatchDataStreamName());
+		writeBytes(out, token);
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Reads a record written by {@link #encode(CheckpointData)}, or a Java
+	 * serialized CheckpointData from before.
+	 */
+	public static CheckpointData decode(byte[] bytes) throws IOException, ClassNotFoundException {
+		if (bytes.length >= 2 && bytes[0] == ROW_MAGIC) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2));
+			checkVersion(bytes[1]);
+			long jobInstanceId = in.readLong();
+			String stepName = in.readUTF();
+			String batchDataStreamName = in.readUTF();
+			CheckpointData data = new CheckpointData(jobInstanceId, stepName, batchDataStreamName);
+			data.setRestartToken(readBytes(in));
+			return data;
+		}
+		return (CheckpointData) javaDeserialize(bytes, false);
+	}
+
+	private static void checkVersion(byte version) throws StreamCorruptedException {
+		if (version != VERSION) {
+			throw new StreamCorruptedException("Unsupported checkpoint format version: " + version);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (writeScalar(out, value)) {
+			return;
+		}
+		if (isCompactMap(value)) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeByte(value.getClass() == HashMap.class ? TAG_HASHMAP : TAG_LINKEDHASHMAP);
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeScalar(out, entry.getKey());
+				writeScalar(out, entry.getValue());
+			}
+			return;
+		}
+		out.writeByte(TAG_SERIALIZED);
+		writeBytes(out, javaSerialize(value));
+	}
+
+	/**
+	 * @return false, having written nothing, if value isn't one of the scalar types
+	 */
+	private static boolean writeScalar(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+		} else if (value.getClass() == Long.class) {
+			out.writeByte(TAG_LONG);
+			out.writeLong((Long) value);
+		} else if (value.getClass() == Integer.class) {
+			out.writeByte(TAG_INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value.getClass() == String.class) {
+			out.writeByte(TAG_STRING);
+			writeBytes(out, ((String) value).getBytes(UTF8));
+		} else if (value.getClass() == byte[].class) {
+			out.writeByte(TAG_BYTES);
+			writeBytes(out, (byte[]) value);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean isScalar(Object value) {
+		if (value == null) {
+			return true;
+		}
+		Class<?> clazz = value.getClass();
+		return clazz == Long.class || clazz == Integer.class || clazz == String.class || clazz == byte[].class;
+	}
+
+	/**
+	 * Only exactly HashMap and LinkedHashMap, so that what we hand back on
+	 * restart is the same class the artifact checkpointed.
+	 */
+	private static boolean isCompactMap(Object value) {
+		if (value == null || (value.getClass() != HashMap.class && value.getClass() != LinkedHashMap.class)) {
+			return false;
+		}
+		Map<?, ?> map = (Map<?, ?>) value;
+		if (map.size() > MAX_MAP_ENTRIES) {
+			return false;
+		}
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			if (!isScalar(entry.getKey()) || !isScalar(entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case TAG_HASHMAP:
+		case TAG_LINKEDHASHMAP:
+			int size = in.readInt();
+			Map<Object, Object> map = tag == TAG_HASHMAP ? new HashMap<Object, Object>() : new LinkedHashMap<Object, Object>();
+			for (int i = 0; i < size; i++) {
+				Object key = readScalar(in, in.readByte());
+				map.put(key, readScalar(in, in.readByte()));
+			}
+			return map;
+		case TAG_SERIALIZED:
+			return javaDeserialize(readBytes(in), true);
+		default:
+			return readScalar(in, tag);
+		}
+	}
+
+	private static Object readScalar(DataInputStream in, byte tag) throws IOException {
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_LONG:
+			return in.readLong();
+		case TAG_INTEGER:
+			return in.readInt();
+		case TAG_STRING:
+			return new String(readBytes(in), UTF8);
+		case TAG_BYTES:
+			return readBytes(in);
+		default:
+			throw new StreamCorruptedException("Unknown checkpoint value tag: " + tag);
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static byte[] javaSerialize(Object value) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(baos);
+		oout.writeObject(value);
+		oout.close();
+		return baos.toByteArray();
+	}
+
+	private static Serializable javaDeserialize(byte[] bytes, boolean useTCCL) throws IOException, ClassNotFoundException {
+		ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+		ObjectInputStream objectIn = useTCCL ? new TCCLObjectInputStream(bais) : new ObjectInputStream(bais);
+		try {
+			return (Serializable) objectIn.readObject();
+		} finally {
+			objectIn.close();
+		}
+	}
+}
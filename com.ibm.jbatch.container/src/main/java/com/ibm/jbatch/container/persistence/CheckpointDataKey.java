@@ -50,6 +50,28 @@ public class CheckpointDataKey {
 	public String toString() {
 		return stringify();
 	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CheckpointDataKey)) {
+			return false;
+		}
+		CheckpointDataKey other = (CheckpointDataKey) obj;
+		return _jobInstanceId == other._jobInstanceId
+				&& (_stepName == null ? other._stepName == null : _stepName.equals(other._stepName))
+				&& (_batchDataStreamName == null ? other._batchDataStreamName == null : _batchDataStreamName.equals(other._batchDataStreamName));
+	}
+
+	@Override
+	public int hashCode() {
+		int result = (int) (_jobInstanceId ^ (_jobInstanceId >>> 32));
+		result = 31 * result + (_stepName == null ? 0 : _stepName.hashCode());
+		result = 31 * result + (_batchDataStreamName == null ? 0 : _batchDataStreamName.hashCode());
+		return result;
+	}
 	
 	private String stringify() {
 		return _jobInstanceId + "," + _stepName + "," + _batchDataStreamName;
@@ -16,8 +16,7 @@
 */
 package com.ibm.jbatch.container.persistence;
 
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +29,7 @@ import com.ibm.jbatch.container.exception.BatchContainerServiceException;
 import com.ibm.jbatch.container.services.IPersistenceManagerService;
 import com.ibm.jbatch.container.servicesmanager.ServicesManager;
 import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.StepStatus;
 
 public class CheckpointManager {
 	private final static String sourceClass = CheckpointManager.class.getName();
@@ -45,7 +45,16 @@ public class CheckpointManager {
 	private long executionId = 0;
 	private String stepId = null;
 	private long jobInstanceID = 0;
+	private final CheckpointDataKey readerChkptDK;
+	private final CheckpointDataKey writerChkptDK;
+	private final CheckpointDataKey userDataChkptDK;
 	
+	// What this step last wrote, so that what hasn't changed since isn't written again
+	private byte[] lastReaderToken = null;
+	private byte[] lastWriterToken = null;
+	private byte[] lastUserDataToken = null;
+	private StepStatus lastStepStatus = null;
+	private long skippedWriteCount = 0;
 
 	public CheckpointManager(ItemReaderProxy reader, ItemWriterProxy writer,CheckpointAlgorithm chkptAlg,
 			long executionId, long jobInstanceID, String  stepId) {
@@ -55,6 +64,9 @@ public class CheckpointManager {
 		this.executionId = executionId;
 		this.stepId = stepId;
 		this.jobInstanceID = jobInstanceID;
+		this.readerChkptDK = new CheckpointDataKey(jobInstanceID, stepId, "READER");
+		this.writerChkptDK = new CheckpointDataKey(jobInstanceID, stepId, "WRITER");
+		this.userDataChkptDK = new CheckpointDataKey(jobInstanceID, stepId, "USERDATA");
 		
 		_persistenceManagerService = servicesManager.getPersistenceManagerService();
 	}
@@ -96,37 +108,145 @@ public class CheckpointManager {
 		
 		return checkpoint;
 	}
+
+	/**
+	 * As isReadyToCheckpoint(), after several items were read together.  The
+	 * item-count policy counts them all at once; any other algorithm is still
+	 * asked once per item, and is ready if it said so for any of them.
+	 */
+	public boolean isReadyToCheckpoint(int items) {
+		if (checkpointAlgorithm instanceof ItemCheckpointAlgorithm) {
+			boolean checkpoint = ((ItemCheckpointAlgorithm) checkpointAlgorithm).isReadyToCheckpoint(items);
+			if (logger.isLoggable(Level.FINE) && checkpoint)
+				logger.fine("isReadyToCheckpoint - " + checkpoint + " after " + items + " items");
+			return checkpoint;
+		}
+		boolean checkpoint = false;
+		for (int i = 0; i < items; i++) {
+			checkpoint |= isReadyToCheckpoint();
+		}
+		return checkpoint;
+	}
 	
-	public void checkpoint() {
+	/**
+	 * Harden the reader and writer checkpoints along with the step status
+	 * (carrying the persistent user data) as a single unit.  Any of the three
+	 * that is the same as when this last wrote it is left out, and if none
+	 * have changed nothing is written at all.
+	 * 
+	 * A chunk whose transaction rolls back never gets here, and one whose commit
+	 * fails ends the step, so what's remembered is always what's persisted.
+	 * 
+	 * @param stepStatus the step status, with persistent user data already captured, 
+	 * or null for a step that doesn't persist its status (a lightweight partition)
+	 */
+	public void checkpoint(StepStatus stepStatus) {
+		checkpoint(stepStatus, captureReaderCheckpoint());
+	}
+
+	/**
+	 * The reader's checkpoint as of now, for a chunk that will be checkpointed
+	 * later, after the reader has moved on (see the pipelined chunk loop).
+	 */
+	public byte[] captureReaderCheckpoint() {
+		try {
+			return CheckpointDataCodec.encodeToken(readerProxy.checkpointInfo());
+		} catch (Exception ex) {
+			throw new BatchContainerServiceException("Cannot persist the checkpoint data for [" + stepId + "]", ex);
+		}
+	}
+
+	/**
+	 * As {@link #checkpoint(StepStatus)}, with a reader checkpoint captured earlier.
+	 */
+	public void checkpoint(StepStatus stepStatus, byte[] readerToken) {
+		checkpoint(stepStatus, readerToken, null);
+	}
+
+	/**
+	 * As {@link #checkpoint(StepStatus, byte[])}, for a step that doesn't persist its 
+	 * status (a lightweight partition): its persistent user data is hardened as a third
+	 * checkpoint in place of the step status, and is left out likewise if unchanged.
+	 * 
+	 * @param userDataToken the serialized persistent user data
+	 */
+	public void checkpointWithUserData(byte[] readerToken, byte[] userDataToken) {
+		checkpoint(null, readerToken, userDataToken);
+	}
+
+	/**
+	 * Harden just the persistent user data of a lightweight partition, as it ends,
+	 * unless it's the same as at the last checkpoint.
+	 */
+	public void persistUserData(byte[] userDataToken) {
+		if (Arrays.equals(userDataToken, lastUserDataToken)) {
+			skippedWriteCount++;
+			return;
+		}
+		try {
+			_persistenceManagerService.updateCheckpointData(userDataChkptDK, userDataCheckpoint(userDataToken));
+		} catch (Exception ex) {
+			throw new BatchContainerServiceException("Cannot persist the persistent user data for [" + stepId + "]", ex);
+		}
+		lastUserDataToken = userDataToken;
+	}
+
+	private CheckpointData userDataCheckpoint(byte[] userDataToken) {
+		CheckpointData userDataChkptData = new CheckpointData(jobInstanceID, stepId, "USERDATA");
+		userDataChkptData.setRestartToken(userDataToken);
+		return userDataChkptData;
+	}
+
+	private void checkpoint(StepStatus stepStatus, byte[] readerToken, byte[] userDataToken) {
 		String method = "checkpoint";
 		if(logger.isLoggable(Level.FINER)) { logger.entering(sourceClass, method, " [executionId " + executionId + "] "); }
 
-		ByteArrayOutputStream readerChkptBA = new ByteArrayOutputStream();
-		ByteArrayOutputStream writerChkptBA = new ByteArrayOutputStream();
-		
-		ObjectOutputStream readerOOS = null, writerOOS = null;
-		CheckpointDataKey readerChkptDK = null, writerChkptDK = null;
-		
+		if (checkpointAlgorithm instanceof AdaptiveCheckpointAlgorithm) {
+			((AdaptiveCheckpointAlgorithm) checkpointAlgorithm).commitStarting();
+		}
+
 		try{
 			
-			readerOOS = new ObjectOutputStream(readerChkptBA);
-			readerOOS.writeObject(readerProxy.checkpointInfo());
-			readerOOS.close();
-			CheckpointData readerChkptData  = new CheckpointData(jobInstanceID, stepId, "READER");
-			readerChkptData.setRestartToken(readerChkptBA.toByteArray());
-			readerChkptDK = new CheckpointDataKey(jobInstanceID, stepId, "READER");
-			
-			_persistenceManagerService.updateCheckpointData(readerChkptDK, readerChkptData);
-			
-			writerOOS = new ObjectOutputStream(writerChkptBA);
-			writerOOS.writeObject(writerProxy.checkpointInfo());
-			writerOOS.close();
-			CheckpointData writerChkptData = new CheckpointData(jobInstanceID, stepId, "WRITER");
-			writerChkptData.setRestartToken(writerChkptBA.toByteArray());
-			writerChkptDK = new CheckpointDataKey(jobInstanceID, stepId, "WRITER");
-
-			_persistenceManagerService.updateCheckpointData(writerChkptDK, writerChkptData);
+			CheckpointData readerChkptData = null;
+			if (!Arrays.equals(readerToken, lastReaderToken)) {
+				readerChkptData = new CheckpointData(jobInstanceID, stepId, "READER");
+				readerChkptData.setRestartToken(readerToken);
+			}
 			
+			byte[] writerToken = CheckpointDataCodec.encodeToken(writerProxy.checkpointInfo());
+			CheckpointData writerChkptData = null;
+			if (!Arrays.equals(writerToken, lastWriterToken)) {
+				writerChkptData = new CheckpointData(jobInstanceID, stepId, "WRITER");
+				writerChkptData.setRestartToken(writerToken);
+			}
+
+			int skipped = (readerChkptData == null ? 1 : 0) + (writerChkptData == null ? 1 : 0);
+			if (userDataToken != null) {
+				CheckpointData userDataChkptData = null;
+				if (!Arrays.equals(userDataToken, lastUserDataToken)) {
+					userDataChkptData = userDataCheckpoint(userDataToken);
+				}
+				skipped += userDataChkptData == null ? 1 : 0;
+				if (skipped < 3) {
+					_persistenceManagerService.updateChunkCommitUnit(new ChunkCommitUnit(readerChkptDK, readerChkptData, 
+							writerChkptDK, writerChkptData, userDataChkptDK, userDataChkptData));
+				}
+				lastUserDataToken = userDataToken;
+			} else {
+				StepStatus changedStepStatus = (stepStatus == null || stepStatus.isUnchangedFrom(lastStepStatus)) ? null : stepStatus;
+				skipped += changedStepStatus == null ? 1 : 0;
+				if (skipped < 3) {
+					_persistenceManagerService.updateChunkCommitUnit(new ChunkCommitUnit(readerChkptDK, readerChkptData, 
+							writerChkptDK, writerChkptData, stepStatus == null ? 0 : stepStatus.getStepExecutionId(), changedStepStatus));
+				}
+				if (changedStepStatus != null) {
+					lastStepStatus = stepStatus.clone();
+				}
+			}
+			skippedWriteCount += skipped;
+
+			lastReaderToken = readerToken;
+			lastWriterToken = writerToken;
 		}
 		catch (Exception ex){
 			// is this what I should be throwing here?
@@ -137,6 +257,21 @@ public class CheckpointManager {
 
 	}
 	
+	/**
+	 * @return true if the step status is the same as when this last wrote it
+	 */
+	public boolean isStepStatusUnchanged(StepStatus stepStatus) {
+		return stepStatus.isUnchangedFrom(lastStepStatus);
+	}
+
+	/**
+	 * @return how many reader checkpoint, writer checkpoint and step status (or
+	 * partition user data) writes were left out because nothing had changed
+	 */
+	public long getSkippedWriteCount() {
+		return skippedWriteCount;
+	}
+
 	public int checkpointTimeout() {
 		
 		int returnTimeout = 0; 
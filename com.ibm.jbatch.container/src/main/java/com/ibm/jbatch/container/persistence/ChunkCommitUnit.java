@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.persistence;
+
+import com.ibm.jbatch.container.status.StepStatus;
+
+/**
+ * Everything that has to be hardened at a chunk boundary: the reader and writer
+ * checkpoints plus the step status (which carries the persistent user data).
+ *
+ * Handing these to the persistence manager together lets it write them with
+ * a single connection and batch rather than one round trip apiece.
+ *
+ * A lightweight partition has no step status in the repository until it ends,
+ * so its persistent user data goes in a third checkpoint instead.
+ *
+ * The keys are always set, except the user data key for a step that has a step
+ * status.  The reader, writer or user data, or the step status, is null when it
+ * hasn't changed since it was last written, and is then left alone.
+ */
+public class ChunkCommitUnit {
+
+	private CheckpointDataKey readerKey;
+	private CheckpointData readerData;
+	private CheckpointDataKey writerKey;
+	private CheckpointData writerData;
+	private long stepExecutionId;
+	private StepStatus stepStatus;
+	private CheckpointDataKey userDataKey;
+	private CheckpointData userData;
+
+	public ChunkCommitUnit(CheckpointDataKey readerKey, CheckpointData readerData,
+			CheckpointDataKey writerKey, CheckpointData writerData,
+			long stepExecutionId, StepStatus stepStatus) {
+		this.readerKey = readerKey;
+		this.readerData = readerData;
+		this.writerKey = writerKey;
+		this.writerData = writerData;
+		this.stepExecutionId = stepExecutionId;
+		this.stepStatus = stepStatus;
+	}
+
+	public ChunkCommitUnit(CheckpointDataKey readerKey, CheckpointData readerData,
+			CheckpointDataKey writerKey, CheckpointData writerData,
+			CheckpointDataKey userDataKey, CheckpointData userData) {
+		this(readerKey, readerData, writerKey, writerData, 0, null);
+		this.userDataKey = userDataKey;
+		this.userData = userData;
+	}
+
+	public CheckpointDataKey getReaderKey() {
+		return readerKey;
+	}
+
+	public CheckpointData getReaderData() {
+		return readerData;
+	}
+
+	public CheckpointDataKey getWriterKey() {
+		return writerKey;
+	}
+
+	public CheckpointData getWriterData() {
+		return writerData;
+	}
+
+	public long getStepExecutionId() {
+		return stepExecutionId;
+	}
+
+	public StepStatus getStepStatus() {
+		return stepStatus;
+	}
+
+	public CheckpointDataKey getUserDataKey() {
+		return userDataKey;
+	}
+
+	public CheckpointData getUserData() {
+		return userData;
+	}
+
+	public String toString() {
+		return "ChunkCommitUnit reader: [" + readerKey + "], writer: [" + writerKey + "], userData: [" + userDataKey + "], stepExecutionId: " + stepExecutionId;
+	}
+}
@@ -16,7 +16,6 @@
 */
 package com.ibm.jbatch.container.persistence;
 
-import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,7 +51,7 @@ public final class ItemCheckpointAlgorithm implements CheckpointAlgorithm {
         	logger.fine("ITEMCHKPT: item checkpoint hit");
 
         	if(logger.isLoggable(Level.FINER)) { 
-        		long millis =  Long.valueOf( (new Date().getTime()) - checkpointBeginTime );
+        		long millis =  System.currentTimeMillis() - checkpointBeginTime;
         		if ( millis>0 ) { 
         			String rate =  Integer.valueOf ( Long.valueOf( (itemsRead*1000/millis) ).intValue()).toString();
         			logger.finer(" - true [itemsReadAndProcessed/second " + rate + "]");
@@ -70,8 +69,7 @@ public final class ItemCheckpointAlgorithm implements CheckpointAlgorithm {
     	if(logger.isLoggable(Level.FINER)) { logger.entering(className, method); }
 
         boolean timeready = false;
-        java.util.Date curDate = new java.util.Date();
-        long curts = curDate.getTime();
+        long curts = System.currentTimeMillis();
         long curdiff = curts - checkpointBeginTime;
         int diff = (int)curdiff / 1000;
         
@@ -102,10 +100,17 @@ public final class ItemCheckpointAlgorithm implements CheckpointAlgorithm {
 		return false;
 	}
 
+	/**
+	 * As isReadyToCheckpoint(), once for several items read together.
+	 */
+	public boolean isReadyToCheckpoint(int items) {
+		itemsRead += items - 1;
+		return isReadyToCheckpoint();
+	}
+
 	@Override
 	public void beginCheckpoint() throws Exception {
-		java.util.Date date = new java.util.Date();
-        checkpointBeginTime = date.getTime();
+        checkpointBeginTime = System.currentTimeMillis();
         itemsRead = 0;
 	}
 
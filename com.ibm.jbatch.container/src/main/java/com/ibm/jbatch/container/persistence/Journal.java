@@ -0,0 +1,410 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.ibm.jbatch.container.exception.PersistenceException;
+
+/**
+ * An append-only log of opaque frames, kept in a directory as a series of
+ * fixed-size memory-mapped segment files plus, once it has been compacted, a
+ * snapshot file standing in for every segment before it.
+ *
+ * Each frame is written as its length, a CRC32 of its bytes, then the bytes.
+ * Frames written to a mapped segment are in the OS page cache as soon as the
+ * put returns, so they survive the JVM dying; {@link #sync(long)} also forces
+ * them to disk, to survive the OS or machine going down.  Concurrent callers of
+ * sync() share a single force of everything appended so far.
+ *
+ * A frame torn by a crash fails its length or CRC check and ends the replay of
+ * its segment.  A new segment is started on every open, so nothing is ever
+ * appended after one.
+ */
+public class Journal {
+
+	private static final String CLASSNAME = Journal.class.getName();
+
+	private final static Logger logger = Logger.getLogger(CLASSNAME);
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SUFFIX = ".log";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static final int FRAME_HEADER_SIZE = 8;
+
+	/**
+	 * Receives each frame on replay.
+	 */
+	public interface FrameHandler {
+		void handle(byte[] frame) throws IOException;
+	}
+
+	/**
+	 * Writes the frames of a snapshot.
+	 */
+	public interface SnapshotWriter {
+		void writeTo(FrameSink sink) throws IOException;
+	}
+
+	public interface FrameSink {
+		void write(byte[] frame) throws IOException;
+	}
+
+	private final File directory;
+	private final int segmentSize;
+	private final boolean force;
+
+	// Guarded by this
+	private long segmentSeq;
+	private MappedByteBuffer segment;
+	private long appendedLsn;
+	private int segmentsSinceSnapshot;
+	// Segments appended to since the last sync
+	private List<MappedByteBuffer> dirtySegments = new ArrayList<MappedByteBuffer>();
+
+	private final Object syncLock = new Object();
+	// Guarded by syncLock
+	private long syncedLsn;
+
+	/**
+	 * @param directory where the segment and snapshot files go, created if need be
+	 * @param segmentSize the size of each segment file, though a frame bigger than
+	 * that gets a segment of its own big enough to hold it
+	 * @param force whether sync() forces appended frames to disk, or leaves them
+	 * to the OS, which is enough to survive the JVM but not the machine crashing
+	 */
+	public Journal(File directory, int segmentSize, boolean force) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.force = force;
+	}
+
+	/**
+	 * Replays the latest snapshot and every segment written after it, in the
+	 * order they were appended, then starts a new segment to append to.
+	 */
+	public synchronized void open(FrameHandler handler) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create journal directory " + directory);
+		}
+
+		TreeMap<Long, File> segments = new TreeMap<Long, File>();
+		TreeMap<Long, File> snapshots = new TreeMap<Long, File>();
+		File[] files = directory.listFiles();
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(TMP_SUFFIX)) {
+				// A snapshot that never got finished
+				delete(file);
+			} else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SUFFIX)) {
+				segments.put(parseSeq(name, SEGMENT_PREFIX), file);
+			} else if (name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SUFFIX)) {
+				snapshots.put(parseSeq(name, SNAPSHOT_PREFIX), file);
+			}
+		}
+
+		long snapshotSeq = 0;
+		if (!snapshots.isEmpty()) {
+			snapshotSeq = snapshots.lastKey();
+			replaySnapshot(snapshots.lastEntry().getValue(), handler);
+		}
+		segmentSeq = snapshotSeq;
+		for (Long seq : segments.keySet()) {
+			File file = segments.get(seq);
+			if (seq <= snapshotSeq) {
+				// Left behind by a crash between writing the snapshot and cleaning up after it
+				delete(file);
+			} else {
+				replaySegment(file, handler);
+				segmentsSinceSnapshot++;
+			}
+			segmentSeq = Math.max(segmentSeq, seq);
+		}
+		for (Long seq : snapshots.headMap(snapshotSeq).keySet()) {
+			delete(snapshots.get(seq));
+		}
+
+		startSegment(segmentSize);
+	}
+
+	/**
+	 * @param frame not empty, since a zero length marks the end of a segment
+	 * @return the log sequence number to sync() on to make sure the frame is on disk
+	 */
+	public synchronized long append(byte[] frame) throws IOException {
+		if (frame.length == 0) {
+			throw new IllegalArgumentException("Empty journal frame");
+		}
+		int needed = FRAME_HEADER_SIZE + frame.length;
+		if (segment == null) {
+			throw new IOException("Journal " + directory + " is not open");
+		}
+		if (segment.remaining() < needed) {
+			startSegment(Math.max(segmentSize, needed));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(frame);
+		// The length goes in last, so a frame is never seen before the rest of it is there
+		int start = segment.position();
+		segment.position(start + 4);
+		segment.putInt((int) crc.getValue());
+		segment.put(frame);
+		segment.putInt(start, frame.length);
+		appendedLsn += needed;
+		return appendedLsn;
+	}
+
+	/**
+	 * Returns once the frame append() gave lsn for is forced to disk, along with
+	 * everything appended before it.  Whoever gets here first forces all that's
+	 * been appended so far, which often covers the threads waiting behind it.
+	 */
+	public void sync(long lsn) throws IOException {
+		if (!force) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (syncedLsn >= lsn) {
+				return;
+			}
+			long target;
+			List<MappedByteBuffer> toForce;
+			synchronized (this) {
+				target = appendedLsn;
+				toForce = dirtySegments;
+				dirtySegments = new ArrayList<MappedByteBuffer>();
+				if (segment != null) {
+					dirtySegments.add(segment);
+				}
+			}
+			for (MappedByteBuffer buffer : toForce) {
+				buffer.force();
+			}
+			syncedLsn = target;
+		}
+	}
+
+	/**
+	 * @return how many segments have been started since the last snapshot, not counting the current one
+	 */
+	public synchronized int getSegmentsSinceSnapshot() {
+		return segmentsSinceSnapshot;
+	}
+
+	/**
+	 * Starts a new segment, so everything appended from now on is after the one returned.
+	 *
+	 * @return the sequence number of the last segment a snapshot taken from now on can replace
+	 */
+	public synchronized long roll() throws IOException {
+		long sealed = segmentSeq;
+		startSegment(segmentSize);
+		return sealed;
+	}
+
+	/**
+	 * Writes a snapshot to replace every segment up to and including sealedSeq,
+	 * then deletes them.  The snapshot has to include at least everything in
+	 * those segments; it doesn't matter if it includes some of what's in later
+	 * ones, as long as replaying those again on top of it comes out the same.
+	 */
+	public void writeSnapshot(long sealedSeq, SnapshotWriter writer) throws IOException {
+		File tmp = new File(directory, fileName(SNAPSHOT_PREFIX, sealedSeq) + TMP_SUFFIX);
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+			writer.writeTo(new FrameSink() {
+				@Override
+				public void write(byte[] frame) throws IOException {
+					CRC32 crc = new CRC32();
+					crc.update(frame);
+					out.writeInt(frame.length);
+					out.writeInt((int) crc.getValue());
+					out.write(frame);
+				}
+			});
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+
+		File snapshot = new File(directory, fileName(SNAPSHOT_PREFIX, sealedSeq));
+		if (!tmp.renameTo(snapshot)) {
+			delete(tmp);
+			throw new IOException("Could not rename " + tmp + " to " + snapshot);
+		}
+
+		synchronized (this) {
+			segmentsSinceSnapshot = (int) Math.max(0, segmentSeq - sealedSeq - 1);
+		}
+		File[] files = directory.listFiles();
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.endsWith(SUFFIX)) {
+				continue;
+			}
+			if ((name.startsWith(SEGMENT_PREFIX) && parseSeq(name, SEGMENT_PREFIX) <= sealedSeq)
+					|| (name.startsWith(SNAPSHOT_PREFIX) && parseSeq(name, SNAPSHOT_PREFIX) < sealedSeq)) {
+				delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Forces what's been appended and stops taking appends.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (segment == null) {
+				return;
+			}
+		}
+		sync(Long.MAX_VALUE);
+		synchronized (this) {
+			if (!force) {
+				segment.force();
+			}
+			segment = null;
+			dirtySegments.clear();
+		}
+	}
+
+	// Guarded by this
+	private void startSegment(int size) throws IOException {
+		if (segment != null) {
+			segmentsSinceSnapshot++;
+		}
+		segmentSeq++;
+		File file = new File(directory, fileName(SEGMENT_PREFIX, segmentSeq));
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			// The mapping stays good after the file is closed
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+		// Without force nothing ever drains the list, and it would keep every mapping reachable
+		if (force) {
+			dirtySegments.add(segment);
+		}
+	}
+
+	private void replaySegment(File file, FrameHandler handler) throws IOException {
+		MappedByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		int frames = 0;
+		while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+			int length = buffer.getInt();
+			if (length == 0) {
+				break;
+			}
+			int crc = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				logger.warning("Journal segment " + file + " has a torn frame after " + frames + " frames, ignoring the rest of it");
+				break;
+			}
+			byte[] frame = new byte[length];
+			buffer.get(frame);
+			if (!checksum(frame, crc)) {
+				logger.warning("Journal segment " + file + " has a torn frame after " + frames + " frames, ignoring the rest of it");
+				break;
+			}
+			handler.handle(frame);
+			frames++;
+		}
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Replayed " + frames + " frames from " + file);
+		}
+	}
+
+	/*
+	 * A snapshot was synced before it was renamed into place, so anything wrong with it is corruption.
+	 */
+	private void replaySnapshot(File file, FrameHandler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				int crc = in.readInt();
+				byte[] frame = new byte[length];
+				in.readFully(frame);
+				if (!checksum(frame, crc)) {
+					throw new PersistenceException("Journal snapshot " + file + " is corrupt");
+				}
+				handler.handle(frame);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean checksum(byte[] frame, int expected) {
+		CRC32 crc = new CRC32();
+		crc.update(frame);
+		return (int) crc.getValue() == expected;
+	}
+
+	private static String fileName(String prefix, long seq) {
+		return prefix + String.format("%020d", seq) + SUFFIX;
+	}
+
+	private static long parseSeq(String name, String prefix) {
+		try {
+			return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			throw new PersistenceException("Unexpected file " + name + " in journal directory", e);
+		}
+	}
+
+	private static void delete(File file) {
+		if (!file.delete()) {
+			// Windows won't delete a file while it's still mapped, so it's left for the next time around
+			logger.warning("Could not delete journal file " + file);
+		}
+	}
+}
@@ -16,7 +16,6 @@
  */
 package com.ibm.jbatch.container.services;
 
-import java.util.List;
 import java.util.Properties;
 
 import javax.batch.operations.JobExecutionAlreadyCompleteException;
@@ -33,6 +32,7 @@ import com.ibm.jbatch.container.util.BatchPartitionWorkUnit;
 import com.ibm.jbatch.container.util.BatchWorkUnit;
 import com.ibm.jbatch.container.util.FlowInSplitBuilderConfig;
 import com.ibm.jbatch.container.util.PartitionsBuilderConfig;
+import com.ibm.jbatch.jsl.model.JSLJob;
 import com.ibm.jbatch.spi.BatchSecurityHelper;
 import com.ibm.jbatch.spi.services.IBatchServiceBase;
 
@@ -58,9 +58,24 @@ public interface IBatchKernelService extends IBatchServiceBase {
 
 	BatchSecurityHelper getBatchSecurityHelper();
 
-    List<BatchPartitionWorkUnit> buildNewParallelPartitions(PartitionsBuilderConfig config) throws JobRestartException, JobStartException;
+    BatchPartitionWorkUnit buildNewParallelPartition(PartitionsBuilderConfig config, JSLJob jobModel, int instance) throws JobRestartException, JobStartException;
 
-    List<BatchPartitionWorkUnit> buildOnRestartParallelPartitions(PartitionsBuilderConfig config) throws JobRestartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException;
+    /**
+     * @return null if the partition already completed in a previous execution
+     */
+    BatchPartitionWorkUnit buildOnRestartParallelPartition(PartitionsBuilderConfig config, JSLJob jobModel, int instance) throws JobRestartException, JobExecutionAlreadyCompleteException, JobExecutionNotMostRecentException;
+
+    /**
+     * Builds a second copy of a lightweight partition that's already running, to run the
+     * partition again from the beginning alongside it.
+     */
+    BatchPartitionWorkUnit buildSpeculativeParallelPartition(PartitionsBuilderConfig config, JSLJob jobModel, int instance);
+
+    /**
+     * @return true if new partition plans run their partitions in memory rather
+     * than as sub-jobs in the job repository (PARTITION_MODE=lightweight)
+     */
+    boolean isInMemoryPartitionMode();
 
     void startGeneratedJob(BatchWorkUnit batchWork);
 
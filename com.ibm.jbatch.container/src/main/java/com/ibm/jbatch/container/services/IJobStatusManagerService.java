@@ -69,6 +69,20 @@ public interface IJobStatusManagerService extends IBatchServiceBase {
 
     public abstract StepStatus getStepStatus(long jobInstanceId, String stepId) throws BatchContainerServiceException ;
 
+    /**
+     * Called by the kernel when an execution of the instance starts running.  Until
+     * {@link #unregisterRunningInstance(long)} the JobStatus may be served from memory,
+     * so while it's running the instance's JobStatus must only be updated through this service.
+     * @param jobInstanceId
+     */
+    public void registerRunningInstance(long jobInstanceId);
+
+    /**
+     * Called by the kernel once the execution is done, dropping anything held for the instance.
+     * @param jobInstanceId
+     */
+    public void unregisterRunningInstance(long jobInstanceId);
+
 
 
 }
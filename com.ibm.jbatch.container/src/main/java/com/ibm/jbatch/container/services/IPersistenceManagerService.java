@@ -33,6 +33,7 @@ import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
 import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
 import com.ibm.jbatch.container.persistence.CheckpointData;
 import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
 import com.ibm.jbatch.container.status.JobStatus;
 import com.ibm.jbatch.container.status.StepStatus;
 import com.ibm.jbatch.spi.services.IBatchServiceBase;
@@ -55,6 +56,19 @@ public interface IPersistenceManagerService extends IBatchServiceBase {
 
 	public List<Long> jobOperatorGetJobInstanceIds(String jobName, String appTag, int start, int count);
 
+	/**
+	 * Keyset alternative to paging by position, which stays cheap however deep the
+	 * caller pages: the next count instance ids for jobName, in the same newest-first
+	 * order as jobOperatorGetJobInstanceIds, that come after lastInstanceId (i.e. are
+	 * lower than it).  Pass Long.MAX_VALUE to get the first page.
+	 */
+	public List<Long> jobOperatorGetJobInstanceIdsAfter(String jobName, long lastInstanceId, int count);
+
+	/**
+	 * As {@link #jobOperatorGetJobInstanceIdsAfter(String, long, int)}, limited to instances with the given apptag.
+	 */
+	public List<Long> jobOperatorGetJobInstanceIdsAfter(String jobName, String appTag, long lastInstanceId, int count);
+
 	public Timestamp jobOperatorQueryJobExecutionTimestamp(long key, TimestampType timetype);
 
 	public String jobOperatorQueryJobExecutionBatchStatus(long key);
@@ -209,6 +223,22 @@ public interface IPersistenceManagerService extends IBatchServiceBase {
 
 	void createCheckpointData(CheckpointDataKey key, CheckpointData value);
 
+	/**
+	 * Delete the reader and writer checkpoints of a step, if there are any.
+	 *
+	 * @param jobInstanceId the job instance the checkpoints are kept under
+	 * @param stepName the step name the checkpoints are kept under
+	 */
+	public void deleteCheckpointData(long jobInstanceId, String stepName);
+
+	/**
+	 * Persist the reader checkpoint, writer checkpoint and step status
+	 * written at a chunk boundary together, as one unit of work.
+	 *
+	 * @param unit the checkpoints and step status to persist
+	 */
+	public void updateChunkCommitUnit(ChunkCommitUnit unit);
+
 	long getMostRecentExecutionId(long jobInstanceId);
 
 	JobInstance createSubJobInstance(String name, String apptag);
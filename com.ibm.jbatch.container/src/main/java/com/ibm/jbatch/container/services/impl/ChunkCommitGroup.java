@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.jbatch.container.exception.PersistenceException;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+
+/**
+ * Group commit for chunk commit units coming from many threads at once, e.g. the
+ * partitions of a partitioned step.
+ *
+ * The first thread in becomes the leader: it waits up to the window for more
+ * units to show up (or until there are maxBatch of them), takes everything
+ * pending and writes it in one transaction.  Everyone else waits for the batch
+ * their unit ended up in to be written, and only returns once it is.  Units that
+ * arrive while a batch is being written make up the next one, so there's some
+ * grouping under load even with no window at all.
+ *
+ * If a batch fails, its units are written one at a time, so one bad unit only
+ * fails its own chunk.
+ */
+class ChunkCommitGroup {
+
+	private static final String CLASSNAME = ChunkCommitGroup.class.getName();
+
+	private final static Logger logger = Logger.getLogger(CLASSNAME);
+
+	/**
+	 * Writes a batch of units in one transaction.
+	 */
+	interface Flusher {
+		void flush(List<ChunkCommitUnit> units);
+	}
+
+	private static class Pending {
+		final ChunkCommitUnit unit;
+		boolean done;
+		RuntimeException failure;
+
+		Pending(ChunkCommitUnit unit) {
+			this.unit = unit;
+		}
+	}
+
+	private final Flusher flusher;
+	private final int maxBatch;
+	private final long windowNanos;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// Signalled when a batch is done, and when the pending batch fills up
+	private final Condition changed = lock.newCondition();
+	// Guarded by lock
+	private List<Pending> pending = new ArrayList<Pending>();
+	private boolean flushing;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong units = new AtomicLong();
+
+	ChunkCommitGroup(Flusher flusher, int maxBatch, long windowMillis) {
+		this.flusher = flusher;
+		this.maxBatch = maxBatch;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+	}
+
+	/**
+	 * Returns once the unit has been written, or throws what writing it threw.
+	 * Waits through interrupts, since the chunk can't go on until then either way.
+	 */
+	void commit(ChunkCommitUnit unit) {
+		Pending mine = new Pending(unit);
+		List<Pending> batch = null;
+		boolean interrupted = false;
+		lock.lock();
+		try {
+			pending.add(mine);
+			if (pending.size() >= maxBatch) {
+				changed.signalAll();
+			}
+			while (flushing && !mine.done) {
+				try {
+					changed.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (!mine.done) {
+				// Leader for the next batch
+				flushing = true;
+				long remaining = windowNanos;
+				while (remaining > 0 && pending.size() < maxBatch) {
+					try {
+						remaining = changed.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (pending.size() <= maxBatch) {
+					batch = pending;
+					pending = new ArrayList<Pending>();
+				} else {
+					// More piled up than fit in a batch while the last one was written; the
+					// leader's own unit has to be in the batch it writes, the rest go first come first served
+					pending.remove(mine);
+					batch = new ArrayList<Pending>(maxBatch);
+					batch.add(mine);
+					batch.addAll(pending.subList(0, maxBatch - 1));
+					pending = new ArrayList<Pending>(pending.subList(maxBatch - 1, pending.size()));
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (batch != null) {
+			boolean flushed = false;
+			try {
+				flush(batch);
+				flushed = true;
+			} finally {
+				lock.lock();
+				try {
+					for (Pending p : batch) {
+						if (!flushed && p.failure == null) {
+							p.failure = new PersistenceException("Chunk commit batch was not written");
+						}
+						p.done = true;
+					}
+					flushing = false;
+					changed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+		if (mine.failure != null) {
+			throw mine.failure;
+		}
+	}
+
+	private void flush(List<Pending> batch) {
+		List<ChunkCommitUnit> batchUnits = new ArrayList<ChunkCommitUnit>(batch.size());
+		for (Pending p : batch) {
+			batchUnits.add(p.unit);
+		}
+		batches.incrementAndGet();
+		units.addAndGet(batch.size());
+		try {
+			flusher.flush(batchUnits);
+			return;
+		} catch (RuntimeException e) {
+			if (batch.size() == 1) {
+				batch.get(0).failure = e;
+				return;
+			}
+			logger.log(Level.FINE, "Chunk commit batch of " + batch.size() + " failed, committing them one at a time", e);
+		}
+		for (Pending p : batch) {
+			try {
+				flusher.flush(Collections.singletonList(p.unit));
+			} catch (RuntimeException e) {
+				p.failure = e;
+			}
+		}
+	}
+
+	/**
+	 * @return how many batches have been written
+	 */
+	long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * @return how many units have been written, across all batches
+	 */
+	long getUnitCount() {
+		return units.get();
+	}
+}
@@ -0,0 +1,657 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.services.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small bounded pool of JDBC connections for SE mode, where there is no
+ * DataSource to hand us pooled connections and we'd otherwise open a new
+ * physical connection (and run SET SCHEMA) for every persistence call.
+ *
+ * Callers get a proxy whose close() hands the physical connection back to the
+ * pool, so code written against plain DriverManager connections works unchanged.
+ * Each physical connection also keeps a small LRU cache of prepared statements,
+ * since the persistence manager prepares the same handful of SQL strings over
+ * and over.
+ *
+ * Idle connections are kept most-recently-used first; anything that has sat at
+ * the far end of the idle list for longer than the idle timeout is closed the
+ * next time a connection is borrowed or returned.
+ */
+public class JDBCConnectionPool {
+
+	private static final String CLASSNAME = JDBCConnectionPool.class.getName();
+
+	private final static Logger logger = Logger.getLogger(CLASSNAME);
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private final String url;
+	private final String userId;
+	private final String pwd;
+
+	private final int maxSize;
+	private final long maxWaitMillis;
+	private final boolean validateOnBorrow;
+	private final long idleTimeoutMillis;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private volatile boolean closed = false;
+
+	// Metrics
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final AtomicInteger openCount = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong destroyedCount = new AtomicLong();
+	private final AtomicLong validationFailureCount = new AtomicLong();
+	private final AtomicLong statementCacheHits = new AtomicLong();
+	private final AtomicLong statementCacheMisses = new AtomicLong();
+
+	/**
+	 * @param url JDBC URL handed to DriverManager
+	 * @param userId database user
+	 * @param pwd database password
+	 * @param maxSize most physical connections open at once, must be at least 1
+	 * @param maxWaitMillis how long getConnection() waits for a free connection before failing
+	 * @param validateOnBorrow whether to check idle connections with isValid() before handing them out
+	 * @param idleTimeoutSeconds idle connections older than this are closed, 0 to keep them forever
+	 * @param statementCacheSize prepared statements cached per connection, 0 to disable
+	 */
+	public JDBCConnectionPool(String url, String userId, String pwd, int maxSize, long maxWaitMillis,
+			boolean validateOnBorrow, long idleTimeoutSeconds, int statementCacheSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Connection pool size must be at least 1, was: " + maxSize);
+		}
+		this.url = url;
+		this.userId = userId;
+		this.pwd = pwd;
+		this.maxSize = maxSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.validateOnBorrow = validateOnBorrow;
+		this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize);
+	}
+
+	/**
+	 * Hook for per-connection setup (e.g. setting the schema), run once when a
+	 * physical connection is opened rather than on every borrow.
+	 */
+	protected void initializeConnection(Connection connection) throws SQLException {
+	}
+
+	/**
+	 * Borrow a connection, waiting up to the configured max wait if all
+	 * connections are in use.  Closing the returned connection returns it to
+	 * the pool.
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool for " + url + " has been closed");
+		}
+
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a pooled connection to " + url, e);
+		}
+		recordWait(System.nanoTime() - start);
+
+		if (!acquired) {
+			timeoutCount.incrementAndGet();
+			throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for one of the " + maxSize
+					+ " pooled connections to " + url);
+		}
+
+		boolean borrowed = false;
+		try {
+			PooledConnection pooled = takeIdle();
+			if (pooled == null) {
+				pooled = open();
+			}
+			activeCount.incrementAndGet();
+			borrowed = true;
+			return pooled.newHandle();
+		} finally {
+			if (!borrowed) {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Close all idle connections and stop handing out new ones.  Connections
+	 * currently borrowed are closed as they are returned.
+	 */
+	public void close() {
+		closed = true;
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			destroy(pooled);
+		}
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Closed connection pool: " + this);
+		}
+	}
+
+	private PooledConnection takeIdle() {
+		long now = System.currentTimeMillis();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (isExpired(pooled, now)) {
+				destroy(pooled);
+			} else if (validateOnBorrow && !pooled.isValid()) {
+				validationFailureCount.incrementAndGet();
+				destroy(pooled);
+			} else {
+				return pooled;
+			}
+		}
+		return null;
+	}
+
+	private PooledConnection open() throws SQLException {
+		logger.finest("Opening pooled connection to " + url);
+		Connection physical = DriverManager.getConnection(url, userId, pwd);
+		try {
+			initializeConnection(physical);
+		} catch (SQLException e) {
+			closeQuietly(physical);
+			throw e;
+		}
+		createdCount.incrementAndGet();
+		openCount.incrementAndGet();
+		return new PooledConnection(physical);
+	}
+
+	private void release(PooledConnection pooled) {
+		activeCount.decrementAndGet();
+		try {
+			if (closed || !pooled.reset()) {
+				destroy(pooled);
+			} else {
+				pooled.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			}
+			evictIdle();
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void evictIdle() {
+		if (idleTimeoutMillis <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		PooledConnection oldest;
+		while ((oldest = idle.peekLast()) != null && isExpired(oldest, now)) {
+			if (idle.removeLastOccurrence(oldest)) {
+				destroy(oldest);
+			}
+		}
+	}
+
+	private boolean isExpired(PooledConnection pooled, long now) {
+		return idleTimeoutMillis > 0 && now - pooled.lastUsed > idleTimeoutMillis;
+	}
+
+	private void destroy(PooledConnection pooled) {
+		pooled.closePhysical();
+		destroyedCount.incrementAndGet();
+		openCount.decrementAndGet();
+	}
+
+	private void recordWait(long nanos) {
+		borrowCount.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		long max = maxWaitNanos.get();
+		while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+			max = maxWaitNanos.get();
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			logger.log(Level.FINE, "Ignoring failure closing pooled connection", e);
+		}
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return connections currently borrowed
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * @return connections sitting in the pool waiting to be borrowed
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return physical connections currently open, borrowed or idle
+	 */
+	public int getOpenCount() {
+		return openCount.get();
+	}
+
+	/**
+	 * @return fraction (0.0 - 1.0) of the pool's capacity currently borrowed
+	 */
+	public double getUtilization() {
+		return (double) activeCount.get() / maxSize;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * @return borrows that gave up after waiting the max wait time
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	public double getAverageWaitMillis() {
+		long borrows = borrowCount.get();
+		return borrows == 0 ? 0 : (totalWaitNanos.get() / 1000000.0) / borrows;
+	}
+
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount.get();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount.get();
+	}
+
+	public long getStatementCacheHits() {
+		return statementCacheHits.get();
+	}
+
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.get();
+	}
+
+	public String toString() {
+		return "JDBCConnectionPool url: " + url + ", maxSize: " + maxSize + ", active: " + getActiveCount()
+				+ ", idle: " + getIdleCount() + ", borrows: " + getBorrowCount() + ", timeouts: " + getTimeoutCount()
+				+ ", avgWaitMillis: " + getAverageWaitMillis() + ", maxWaitMillis: " + getMaxWaitMillis()
+				+ ", created: " + getCreatedCount() + ", destroyed: " + getDestroyedCount()
+				+ ", statementCacheHits: " + getStatementCacheHits() + ", statementCacheMisses: " + getStatementCacheMisses();
+	}
+
+	/**
+	 * A physical connection plus its statement cache.  Only ever used by one
+	 * borrower at a time, so no synchronization is needed below this level.
+	 */
+	private class PooledConnection {
+
+		private final Connection physical;
+		private final LinkedHashMap<String, CachedStatement> statements;
+		// Dropped from the cache while checked out, so closed when they're checked in
+		private final List<CachedStatement> evictedInUse = new ArrayList<CachedStatement>();
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+					if (size() > statementCacheSize) {
+						CachedStatement evicted = eldest.getValue();
+						evicted.evict();
+						if (evicted.inUse) {
+							evictedInUse.add(evicted);
+						}
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		Connection newHandle() {
+			return (Connection) Proxy.newProxyInstance(JDBCConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new ConnectionHandle(this));
+		}
+
+		boolean isValid() {
+			try {
+				return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Put the connection back how the next borrower expects to find it.
+		 *
+		 * @return false if the connection is no longer usable
+		 */
+		boolean reset() {
+			try {
+				for (CachedStatement statement : statements.values()) {
+					statement.checkIn();
+				}
+				for (Iterator<CachedStatement> it = evictedInUse.iterator(); it.hasNext();) {
+					it.next().checkIn();
+					it.remove();
+				}
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+				physical.clearWarnings();
+				return !physical.isClosed();
+			} catch (SQLException e) {
+				logger.log(Level.FINE, "Discarding pooled connection that failed to reset", e);
+				return false;
+			}
+		}
+
+		PreparedStatement prepare(String key, Method method, Object[] args) throws Throwable {
+			CachedStatement cached = statements.get(key);
+			if (cached != null && !cached.inUse) {
+				statementCacheHits.incrementAndGet();
+			} else {
+				statementCacheMisses.incrementAndGet();
+				PreparedStatement statement = (PreparedStatement) invoke(physical, method, args);
+				if (cached != null) {
+					// The same SQL is already checked out (e.g. nested use), so
+					// hand out a one-off statement rather than sharing.
+					return statement;
+				}
+				cached = new CachedStatement(statement);
+				statements.put(key, cached);
+			}
+			return cached.checkOut();
+		}
+
+		void closePhysical() {
+			for (CachedStatement statement : statements.values()) {
+				statement.evict();
+			}
+			statements.clear();
+			// Closing the connection closes these
+			evictedInUse.clear();
+			closeQuietly(physical);
+		}
+	}
+
+	/**
+	 * Borrower's view of a pooled connection.  close() returns the connection to
+	 * the pool and makes this handle unusable; repeat closes are ignored.
+	 */
+	private class ConnectionHandle implements InvocationHandler {
+
+		private final PooledConnection pooled;
+		private boolean handleClosed = false;
+
+		ConnectionHandle(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			int argCount = args == null ? 0 : args.length;
+
+			if ("close".equals(name) && argCount == 0) {
+				if (!handleClosed) {
+					handleClosed = true;
+					release(pooled);
+				}
+				return null;
+			} else if ("isClosed".equals(name) && argCount == 0) {
+				return handleClosed;
+			} else if ("equals".equals(name) && argCount == 1) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name) && argCount == 0) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name) && argCount == 0) {
+				return "Pooled[" + pooled.physical + "]";
+			}
+
+			if (handleClosed) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+
+			if ("prepareStatement".equals(name) && statementCacheSize > 0) {
+				String key = statementKey(args);
+				if (key != null) {
+					return pooled.prepare(key, method, args);
+				}
+			}
+			return JDBCConnectionPool.invoke(pooled.physical, method, args);
+		}
+
+		/**
+		 * Only prepareStatement(String) and prepareStatement(String, String[])
+		 * are cached; those are the only variants the persistence manager uses.
+		 */
+		private String statementKey(Object[] args) {
+			if (args.length == 1) {
+				return (String) args[0];
+			} else if (args.length == 2 && args[1] instanceof String[]) {
+				return args[0] + "|" + Arrays.toString((String[]) args[1]);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A prepared statement that stays open across borrowers.  close() on the
+	 * proxy handed out just clears it for the next user.
+	 */
+	private static class CachedStatement {
+
+		private final PreparedStatement statement;
+		// The driver's defaults, put back for the next borrower
+		private final int queryTimeout;
+		private final int fetchSize;
+		private boolean inUse = false;
+		private boolean evicted = false;
+		private List<StatementHandle> handles = new ArrayList<StatementHandle>(1);
+
+		CachedStatement(PreparedStatement statement) throws SQLException {
+			this.statement = statement;
+			this.queryTimeout = statement.getQueryTimeout();
+			this.fetchSize = statement.getFetchSize();
+		}
+
+		PreparedStatement checkOut() {
+			inUse = true;
+			StatementHandle handle = new StatementHandle(this);
+			handles.add(handle);
+			return (PreparedStatement) Proxy.newProxyInstance(JDBCConnectionPool.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, handle);
+		}
+
+		/**
+		 * Called when a handle is closed, and for every statement when the
+		 * connection goes back to the pool, so statements the borrower forgot
+		 * to close don't stay checked out forever.
+		 */
+		void checkIn() throws SQLException {
+			for (Iterator<StatementHandle> it = handles.iterator(); it.hasNext();) {
+				it.next().handleClosed = true;
+				it.remove();
+			}
+			if (inUse) {
+				inUse = false;
+				if (evicted) {
+					statement.close();
+				} else {
+					statement.clearParameters();
+					statement.clearBatch();
+					statement.setMaxRows(0);
+					statement.setQueryTimeout(queryTimeout);
+					statement.setFetchSize(fetchSize);
+				}
+			}
+		}
+
+		/**
+		 * Dropped from the cache; close now unless someone still holds it.
+		 */
+		void evict() {
+			evicted = true;
+			if (!inUse) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					logger.log(Level.FINE, "Ignoring failure closing cached statement", e);
+				}
+			}
+		}
+	}
+
+	private static class StatementHandle implements InvocationHandler {
+
+		private final CachedStatement cached;
+		private boolean handleClosed = false;
+
+		StatementHandle(CachedStatement cached) {
+			this.cached = cached;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			int argCount = args == null ? 0 : args.length;
+
+			if ("close".equals(name) && argCount == 0) {
+				if (!handleClosed) {
+					cached.checkIn();
+				}
+				return null;
+			} else if ("isClosed".equals(name) && argCount == 0) {
+				return handleClosed;
+			} else if ("equals".equals(name) && argCount == 1) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name) && argCount == 0) {
+				return System.identityHashCode(proxy);
+			}
+
+			if (handleClosed) {
+				throw new SQLException("Statement has already been closed");
+			}
+			Object result = JDBCConnectionPool.invoke(cached.statement, method, args);
+			if (result instanceof ResultSet) {
+				// Otherwise getStatement() on it hands out the cached statement itself
+				return Proxy.newProxyInstance(JDBCConnectionPool.class.getClassLoader(),
+						new Class<?>[] { ResultSet.class }, new ResultSetHandle((ResultSet) result, (Statement) proxy));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A result set from a cached statement, whose getStatement() gives back the
+	 * borrower's handle rather than the statement the pool keeps open.
+	 */
+	private static class ResultSetHandle implements InvocationHandler {
+
+		private final ResultSet resultSet;
+		private final Statement statement;
+
+		ResultSetHandle(ResultSet resultSet, Statement statement) {
+			this.resultSet = resultSet;
+			this.statement = statement;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			int argCount = args == null ? 0 : args.length;
+
+			if ("getStatement".equals(name) && argCount == 0) {
+				return statement;
+			} else if ("equals".equals(name) && argCount == 1) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name) && argCount == 0) {
+				return System.identityHashCode(proxy);
+			}
+			return JDBCConnectionPool.invoke(resultSet, method, args);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.services.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The handful of places where JDBCPersistenceManagerImpl needs SQL that isn't
+ * portable, keyed off DatabaseMetaData.getDatabaseProductName().
+ *
+ * Databases we don't recognize get GENERIC, which sticks to plain SQL.
+ */
+enum JDBCDialect implements JDBCPersistenceManagerSQLConstants {
+
+	// Derby has no MERGE before 10.11, so it uses update-then-insert like GENERIC.
+	DERBY(null, Paging.OFFSET_FETCH),
+	// ROW_NUMBER rather than OFFSET/FETCH so older DB2 and Oracle 11g work too
+	DB2(UPSERT_CHECKPOINTDATA_DB2, Paging.ROW_NUMBER),
+	ORACLE(UPSERT_CHECKPOINTDATA_ORACLE, Paging.ROW_NUMBER) {
+		@Override
+		void bindCheckpointUpsert(PreparedStatement statement, long jobInstanceId, String stepName, String type, byte[] obj) throws SQLException {
+			super.bindCheckpointUpsert(statement, jobInstanceId, stepName, type, obj);
+			statement.setLong(5, jobInstanceId);
+			statement.setString(6, stepName);
+			statement.setString(7, type);
+			statement.setBytes(8, obj);
+		}
+	},
+	// OFFSET/FETCH needs SQL Server 2012 or later
+	SQLSERVER(UPSERT_CHECKPOINTDATA_SQLSERVER, Paging.OFFSET_FETCH),
+	// ON CONFLICT needs PostgreSQL 9.5 or later
+	POSTGRESQL(UPSERT_CHECKPOINTDATA_POSTGRESQL, Paging.LIMIT_OFFSET),
+	MYSQL(UPSERT_CHECKPOINTDATA_MYSQL, Paging.LIMIT_OFFSET),
+	SYBASE(null, Paging.CLIENT),
+	GENERIC(null, Paging.CLIENT);
+
+	/**
+	 * How to fetch rows [start, start + count) of an ordered query.
+	 */
+	static enum Paging {
+		OFFSET_FETCH {
+			@Override
+			String page(String select, String orderBy) {
+				return select + " order by " + orderBy + " offset ? rows fetch next ? rows only";
+			}
+
+			@Override
+			void bind(PreparedStatement statement, int index, int start, int count) throws SQLException {
+				statement.setInt(index, start);
+				statement.setInt(index + 1, count);
+			}
+		},
+		LIMIT_OFFSET {
+			@Override
+			String page(String select, String orderBy) {
+				return select + " order by " + orderBy + " limit ? offset ?";
+			}
+
+			@Override
+			void bind(PreparedStatement statement, int index, int start, int count) throws SQLException {
+				statement.setInt(index, count);
+				statement.setInt(index + 1, start);
+			}
+		},
+		ROW_NUMBER {
+			@Override
+			String page(String select, String orderBy) {
+				return "select * from (select q.*, row_number() over (order by " + orderBy + ") rn from (" + select + ") q) p"
+						+ " where p.rn > ? and p.rn <= ? order by p.rn";
+			}
+
+			@Override
+			void bind(PreparedStatement statement, int index, int start, int count) throws SQLException {
+				statement.setInt(index, start);
+				statement.setInt(index + 1, end(start, count));
+			}
+		},
+		/**
+		 * No paging syntax we can rely on: cap the rows fetched at the end of
+		 * the page and have the caller skip the first start of them.
+		 */
+		CLIENT {
+			@Override
+			String page(String select, String orderBy) {
+				return select + " order by " + orderBy;
+			}
+
+			@Override
+			void bind(PreparedStatement statement, int index, int start, int count) throws SQLException {
+				statement.setMaxRows(end(start, count));
+			}
+
+			@Override
+			int rowsToSkip(int start) {
+				return start;
+			}
+		};
+
+		/**
+		 * @param select a query with no ORDER BY
+		 * @param orderBy the ORDER BY expression list, without the keywords
+		 * @return the query limited to one page, possibly with paging parameters following its own
+		 */
+		abstract String page(String select, String orderBy);
+
+		/**
+		 * Binds the paging parameters added by {@link #page(String, String)}, starting at index.
+		 */
+		abstract void bind(PreparedStatement statement, int index, int start, int count) throws SQLException;
+
+		/**
+		 * @return rows of the result the caller still has to step over to reach the page
+		 */
+		int rowsToSkip(int start) {
+			return 0;
+		}
+
+		private static int end(int start, int count) {
+			return (int) Math.min((long) start + count, Integer.MAX_VALUE);
+		}
+	}
+
+	private final String checkpointUpsert;
+	private final Paging paging;
+
+	private JDBCDialect(String checkpointUpsert, Paging paging) {
+		this.checkpointUpsert = checkpointUpsert;
+		this.paging = paging;
+	}
+
+	static JDBCDialect forProductName(String productName) {
+		String name = productName == null ? "" : productName.toLowerCase();
+		if (name.contains("derby")) {
+			return DERBY;
+		} else if (name.startsWith("db2")) {
+			return DB2;
+		} else if (name.contains("oracle")) {
+			return ORACLE;
+		} else if (name.contains("microsoft sql server")) {
+			return SQLSERVER;
+		} else if (name.contains("postgresql")) {
+			return POSTGRESQL;
+		} else if (name.contains("mysql") || name.contains("mariadb")) {
+			return MYSQL;
+		} else if (name.contains("adaptive server") || name.contains("sybase") || name.equals("ase")) {
+			return SYBASE;
+		}
+		return GENERIC;
+	}
+
+	/**
+	 * @return an insert-or-update statement for one STEPCHECKPOINTDATA row, or
+	 * null if the database has none and we have to try an update then an insert
+	 */
+	String getCheckpointUpsert() {
+		return checkpointUpsert;
+	}
+
+	/**
+	 * @return how this database limits a query to one page of rows
+	 */
+	Paging getPaging() {
+		return paging;
+	}
+
+	void bindCheckpointUpsert(PreparedStatement statement, long jobInstanceId, String stepName, String type, byte[] obj) throws SQLException {
+		statement.setLong(1, jobInstanceId);
+		statement.setString(2, stepName);
+		statement.setString(3, type);
+		statement.setBytes(4, obj);
+	}
+}
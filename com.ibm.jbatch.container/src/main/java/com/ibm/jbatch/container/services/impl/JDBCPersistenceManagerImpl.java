@@ -33,8 +33,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -63,11 +65,14 @@ import com.ibm.jbatch.container.jobinstance.RuntimeFlowInSplitExecution;
 import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
 import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
 import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataCodec;
 import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
 import com.ibm.jbatch.container.services.IJobExecution;
 import com.ibm.jbatch.container.services.IPersistenceManagerService;
 import com.ibm.jbatch.container.status.JobStatus;
 import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
 import com.ibm.jbatch.container.util.TCCLObjectInputStream;
 import com.ibm.jbatch.spi.services.IBatchConfig;
 
@@ -88,6 +93,29 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 	protected String userId = "";
 	protected String pwd = "";
 
+	/**
+	 * Only used in SE mode; null if pooling has been turned off.
+	 */
+	protected JDBCConnectionPool connectionPool = null;
+
+	protected JDBCDialect dialect = JDBCDialect.GENERIC;
+
+	/**
+	 * Only used in SE mode; null unless JDBC_GROUP_COMMIT_MAX_BATCH is more than 1.
+	 */
+	private ChunkCommitGroup chunkCommitGroup = null;
+
+	private static final String DEFAULT_POOL_MAX_SIZE = "10";
+	private static final String DEFAULT_POOL_MAX_WAIT_MILLIS = "30000";
+	private static final String DEFAULT_POOL_VALIDATE_ON_BORROW = "true";
+	private static final String DEFAULT_POOL_IDLE_TIMEOUT_SECONDS = "300";
+	private static final String DEFAULT_POOL_STATEMENT_CACHE_SIZE = "32";
+	private static final String DEFAULT_GROUP_COMMIT_MAX_BATCH = "0";
+	private static final String DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = "0";
+
+	// Legacy checkpoints moved per transaction, so neither the heap nor a transaction grows with the table
+	static final int LEGACY_MIGRATION_BATCH_SIZE = 500;
+
 	/* (non-Javadoc)
 	 * @see com.ibm.jbatch.container.services.impl.AbstractPersistenceManagerImpl#init(com.ibm.jbatch.container.IBatchConfig)
 	 */
@@ -125,9 +153,13 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 			pwd = batchConfig.getDatabaseConfigurationBean().getDbPassword();
 
 			logger.config("driver: " + driver + ", url: " + url);
+
+			connectionPool = createConnectionPool(batchConfig.getConfigProperties());
+			chunkCommitGroup = createChunkCommitGroup(batchConfig.getConfigProperties());
 		}
 
 		try {
+			dialect = detectDialect();
 			// only auto-create on Derby
 			if(isDerby()) {	
 				if(!isSchemaValid()) {
@@ -135,6 +167,7 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 				}
 				checkAllTables();
 			}
+			migrateLegacyCheckpointData();
 		} catch (SQLException e) {
 			logger.severe(e.getLocalizedMessage());
 			throw new BatchContainerServiceException(e);
@@ -143,6 +176,70 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 		logger.config("Exiting CLASSNAME.init()");
 	}
 
+	/**
+	 * Build the SE connection pool from batch-config.properties.
+	 * 
+	 * @return the pool, or null if JDBC_POOL_MAX_SIZE is 0
+	 */
+	private JDBCConnectionPool createConnectionPool(Properties configProperties) {
+		int maxSize = Integer.parseInt(configProperties.getProperty(BatchContainerConstants.JDBC_POOL_MAX_SIZE, DEFAULT_POOL_MAX_SIZE));
+		if (maxSize <= 0) {
+			logger.config("JDBC connection pooling disabled");
+			return null;
+		}
+		long maxWaitMillis = Long.parseLong(configProperties.getProperty(BatchContainerConstants.JDBC_POOL_MAX_WAIT_MILLIS, DEFAULT_POOL_MAX_WAIT_MILLIS));
+		boolean validateOnBorrow = Boolean.parseBoolean(configProperties.getProperty(BatchContainerConstants.JDBC_POOL_VALIDATE_ON_BORROW, DEFAULT_POOL_VALIDATE_ON_BORROW));
+		long idleTimeoutSeconds = Long.parseLong(configProperties.getProperty(BatchContainerConstants.JDBC_POOL_IDLE_TIMEOUT_SECONDS, DEFAULT_POOL_IDLE_TIMEOUT_SECONDS));
+		int statementCacheSize = Integer.parseInt(configProperties.getProperty(BatchContainerConstants.JDBC_POOL_STATEMENT_CACHE_SIZE, DEFAULT_POOL_STATEMENT_CACHE_SIZE));
+
+		logger.config("JDBC connection pool: maxSize: " + maxSize + ", maxWaitMillis: " + maxWaitMillis + ", validateOnBorrow: " + validateOnBorrow
+				+ ", idleTimeoutSeconds: " + idleTimeoutSeconds + ", statementCacheSize: " + statementCacheSize);
+
+		try {
+			Class.forName(driver);
+		} catch (ClassNotFoundException e) {
+			logException("ClassNotFoundException: Cannot load driver class: " + driver, e);
+			throw new PersistenceException(e);
+		}
+
+		return new JDBCConnectionPool(url, userId, pwd, maxSize, maxWaitMillis, validateOnBorrow, idleTimeoutSeconds, statementCacheSize) {
+			@Override
+			protected void initializeConnection(Connection connection) throws SQLException {
+				setSchemaOnConnection(connection);
+			}
+		};
+	}
+
+	/**
+	 * Group commit writes one thread's chunk commit on another's connection, so it's
+	 * SE only: in EE the commit has to go in the chunk's own global transaction.
+	 *
+	 * @return the group commit, or null if JDBC_GROUP_COMMIT_MAX_BATCH is 1 or less
+	 */
+	private ChunkCommitGroup createChunkCommitGroup(Properties configProperties) {
+		int maxBatch = Integer.parseInt(configProperties.getProperty(BatchContainerConstants.JDBC_GROUP_COMMIT_MAX_BATCH, DEFAULT_GROUP_COMMIT_MAX_BATCH));
+		if (maxBatch <= 1) {
+			return null;
+		}
+		long windowMillis = Long.parseLong(configProperties.getProperty(BatchContainerConstants.JDBC_GROUP_COMMIT_WINDOW_MILLIS, DEFAULT_GROUP_COMMIT_WINDOW_MILLIS));
+
+		logger.config("Chunk commit group commit: maxBatch: " + maxBatch + ", windowMillis: " + windowMillis);
+
+		return new ChunkCommitGroup(new ChunkCommitGroup.Flusher() {
+			@Override
+			public void flush(List<ChunkCommitUnit> units) {
+				writeChunkCommitUnits(units);
+			}
+		}, maxBatch, windowMillis);
+	}
+
+	/**
+	 * @return the SE connection pool, for monitoring; null in EE mode or if pooling is disabled
+	 */
+	public JDBCConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
 	/**
 	 * Checks if the default schema JBATCH or the schema defined in batch-config exists.
 	 * 
@@ -166,13 +263,19 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 		return false;
 	}
 
-	private boolean isDerby() throws SQLException {
-		logger.entering(CLASSNAME, "isDerby");
+	private boolean isDerby() {
+		return dialect == JDBCDialect.DERBY;
+	}
+
+	private JDBCDialect detectDialect() throws SQLException {
+		logger.entering(CLASSNAME, "detectDialect");
 		Connection conn = getConnectionToDefaultSchema();
-		DatabaseMetaData dbmd = conn.getMetaData();
-		boolean derby = dbmd.getDatabaseProductName().toLowerCase().indexOf("derby") > 0;
-		logger.exiting(CLASSNAME, "isDerby", derby);
-		return derby;
+		String productName = conn.getMetaData().getDatabaseProductName();
+		cleanupConnection(conn, null, null);
+		JDBCDialect detected = JDBCDialect.forProductName(productName);
+		logger.config("Database product: " + productName + ", using dialect: " + detected);
+		logger.exiting(CLASSNAME, "detectDialect", detected);
+		return detected;
 	}
 
 	/**
@@ -202,8 +305,8 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 		logger.entering(CLASSNAME, "checkAllTables");
 
 		createIfNotExists(CHECKPOINTDATA_TABLE, CREATE_TAB_CHECKPOINTDATA);
-		executeStatement(CREATE_CHECKPOINTDATA_INDEX);
 		createIfNotExists(JOBINSTANCEDATA_TABLE, CREATE_TAB_JOBINSTANCEDATA);
+		createIndexIfNotExists(JOBINSTANCEDATA_TABLE, JOBINSTANCEDATA_NAME_INDEX, CREATE_JOBINSTANCEDATA_NAME_INDEX);
 
 		createIfNotExists(EXECUTIONINSTANCEDATA_TABLE,
 				CREATE_TAB_EXECUTIONINSTANCEDATA);
@@ -240,6 +343,35 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 		logger.exiting(CLASSNAME, "createIfNotExists");
 	}
 
+	/**
+	 * Creates indexName on tableName using the createIndexStatement DDL.
+	 * 
+	 * @param tableName
+	 * @param indexName
+	 * @param createIndexStatement
+	 * @throws SQLException
+	 */
+	private void createIndexIfNotExists(String tableName, String indexName, String createIndexStatement) throws SQLException {
+		logger.entering(CLASSNAME, "createIndexIfNotExists", new Object[] {tableName, indexName, createIndexStatement});
+
+		Connection conn = getConnection();
+		DatabaseMetaData dbmd = conn.getMetaData();
+		ResultSet rs = dbmd.getIndexInfo(null, schema, tableName, false, true);
+		boolean exists = false;
+		while (!exists && rs.next()) {
+			exists = indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"));
+		}
+		PreparedStatement ps = null;
+		if (!exists) {
+			logger.log(Level.INFO, indexName + " index does not exist. Trying to create it.");
+			ps = conn.prepareStatement(createIndexStatement);
+			ps.executeUpdate();
+		}
+
+		cleanupConnection(conn, rs, ps);
+		logger.exiting(CLASSNAME, "createIndexIfNotExists");
+	}
+
 	/**
 	 * Executes the provided SQL statement
 	 * 
@@ -266,7 +398,7 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 	@Override
 	public void createCheckpointData(CheckpointDataKey key, CheckpointData value) {
 		logger.entering(CLASSNAME, "createCheckpointData", new Object[] {key, value});
-		insertCheckpointData(key.getCommaSeparatedKey(), value);
+		insertCheckpointData(key, value);
 		logger.exiting(CLASSNAME, "createCheckpointData");
 	}
 
@@ -276,7 +408,7 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 	@Override
 	public CheckpointData getCheckpointData(CheckpointDataKey key) {
 		logger.entering(CLASSNAME, "getCheckpointData", key==null ? "<null>" : key);
-		CheckpointData checkpointData = queryCheckpointData(key.getCommaSeparatedKey());
+		CheckpointData checkpointData = queryCheckpointData(key);
 		logger.exiting(CLASSNAME, "getCheckpointData", checkpointData==null ? "<null>" : checkpointData);
 		return checkpointData;
 	}
@@ -287,15 +419,379 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 	@Override
 	public void updateCheckpointData(CheckpointDataKey key, CheckpointData value) {
 		logger.entering(CLASSNAME, "updateCheckpointData", new Object[] {key, value});
-		CheckpointData data = queryCheckpointData(key.getCommaSeparatedKey());
-		if(data != null) {
-			updateCheckpointData(key.getCommaSeparatedKey(), value);
-		} else {
-			createCheckpointData(key, value);
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			upsertCheckpointData(conn, new CheckpointDataKey[] { key }, new byte[][] { CheckpointDataCodec.encode(value) });
+		} catch (SQLException e) {
+			throw new PersistenceException(e);
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		} finally {
+			cleanupConnection(conn, null, null);
 		}
 		logger.exiting(CLASSNAME, "updateCheckpointData");
 	}
 
+	@Override
+	public void deleteCheckpointData(long jobInstanceId, String stepName) {
+		logger.entering(CLASSNAME, "deleteCheckpointData", new Object[] {jobInstanceId, stepName});
+		Connection conn = null;
+		PreparedStatement statement = null;
+		try {
+			conn = getConnection();
+			statement = conn.prepareStatement(DELETE_STEP_CHECKPOINTDATA);
+			statement.setLong(1, jobInstanceId);
+			statement.setString(2, stepName);
+			statement.executeUpdate();
+		} catch (SQLException e) {
+			throw new PersistenceException(e);
+		} finally {
+			cleanupConnection(conn, null, statement);
+		}
+		logger.exiting(CLASSNAME, "deleteCheckpointData");
+	}
+
+	/**
+	 * Writes both checkpoints and the step status over a single connection.  The two
+	 * checkpoint rows go out as one batched upsert (see upsertCheckpointData), so we
+	 * no longer need a SELECT per checkpoint to decide between insert and update.
+	 *
+	 * When the connection is in auto-commit mode, which it is in SE, we run the
+	 * statements in a local transaction so the three rows are hardened together.
+	 * Otherwise we leave transaction demarcation to whoever owns the connection.
+	 */
+	@Override
+	public void updateChunkCommitUnit(ChunkCommitUnit unit) {
+		logger.entering(CLASSNAME, "updateChunkCommitUnit", unit);
+
+		if (logger.isLoggable(Level.FINE) && unit.getStepStatus() != null) {
+			logger.fine("Updating StepStatus to: " + unit.getStepStatus().getBatchStatus());
+		}
+
+		if (chunkCommitGroup != null) {
+			chunkCommitGroup.commit(unit);
+		} else {
+			writeChunkCommitUnits(Collections.singletonList(unit));
+		}
+		logger.exiting(CLASSNAME, "updateChunkCommitUnit");
+	}
+
+	/**
+	 * Writes the checkpoints and step status of each unit, all in one transaction.
+	 * Parts of a unit that are null haven't changed and are left as they are.
+	 */
+	private void writeChunkCommitUnits(List<ChunkCommitUnit> units) {
+		Connection conn = null;
+		PreparedStatement stepStatusStatement = null;
+		boolean localTran = false;
+		boolean committed = false;
+
+		List<CheckpointDataKey> keys = new ArrayList<CheckpointDataKey>(units.size() * 2);
+		List<byte[]> values = new ArrayList<byte[]>(units.size() * 2);
+		boolean stepStatusChanged = false;
+		try {
+			for (ChunkCommitUnit unit : units) {
+				if (unit.getReaderData() != null) {
+					keys.add(unit.getReaderKey());
+					values.add(CheckpointDataCodec.encode(unit.getReaderData()));
+				}
+				if (unit.getWriterData() != null) {
+					keys.add(unit.getWriterKey());
+					values.add(CheckpointDataCodec.encode(unit.getWriterData()));
+				}
+				if (unit.getUserData() != null) {
+					keys.add(unit.getUserDataKey());
+					values.add(CheckpointDataCodec.encode(unit.getUserData()));
+				}
+				stepStatusChanged |= unit.getStepStatus() != null;
+			}
+
+			conn = getConnection();
+			if (conn.getAutoCommit()) {
+				conn.setAutoCommit(false);
+				localTran = true;
+			}
+
+			if (!keys.isEmpty()) {
+				upsertCheckpointData(conn, keys.toArray(new CheckpointDataKey[keys.size()]), values.toArray(new byte[values.size()][]));
+			}
+
+			if (stepStatusChanged) {
+				stepStatusStatement = conn.prepareStatement(UPDATE_STEPSTATUS);
+				for (ChunkCommitUnit unit : units) {
+					if (unit.getStepStatus() != null) {
+						stepStatusStatement.setBytes(1, serializeObject(unit.getStepStatus()));
+						stepStatusStatement.setLong(2, unit.getStepExecutionId());
+						stepStatusStatement.addBatch();
+					}
+				}
+				stepStatusStatement.executeBatch();
+			}
+
+			if (localTran) {
+				conn.commit();
+			}
+			committed = true;
+		} catch (SQLException e) {
+			throw new PersistenceException(e);
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		} finally {
+			if (localTran) {
+				try {
+					if (!committed) {
+						conn.rollback();
+					}
+					conn.setAutoCommit(true);
+				} catch (SQLException e) {
+					logger.log(Level.WARNING, "Failed resetting connection after chunk commit unit", e);
+				}
+			}
+			cleanupConnection(conn, null, stepStatusStatement);
+		}
+	}
+
+	/**
+	 * Insert or replace checkpoint rows on the given connection, as one batch.  Uses the
+	 * dialect's native upsert where it has one; otherwise a batched UPDATE, then an INSERT
+	 * for any row that didn't exist yet (i.e. on the first chunk).
+	 */
+	private void upsertCheckpointData(Connection conn, CheckpointDataKey[] keys, byte[][] values) throws SQLException {
+		PreparedStatement statement = null;
+		PreparedStatement insertStatement = null;
+		try {
+			String upsert = dialect.getCheckpointUpsert();
+			if (upsert != null) {
+				statement = conn.prepareStatement(upsert);
+				for (int i = 0; i < keys.length; i++) {
+					checkCheckpointStepName(keys[i]);
+					dialect.bindCheckpointUpsert(statement, keys[i].getJobInstanceId(), keys[i].getStepName(), keys[i].getBatchDataStreamName(), values[i]);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				return;
+			}
+
+			statement = conn.prepareStatement(UPDATE_CHECKPOINTDATA);
+			for (int i = 0; i < keys.length; i++) {
+				statement.setBytes(1, values[i]);
+				setCheckpointKey(statement, 2, keys[i]);
+				statement.addBatch();
+			}
+			int[] updateCounts = statement.executeBatch();
+
+			for (int i = 0; i < keys.length; i++) {
+				if (!checkpointRowUpdated(conn, updateCounts[i], keys[i])) {
+					if (insertStatement == null) {
+						insertStatement = conn.prepareStatement(INSERT_CHECKPOINTDATA);
+					}
+					setCheckpointKey(insertStatement, 1, keys[i]);
+					insertStatement.setBytes(4, values[i]);
+					insertStatement.addBatch();
+				}
+			}
+			if (insertStatement != null) {
+				insertStatement.executeBatch();
+			}
+		} finally {
+			cleanupConnection(null, null, insertStatement);
+			cleanupConnection(null, null, statement);
+		}
+	}
+
+	/**
+	 * Interpret a batched UPDATE count.  Some drivers only report SUCCESS_NO_INFO
+	 * for batches, in which case we have to go look for the row.
+	 */
+	private boolean checkpointRowUpdated(Connection conn, int updateCount, CheckpointDataKey key) throws SQLException {
+		if (updateCount != Statement.SUCCESS_NO_INFO) {
+			return updateCount > 0;
+		}
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			statement = conn.prepareStatement(SELECT_CHECKPOINTDATA);
+			setCheckpointKey(statement, 1, key);
+			rs = statement.executeQuery();
+			return rs.next();
+		} finally {
+			cleanupConnection(null, rs, statement);
+		}
+	}
+
+	/**
+	 * Binds the (jobinstanceid, stepname, type) primary key starting at parameter index.
+	 */
+	private void setCheckpointKey(PreparedStatement statement, int index, CheckpointDataKey key) throws SQLException {
+		checkCheckpointStepName(key);
+		statement.setLong(index, key.getJobInstanceId());
+		statement.setString(index + 1, key.getStepName());
+		statement.setString(index + 2, key.getBatchDataStreamName());
+	}
+
+	/**
+	 * A partition's checkpoints go under a step name made longer than the step id (see
+	 * PartitionStatuses.getCheckpointStepName()), so a long step id could make one too
+	 * long for the column.  This fails on the first read of the checkpoints, as the step
+	 * opens, rather than with whatever the database makes of it on the first write.
+	 */
+	private void checkCheckpointStepName(CheckpointDataKey key) {
+		String stepName = key.getStepName();
+		if (stepName != null && stepName.length() > CHECKPOINT_STEPNAME_LENGTH) {
+			throw new PersistenceException("Checkpoint step name " + stepName + " is " + stepName.length() 
+					+ " characters, more than the " + CHECKPOINT_STEPNAME_LENGTH + " there's room for in " + CHECKPOINTDATA_TABLE 
+					+ "; use a shorter step id");
+		}
+	}
+
+	/**
+	 * Moves checkpoints out of the old CHECKPOINTDATA table, keyed by a single
+	 * "jobinstanceid,stepname,type" string, into STEPCHECKPOINTDATA.  The stored
+	 * object is copied as is; CheckpointDataCodec still reads the old format.
+	 * 
+	 * Rows go LEGACY_MIGRATION_BATCH_SIZE at a time in id order, each batch deleted
+	 * from the old table in the same transaction it's copied in, so a migration
+	 * that's interrupted picks up next time from whatever's left.  Once the table's
+	 * empty this is just a metadata lookup and the table can be dropped.
+	 * 
+	 * Nothing kept the old ids unique, so only the first row with each id is copied,
+	 * as a batch with the same key twice would fail where there's no native upsert.
+	 */
+	private void migrateLegacyCheckpointData() throws SQLException {
+		logger.entering(CLASSNAME, "migrateLegacyCheckpointData");
+
+		Connection conn = getConnection();
+		boolean restoreAutoCommit = false;
+		boolean inTran = false;
+		int migrated = 0;
+		try {
+			if (!tableExists(conn, LEGACY_CHECKPOINTDATA_TABLE)) {
+				logger.exiting(CLASSNAME, "migrateLegacyCheckpointData", "No legacy table");
+				return;
+			}
+			if (conn.getAutoCommit()) {
+				conn.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+			inTran = true;
+
+			// Rows with keys that can't be parsed stay behind, so the next batch starts after the last id seen
+			String lastId = null;
+			boolean more = true;
+			while (more) {
+				Map<CheckpointDataKey, byte[]> checkpoints = new LinkedHashMap<CheckpointDataKey, byte[]>();
+				List<String> legacyIds = new ArrayList<String>();
+
+				PreparedStatement selectStatement = conn.prepareStatement(lastId == null ? SELECT_LEGACY_CHECKPOINTDATA : SELECT_LEGACY_CHECKPOINTDATA_AFTER);
+				ResultSet rs = null;
+				int rows = 0;
+				try {
+					selectStatement.setMaxRows(LEGACY_MIGRATION_BATCH_SIZE);
+					if (lastId != null) {
+						selectStatement.setString(1, lastId);
+					}
+					rs = selectStatement.executeQuery();
+					while (rs.next()) {
+						rows++;
+						String id = rs.getString("id");
+						lastId = id;
+						CheckpointDataKey key = parseLegacyCheckpointKey(id);
+						if (key == null) {
+							logger.warning("Leaving checkpoint with unrecognized key in " + LEGACY_CHECKPOINTDATA_TABLE + ": " + id);
+							continue;
+						}
+						if (!checkpoints.containsKey(key)) {
+							checkpoints.put(key, rs.getBytes("obj"));
+						}
+						legacyIds.add(id);
+					}
+				} finally {
+					cleanupConnection(null, rs, selectStatement);
+				}
+				more = rows == LEGACY_MIGRATION_BATCH_SIZE;
+
+				if (!checkpoints.isEmpty()) {
+					upsertCheckpointData(conn, checkpoints.keySet().toArray(new CheckpointDataKey[checkpoints.size()]), 
+							checkpoints.values().toArray(new byte[checkpoints.size()][]));
+
+					PreparedStatement deleteStatement = conn.prepareStatement(DELETE_LEGACY_CHECKPOINTDATA);
+					try {
+						for (String id : legacyIds) {
+							deleteStatement.setString(1, id);
+							deleteStatement.addBatch();
+						}
+						deleteStatement.executeBatch();
+					} finally {
+						cleanupConnection(null, null, deleteStatement);
+					}
+				}
+				conn.commit();
+				migrated += checkpoints.size();
+			}
+			inTran = false;
+		} finally {
+			try {
+				if (inTran) {
+					conn.rollback();
+				}
+				if (restoreAutoCommit) {
+					conn.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				logger.log(Level.WARNING, "Failed resetting connection after checkpoint migration", e);
+			}
+			cleanupConnection(conn, null, null);
+		}
+
+		if (migrated > 0) {
+			logger.info("Migrated " + migrated + " checkpoints from " + LEGACY_CHECKPOINTDATA_TABLE + " to " + CHECKPOINTDATA_TABLE);
+		}
+		logger.exiting(CLASSNAME, "migrateLegacyCheckpointData", migrated);
+	}
+
+	/**
+	 * @return the key for a legacy "jobinstanceid,stepname,type" id, or null if it isn't one
+	 */
+	private CheckpointDataKey parseLegacyCheckpointKey(String id) {
+		if (id == null) {
+			return null;
+		}
+		int first = id.indexOf(',');
+		int last = id.lastIndexOf(',');
+		if (first <= 0 || last <= first) {
+			return null;
+		}
+		try {
+			long jobInstanceId = Long.parseLong(id.substring(0, first));
+			return new CheckpointDataKey(jobInstanceId, id.substring(first + 1, last), id.substring(last + 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Unquoted identifiers are stored upper case by most databases but lower case by
+	 * PostgreSQL, so look for both.
+	 */
+	private boolean tableExists(Connection conn, String tableName) throws SQLException {
+		DatabaseMetaData dbmd = conn.getMetaData();
+		String[][] candidates = new String[][] {
+				{ schema, tableName.toUpperCase() },
+				{ schema.toLowerCase(), tableName.toLowerCase() } };
+		for (String[] candidate : candidates) {
+			ResultSet rs = dbmd.getTables(null, candidate[0], candidate[1], null);
+			try {
+				if (rs.next()) {
+					return true;
+				}
+			} finally {
+				rs.close();
+			}
+		}
+		return false;
+	}
+
 
 	/**
 	 * @return the database connection and sets it to the default schema JBATCH or the schema defined in batch-config.
@@ -310,6 +806,12 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 			logger.finest("J2EE mode, getting connection from data source");
 			connection = dataSource.getConnection();
 			logger.finest("autocommit="+connection.getAutoCommit());
+		} else if (connectionPool != null) {
+			logger.finest("JSE mode, getting pooled connection to " + url);
+			// The pool sets the schema once, when it opens the physical connection
+			connection = connectionPool.getConnection();
+			logger.finest("Exiting: " + CLASSNAME + ".getConnection() with conn =" + connection);
+			return connection;
 		} else {
 			try {
 				Class.forName(driver);
@@ -397,23 +899,22 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 	 * @param key - the IPersistenceDataKey object
 	 * @return List of serializable objects store in the DB table
 	 * 
-	 * Ex. select id, obj from tablename where id = ?
+	 * Ex. select obj from tablename where jobinstanceid = ? and stepname = ? and type = ?
 	 */
-	private CheckpointData queryCheckpointData(Object key) {
+	private CheckpointData queryCheckpointData(CheckpointDataKey key) {
 		logger.entering(CLASSNAME, "queryCheckpointData", new Object[] {key, SELECT_CHECKPOINTDATA});
 		Connection conn = null;
 		PreparedStatement statement = null;
 		ResultSet rs = null;
-		ObjectInputStream objectIn = null;
 		CheckpointData data = null;
 		try {
 			conn = getConnection();
 			statement = conn.prepareStatement(SELECT_CHECKPOINTDATA);
-			statement.setObject(1, key);
+			setCheckpointKey(statement, 1, key);
 			rs = statement.executeQuery();
 			if (rs.next()) {
 				byte[] buf = rs.getBytes("obj");
-				data = (CheckpointData)deserializeObject(buf);
+				data = CheckpointDataCodec.decode(buf);
 			}
 		} catch (SQLException e) {
 			throw new PersistenceException(e);
@@ -422,13 +923,6 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 		} catch (ClassNotFoundException e) {
 			throw new PersistenceException(e);
 		} finally {
-			if (objectIn != null) {
-				try {
-					objectIn.close();
-				} catch (IOException e) {
-					throw new PersistenceException(e);
-				}
-			}
 			cleanupConnection(conn, rs, statement);
 		}
 		logger.exiting(CLASSNAME, "queryCheckpointData");
@@ -440,107 +934,30 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 	 * insert data to DB table
 	 * 
 	 * @param key - the IPersistenceDataKey object
-	 * @param value - serializable object to store  
+	 * @param value - checkpoint to store  
 	 * 
-	 * Ex. insert into tablename values(?, ?)
+	 * Ex. insert into tablename (jobinstanceid, stepname, type, obj) values(?, ?, ?, ?)
 	 */
-	private <T> void insertCheckpointData(Object key, T value) {
+	private void insertCheckpointData(CheckpointDataKey key, CheckpointData value) {
 		logger.entering(CLASSNAME, "insertCheckpointData", new Object[] {key, value});
 		Connection conn = null;
 		PreparedStatement statement = null;
-		ByteArrayOutputStream baos = null;
-		ObjectOutputStream oout = null;
-		byte[] b;
 		try {
 			conn = getConnection();
 			statement = conn.prepareStatement(INSERT_CHECKPOINTDATA);
-			baos = new ByteArrayOutputStream();
-			oout = new ObjectOutputStream(baos);
-			oout.writeObject(value);
-
-			b = baos.toByteArray();
-
-			statement.setObject(1, key);
-			statement.setBytes(2, b);
+			setCheckpointKey(statement, 1, key);
+			statement.setBytes(4, CheckpointDataCodec.encode(value));
 			statement.executeUpdate();
 		} catch (SQLException e) {
 			throw new PersistenceException(e);
 		} catch (IOException e) {
 			throw new PersistenceException(e);
 		} finally {
-			if (baos != null) {
-				try {
-					baos.close();
-				} catch (IOException e) {
-					throw new PersistenceException(e);
-				}
-			}
-			if (oout != null) {
-				try {
-					oout.close();
-				} catch (IOException e) {
-					throw new PersistenceException(e);
-				}
-			}
 			cleanupConnection(conn, null, statement);
 		}
 		logger.exiting(CLASSNAME, "insertCheckpointData");
 	}
 
-	/**
-	 * update data in DB table
-	 * 
-	 * @param value - serializable object to store 
-	 * @param key - the IPersistenceDataKey object
-	 * @param query - SQL statement to execute. 
-	 * 
-	 * Ex. update tablename set obj = ? where id = ?
-	 */
-	private void updateCheckpointData(Object key, CheckpointData value) {
-		logger.entering(CLASSNAME, "updateCheckpointData", new Object[] {key, value});
-		Connection conn = null;
-		PreparedStatement statement = null;
-		ByteArrayOutputStream baos = null;
-		ObjectOutputStream oout = null;
-		byte[] b;
-		try {
-			conn = getConnection();
-			statement = conn.prepareStatement(UPDATE_CHECKPOINTDATA);
-			baos = new ByteArrayOutputStream();
-			oout = new ObjectOutputStream(baos);
-			oout.writeObject(value);
-
-			b = baos.toByteArray();
-
-			statement.setBytes(1, b);
-			statement.setObject(2, key);
-			statement.executeUpdate();
-		} catch (SQLException e) {
-			throw new PersistenceException(e);
-		} catch (IOException e) {
-			throw new PersistenceException(e);
-		} finally {
-			if (baos != null) {
-				try {
-					baos.close();
-				} catch (IOException e) {
-					throw new PersistenceException(e);
-				}
-			}
-			if (oout != null) {
-				try {
-					oout.close();
-				} catch (IOException e) {
-					throw new PersistenceException(e);
-				}
-			}
-			cleanupConnection(conn, null, statement);
-		}
-		logger.exiting(CLASSNAME, "updateCheckpointData");
-	}
-
-
-
 	/**
 	 * closes connection, result set and statement
 	 * 
@@ -673,55 +1090,61 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 
 	@Override
 	public List<Long> jobOperatorGetJobInstanceIds(String jobName, String appTag, int start, int count) {
-		Connection conn = null;
-		PreparedStatement statement = null;
-		ResultSet rs = null;
-		List<Long> data = new ArrayList<Long>();
-
-		try {
-			conn = getConnection();
-			statement = conn.prepareStatement("select jobinstanceid from jobinstancedata where name = ? and apptag = ? order by jobinstanceid desc");
-			statement.setObject(1, jobName);
-			statement.setObject(2, appTag);
-			rs = statement.executeQuery();
-			while (rs.next()) {
-				long id = rs.getLong("jobinstanceid");
-				data.add(id);
-			}
-		} catch (SQLException e) {
-			throw new PersistenceException(e);
-		}
-		finally {
-			cleanupConnection(conn, rs, statement);
-		}
-
-		if (data.size() > 0){
-			try {
-				return data.subList(start, start+count);
-			}
-			catch (IndexOutOfBoundsException oobEx){
-				return data.subList(start, data.size());
-			}
-		}
-		else return data;
+		return queryJobInstanceIds(SELECT_JOBINSTANCEDATA_IDS_APPTAG, start, count, jobName, appTag);
 	}
 	
 	@Override
 	public List<Long> jobOperatorGetJobInstanceIds(String jobName, int start, int count) {
+		return queryJobInstanceIds(SELECT_JOBINSTANCEDATA_IDS, start, count, jobName);
+	}
+
+	@Override
+	public List<Long> jobOperatorGetJobInstanceIdsAfter(String jobName, long lastInstanceId, int count) {
+		return queryJobInstanceIds(SELECT_JOBINSTANCEDATA_IDS_AFTER, 0, count, jobName, lastInstanceId);
+	}
+
+	@Override
+	public List<Long> jobOperatorGetJobInstanceIdsAfter(String jobName, String appTag, long lastInstanceId, int count) {
+		return queryJobInstanceIds(SELECT_JOBINSTANCEDATA_IDS_APPTAG_AFTER, 0, count, jobName, appTag, lastInstanceId);
+	}
+
+	/**
+	 * Runs one of the SELECT_JOBINSTANCEDATA_IDS queries newest first, letting the
+	 * database cut out the page rather than reading every id for the job and
+	 * taking a subList.
+	 * 
+	 * @param select query selecting jobinstanceid, without an ORDER BY
+	 * @param start position of the first id to return
+	 * @param count most ids to return
+	 * @param params values for the query's own parameters
+	 */
+	private List<Long> queryJobInstanceIds(String select, int start, int count, Object... params) {
+		List<Long> data = new ArrayList<Long>();
+		if (count <= 0 || start < 0) {
+			return data;
+		}
 
+		JDBCDialect.Paging paging = dialect.getPaging();
 		Connection conn = null;
 		PreparedStatement statement = null;
 		ResultSet rs = null;
-		List<Long> data = new ArrayList<Long>();
 
 		try {
 			conn = getConnection();
-			statement = conn.prepareStatement(SELECT_JOBINSTANCEDATA_IDS);
-			statement.setObject(1, jobName);
+			statement = conn.prepareStatement(paging.page(select, JOBINSTANCEDATA_IDS_ORDER));
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+			paging.bind(statement, params.length + 1, start, count);
 			rs = statement.executeQuery();
-			while (rs.next()) {
-				long id = rs.getLong("jobinstanceid");
-				data.add(id);
+
+			int skip = paging.rowsToSkip(start);
+			while (data.size() < count && rs.next()) {
+				if (skip > 0) {
+					skip--;
+					continue;
+				}
+				data.add(rs.getLong("jobinstanceid"));
 			}
 		} catch (SQLException e) {
 			throw new PersistenceException(e);
@@ -729,16 +1152,7 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 		finally {
 			cleanupConnection(conn, rs, statement);
 		}
-
-		if (data.size() > 0){
-			try {
-				return data.subList(start, start+count);
-			}
-			catch (IndexOutOfBoundsException oobEx){
-				return data.subList(start, data.size());
-			}
-		}
-		else return data;
+		return data;
 	}
 
 	@Override
@@ -2250,8 +2664,13 @@ public class JDBCPersistenceManagerImpl implements IPersistenceManagerService, J
 
 	@Override
 	public void shutdown() throws BatchContainerServiceException {
-		// TODO Auto-generated method stub
-
+		if (chunkCommitGroup != null) {
+			logger.config("Group commit wrote " + chunkCommitGroup.getUnitCount() + " chunk commits in " + chunkCommitGroup.getBatchCount() + " transactions");
+		}
+		if (connectionPool != null) {
+			logger.config("Shutting down " + connectionPool);
+			connectionPool.close();
+		}
 	}
 
 
@@ -20,7 +20,8 @@ package com.ibm.jbatch.container.services.impl;
 
 	 final String JOBSTATUS_TABLE = "JOBSTATUS";
 	 final String STEPSTATUS_TABLE = "STEPSTATUS";
-	 final String CHECKPOINTDATA_TABLE = "CHECKPOINTDATA";
+	 final String CHECKPOINTDATA_TABLE = "STEPCHECKPOINTDATA";
+	 final String LEGACY_CHECKPOINTDATA_TABLE = "CHECKPOINTDATA";
 	 final String JOBINSTANCEDATA_TABLE = "JOBINSTANCEDATA";
 	 final String EXECUTIONINSTANCEDATA_TABLE = "EXECUTIONINSTANCEDATA";
 	 final String STEPEXECUTIONINSTANCEDATA_TABLE = "STEPEXECUTIONINSTANCEDATA";
@@ -33,8 +34,15 @@ package com.ibm.jbatch.container.services.impl;
 			+ "id BIGINT CONSTRAINT STEPSTATUS_PK PRIMARY KEY," 
 			+ "obj BLOB,"
 			+ "CONSTRAINT STEPSTATUS_STEPEXEC_FK FOREIGN KEY (id) REFERENCES STEPEXECUTIONINSTANCEDATA (stepexecid) ON DELETE CASCADE)";
-	 final String CREATE_TAB_CHECKPOINTDATA = "CREATE TABLE CHECKPOINTDATA("
-			+ "id VARCHAR(512),obj BLOB)";
+	// The longest checkpoint step name there's room for, as long as a whole legacy CHECKPOINTDATA key
+	 final int CHECKPOINT_STEPNAME_LENGTH = 512;
+
+	 final String CREATE_TAB_CHECKPOINTDATA = "CREATE TABLE STEPCHECKPOINTDATA("
+			+ "jobinstanceid BIGINT NOT NULL,"
+			+ "stepname VARCHAR(" + CHECKPOINT_STEPNAME_LENGTH + ") NOT NULL,"
+			+ "type VARCHAR(16) NOT NULL,"
+			+ "obj BLOB,"
+			+ "CONSTRAINT STEPCHECKPOINTDATA_PK PRIMARY KEY (jobinstanceid, stepname, type))";
 	 final String CREATE_TAB_JOBINSTANCEDATA = "CREATE TABLE JOBINSTANCEDATA("
 			+ "jobinstanceid BIGINT NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1) CONSTRAINT JOBINSTANCE_PK PRIMARY KEY,"
 			+ "name VARCHAR(512),"
@@ -85,15 +93,47 @@ package com.ibm.jbatch.container.services.impl;
 	
 	 final String DELETE_STEPSTATUS = "delete from stepstatus where id = ?";
 
-	 final String INSERT_CHECKPOINTDATA = "insert into checkpointdata values(?, ?)";
+	 final String INSERT_CHECKPOINTDATA = "insert into stepcheckpointdata (jobinstanceid, stepname, type, obj) values(?, ?, ?, ?)";
 
-	 final String UPDATE_CHECKPOINTDATA = "update checkpointdata set obj = ? where id = ?";
+	 final String UPDATE_CHECKPOINTDATA = "update stepcheckpointdata set obj = ? where jobinstanceid = ? and stepname = ? and type = ?";
 
-	 final String SELECT_CHECKPOINTDATA = "select id, obj from checkpointdata where id = ?";
-	
-	 final String CREATE_CHECKPOINTDATA_INDEX = "create index chk_index on checkpointdata(id)";
+	 final String SELECT_CHECKPOINTDATA = "select obj from stepcheckpointdata where jobinstanceid = ? and stepname = ? and type = ?";
 	
-	 final String DELETE_CHECKPOINTDATA = "delete from checkpointdata where id = ?";
+	 final String DELETE_CHECKPOINTDATA = "delete from stepcheckpointdata where jobinstanceid = ? and stepname = ? and type = ?";
+
+	 final String DELETE_STEP_CHECKPOINTDATA = "delete from stepcheckpointdata where jobinstanceid = ? and stepname = ?";
+
+	// Native upserts, each taking (jobinstanceid, stepname, type, obj) unless noted
+	 final String UPSERT_CHECKPOINTDATA_DB2 = "merge into stepcheckpointdata t"
+			+ " using (values (cast(? as bigint), cast(? as varchar(" + CHECKPOINT_STEPNAME_LENGTH + ")), cast(? as varchar(16)), cast(? as blob))) as s (jobinstanceid, stepname, type, obj)"
+			+ " on t.jobinstanceid = s.jobinstanceid and t.stepname = s.stepname and t.type = s.type"
+			+ " when matched then update set obj = s.obj"
+			+ " when not matched then insert (jobinstanceid, stepname, type, obj) values (s.jobinstanceid, s.stepname, s.type, s.obj)";
+
+	 final String UPSERT_CHECKPOINTDATA_SQLSERVER = "merge into stepcheckpointdata with (holdlock) as t"
+			+ " using (values (?, ?, ?, ?)) as s (jobinstanceid, stepname, type, obj)"
+			+ " on t.jobinstanceid = s.jobinstanceid and t.stepname = s.stepname and t.type = s.type"
+			+ " when matched then update set obj = s.obj"
+			+ " when not matched then insert (jobinstanceid, stepname, type, obj) values (s.jobinstanceid, s.stepname, s.type, s.obj);";
+
+	// Takes (jobinstanceid, stepname, type, obj) twice; binding a BLOB into a select from dual isn't reliable
+	 final String UPSERT_CHECKPOINTDATA_ORACLE = "merge into stepcheckpointdata t using dual"
+			+ " on (t.jobinstanceid = ? and t.stepname = ? and t.type = ?)"
+			+ " when matched then update set t.obj = ?"
+			+ " when not matched then insert (jobinstanceid, stepname, type, obj) values (?, ?, ?, ?)";
+
+	 final String UPSERT_CHECKPOINTDATA_POSTGRESQL = "insert into stepcheckpointdata (jobinstanceid, stepname, type, obj) values(?, ?, ?, ?)"
+			+ " on conflict (jobinstanceid, stepname, type) do update set obj = excluded.obj";
+
+	 final String UPSERT_CHECKPOINTDATA_MYSQL = "insert into stepcheckpointdata (jobinstanceid, stepname, type, obj) values(?, ?, ?, ?)"
+			+ " on duplicate key update obj = values(obj)";
+
+	// Checkpoints from before STEPCHECKPOINTDATA, keyed by "jobinstanceid,stepname,type"
+	 final String SELECT_LEGACY_CHECKPOINTDATA = "select id, obj from checkpointdata order by id";
+
+	 final String SELECT_LEGACY_CHECKPOINTDATA_AFTER = "select id, obj from checkpointdata where id > ? order by id";
+
+	 final String DELETE_LEGACY_CHECKPOINTDATA = "delete from checkpointdata where id = ?";
 	
 	// JOB OPERATOR QUERIES
 	 final String INSERT_JOBINSTANCEDATA = "insert into jobinstancedata (name, apptag) values(?, ?)";
@@ -102,7 +142,20 @@ package com.ibm.jbatch.container.services.impl;
 	
 	 final String SELECT_JOBINSTANCEDATA_COUNT = "select count(jobinstanceid) as jobinstancecount from jobinstancedata where name = ?";
 	
-	 final String SELECT_JOBINSTANCEDATA_IDS = "select jobinstanceid from jobinstancedata where name = ? order by jobinstanceid desc";
+	// Paged by JDBCDialect, in JOBINSTANCEDATA_IDS_ORDER
+	 final String SELECT_JOBINSTANCEDATA_IDS = "select jobinstanceid from jobinstancedata where name = ?";
+
+	 final String SELECT_JOBINSTANCEDATA_IDS_APPTAG = "select jobinstanceid from jobinstancedata where name = ? and apptag = ?";
+
+	 final String SELECT_JOBINSTANCEDATA_IDS_AFTER = "select jobinstanceid from jobinstancedata where name = ? and jobinstanceid < ?";
+
+	 final String SELECT_JOBINSTANCEDATA_IDS_APPTAG_AFTER = "select jobinstanceid from jobinstancedata where name = ? and apptag = ? and jobinstanceid < ?";
+
+	 final String JOBINSTANCEDATA_IDS_ORDER = "jobinstanceid desc";
+
+	 final String JOBINSTANCEDATA_NAME_INDEX = "JOBINST_NAME_APPTAG_IDX";
+
+	 final String CREATE_JOBINSTANCEDATA_NAME_INDEX = "CREATE INDEX JOBINST_NAME_APPTAG_IDX ON JOBINSTANCEDATA(name, apptag, jobinstanceid)";
 	
 	 final String SELECT_JOBINSTANCEDATA_NAMES = "select name from jobinstancedata where apptag = ?";
 	 final String SELECT_JOBINSTANCEDATA_APPTAG = "select apptag from jobinstancedata where jobinstanceid = ?";
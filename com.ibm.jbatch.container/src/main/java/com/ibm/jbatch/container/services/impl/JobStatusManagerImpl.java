@@ -16,6 +16,7 @@
 */
 package com.ibm.jbatch.container.services.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +38,19 @@ public class JobStatusManagerImpl implements IJobStatusManagerService {
     private static Logger logger = Logger.getLogger(JobStatusManagerImpl.class.getPackage().getName());
     private IPersistenceManagerService _persistenceManager;    
 
+    /*
+     * JobStatus of the instances the kernel is running, so the read half of each
+     * read-modify-write below doesn't go to the database.  Writes still go straight
+     * through.  Only populated between registerRunningInstance and
+     * unregisterRunningInstance, so other instances are always read fresh.
+     */
+    private final ConcurrentHashMap<Long, CachedJobStatus> runningJobStatuses = new ConcurrentHashMap<Long, CachedJobStatus>();
+
+    private static class CachedJobStatus {
+        // Guarded by the CachedJobStatus itself; null until first read
+        private JobStatus jobStatus;
+    }
+
     @Override
     public void shutdown() throws BatchContainerServiceException {
         // TODO Auto-generated method stub
@@ -51,14 +65,82 @@ public class JobStatusManagerImpl implements IJobStatusManagerService {
 
     @Override
     public JobStatus getJobStatus(long jobInstanceId) throws BatchContainerServiceException {
-        JobStatus jobStatus = null;
-        jobStatus = _persistenceManager.getJobStatus(jobInstanceId);
-        return jobStatus;
+        CachedJobStatus cached = runningJobStatuses.get(jobInstanceId);
+        if (cached == null) {
+            return _persistenceManager.getJobStatus(jobInstanceId);
+        }
+        synchronized (cached) {
+            JobStatus js = loadCachedJobStatus(jobInstanceId, cached);
+            // Hand out a copy, callers are free to modify it without persisting
+            return js == null ? null : js.clone();
+        }
     }
     
     @Override
     public void updateJobStatus(JobStatus jobStatus) {
-        persistJobStatus(jobStatus.getJobInstanceId(), jobStatus);
+        long jobInstanceId = jobStatus.getJobInstanceId();
+        CachedJobStatus cached = runningJobStatuses.get(jobInstanceId);
+        if (cached == null) {
+            persistJobStatus(jobInstanceId, jobStatus);
+            return;
+        }
+        synchronized (cached) {
+            persistJobStatus(jobInstanceId, jobStatus);
+            cached.jobStatus = jobStatus.clone();
+        }
+    }
+
+    @Override
+    public void registerRunningInstance(long jobInstanceId) {
+        runningJobStatuses.put(jobInstanceId, new CachedJobStatus());
+    }
+
+    @Override
+    public void unregisterRunningInstance(long jobInstanceId) {
+        runningJobStatuses.remove(jobInstanceId);
+    }
+
+    /*
+     * Caller must hold the lock on cached.
+     */
+    private JobStatus loadCachedJobStatus(long jobInstanceId, CachedJobStatus cached) {
+        if (cached.jobStatus == null) {
+            cached.jobStatus = _persistenceManager.getJobStatus(jobInstanceId);
+        }
+        return cached.jobStatus;
+    }
+
+    /*
+     * Applies update to the JobStatus and persists it.  For a running instance the
+     * cached JobStatus is updated in place, under its lock so that a stop from
+     * another thread can't interleave with the job's own updates.
+     */
+    private void modifyJobStatus(long jobInstanceId, JobStatusUpdate update) throws BatchContainerServiceException {
+        CachedJobStatus cached = runningJobStatuses.get(jobInstanceId);
+        if (cached == null) {
+            JobStatus js = _persistenceManager.getJobStatus(jobInstanceId);
+            if (js == null) {
+                throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
+            }
+            update.apply(js);
+            persistJobStatus(jobInstanceId, js);
+            return;
+        }
+        synchronized (cached) {
+            JobStatus js = loadCachedJobStatus(jobInstanceId, cached);
+            if (js == null) {
+                throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
+            }
+            // Update a copy, so a failed write doesn't leave the cache ahead of the database
+            JobStatus updated = js.clone();
+            update.apply(updated);
+            persistJobStatus(jobInstanceId, updated);
+            cached.jobStatus = updated;
+        }
+    }
+
+    private interface JobStatusUpdate {
+        void apply(JobStatus js);
     }
     
     @Override
@@ -76,50 +158,46 @@ public class JobStatusManagerImpl implements IJobStatusManagerService {
     }
 
     @Override
-    public void updateJobBatchStatus(long jobInstanceId, BatchStatus batchStatus) throws BatchContainerServiceException {
-        JobStatus js = getJobStatus(jobInstanceId);
-        if (js == null) {
-            throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
-        }
-        if (BatchStatus.ABANDONED.equals(js.getBatchStatus())) {
-        	logger.fine("Don't update batch status for id = " + jobInstanceId + " since it is already ABANDONED"); 
-        }
-        js.setBatchStatus(batchStatus);
-        persistJobStatus(jobInstanceId, js);
+    public void updateJobBatchStatus(final long jobInstanceId, final BatchStatus batchStatus) throws BatchContainerServiceException {
+        modifyJobStatus(jobInstanceId, new JobStatusUpdate() {
+            public void apply(JobStatus js) {
+                if (BatchStatus.ABANDONED.equals(js.getBatchStatus())) {
+                	logger.fine("Don't update batch status for id = " + jobInstanceId + " since it is already ABANDONED"); 
+                }
+                js.setBatchStatus(batchStatus);
+            }
+        });
     }
 
     @Override
-    public void updateJobExecutionStatus(long jobInstanceId, BatchStatus batchStatus, String exitStatus) throws BatchContainerServiceException {
-        JobStatus js = getJobStatus(jobInstanceId);
-        if (js == null) {
-            throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
-        }
-        js.setBatchStatus(batchStatus);
-        js.setExitStatus(exitStatus);
-        persistJobStatus(jobInstanceId, js);
+    public void updateJobExecutionStatus(long jobInstanceId, final BatchStatus batchStatus, final String exitStatus) throws BatchContainerServiceException {
+        modifyJobStatus(jobInstanceId, new JobStatusUpdate() {
+            public void apply(JobStatus js) {
+                js.setBatchStatus(batchStatus);
+                js.setExitStatus(exitStatus);
+            }
+        });
     }
 
     @Override
-    public void updateJobCurrentStep(long jobInstanceId, String currentStepName) throws BatchContainerServiceException {
-        JobStatus js = getJobStatus(jobInstanceId);
-        if (js == null) {
-            throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
-        }
-        js.setCurrentStepId(currentStepName);
-        persistJobStatus(jobInstanceId, js);        
+    public void updateJobCurrentStep(long jobInstanceId, final String currentStepName) throws BatchContainerServiceException {
+        modifyJobStatus(jobInstanceId, new JobStatusUpdate() {
+            public void apply(JobStatus js) {
+                js.setCurrentStepId(currentStepName);
+            }
+        });
     }
 
 
     @Override
-    public void updateJobStatusWithNewExecution(long jobInstanceId, long newExecutionId) throws BatchContainerServiceException {
-        JobStatus js = getJobStatus(jobInstanceId);
-        if (js == null) {
-            throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
-        }
-        js.setRestartOn(null);
-        js.setLatestExecutionId(newExecutionId);
-        js.setBatchStatus(BatchStatus.STARTING);
-        persistJobStatus(jobInstanceId, js);                
+    public void updateJobStatusWithNewExecution(long jobInstanceId, final long newExecutionId) throws BatchContainerServiceException {
+        modifyJobStatus(jobInstanceId, new JobStatusUpdate() {
+            public void apply(JobStatus js) {
+                js.setRestartOn(null);
+                js.setLatestExecutionId(newExecutionId);
+                js.setBatchStatus(BatchStatus.STARTING);
+            }
+        });
     }
 
     private void persistJobStatus(long jobInstanceId, JobStatus newJobStatus) throws BatchContainerServiceException {       
@@ -170,12 +248,11 @@ public class JobStatusManagerImpl implements IJobStatusManagerService {
     /*
      * Inefficient, since we've already updated the status to stopped.. would be better to have a single update.
      */
-    public void updateJobStatusFromJSLStop(long jobInstanceId, String restartOn) throws BatchContainerServiceException {       
-        JobStatus js = getJobStatus(jobInstanceId);        
-        if (js == null) {
-            throw new IllegalStateException("Couldn't find entry to update for id = " + jobInstanceId);
-        }
-        js.setRestartOn(restartOn);
-        persistJobStatus(jobInstanceId, js);   
+    public void updateJobStatusFromJSLStop(long jobInstanceId, final String restartOn) throws BatchContainerServiceException {       
+        modifyJobStatus(jobInstanceId, new JobStatusUpdate() {
+            public void apply(JobStatus js) {
+                js.setRestartOn(restartOn);
+            }
+        });
     }
 }
@@ -0,0 +1,864 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.services.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.exception.BatchContainerServiceException;
+import com.ibm.jbatch.container.exception.PersistenceException;
+import com.ibm.jbatch.container.jobinstance.RuntimeFlowInSplitExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+import com.ibm.jbatch.container.persistence.Journal;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.spi.services.IBatchConfig;
+
+/**
+ * Keeps the job repository durable without a database: the in-memory store of
+ * MemoryPersistenceManagerImpl serves every query, and every change to it is
+ * appended to a {@link Journal} of memory-mapped segment files, which is replayed
+ * to rebuild it on startup.  Select it in batch-services.properties with:
+ *
+ * PERSISTENCE_MANAGEMENT_SERVICE=com.ibm.jbatch.container.services.impl.JournalPersistenceManagerImpl
+ *
+ * Each change appends one frame holding the whole new state of whatever changed,
+ * so replaying the log comes out the same however much of it is replayed twice.
+ * A chunk commit is a single frame with both checkpoints and the step status, then
+ * a sync that's shared with whatever other commits are waiting on one.
+ *
+ * Once JOURNAL_COMPACT_SEGMENTS segments have filled up, a background thread
+ * writes a snapshot of the store to replace them.  Nothing is evicted, since the
+ * whole point is to keep it; purge() is the way to drop old job instances.
+ */
+public class JournalPersistenceManagerImpl extends MemoryPersistenceManagerImpl {
+
+	private static final String CLASSNAME = JournalPersistenceManagerImpl.class.getName();
+
+	private final static Logger logger = Logger.getLogger(CLASSNAME);
+
+	private static final String DEFAULT_DIRECTORY = "RUNTIMEJOURNAL";
+	private static final String DEFAULT_SEGMENT_SIZE = Integer.toString(16 * 1024 * 1024);
+	private static final String DEFAULT_COMPACT_SEGMENTS = "4";
+	private static final String DEFAULT_FORCE = "true";
+
+	private static final int MIN_SEGMENT_SIZE = 4096;
+
+	// The entries a frame is made of
+	private static final byte ENTRY_COUNTERS = 1;
+	private static final byte ENTRY_INSTANCE = 2;
+	private static final byte ENTRY_EXECUTION = 3;
+	private static final byte ENTRY_STEP_EXECUTION = 4;
+	private static final byte ENTRY_JOB_STATUS = 5;
+	private static final byte ENTRY_STEP_STATUS = 6;
+	private static final byte ENTRY_CHECKPOINT = 7;
+	private static final byte ENTRY_PURGE = 8;
+	private static final byte ENTRY_DELETE_CHECKPOINTS = 9;
+
+	private Journal journal;
+	private int compactSegments;
+
+	/*
+	 * Held while a change is made and appended, so the order of the frames in the
+	 * journal is the order the changes were made in.  Not held for the sync.
+	 */
+	private final Object appendLock = new Object();
+
+	private ExecutorService compactor;
+	private final AtomicBoolean compacting = new AtomicBoolean();
+
+	@Override
+	public void init(IBatchConfig batchConfig) throws BatchContainerServiceException {
+		logger.config("Entering " + CLASSNAME + ".init(), batchConfig =" + batchConfig);
+		// Not super.init(), which only sets up retention; durable means keeping everything until it's purged
+		maxInstances = 0;
+		maxAgeMillis = 0;
+
+		Properties configProperties = batchConfig.getConfigProperties();
+		File directory = new File(configProperties.getProperty(JOURNAL_DIRECTORY, DEFAULT_DIRECTORY).trim());
+		int segmentSize;
+		try {
+			segmentSize = Math.max(MIN_SEGMENT_SIZE, Integer.parseInt(configProperties.getProperty(JOURNAL_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE).trim()));
+			compactSegments = Integer.parseInt(configProperties.getProperty(JOURNAL_COMPACT_SEGMENTS, DEFAULT_COMPACT_SEGMENTS).trim());
+		} catch (NumberFormatException e) {
+			throw new BatchContainerServiceException("Invalid journal persistence setting", e);
+		}
+		boolean force = Boolean.parseBoolean(configProperties.getProperty(JOURNAL_FORCE, DEFAULT_FORCE).trim());
+
+		logger.config("Journal directory = " + directory.getAbsolutePath() + ", segment size = " + segmentSize
+				+ ", compacting every " + compactSegments + " segments, force = " + force);
+
+		journal = new Journal(directory, segmentSize, force);
+		try {
+			journal.open(new Journal.FrameHandler() {
+				@Override
+				public void handle(byte[] frame) throws IOException {
+					replay(frame);
+				}
+			});
+		} catch (IOException e) {
+			throw new BatchContainerServiceException("Could not open journal in " + directory.getAbsolutePath(), e);
+		}
+
+		compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Batch journal compactor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduleCompactionIfNeeded();
+	}
+
+	@Override
+	public void shutdown() throws BatchContainerServiceException {
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(30, TimeUnit.SECONDS);
+			journal.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new BatchContainerServiceException(e);
+		}
+	}
+
+	/**
+	 * Replaces every full segment with a snapshot of the store, on the calling thread.
+	 * It's otherwise done in the background once JOURNAL_COMPACT_SEGMENTS segments fill up.
+	 */
+	public synchronized void compact() {
+		try {
+			final long sealed = journal.roll();
+			journal.writeSnapshot(sealed, new Journal.SnapshotWriter() {
+				@Override
+				public void writeTo(Journal.FrameSink sink) throws IOException {
+					writeSnapshot(sink);
+				}
+			});
+			logger.fine("Compacted journal up to segment " + sealed);
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		}
+	}
+
+	private void scheduleCompactionIfNeeded() {
+		if (compactSegments > 0 && journal.getSegmentsSinceSnapshot() >= compactSegments && compacting.compareAndSet(false, true)) {
+			compactor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						compact();
+					} catch (RuntimeException e) {
+						logger.log(Level.WARNING, "Journal compaction failed, will try again", e);
+					} finally {
+						compacting.set(false);
+					}
+				}
+			});
+		}
+	}
+
+	/*
+	 * JOBINSTANCEDATA
+	 */
+
+	@Override
+	public JobInstance createJobInstance(String name, String apptag, String jobXml) {
+		JobInstance jobInstance;
+		long lsn;
+		synchronized (appendLock) {
+			jobInstance = super.createJobInstance(name, apptag, jobXml);
+			lsn = append(instanceEntry(jobInstance.getInstanceId()));
+		}
+		sync(lsn);
+		return jobInstance;
+	}
+
+	@Override
+	public JobInstance createSubJobInstance(String name, String apptag) {
+		JobInstance jobInstance;
+		long lsn;
+		synchronized (appendLock) {
+			jobInstance = super.createSubJobInstance(name, apptag);
+			lsn = append(instanceEntry(jobInstance.getInstanceId()));
+		}
+		sync(lsn);
+		return jobInstance;
+	}
+
+	@Override
+	public void purge(String apptag) {
+		long lsn;
+		synchronized (appendLock) {
+			super.purge(apptag);
+			Frame frame = new Frame(ENTRY_PURGE);
+			frame.writeString(apptag);
+			lsn = append(frame);
+		}
+		sync(lsn);
+	}
+
+	/*
+	 * EXECUTIONINSTANCEDATA
+	 */
+
+	@Override
+	public RuntimeJobExecution createJobExecution(JobInstance jobInstance, Properties jobParameters, BatchStatus batchStatus) {
+		RuntimeJobExecution jobExecution;
+		long lsn;
+		synchronized (appendLock) {
+			jobExecution = super.createJobExecution(jobInstance, jobParameters, batchStatus);
+			lsn = append(executionEntry(jobExecution.getExecutionId()));
+		}
+		sync(lsn);
+		return jobExecution;
+	}
+
+	@Override
+	public RuntimeFlowInSplitExecution createFlowInSplitExecution(JobInstance jobInstance, BatchStatus batchStatus) {
+		RuntimeFlowInSplitExecution flowExecution;
+		long lsn;
+		synchronized (appendLock) {
+			flowExecution = super.createFlowInSplitExecution(jobInstance, batchStatus);
+			lsn = append(executionEntry(flowExecution.getExecutionId()));
+		}
+		sync(lsn);
+		return flowExecution;
+	}
+
+	@Override
+	public void updateBatchStatusOnly(long key, BatchStatus batchStatus, Timestamp updatets) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateBatchStatusOnly(key, batchStatus, updatets);
+			lsn = append(executionEntry(key));
+		}
+		sync(lsn);
+	}
+
+	@Override
+	public void markJobStarted(long key, Timestamp startTS) {
+		long lsn;
+		synchronized (appendLock) {
+			super.markJobStarted(key, startTS);
+			lsn = append(executionEntry(key));
+		}
+		sync(lsn);
+	}
+
+	@Override
+	public void updateWithFinalExecutionStatusesAndTimestamps(long key, BatchStatus batchStatus, String exitStatus, Timestamp updatets) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateWithFinalExecutionStatusesAndTimestamps(key, batchStatus, exitStatus, updatets);
+			lsn = append(executionEntry(key));
+		}
+		sync(lsn);
+	}
+
+	/*
+	 * STEPEXECUTIONINSTANCEDATA
+	 */
+
+	@Override
+	public StepExecutionImpl createStepExecution(long rootJobExecId, StepContextImpl stepContext) {
+		StepExecutionImpl stepExecution;
+		long lsn;
+		synchronized (appendLock) {
+			stepExecution = super.createStepExecution(rootJobExecId, stepContext);
+			lsn = append(stepExecutionEntry(stepExecution.getStepExecutionId()));
+		}
+		sync(lsn);
+		return stepExecution;
+	}
+
+	@Override
+	public void updateStepExecution(StepContextImpl stepContext) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateStepExecution(stepContext);
+			lsn = append(stepExecutionEntry(stepContext.getInternalStepExecutionId()));
+		}
+		sync(lsn);
+	}
+
+	@Override
+	public void updateWithFinalPartitionAggregateStepExecution(long rootJobExecutionId, StepContextImpl stepContext) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateWithFinalPartitionAggregateStepExecution(rootJobExecutionId, stepContext);
+			lsn = append(stepExecutionEntry(stepContext.getInternalStepExecutionId()));
+		}
+		sync(lsn);
+	}
+
+	/*
+	 * JOBSTATUS
+	 */
+
+	@Override
+	public JobStatus createJobStatus(long jobInstanceId) {
+		JobStatus jobStatus;
+		long lsn;
+		synchronized (appendLock) {
+			jobStatus = super.createJobStatus(jobInstanceId);
+			lsn = append(jobStatusEntry(null, jobInstanceId));
+		}
+		sync(lsn);
+		return jobStatus;
+	}
+
+	@Override
+	public void updateJobStatus(long instanceId, JobStatus jobStatus) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateJobStatus(instanceId, jobStatus);
+			lsn = append(jobStatusEntry(null, instanceId));
+		}
+		sync(lsn);
+	}
+
+	/*
+	 * STEPSTATUS
+	 */
+
+	@Override
+	public StepStatus createStepStatus(long stepExecId) {
+		StepStatus stepStatus;
+		long lsn;
+		synchronized (appendLock) {
+			stepStatus = super.createStepStatus(stepExecId);
+			lsn = append(stepStatusEntry(null, stepExecId));
+		}
+		sync(lsn);
+		return stepStatus;
+	}
+
+	@Override
+	public void updateStepStatus(long stepExecutionId, StepStatus stepStatus) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateStepStatus(stepExecutionId, stepStatus);
+			lsn = append(stepStatusEntry(null, stepExecutionId));
+		}
+		sync(lsn);
+	}
+
+	/*
+	 * CHECKPOINTDATA
+	 */
+
+	@Override
+	public void createCheckpointData(CheckpointDataKey key, CheckpointData value) {
+		updateCheckpointData(key, value);
+	}
+
+	@Override
+	public void updateCheckpointData(CheckpointDataKey key, CheckpointData value) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateCheckpointData(key, value);
+			lsn = append(checkpointEntry(null, key, value));
+		}
+		sync(lsn);
+	}
+
+	@Override
+	public void deleteCheckpointData(long jobInstanceId, String stepName) {
+		long lsn;
+		synchronized (appendLock) {
+			super.deleteCheckpointData(jobInstanceId, stepName);
+			Frame frame = new Frame(ENTRY_DELETE_CHECKPOINTS);
+			frame.writeLong(jobInstanceId);
+			frame.writeString(stepName);
+			lsn = append(frame);
+		}
+		sync(lsn);
+	}
+
+	/**
+	 * All the checkpoints and the step status go in one frame, so a crash can't leave
+	 * some of them behind without the others.
+	 */
+	@Override
+	public void updateChunkCommitUnit(ChunkCommitUnit unit) {
+		long lsn;
+		synchronized (appendLock) {
+			super.updateChunkCommitUnit(unit);
+			Frame frame = new Frame();
+			if (unit.getReaderData() != null) {
+				checkpointEntry(frame, unit.getReaderKey(), unit.getReaderData());
+			}
+			if (unit.getWriterData() != null) {
+				checkpointEntry(frame, unit.getWriterKey(), unit.getWriterData());
+			}
+			if (unit.getUserData() != null) {
+				checkpointEntry(frame, unit.getUserDataKey(), unit.getUserData());
+			}
+			if (unit.getStepStatus() != null) {
+				stepStatusEntry(frame, unit.getStepExecutionId());
+			}
+			lsn = append(frame);
+		}
+		sync(lsn);
+	}
+
+	/*
+	 * Appending
+	 */
+
+	/**
+	 * @return 0 if there's nothing to append
+	 */
+	private long append(Frame frame) {
+		if (frame == null || frame.isEmpty()) {
+			return 0;
+		}
+		long lsn;
+		try {
+			lsn = journal.append(frame.toByteArray());
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		}
+		scheduleCompactionIfNeeded();
+		return lsn;
+	}
+
+	private void sync(long lsn) {
+		if (lsn == 0) {
+			return;
+		}
+		try {
+			journal.sync(lsn);
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		}
+	}
+
+	/**
+	 * The bytes of one journal frame, made up of one or more entries.
+	 */
+	private static class Frame {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		Frame() {
+		}
+
+		Frame(byte entry) {
+			startEntry(entry);
+		}
+
+		void startEntry(byte entry) {
+			writeByte(entry);
+		}
+
+		boolean isEmpty() {
+			return bytes.size() == 0;
+		}
+
+		byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+
+		void writeByte(int b) {
+			try {
+				out.writeByte(b);
+			} catch (IOException e) {
+				throw new PersistenceException(e);
+			}
+		}
+
+		void writeLong(long l) {
+			try {
+				out.writeLong(l);
+			} catch (IOException e) {
+				throw new PersistenceException(e);
+			}
+		}
+
+		void writeBytes(byte[] b) {
+			try {
+				if (b == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(b.length);
+					out.write(b);
+				}
+			} catch (IOException e) {
+				throw new PersistenceException(e);
+			}
+		}
+
+		void writeString(String s) {
+			try {
+				writeBytes(s == null ? null : s.getBytes("UTF-8"));
+			} catch (IOException e) {
+				throw new PersistenceException(e);
+			}
+		}
+
+		void writeTimestamp(Timestamp ts) {
+			writeLong(ts == null ? Long.MIN_VALUE : ts.getTime());
+		}
+	}
+
+	private Frame instanceEntry(long jobInstanceId) {
+		InstanceRecord instance = instances.get(jobInstanceId);
+		if (instance == null) {
+			return null;
+		}
+		Frame frame = new Frame(ENTRY_INSTANCE);
+		frame.writeLong(instance.id);
+		frame.writeString(instance.name);
+		frame.writeString(instance.apptag);
+		return frame;
+	}
+
+	private Frame executionEntry(long executionId) {
+		ExecutionRecord execution = executions.get(executionId);
+		if (execution == null) {
+			return null;
+		}
+		Frame frame = new Frame(ENTRY_EXECUTION);
+		synchronized (execution) {
+			frame.writeLong(execution.id);
+			frame.writeLong(execution.instance.id);
+			if (execution.parameters == null) {
+				frame.writeLong(-1);
+			} else {
+				frame.writeLong(execution.parameters.size());
+				for (String name : execution.parameters.stringPropertyNames()) {
+					frame.writeString(name);
+					frame.writeString(execution.parameters.getProperty(name));
+				}
+			}
+			frame.writeTimestamp(execution.createTime);
+			frame.writeTimestamp(execution.startTime);
+			frame.writeTimestamp(execution.endTime);
+			frame.writeTimestamp(execution.updateTime);
+			frame.writeString(execution.batchStatus);
+			frame.writeString(execution.exitStatus);
+		}
+		return frame;
+	}
+
+	private Frame stepExecutionEntry(long stepExecutionId) {
+		StepExecutionRecord stepExecution = stepExecutions.get(stepExecutionId);
+		if (stepExecution == null) {
+			return null;
+		}
+		Frame frame = new Frame(ENTRY_STEP_EXECUTION);
+		synchronized (stepExecution) {
+			frame.writeLong(stepExecution.id);
+			frame.writeLong(stepExecution.execution.id);
+			frame.writeString(stepExecution.stepName);
+			frame.writeString(stepExecution.batchStatus);
+			frame.writeString(stepExecution.exitStatus);
+			frame.writeLong(stepExecution.readCount);
+			frame.writeLong(stepExecution.writeCount);
+			frame.writeLong(stepExecution.commitCount);
+			frame.writeLong(stepExecution.rollbackCount);
+			frame.writeLong(stepExecution.readSkipCount);
+			frame.writeLong(stepExecution.processSkipCount);
+			frame.writeLong(stepExecution.filterCount);
+			frame.writeLong(stepExecution.writeSkipCount);
+			frame.writeTimestamp(stepExecution.startTime);
+			frame.writeTimestamp(stepExecution.endTime);
+			frame.writeBytes(stepExecution.persistentData);
+		}
+		return frame;
+	}
+
+	/**
+	 * @param frame to add the entry to, or null for a new one
+	 */
+	private Frame jobStatusEntry(Frame frame, long jobInstanceId) {
+		InstanceRecord instance = instances.get(jobInstanceId);
+		JobStatus jobStatus = instance == null ? null : instance.jobStatus;
+		if (jobStatus == null) {
+			return frame;
+		}
+		if (frame == null) {
+			frame = new Frame();
+		}
+		frame.startEntry(ENTRY_JOB_STATUS);
+		frame.writeLong(instance.id);
+		frame.writeBytes(serializeObject(jobStatus));
+		return frame;
+	}
+
+	/**
+	 * @param frame to add the entry to, or null for a new one
+	 */
+	private Frame stepStatusEntry(Frame frame, long stepExecutionId) {
+		StepExecutionRecord stepExecution = stepExecutions.get(stepExecutionId);
+		if (stepExecution == null) {
+			return frame;
+		}
+		InstanceRecord instance = stepExecution.execution.instance;
+		String stepName;
+		synchronized (stepExecution) {
+			stepName = stepExecution.stepName;
+		}
+		return stepStatusEntry(frame, instance, stepName, instance.stepStatuses.get(stepName));
+	}
+
+	private Frame stepStatusEntry(Frame frame, InstanceRecord instance, String stepName, StepStatus stepStatus) {
+		if (stepStatus == null) {
+			return frame;
+		}
+		if (frame == null) {
+			frame = new Frame();
+		}
+		frame.startEntry(ENTRY_STEP_STATUS);
+		frame.writeLong(instance.id);
+		frame.writeString(stepName);
+		frame.writeBytes(serializeObject(stepStatus));
+		return frame;
+	}
+
+	/**
+	 * @param frame to add the entry to, or null for a new one
+	 */
+	private Frame checkpointEntry(Frame frame, CheckpointDataKey key, CheckpointData value) {
+		if (frame == null) {
+			frame = new Frame();
+		}
+		frame.startEntry(ENTRY_CHECKPOINT);
+		frame.writeLong(key.getJobInstanceId());
+		frame.writeString(key.getStepName());
+		frame.writeString(key.getBatchDataStreamName());
+		frame.writeBytes(value == null ? null : value.getRestartToken());
+		return frame;
+	}
+
+	/*
+	 * Writes the whole store, parents before what belongs to them.  Changes made
+	 * while it's being written are in the segments after the snapshot too.
+	 */
+	private void writeSnapshot(Journal.FrameSink sink) throws IOException {
+		Frame counters = new Frame(ENTRY_COUNTERS);
+		counters.writeLong(nextInstanceId.get());
+		counters.writeLong(nextExecutionId.get());
+		counters.writeLong(nextStepExecutionId.get());
+		sink.write(counters.toByteArray());
+
+		for (InstanceRecord instance : new TreeMap<Long, InstanceRecord>(instances).values()) {
+			Frame frame = instanceEntry(instance.id);
+			if (frame == null) {
+				continue;
+			}
+			frame = jobStatusEntry(frame, instance.id);
+			for (Map.Entry<String, StepStatus> entry : instance.stepStatuses.entrySet()) {
+				frame = stepStatusEntry(frame, instance, entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<CheckpointDataKey, CheckpointData> entry : instance.checkpoints.entrySet()) {
+				frame = checkpointEntry(frame, entry.getKey(), entry.getValue());
+			}
+			sink.write(frame.toByteArray());
+		}
+		for (Long executionId : new TreeMap<Long, ExecutionRecord>(executions).keySet()) {
+			Frame frame = executionEntry(executionId);
+			if (frame != null) {
+				sink.write(frame.toByteArray());
+			}
+		}
+		for (Long stepExecutionId : new TreeMap<Long, StepExecutionRecord>(stepExecutions).keySet()) {
+			Frame frame = stepExecutionEntry(stepExecutionId);
+			if (frame != null) {
+				sink.write(frame.toByteArray());
+			}
+		}
+	}
+
+	/*
+	 * Replaying
+	 */
+
+	private void replay(byte[] frame) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+		while (in.available() > 0) {
+			byte entry = in.readByte();
+			switch (entry) {
+			case ENTRY_COUNTERS:
+				advance(nextInstanceId, in.readLong() - 1);
+				advance(nextExecutionId, in.readLong() - 1);
+				advance(nextStepExecutionId, in.readLong() - 1);
+				break;
+			case ENTRY_INSTANCE:
+				restoreInstance(in.readLong(), readString(in), readString(in));
+				break;
+			case ENTRY_EXECUTION:
+				replayExecution(in);
+				break;
+			case ENTRY_STEP_EXECUTION:
+				replayStepExecution(in);
+				break;
+			case ENTRY_JOB_STATUS: {
+				InstanceRecord instance = instances.get(in.readLong());
+				byte[] jobStatus = readBytes(in);
+				if (instance != null) {
+					instance.jobStatus = (JobStatus) deserializeObject(jobStatus);
+				}
+				break;
+			}
+			case ENTRY_STEP_STATUS: {
+				InstanceRecord instance = instances.get(in.readLong());
+				String stepName = readString(in);
+				byte[] stepStatus = readBytes(in);
+				if (instance != null) {
+					instance.stepStatuses.put(stepName, (StepStatus) deserializeObject(stepStatus));
+				}
+				break;
+			}
+			case ENTRY_CHECKPOINT: {
+				long jobInstanceId = in.readLong();
+				String stepName = readString(in);
+				String type = readString(in);
+				byte[] token = readBytes(in);
+				InstanceRecord instance = instances.get(jobInstanceId);
+				if (instance != null) {
+					CheckpointData data = new CheckpointData(jobInstanceId, stepName, type);
+					data.setRestartToken(token);
+					instance.checkpoints.put(new CheckpointDataKey(jobInstanceId, stepName, type), data);
+				}
+				break;
+			}
+			case ENTRY_DELETE_CHECKPOINTS:
+				super.deleteCheckpointData(in.readLong(), readString(in));
+				break;
+			case ENTRY_PURGE:
+				super.purge(readString(in));
+				break;
+			default:
+				throw new PersistenceException("Unknown journal entry type " + entry);
+			}
+		}
+	}
+
+	private void replayExecution(DataInputStream in) throws IOException {
+		long id = in.readLong();
+		long jobInstanceId = in.readLong();
+		Properties parameters = null;
+		long count = in.readLong();
+		if (count >= 0) {
+			parameters = new Properties();
+			for (long i = 0; i < count; i++) {
+				parameters.setProperty(readString(in), readString(in));
+			}
+		}
+		Timestamp createTime = readTimestamp(in);
+		Timestamp startTime = readTimestamp(in);
+		Timestamp endTime = readTimestamp(in);
+		Timestamp updateTime = readTimestamp(in);
+		String batchStatus = readString(in);
+		String exitStatus = readString(in);
+
+		ExecutionRecord execution = restoreExecution(id, jobInstanceId, parameters);
+		if (execution != null) {
+			synchronized (execution) {
+				execution.createTime = createTime;
+				execution.startTime = startTime;
+				execution.endTime = endTime;
+				execution.updateTime = updateTime;
+				execution.batchStatus = batchStatus;
+				execution.exitStatus = exitStatus;
+			}
+		}
+	}
+
+	private void replayStepExecution(DataInputStream in) throws IOException {
+		long id = in.readLong();
+		long jobExecutionId = in.readLong();
+		String stepName = readString(in);
+		String batchStatus = readString(in);
+		String exitStatus = readString(in);
+		long[] counts = new long[8];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = in.readLong();
+		}
+		Timestamp startTime = readTimestamp(in);
+		Timestamp endTime = readTimestamp(in);
+		byte[] persistentData = readBytes(in);
+
+		StepExecutionRecord stepExecution = restoreStepExecution(id, jobExecutionId);
+		if (stepExecution != null) {
+			synchronized (stepExecution) {
+				stepExecution.stepName = stepName;
+				stepExecution.batchStatus = batchStatus;
+				stepExecution.exitStatus = exitStatus;
+				stepExecution.readCount = counts[0];
+				stepExecution.writeCount = counts[1];
+				stepExecution.commitCount = counts[2];
+				stepExecution.rollbackCount = counts[3];
+				stepExecution.readSkipCount = counts[4];
+				stepExecution.processSkipCount = counts[5];
+				stepExecution.filterCount = counts[6];
+				stepExecution.writeSkipCount = counts[7];
+				stepExecution.startTime = startTime;
+				stepExecution.endTime = endTime;
+				stepExecution.persistentData = persistentData;
+			}
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] b = new byte[length];
+		in.readFully(b);
+		return b;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] b = readBytes(in);
+		return b == null ? null : new String(b, "UTF-8");
+	}
+
+	private static Timestamp readTimestamp(DataInputStream in) throws IOException {
+		long time = in.readLong();
+		return time == Long.MIN_VALUE ? null : new Timestamp(time);
+	}
+}
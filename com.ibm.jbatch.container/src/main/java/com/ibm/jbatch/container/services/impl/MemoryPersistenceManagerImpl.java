@@ -0,0 +1,1194 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.services.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.batch.operations.NoSuchJobExecutionException;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+import javax.batch.runtime.Metric;
+import javax.batch.runtime.StepExecution;
+
+import com.ibm.jbatch.container.context.impl.MetricImpl;
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.exception.BatchContainerServiceException;
+import com.ibm.jbatch.container.exception.PersistenceException;
+import com.ibm.jbatch.container.impl.PartitionedStepBuilder;
+import com.ibm.jbatch.container.jobinstance.JobInstanceImpl;
+import com.ibm.jbatch.container.jobinstance.JobOperatorJobExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimeFlowInSplitExecution;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+import com.ibm.jbatch.container.services.IJobExecution;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
+import com.ibm.jbatch.container.util.TCCLObjectInputStream;
+import com.ibm.jbatch.spi.services.IBatchConfig;
+
+/**
+ * Keeps the job repository in memory instead of a database, for jobs that are
+ * short lived and never looked at or restarted once the JVM is gone.  Select it
+ * in batch-services.properties with:
+ *
+ * PERSISTENCE_MANAGEMENT_SERVICE=com.ibm.jbatch.container.services.impl.MemoryPersistenceManagerImpl
+ *
+ * Nothing survives a restart of the JVM.  To keep the heap from growing without
+ * bound, finished top-level job instances are evicted, least recently updated
+ * first, once there are more than MEMORY_PERSISTENCE_MAX_INSTANCES of them or
+ * once they haven't been updated for MEMORY_PERSISTENCE_MAX_AGE_SECONDS.  The
+ * age limit is checked on a timer as well as when instances are created, so
+ * an idle container still lets go of them.  An instance goes together with its
+ * executions, step executions, statuses, checkpoints and partition and
+ * split-flow subjob instances.  An evicted instance can no longer be queried or
+ * restarted.  An instance with an execution still running, or with none created
+ * for it yet, is never evicted.
+ *
+ * What's stored is copied on the way in and out, the way serializing to and
+ * from the tables does, so callers are free to change what they're given.
+ */
+public class MemoryPersistenceManagerImpl implements IPersistenceManagerService, BatchContainerConstants {
+
+	private static final String CLASSNAME = MemoryPersistenceManagerImpl.class.getName();
+
+	private final static Logger logger = Logger.getLogger(CLASSNAME);
+
+	private static final String DEFAULT_MAX_INSTANCES = "1000";
+	private static final String DEFAULT_MAX_AGE_SECONDS = "0";
+
+	// Longest the timer leaves between checks for instances past the age limit
+	private static final long MAX_EVICTION_PERIOD_MILLIS = 60000;
+
+	// ConcurrentHashMap takes no null keys, so instances without an apptag are indexed under this
+	private static final String NO_APPTAG = "\u0000";
+
+	/*
+	 * The retention limits, the id counters, the stores and the record classes are
+	 * package-private so JournalPersistenceManagerImpl can log and restore them.
+	 */
+	int maxInstances;
+	long maxAgeMillis;
+
+	final AtomicLong nextInstanceId = new AtomicLong(1);
+	final AtomicLong nextExecutionId = new AtomicLong(1);
+	final AtomicLong nextStepExecutionId = new AtomicLong(1);
+
+	final ConcurrentHashMap<Long, InstanceRecord> instances = new ConcurrentHashMap<Long, InstanceRecord>();
+	final ConcurrentHashMap<Long, ExecutionRecord> executions = new ConcurrentHashMap<Long, ExecutionRecord>();
+	final ConcurrentHashMap<Long, StepExecutionRecord> stepExecutions = new ConcurrentHashMap<Long, StepExecutionRecord>();
+
+	// Instance ids by job name, newest first, for the JobOperator queries
+	private final ConcurrentHashMap<String, NavigableSet<Long>> instanceIdsByName = new ConcurrentHashMap<String, NavigableSet<Long>>();
+
+	// Instance ids by apptag, for purge
+	private final ConcurrentHashMap<String, Set<Long>> instanceIdsByApptag = new ConcurrentHashMap<String, Set<Long>>();
+
+	/*
+	 * Top-level instances in least recently updated order, which is the order they
+	 * are considered for eviction in.  Subjob instances hang off their parent and
+	 * go with it.  Guarded by itself.
+	 */
+	private final LinkedHashMap<Long, InstanceRecord> retention = new LinkedHashMap<Long, InstanceRecord>(16, 0.75f, true);
+
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	private ScheduledExecutorService evictor;
+
+	static class InstanceRecord {
+		final long id;
+		final String name;
+		final String apptag;
+		final InstanceRecord parent;
+		final List<InstanceRecord> subJobs = new CopyOnWriteArrayList<InstanceRecord>();
+		final List<ExecutionRecord> executions = new CopyOnWriteArrayList<ExecutionRecord>();
+		final ConcurrentHashMap<CheckpointDataKey, CheckpointData> checkpoints = new ConcurrentHashMap<CheckpointDataKey, CheckpointData>();
+		// By step name, since that's how they're looked up
+		final ConcurrentHashMap<String, StepStatus> stepStatuses = new ConcurrentHashMap<String, StepStatus>();
+		volatile JobStatus jobStatus;
+		volatile long lastUpdated = System.currentTimeMillis();
+
+		InstanceRecord(long id, String name, String apptag, InstanceRecord parent) {
+			this.id = id;
+			this.name = name;
+			this.apptag = apptag;
+			this.parent = parent;
+		}
+
+		InstanceRecord root() {
+			InstanceRecord root = this;
+			while (root.parent != null) {
+				root = root.parent;
+			}
+			return root;
+		}
+
+		boolean isRunning() {
+			for (ExecutionRecord execution : executions) {
+				if (execution.isRunning()) {
+					return true;
+				}
+			}
+			for (InstanceRecord subJob : subJobs) {
+				if (subJob.isRunning()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	static class ExecutionRecord {
+		final long id;
+		final InstanceRecord instance;
+		final Properties parameters;
+		final List<StepExecutionRecord> stepExecutions = new CopyOnWriteArrayList<StepExecutionRecord>();
+		Timestamp createTime;
+		Timestamp startTime;
+		Timestamp endTime;
+		Timestamp updateTime;
+		String batchStatus;
+		String exitStatus;
+
+		ExecutionRecord(long id, InstanceRecord instance, Properties parameters) {
+			this.id = id;
+			this.instance = instance;
+			this.parameters = parameters;
+		}
+
+		synchronized boolean isRunning() {
+			return BatchStatus.STARTING.name().equals(batchStatus) || BatchStatus.STARTED.name().equals(batchStatus)
+					|| BatchStatus.STOPPING.name().equals(batchStatus);
+		}
+
+		synchronized IJobExecution toJobExecution() {
+			JobOperatorJobExecution jobEx = new JobOperatorJobExecution(id, instance.id);
+			jobEx.setCreateTime(createTime);
+			jobEx.setStartTime(startTime);
+			jobEx.setEndTime(endTime);
+			jobEx.setLastUpdateTime(updateTime);
+			jobEx.setJobParameters(copyProperties(parameters));
+			jobEx.setBatchStatus(batchStatus);
+			jobEx.setExitStatus(exitStatus);
+			jobEx.setJobName(instance.name);
+			return jobEx;
+		}
+	}
+
+	static class StepExecutionRecord {
+		final long id;
+		final ExecutionRecord execution;
+		String stepName;
+		String batchStatus;
+		String exitStatus;
+		long readCount;
+		long writeCount;
+		long commitCount;
+		long rollbackCount;
+		long readSkipCount;
+		long processSkipCount;
+		long filterCount;
+		long writeSkipCount;
+		Timestamp startTime;
+		Timestamp endTime;
+		// Serialized, as it would be in the table, so later changes by the step don't show through
+		byte[] persistentData;
+
+		StepExecutionRecord(long id, ExecutionRecord execution) {
+			this.id = id;
+			this.execution = execution;
+		}
+
+		synchronized void update(StepContextImpl stepContext, Metric[] metrics) {
+			batchStatus = stepContext.getBatchStatus() == null ? BatchStatus.STARTING.name() : stepContext.getBatchStatus().name();
+			exitStatus = stepContext.getExitStatus();
+			stepName = stepContext.getStepName();
+			for (int i = 0; i < metrics.length; i++) {
+				MetricImpl.MetricType type = ((MetricImpl) metrics[i]).getType();
+				long value = metrics[i].getValue();
+				if (type.equals(MetricImpl.MetricType.READ_COUNT)) {
+					readCount = value;
+				} else if (type.equals(MetricImpl.MetricType.WRITE_COUNT)) {
+					writeCount = value;
+				} else if (type.equals(MetricImpl.MetricType.PROCESS_SKIP_COUNT)) {
+					processSkipCount = value;
+				} else if (type.equals(MetricImpl.MetricType.COMMIT_COUNT)) {
+					commitCount = value;
+				} else if (type.equals(MetricImpl.MetricType.ROLLBACK_COUNT)) {
+					rollbackCount = value;
+				} else if (type.equals(MetricImpl.MetricType.READ_SKIP_COUNT)) {
+					readSkipCount = value;
+				} else if (type.equals(MetricImpl.MetricType.FILTER_COUNT)) {
+					filterCount = value;
+				} else if (type.equals(MetricImpl.MetricType.WRITE_SKIP_COUNT)) {
+					writeSkipCount = value;
+				}
+			}
+			startTime = stepContext.getStartTimeTS();
+			endTime = stepContext.getEndTimeTS();
+			persistentData = serializeObject(stepContext.getPersistentUserData());
+		}
+
+		synchronized void addMetricsTo(long[] totals) {
+			totals[0] += readCount;
+			totals[1] += writeCount;
+			totals[2] += commitCount;
+			totals[3] += rollbackCount;
+			totals[4] += readSkipCount;
+			totals[5] += processSkipCount;
+			totals[6] += filterCount;
+			totals[7] += writeSkipCount;
+		}
+
+		synchronized StepExecutionImpl toStepExecution() {
+			StepExecutionImpl stepEx = new StepExecutionImpl(execution.id, id);
+			stepEx.setBatchStatus(BatchStatus.valueOf(batchStatus));
+			stepEx.setExitStatus(exitStatus);
+			stepEx.setStepName(stepName);
+			stepEx.setReadCount(readCount);
+			stepEx.setWriteCount(writeCount);
+			stepEx.setCommitCount(commitCount);
+			stepEx.setRollbackCount(rollbackCount);
+			stepEx.setReadSkipCount(readSkipCount);
+			stepEx.setProcessSkipCount(processSkipCount);
+			stepEx.setFilterCount(filterCount);
+			stepEx.setWriteSkipCount(writeSkipCount);
+			stepEx.setStartTime(startTime);
+			stepEx.setEndTime(endTime);
+			stepEx.setPersistentUserData(deserializeObject(persistentData));
+			return stepEx;
+		}
+	}
+
+	@Override
+	public void init(IBatchConfig batchConfig) throws BatchContainerServiceException {
+		logger.config("Entering " + CLASSNAME + ".init(), batchConfig =" + batchConfig);
+
+		Properties configProperties = batchConfig.getConfigProperties();
+		try {
+			maxInstances = Integer.parseInt(configProperties.getProperty(MEMORY_PERSISTENCE_MAX_INSTANCES, DEFAULT_MAX_INSTANCES).trim());
+			maxAgeMillis = 1000L * Long.parseLong(configProperties.getProperty(MEMORY_PERSISTENCE_MAX_AGE_SECONDS, DEFAULT_MAX_AGE_SECONDS).trim());
+		} catch (NumberFormatException e) {
+			throw new BatchContainerServiceException("Invalid in-memory persistence retention setting", e);
+		}
+
+		logger.config("Retaining at most " + (maxInstances > 0 ? maxInstances : "unlimited") + " finished job instances"
+				+ (maxAgeMillis > 0 ? ", for at most " + maxAgeMillis / 1000 + " seconds" : ""));
+
+		if (maxAgeMillis > 0) {
+			evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Batch in-memory repository evictor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.min(maxAgeMillis, MAX_EVICTION_PERIOD_MILLIS);
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						enforceRetention(0);
+					} catch (RuntimeException e) {
+						logger.log(Level.WARNING, "Failed evicting expired job instances", e);
+					}
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void shutdown() throws BatchContainerServiceException {
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return how many top-level job instances have been evicted to stay within the retention limits
+	 */
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * @return how many top-level job instances are currently held
+	 */
+	public int getRetainedCount() {
+		synchronized (retention) {
+			return retention.size();
+		}
+	}
+
+	/*
+	 * JOBINSTANCEDATA
+	 */
+
+	@Override
+	public JobInstance createJobInstance(String name, String apptag, String jobXml) {
+		InstanceRecord instance = addInstance(name, apptag);
+		JobInstanceImpl jobInstance = new JobInstanceImpl(instance.id, jobXml);
+		jobInstance.setJobName(name);
+		return jobInstance;
+	}
+
+	@Override
+	public JobInstance createSubJobInstance(String name, String apptag) {
+		InstanceRecord instance = addInstance(name, apptag);
+		JobInstanceImpl jobInstance = new JobInstanceImpl(instance.id);
+		jobInstance.setJobName(name);
+		return jobInstance;
+	}
+
+	private InstanceRecord addInstance(String name, String apptag) {
+		InstanceRecord parent = getParentInstance(name);
+		if (parent == null) {
+			enforceRetention(1);
+		}
+		return addInstance(nextInstanceId.getAndIncrement(), name, apptag, parent);
+	}
+
+	private InstanceRecord addInstance(long id, String name, String apptag, InstanceRecord parent) {
+		InstanceRecord instance = new InstanceRecord(id, name, apptag, parent);
+		instances.put(instance.id, instance);
+		NavigableSet<Long> ids = instanceIdsByName.get(name);
+		if (ids == null) {
+			NavigableSet<Long> newIds = new ConcurrentSkipListSet<Long>(Collections.reverseOrder());
+			ids = instanceIdsByName.putIfAbsent(name, newIds);
+			if (ids == null) {
+				ids = newIds;
+			}
+		}
+		ids.add(instance.id);
+		String apptagKey = apptagKey(apptag);
+		Set<Long> apptagIds = instanceIdsByApptag.get(apptagKey);
+		if (apptagIds == null) {
+			Set<Long> newIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+			apptagIds = instanceIdsByApptag.putIfAbsent(apptagKey, newIds);
+			if (apptagIds == null) {
+				apptagIds = newIds;
+			}
+		}
+		apptagIds.add(instance.id);
+
+		if (parent != null) {
+			parent.subJobs.add(instance);
+			touch(parent);
+		} else {
+			synchronized (retention) {
+				retention.put(instance.id, instance);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Subjob names start with the id of the instance they run under, see PartitionedStepBuilder.
+	 *
+	 * @return the instance a partition or split-flow subjob belongs to, or null for a top-level job
+	 */
+	private InstanceRecord getParentInstance(String name) {
+		if (name == null || !name.startsWith(PartitionedStepBuilder.JOB_ID_SEPARATOR)) {
+			return null;
+		}
+		int end = name.indexOf(PartitionedStepBuilder.JOB_ID_SEPARATOR, 1);
+		try {
+			return instances.get(Long.parseLong(end < 0 ? name.substring(1) : name.substring(1, end)));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private InstanceRecord getInstance(long jobInstanceId) {
+		InstanceRecord instance = instances.get(jobInstanceId);
+		if (instance == null) {
+			throw new PersistenceException("No job instance found with id = " + jobInstanceId);
+		}
+		return instance;
+	}
+
+	/*
+	 * Marks the instance's top-level job as recently updated.
+	 */
+	private void touch(InstanceRecord instance) {
+		InstanceRecord root = instance.root();
+		synchronized (retention) {
+			root.lastUpdated = System.currentTimeMillis();
+			// Access order, so this moves it to the most recently updated end
+			retention.get(root.id);
+		}
+	}
+
+	private static String apptagKey(String apptag) {
+		return apptag == null ? NO_APPTAG : apptag;
+	}
+
+	/*
+	 * Evicts finished instances, oldest first, until there's room for the given
+	 * number more within maxInstances and none is older than maxAgeMillis.
+	 */
+	private void enforceRetention(int room) {
+		List<InstanceRecord> evicted = new ArrayList<InstanceRecord>();
+		long now = System.currentTimeMillis();
+		synchronized (retention) {
+			int excess = maxInstances > 0 ? retention.size() - maxInstances + room : 0;
+			Iterator<InstanceRecord> iter = retention.values().iterator();
+			while (iter.hasNext()) {
+				InstanceRecord instance = iter.next();
+				boolean expired = maxAgeMillis > 0 && now - instance.lastUpdated > maxAgeMillis;
+				if (excess <= 0 && !expired) {
+					// Everything after this was updated more recently
+					break;
+				}
+				// One with no execution yet is about to get one, so isn't finished either
+				if (!instance.executions.isEmpty() && !instance.isRunning()) {
+					iter.remove();
+					evicted.add(instance);
+					excess--;
+				}
+			}
+		}
+		for (InstanceRecord instance : evicted) {
+			removeInstance(instance);
+		}
+		if (!evicted.isEmpty()) {
+			evictedCount.addAndGet(evicted.size());
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Evicted " + evicted.size() + " job instances");
+			}
+		}
+	}
+
+	private void removeInstance(InstanceRecord instance) {
+		for (InstanceRecord subJob : instance.subJobs) {
+			removeInstance(subJob);
+		}
+		for (ExecutionRecord execution : instance.executions) {
+			for (StepExecutionRecord stepExecution : execution.stepExecutions) {
+				stepExecutions.remove(stepExecution.id);
+			}
+			executions.remove(execution.id);
+		}
+		NavigableSet<Long> ids = instanceIdsByName.get(instance.name);
+		if (ids != null) {
+			ids.remove(instance.id);
+			if (ids.isEmpty()) {
+				instanceIdsByName.remove(instance.name, ids);
+			}
+		}
+		Set<Long> apptagIds = instanceIdsByApptag.get(apptagKey(instance.apptag));
+		if (apptagIds != null) {
+			apptagIds.remove(instance.id);
+			if (apptagIds.isEmpty()) {
+				instanceIdsByApptag.remove(apptagKey(instance.apptag), apptagIds);
+			}
+		}
+		instances.remove(instance.id);
+	}
+
+	@Override
+	public int jobOperatorGetJobInstanceCount(String jobName) {
+		NavigableSet<Long> ids = instanceIdsByName.get(jobName);
+		return ids == null ? 0 : ids.size();
+	}
+
+	@Override
+	public int jobOperatorGetJobInstanceCount(String jobName, String appTag) {
+		if (appTag == null) {
+			return jobOperatorGetJobInstanceCount(jobName);
+		}
+		Set<Long> nameIds = instanceIdsByName.get(jobName);
+		Set<Long> apptagIds = instanceIdsByApptag.get(appTag);
+		if (nameIds == null || apptagIds == null) {
+			return 0;
+		}
+		// Only as many lookups as the smaller of the two has ids
+		Set<Long> walked = nameIds.size() <= apptagIds.size() ? nameIds : apptagIds;
+		Set<Long> other = walked == nameIds ? apptagIds : nameIds;
+		int count = 0;
+		for (Long id : walked) {
+			if (other.contains(id)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public List<Long> jobOperatorGetJobInstanceIds(String jobName, int start, int count) {
+		return collectJobInstanceIds(jobName, null, Long.MAX_VALUE, start, count);
+	}
+
+	@Override
+	public List<Long> jobOperatorGetJobInstanceIds(String jobName, String appTag, int start, int count) {
+		return collectJobInstanceIds(jobName, appTag, Long.MAX_VALUE, start, count);
+	}
+
+	@Override
+	public List<Long> jobOperatorGetJobInstanceIdsAfter(String jobName, long lastInstanceId, int count) {
+		return collectJobInstanceIds(jobName, null, lastInstanceId, 0, count);
+	}
+
+	@Override
+	public List<Long> jobOperatorGetJobInstanceIdsAfter(String jobName, String appTag, long lastInstanceId, int count) {
+		return collectJobInstanceIds(jobName, appTag, lastInstanceId, 0, count);
+	}
+
+	/**
+	 * @param appTag only instances with this apptag, or null for any
+	 * @param before only instance ids lower than this
+	 * @return newest first, up to count of the matching instance ids, skipping the first start
+	 */
+	private List<Long> collectJobInstanceIds(String jobName, String appTag, long before, int start, int count) {
+		List<Long> data = new ArrayList<Long>();
+		NavigableSet<Long> ids = instanceIdsByName.get(jobName);
+		if (ids == null || count <= 0 || start < 0) {
+			return data;
+		}
+		int skip = start;
+		for (Long id : ids.tailSet(before, false)) {
+			if (data.size() >= count) {
+				break;
+			}
+			if (appTag != null) {
+				InstanceRecord instance = instances.get(id);
+				if (instance == null || !appTag.equals(instance.apptag)) {
+					continue;
+				}
+			}
+			if (skip > 0) {
+				skip--;
+				continue;
+			}
+			data.add(id);
+		}
+		return data;
+	}
+
+	@Override
+	public Map<Long, String> jobOperatorGetExternalJobInstanceData() {
+		HashMap<Long, String> data = new HashMap<Long, String>();
+		for (InstanceRecord instance : instances.values()) {
+			// Filter out 'subjob' parallel execution entries which start with the special character
+			if (!instance.name.startsWith(PartitionedStepBuilder.JOB_ID_SEPARATOR)) {
+				data.put(instance.id, instance.name);
+			}
+		}
+		return data;
+	}
+
+	@Override
+	public String getJobCurrentTag(long jobInstanceId) {
+		InstanceRecord instance = instances.get(jobInstanceId);
+		return instance == null ? null : instance.apptag;
+	}
+
+	@Override
+	public void purge(String apptag) {
+		logger.entering(CLASSNAME, "purge", apptag);
+		List<InstanceRecord> purged = new ArrayList<InstanceRecord>();
+		Set<Long> apptagIds = instanceIdsByApptag.get(apptagKey(apptag));
+		if (apptagIds != null) {
+			for (Long id : apptagIds) {
+				InstanceRecord instance = instances.get(id);
+				if (instance != null) {
+					purged.add(instance);
+				}
+			}
+		}
+		synchronized (retention) {
+			for (InstanceRecord instance : purged) {
+				retention.remove(instance.id);
+			}
+		}
+		for (InstanceRecord instance : purged) {
+			if (instance.parent != null) {
+				instance.parent.subJobs.remove(instance);
+			}
+			removeInstance(instance);
+		}
+		logger.exiting(CLASSNAME, "purge");
+	}
+
+	/*
+	 * EXECUTIONINSTANCEDATA
+	 */
+
+	@Override
+	public RuntimeJobExecution createJobExecution(JobInstance jobInstance, Properties jobParameters, BatchStatus batchStatus) {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		ExecutionRecord execution = addExecution(jobInstance, jobParameters, batchStatus, now);
+		RuntimeJobExecution jobExecution = new RuntimeJobExecution(jobInstance, execution.id);
+		jobExecution.setBatchStatus(batchStatus.name());
+		jobExecution.setCreateTime(now);
+		jobExecution.setLastUpdateTime(now);
+		return jobExecution;
+	}
+
+	@Override
+	public RuntimeFlowInSplitExecution createFlowInSplitExecution(JobInstance jobInstance, BatchStatus batchStatus) {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		ExecutionRecord execution = addExecution(jobInstance, null, batchStatus, now);
+		RuntimeFlowInSplitExecution flowExecution = new RuntimeFlowInSplitExecution(jobInstance, execution.id);
+		flowExecution.setBatchStatus(batchStatus.name());
+		flowExecution.setCreateTime(now);
+		flowExecution.setLastUpdateTime(now);
+		return flowExecution;
+	}
+
+	private ExecutionRecord addExecution(JobInstance jobInstance, Properties jobParameters, BatchStatus batchStatus, Timestamp timestamp) {
+		InstanceRecord instance = getInstance(jobInstance.getInstanceId());
+		ExecutionRecord execution = new ExecutionRecord(nextExecutionId.getAndIncrement(), instance, copyProperties(jobParameters));
+		execution.createTime = timestamp;
+		execution.updateTime = timestamp;
+		execution.batchStatus = batchStatus.name();
+		executions.put(execution.id, execution);
+		instance.executions.add(execution);
+		touch(instance);
+		return execution;
+	}
+
+	private ExecutionRecord getExecution(long executionId) throws NoSuchJobExecutionException {
+		ExecutionRecord execution = executions.get(executionId);
+		if (execution == null) {
+			String msg = "Did not find job instance associated with executionID =" + executionId;
+			logger.fine(msg);
+			throw new NoSuchJobExecutionException(msg);
+		}
+		return execution;
+	}
+
+	@Override
+	public Timestamp jobOperatorQueryJobExecutionTimestamp(long key, TimestampType timestampType) {
+		ExecutionRecord execution = executions.get(key);
+		if (execution == null) {
+			return null;
+		}
+		synchronized (execution) {
+			if (timestampType.equals(TimestampType.CREATE)) {
+				return execution.createTime;
+			} else if (timestampType.equals(TimestampType.END)) {
+				return execution.endTime;
+			} else if (timestampType.equals(TimestampType.LAST_UPDATED)) {
+				return execution.updateTime;
+			} else if (timestampType.equals(TimestampType.STARTED)) {
+				return execution.startTime;
+			} else {
+				throw new IllegalArgumentException("Unexpected enum value.");
+			}
+		}
+	}
+
+	@Override
+	public String jobOperatorQueryJobExecutionBatchStatus(long key) {
+		ExecutionRecord execution = executions.get(key);
+		if (execution == null) {
+			return null;
+		}
+		synchronized (execution) {
+			return execution.batchStatus;
+		}
+	}
+
+	@Override
+	public String jobOperatorQueryJobExecutionExitStatus(long key) {
+		ExecutionRecord execution = executions.get(key);
+		if (execution == null) {
+			return null;
+		}
+		synchronized (execution) {
+			return execution.exitStatus;
+		}
+	}
+
+	@Override
+	public long jobOperatorQueryJobExecutionJobInstanceId(long executionID) throws NoSuchJobExecutionException {
+		return getExecution(executionID).instance.id;
+	}
+
+	@Override
+	public long getJobInstanceIdByExecutionId(long executionId) throws NoSuchJobExecutionException {
+		return getExecution(executionId).instance.id;
+	}
+
+	@Override
+	public Properties getParameters(long executionId) throws NoSuchJobExecutionException {
+		return copyProperties(getExecution(executionId).parameters);
+	}
+
+	@Override
+	public void updateBatchStatusOnly(long key, BatchStatus batchStatus, Timestamp updatets) {
+		ExecutionRecord execution = executions.get(key);
+		if (execution != null) {
+			synchronized (execution) {
+				execution.batchStatus = batchStatus.name();
+				execution.updateTime = updatets;
+			}
+			touch(execution.instance);
+		}
+	}
+
+	@Override
+	public void markJobStarted(long key, Timestamp startTS) {
+		ExecutionRecord execution = executions.get(key);
+		if (execution != null) {
+			synchronized (execution) {
+				execution.batchStatus = BatchStatus.STARTED.name();
+				execution.startTime = startTS;
+				execution.updateTime = startTS;
+			}
+			touch(execution.instance);
+		}
+	}
+
+	@Override
+	public void updateWithFinalExecutionStatusesAndTimestamps(long key, BatchStatus batchStatus, String exitStatus, Timestamp updatets) {
+		ExecutionRecord execution = executions.get(key);
+		if (execution != null) {
+			synchronized (execution) {
+				execution.batchStatus = batchStatus.name();
+				execution.exitStatus = exitStatus;
+				execution.endTime = updatets;
+				execution.updateTime = updatets;
+			}
+			touch(execution.instance);
+		}
+	}
+
+	@Override
+	public IJobExecution jobOperatorGetJobExecution(long jobExecutionId) {
+		ExecutionRecord execution = executions.get(jobExecutionId);
+		return execution == null ? null : execution.toJobExecution();
+	}
+
+	@Override
+	public List<IJobExecution> jobOperatorGetJobExecutions(long jobInstanceId) {
+		List<IJobExecution> data = new ArrayList<IJobExecution>();
+		InstanceRecord instance = instances.get(jobInstanceId);
+		if (instance != null) {
+			for (ExecutionRecord execution : instance.executions) {
+				data.add(execution.toJobExecution());
+			}
+		}
+		return data;
+	}
+
+	@Override
+	public Set<Long> jobOperatorGetRunningExecutions(String jobName) {
+		Set<Long> executionIds = new HashSet<Long>();
+		NavigableSet<Long> ids = instanceIdsByName.get(jobName);
+		if (ids != null) {
+			for (Long id : ids) {
+				InstanceRecord instance = instances.get(id);
+				if (instance != null) {
+					for (ExecutionRecord execution : instance.executions) {
+						if (execution.isRunning()) {
+							executionIds.add(execution.id);
+						}
+					}
+				}
+			}
+		}
+		return executionIds;
+	}
+
+	@Override
+	public long getMostRecentExecutionId(long jobInstanceId) {
+		InstanceRecord instance = instances.get(jobInstanceId);
+		if (instance == null || instance.executions.isEmpty()) {
+			return -1;
+		}
+		return instance.executions.get(instance.executions.size() - 1).id;
+	}
+
+	@Override
+	public String getTagName(long jobExecutionId) {
+		ExecutionRecord execution = executions.get(jobExecutionId);
+		return execution == null ? null : execution.instance.apptag;
+	}
+
+	/*
+	 * STEPEXECUTIONINSTANCEDATA
+	 */
+
+	@Override
+	public StepExecutionImpl createStepExecution(long rootJobExecId, StepContextImpl stepContext) {
+		ExecutionRecord execution = executions.get(rootJobExecId);
+		if (execution == null) {
+			throw new PersistenceException("No job execution found with id = " + rootJobExecId);
+		}
+		StepExecutionRecord stepExecution = new StepExecutionRecord(nextStepExecutionId.getAndIncrement(), execution);
+		stepExecution.update(stepContext, stepContext.getMetrics());
+		stepExecutions.put(stepExecution.id, stepExecution);
+		execution.stepExecutions.add(stepExecution);
+
+		StepExecutionImpl stepExecutionImpl = new StepExecutionImpl(rootJobExecId, stepExecution.id);
+		stepExecutionImpl.setStepName(stepContext.getStepName());
+		return stepExecutionImpl;
+	}
+
+	@Override
+	public void updateStepExecution(StepContextImpl stepContext) {
+		StepExecutionRecord stepExecution = stepExecutions.get(stepContext.getInternalStepExecutionId());
+		if (stepExecution != null) {
+			stepExecution.update(stepContext, stepContext.getMetrics());
+		}
+	}
+
+	@Override
+	public void updateWithFinalPartitionAggregateStepExecution(long rootJobExecutionId, StepContextImpl stepContext) {
+		InstanceRecord instance = getExecution(rootJobExecutionId).instance;
+		StepExecutionRecord stepExecution = stepExecutions.get(stepContext.getInternalStepExecutionId());
+		if (stepExecution == null) {
+			return;
+		}
+
+		// The same subjobs the JDBC implementation finds with name like ':<instanceId>:<stepName>:%'
+		String prefix = PartitionedStepBuilder.JOB_ID_SEPARATOR + instance.id + PartitionedStepBuilder.JOB_ID_SEPARATOR
+				+ stepContext.getStepName() + PartitionedStepBuilder.JOB_ID_SEPARATOR;
+		long[] totals = new long[8];
+		for (InstanceRecord subJob : instance.subJobs) {
+			if (subJob.name.startsWith(prefix)) {
+				for (ExecutionRecord execution : subJob.executions) {
+					for (StepExecutionRecord partitionStepExecution : execution.stepExecutions) {
+						partitionStepExecution.addMetricsTo(totals);
+					}
+				}
+			}
+		}
+
+		stepExecution.update(stepContext, new Metric[] {
+				new MetricImpl(MetricImpl.MetricType.READ_COUNT, totals[0]),
+				new MetricImpl(MetricImpl.MetricType.WRITE_COUNT, totals[1]),
+				new MetricImpl(MetricImpl.MetricType.COMMIT_COUNT, totals[2]),
+				new MetricImpl(MetricImpl.MetricType.ROLLBACK_COUNT, totals[3]),
+				new MetricImpl(MetricImpl.MetricType.READ_SKIP_COUNT, totals[4]),
+				new MetricImpl(MetricImpl.MetricType.PROCESS_SKIP_COUNT, totals[5]),
+				new MetricImpl(MetricImpl.MetricType.FILTER_COUNT, totals[6]),
+				new MetricImpl(MetricImpl.MetricType.WRITE_SKIP_COUNT, totals[7]) });
+	}
+
+	@Override
+	public List<StepExecution> getStepExecutionsForJobExecution(long execid) {
+		List<StepExecution> data = new ArrayList<StepExecution>();
+		ExecutionRecord execution = executions.get(execid);
+		if (execution != null) {
+			for (StepExecutionRecord stepExecution : execution.stepExecutions) {
+				data.add(stepExecution.toStepExecution());
+			}
+		}
+		return data;
+	}
+
+	@Override
+	public Map<String, StepExecution> getMostRecentStepExecutionsForJobInstance(long instanceId) {
+		Map<String, StepExecution> data = new HashMap<String, StepExecution>();
+		InstanceRecord instance = instances.get(instanceId);
+		if (instance == null) {
+			return data;
+		}
+		// Newest first, keeping the first seen for each step name
+		List<ExecutionRecord> instanceExecutions = new ArrayList<ExecutionRecord>(instance.executions);
+		for (int i = instanceExecutions.size() - 1; i >= 0; i--) {
+			List<StepExecutionRecord> executionSteps = new ArrayList<StepExecutionRecord>(instanceExecutions.get(i).stepExecutions);
+			for (int j = executionSteps.size() - 1; j >= 0; j--) {
+				StepExecutionImpl stepEx = executionSteps.get(j).toStepExecution();
+				if (!data.containsKey(stepEx.getStepName())) {
+					data.put(stepEx.getStepName(), stepEx);
+				}
+			}
+		}
+		return data;
+	}
+
+	@Override
+	public StepExecution getStepExecutionByStepExecutionId(long stepExecId) {
+		StepExecutionRecord stepExecution = stepExecutions.get(stepExecId);
+		return stepExecution == null ? null : stepExecution.toStepExecution();
+	}
+
+	/*
+	 * JOBSTATUS
+	 */
+
+	@Override
+	public JobStatus createJobStatus(long jobInstanceId) {
+		JobStatus jobStatus = new JobStatus(jobInstanceId);
+		getInstance(jobInstanceId).jobStatus = jobStatus.clone();
+		return jobStatus;
+	}
+
+	@Override
+	public JobStatus getJobStatus(long instanceId) {
+		InstanceRecord instance = instances.get(instanceId);
+		return instance == null ? null : copy(instance.jobStatus);
+	}
+
+	@Override
+	public void updateJobStatus(long instanceId, JobStatus jobStatus) {
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Updating Job Status to: " + jobStatus.getBatchStatus());
+		}
+		InstanceRecord instance = instances.get(instanceId);
+		if (instance != null) {
+			instance.jobStatus = jobStatus.clone();
+			touch(instance);
+		}
+	}
+
+	@Override
+	public JobStatus getJobStatusFromExecution(long executionId) {
+		ExecutionRecord execution = executions.get(executionId);
+		return execution == null ? null : copy(execution.instance.jobStatus);
+	}
+
+	/*
+	 * STEPSTATUS
+	 */
+
+	@Override
+	public StepStatus createStepStatus(long stepExecId) {
+		StepExecutionRecord stepExecution = stepExecutions.get(stepExecId);
+		if (stepExecution == null) {
+			throw new PersistenceException("No step execution found with id = " + stepExecId);
+		}
+		StepStatus stepStatus = new StepStatus(stepExecId);
+		stepExecution.execution.instance.stepStatuses.put(stepExecution.stepName, stepStatus.clone());
+		return stepStatus;
+	}
+
+	@Override
+	public StepStatus getStepStatus(long instanceId, String stepName) {
+		InstanceRecord instance = instances.get(instanceId);
+		if (instance == null) {
+			return null;
+		}
+		StepStatus stepStatus = instance.stepStatuses.get(stepName);
+		return stepStatus == null ? null : stepStatus.clone();
+	}
+
+	@Override
+	public void updateStepStatus(long stepExecutionId, StepStatus stepStatus) {
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Updating StepStatus to: " + stepStatus.getBatchStatus());
+		}
+		// Keyed, like the STEPSTATUS row, by the id of the step execution it was created for
+		StepExecutionRecord stepExecution = stepExecutions.get(stepExecutionId);
+		if (stepExecution != null) {
+			stepExecution.execution.instance.stepStatuses.put(stepExecution.stepName, stepStatus.clone());
+		}
+	}
+
+	/*
+	 * CHECKPOINTDATA
+	 */
+
+	@Override
+	public void createCheckpointData(CheckpointDataKey key, CheckpointData value) {
+		getInstance(key.getJobInstanceId()).checkpoints.put(key, copy(value));
+	}
+
+	@Override
+	public void updateCheckpointData(CheckpointDataKey key, CheckpointData value) {
+		getInstance(key.getJobInstanceId()).checkpoints.put(key, copy(value));
+	}
+
+	@Override
+	public CheckpointData getCheckpointData(CheckpointDataKey key) {
+		InstanceRecord instance = instances.get(key.getJobInstanceId());
+		return instance == null ? null : copy(instance.checkpoints.get(key));
+	}
+
+	@Override
+	public void deleteCheckpointData(long jobInstanceId, String stepName) {
+		InstanceRecord instance = instances.get(jobInstanceId);
+		if (instance != null) {
+			for (Iterator<CheckpointDataKey> keys = instance.checkpoints.keySet().iterator(); keys.hasNext();) {
+				if (stepName.equals(keys.next().getStepName())) {
+					keys.remove();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void updateChunkCommitUnit(ChunkCommitUnit unit) {
+		logger.entering(CLASSNAME, "updateChunkCommitUnit", unit);
+		InstanceRecord instance = getInstance(unit.getReaderKey().getJobInstanceId());
+		if (unit.getReaderData() != null) {
+			instance.checkpoints.put(unit.getReaderKey(), copy(unit.getReaderData()));
+		}
+		if (unit.getWriterData() != null) {
+			instance.checkpoints.put(unit.getWriterKey(), copy(unit.getWriterData()));
+		}
+		if (unit.getUserData() != null) {
+			instance.checkpoints.put(unit.getUserDataKey(), copy(unit.getUserData()));
+		}
+		if (unit.getStepStatus() != null) {
+			updateStepStatus(unit.getStepExecutionId(), unit.getStepStatus());
+		}
+		logger.exiting(CLASSNAME, "updateChunkCommitUnit");
+	}
+
+	/*
+	 * Restoring records under the ids they were first given, for JournalPersistenceManagerImpl
+	 * replaying its log.  Each returns what's already there under the id if anything is, and
+	 * null if what it belongs to isn't there.
+	 */
+
+	InstanceRecord restoreInstance(long id, String name, String apptag) {
+		advance(nextInstanceId, id);
+		InstanceRecord instance = instances.get(id);
+		if (instance == null) {
+			instance = addInstance(id, name, apptag, getParentInstance(name));
+		}
+		return instance;
+	}
+
+	ExecutionRecord restoreExecution(long id, long jobInstanceId, Properties jobParameters) {
+		advance(nextExecutionId, id);
+		ExecutionRecord execution = executions.get(id);
+		if (execution == null) {
+			InstanceRecord instance = instances.get(jobInstanceId);
+			if (instance == null) {
+				return null;
+			}
+			execution = new ExecutionRecord(id, instance, jobParameters);
+			executions.put(id, execution);
+			instance.executions.add(execution);
+		}
+		return execution;
+	}
+
+	StepExecutionRecord restoreStepExecution(long id, long jobExecutionId) {
+		advance(nextStepExecutionId, id);
+		StepExecutionRecord stepExecution = stepExecutions.get(id);
+		if (stepExecution == null) {
+			ExecutionRecord execution = executions.get(jobExecutionId);
+			if (execution == null) {
+				return null;
+			}
+			stepExecution = new StepExecutionRecord(id, execution);
+			stepExecutions.put(id, stepExecution);
+			execution.stepExecutions.add(stepExecution);
+		}
+		return stepExecution;
+	}
+
+	/**
+	 * Makes sure next hands out nothing lower than id + 1.
+	 */
+	static void advance(AtomicLong next, long id) {
+		while (true) {
+			long current = next.get();
+			if (current > id || next.compareAndSet(current, id + 1)) {
+				return;
+			}
+		}
+	}
+
+	private static JobStatus copy(JobStatus jobStatus) {
+		return jobStatus == null ? null : jobStatus.clone();
+	}
+
+	/*
+	 * The restart token isn't copied, CheckpointManager sets a new one each time rather than changing it.
+	 */
+	private static CheckpointData copy(CheckpointData data) {
+		if (data == null) {
+			return null;
+		}
+		CheckpointData copy = new CheckpointData(data.getjobInstanceId(), data.getStepName(), data.getBatchDataStreamName());
+		copy.setRestartToken(data.getRestartToken());
+		return copy;
+	}
+
+	private static Properties copyProperties(Properties props) {
+		if (props == null) {
+			return null;
+		}
+		Properties copy = new Properties();
+		for (String name : props.stringPropertyNames()) {
+			copy.setProperty(name, props.getProperty(name));
+		}
+		return copy;
+	}
+
+	static byte[] serializeObject(Serializable theObject) {
+		if (theObject == null) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oout = new ObjectOutputStream(baos);
+			oout.writeObject(theObject);
+			oout.close();
+			return baos.toByteArray();
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		}
+	}
+
+	static Serializable deserializeObject(byte[] buffer) {
+		if (buffer == null) {
+			return null;
+		}
+		try {
+			TCCLObjectInputStream objectIn = new TCCLObjectInputStream(new ByteArrayInputStream(buffer));
+			try {
+				return (Serializable) objectIn.readObject();
+			} finally {
+				objectIn.close();
+			}
+		} catch (IOException e) {
+			throw new PersistenceException(e);
+		} catch (ClassNotFoundException e) {
+			throw new PersistenceException(e);
+		}
+	}
+}
@@ -133,4 +133,16 @@ public class JobStatus implements Serializable, Cloneable{
     public void setRestartOn(String restartOn) {
         this.restartOn = restartOn;
     }
+
+    /**
+     * A shallow copy, which is enough since JobInstance isn't modified once created.
+     */
+    @Override
+    public JobStatus clone() {
+        try {
+            return (JobStatus) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
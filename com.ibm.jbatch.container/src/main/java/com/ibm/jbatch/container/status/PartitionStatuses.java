@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.container.status;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.Metric;
+
+import com.ibm.jbatch.container.impl.PartitionedStepBuilder;
+
+/**
+ * What a partitioned step keeps of its partitions when they run in memory, without
+ * sub-job rows in the job repository: the step status each partition last ended
+ * with, and the metrics of every partition execution so far, added together.
+ * It's persisted as part of the partitioned step's own StepStatus, so all the
+ * partitions' statuses are written at once.
+ *
+ * Completed partitions are kept only as runs of consecutive partition numbers,
+ * since all a restart needs to know of them is that they're done.  Partitions are
+ * mostly started in order, and a work queue's ranges are claimed in order, so it's
+ * a handful of runs however many partitions there are, and writing the step status
+ * doesn't grow with them.
+ *
+ * Once set on a StepStatus this is replaced rather than modified, so a StepStatus
+ * clone can share it.
+ */
+public class PartitionStatuses implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// The start of the partitioned step the partition plan was made on
+	private final int planStartCount;
+	// Partitions that haven't completed
+	private final Map<Integer, StepStatus> stepStatuses;
+	// The first partition of each run of completed ones, to the one after its last
+	private final TreeMap<Integer, Integer> completedRuns;
+	private final long[] metrics;
+
+	public PartitionStatuses(int planStartCount) {
+		this.planStartCount = planStartCount;
+		this.stepStatuses = new HashMap<Integer, StepStatus>();
+		this.completedRuns = new TreeMap<Integer, Integer>();
+		this.metrics = new long[Metric.MetricType.values().length];
+	}
+
+	private PartitionStatuses(PartitionStatuses other) {
+		this.planStartCount = other.planStartCount;
+		this.stepStatuses = new HashMap<Integer, StepStatus>(other.stepStatuses);
+		this.completedRuns = new TreeMap<Integer, Integer>(other.completedRuns);
+		this.metrics = other.metrics.clone();
+	}
+
+	/**
+	 * @return a copy to record the partitions of a further execution on
+	 */
+	public PartitionStatuses copy() {
+		return new PartitionStatuses(this);
+	}
+
+	/**
+	 * @return a copy of the step status the partition last ended with, or null if
+	 * it hasn't run under this partition plan or has completed
+	 */
+	public StepStatus getStepStatus(int partition) {
+		StepStatus stepStatus = stepStatuses.get(partition);
+		return stepStatus == null ? null : stepStatus.clone();
+	}
+
+	public boolean isCompleted(int partition) {
+		Map.Entry<Integer, Integer> run = completedRuns.floorEntry(partition);
+		return run != null && run.getValue() > partition;
+	}
+
+	/**
+	 * @return how many runs of consecutive completed partitions there are
+	 */
+	public int getCompletedRunCount() {
+		return completedRuns.size();
+	}
+
+	/**
+	 * Records how a partition execution ended.
+	 *
+	 * @param metrics the partition step's metrics, added to those of the partitions before
+	 */
+	public void record(int partition, StepStatus stepStatus, Metric[] metrics) {
+		if (BatchStatus.COMPLETED.equals(stepStatus.getBatchStatus())) {
+			stepStatuses.remove(partition);
+			addCompleted(partition);
+		} else {
+			stepStatuses.put(partition, stepStatus.clone());
+		}
+		for (Metric metric : metrics) {
+			this.metrics[metric.getType().ordinal()] += metric.getValue();
+		}
+	}
+
+	/*
+	 * Joins the partition to the runs either side of it, if there are any.
+	 */
+	private void addCompleted(int partition) {
+		if (isCompleted(partition)) {
+			return;
+		}
+		int first = partition;
+		Map.Entry<Integer, Integer> before = completedRuns.floorEntry(partition);
+		if (before != null && before.getValue() == partition) {
+			first = before.getKey();
+		}
+		Integer end = completedRuns.remove(partition + 1);
+		completedRuns.put(first, end == null ? partition + 1 : end);
+	}
+
+	/**
+	 * @return the metric added up over all the partition executions recorded
+	 */
+	public long getMetric(Metric.MetricType type) {
+		return metrics[type.ordinal()];
+	}
+
+	/**
+	 * A partition's checkpoints are kept under the partitioned step's job instance,
+	 * under a step name that can't clash with a step id from the JSL, which can't
+	 * contain a colon.  A new partition plan gets new names, so it never sees the
+	 * checkpoints of a previous one.
+	 */
+	public String getCheckpointStepName(String stepId, int partition) {
+		return stepId + PartitionedStepBuilder.JOB_ID_SEPARATOR + planStartCount + PartitionedStepBuilder.JOB_ID_SEPARATOR + partition;
+	}
+
+	@Override
+	public String toString() {
+		return "planStartCount: " + planStartCount + ", completed: " + completedRuns + ", partitions: " + stepStatuses;
+	}
+}
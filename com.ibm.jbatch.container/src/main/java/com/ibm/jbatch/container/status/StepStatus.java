@@ -18,6 +18,7 @@ package com.ibm.jbatch.container.status;
 
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import javax.batch.runtime.BatchStatus;
 
@@ -25,7 +26,7 @@ import com.ibm.jbatch.container.exception.BatchContainerRuntimeException;
 import com.ibm.jbatch.container.persistence.PersistentDataWrapper;
 import com.ibm.jbatch.container.util.TCCLObjectInputStream;
 
-public class StepStatus implements Serializable {
+public class StepStatus implements Serializable, Cloneable {
 
     /**
 	 * 
@@ -38,6 +39,7 @@ public class StepStatus implements Serializable {
     private int startCount;
     private PersistentDataWrapper persistentUserData;
     private Integer numPartitions;
+    private PartitionStatuses partitionStatuses;
     
     private long lastRunStepExecutionId;
 
@@ -65,6 +67,9 @@ public class StepStatus implements Serializable {
         buf.append(",startCount: " + startCount);
         buf.append(",persistentUserData: " + persistentUserData);
         buf.append(",numPartitions: " + numPartitions);
+        if (partitionStatuses != null) {
+            buf.append(",partitionStatuses: " + partitionStatuses);
+        }
         return buf.toString();
     }
 
@@ -121,6 +126,18 @@ public class StepStatus implements Serializable {
         this.numPartitions = numPartitions;
     }
 
+    /**
+     * @return the statuses of the partitions of a partitioned step whose partitions
+     * run in memory, otherwise null
+     */
+    public PartitionStatuses getPartitionStatuses() {
+        return partitionStatuses;
+    }
+
+    public void setPartitionStatuses(PartitionStatuses partitionStatuses) {
+        this.partitionStatuses = partitionStatuses;
+    }
+
     public void setStepExecutionId(long stepExecutionId) {
         this.stepExecutionId = stepExecutionId;
         this.lastRunStepExecutionId = this.stepExecutionId;
@@ -134,4 +151,37 @@ public class StepStatus implements Serializable {
         this.lastRunStepExecutionId = lastRunStepExecutionId;
     }
 
+    /**
+     * @return true if everything that gets persisted is the same in both, e.g.
+     * comparing against a clone taken when this was last written
+     */
+    public boolean isUnchangedFrom(StepStatus other) {
+        return other != null
+                && stepExecutionId == other.stepExecutionId
+                && lastRunStepExecutionId == other.lastRunStepExecutionId
+                && startCount == other.startCount
+                && batchStatus == other.batchStatus
+                && (exitStatus == null ? other.exitStatus == null : exitStatus.equals(other.exitStatus))
+                && (numPartitions == null ? other.numPartitions == null : numPartitions.equals(other.numPartitions))
+                && partitionStatuses == other.partitionStatuses
+                && Arrays.equals(persistentUserDataBytes(), other.persistentUserDataBytes());
+    }
+
+    private byte[] persistentUserDataBytes() {
+        return persistentUserData == null ? null : persistentUserData.getPersistentDataBytes();
+    }
+
+    /**
+     * A shallow copy, which is enough since the PersistentDataWrapper and the
+     * PartitionStatuses are replaced rather than modified when they change.
+     */
+    @Override
+    public StepStatus clone() {
+        try {
+            return (StepStatus) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
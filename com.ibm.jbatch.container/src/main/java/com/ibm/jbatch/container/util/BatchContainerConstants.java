@@ -32,6 +32,26 @@ public interface BatchContainerConstants {
 	public static final String DB_USER = "DB_USER";
 	public static final String DB_PASSWORD = "DB_PWD";
 	public static final String DB_SCHEMA = "DB_SCHEMA";
+
+	public static final String JDBC_POOL_MAX_SIZE = "JDBC_POOL_MAX_SIZE";
+	public static final String JDBC_POOL_MAX_WAIT_MILLIS = "JDBC_POOL_MAX_WAIT_MILLIS";
+	public static final String JDBC_POOL_VALIDATE_ON_BORROW = "JDBC_POOL_VALIDATE_ON_BORROW";
+	public static final String JDBC_POOL_IDLE_TIMEOUT_SECONDS = "JDBC_POOL_IDLE_TIMEOUT_SECONDS";
+	public static final String JDBC_POOL_STATEMENT_CACHE_SIZE = "JDBC_POOL_STATEMENT_CACHE_SIZE";
+
+	public static final String JDBC_GROUP_COMMIT_MAX_BATCH = "JDBC_GROUP_COMMIT_MAX_BATCH";
+	public static final String JDBC_GROUP_COMMIT_WINDOW_MILLIS = "JDBC_GROUP_COMMIT_WINDOW_MILLIS";
+
+	public static final String MEMORY_PERSISTENCE_MAX_INSTANCES = "MEMORY_PERSISTENCE_MAX_INSTANCES";
+	public static final String MEMORY_PERSISTENCE_MAX_AGE_SECONDS = "MEMORY_PERSISTENCE_MAX_AGE_SECONDS";
+
+	public static final String JOURNAL_DIRECTORY = "JOURNAL_DIRECTORY";
+	public static final String JOURNAL_SEGMENT_SIZE = "JOURNAL_SEGMENT_SIZE";
+	public static final String JOURNAL_COMPACT_SEGMENTS = "JOURNAL_COMPACT_SEGMENTS";
+	public static final String JOURNAL_FORCE = "JOURNAL_FORCE";
+
+	public static final String JSL_PARSER = "JSL_PARSER";
+	public static final String PARTITION_MODE = "PARTITION_MODE";
 	
 	public static final String DEFAULT_JDBC_JNDI_NAME = "jdbc/batch";
 	public static final String DEFAULT_JDBC_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
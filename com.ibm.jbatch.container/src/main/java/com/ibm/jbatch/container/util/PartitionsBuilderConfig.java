@@ -16,27 +16,30 @@
  */
 package com.ibm.jbatch.container.util;
 
-import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 
-import com.ibm.jbatch.jsl.model.JSLJob;
+import com.ibm.jbatch.container.status.PartitionStatuses;
 
+/**
+ * What the partitions of a partitioned step have in common, for building each one's
+ * work unit as a thread becomes free for it.
+ */
 public class PartitionsBuilderConfig {
 
-	private List<JSLJob> jobModels;
     private Properties[] partitionProperties;
     private BlockingQueue<PartitionDataWrapper> analyzerQueue;
     private BlockingQueue<BatchPartitionWorkUnit> completedQueue;
     private long rootJobExecutionId;
+    // Set when the partitions run in memory
+    private PartitionStatuses partitionStatuses;
+    private long jobInstanceId;
     
-	public PartitionsBuilderConfig(List<JSLJob> jobModels,
-			Properties[] partitionProperties,
+	public PartitionsBuilderConfig(Properties[] partitionProperties,
 			BlockingQueue<PartitionDataWrapper> analyzerQueue,
 			BlockingQueue<BatchPartitionWorkUnit> completedQueue, 
 			long rootJobExecutionId) {
 		super();
-		this.jobModels = jobModels;
 		this.partitionProperties = partitionProperties;
 		this.analyzerQueue = analyzerQueue;
 		this.completedQueue = completedQueue;
@@ -47,12 +50,6 @@ public class PartitionsBuilderConfig {
 		return rootJobExecutionId;
 	}
 
-    public List<JSLJob> getJobModels() {
-		return jobModels;
-	}
-	public void setJobModels(List<JSLJob> jobModels) {
-		this.jobModels = jobModels;
-	}
 	public Properties[] getPartitionProperties() {
 		return partitionProperties;
 	}
@@ -72,6 +69,22 @@ public class PartitionsBuilderConfig {
 			BlockingQueue<BatchPartitionWorkUnit> completedQueue) {
 		this.completedQueue = completedQueue;
 	}
+	public PartitionStatuses getPartitionStatuses() {
+		return partitionStatuses;
+	}
+	/**
+	 * Run the partitions in memory rather than as sub-jobs in the job repository.
+	 * 
+	 * @param partitionStatuses how the partitions ended last time, if they've run before
+	 * @param jobInstanceId the partitioned step's job instance
+	 */
+	public void setPartitionStatuses(PartitionStatuses partitionStatuses, long jobInstanceId) {
+		this.partitionStatuses = partitionStatuses;
+		this.jobInstanceId = jobInstanceId;
+	}
+	public long getJobInstanceId() {
+		return jobInstanceId;
+	}
 
 
 	
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package com.ibm.jbatch.jsl.util;
+
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEventHandler;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * The JAXBContext for the JSL model, which is thread-safe and expensive to
+ * create, so is created once and shared.  Unmarshallers aren't thread-safe, so
+ * validating ones are pooled: each is used by one thread at a time and handed
+ * back afterwards.
+ */
+public class JSLContextHelper {
+
+    public final static String JSL_MODEL_PACKAGE = "com.ibm.jbatch.jsl.model";
+
+    // Enough for the jobs being started at once; any beyond are just dropped
+    private final static int MAX_POOLED_UNMARSHALLERS = 16;
+
+    private static JAXBContext context = null;
+
+    private static final BlockingQueue<Unmarshaller> unmarshallers =
+        new ArrayBlockingQueue<Unmarshaller>(MAX_POOLED_UNMARSHALLERS);
+
+    public static synchronized JAXBContext getJSLContext() throws JAXBException {
+        if (context == null) {
+            context = JAXBContext.newInstance(JSL_MODEL_PACKAGE);
+        }
+        return context;
+    }
+
+    /**
+     * Unmarshals the XML, validated against the XJCL schema, with validation
+     * events going to the given handler.
+     */
+    public static Object unmarshal(String xml, ValidationEventHandler handler) throws JAXBException {
+        Unmarshaller u = unmarshallers.poll();
+        if (u == null) {
+            u = getJSLContext().createUnmarshaller();
+            u.setSchema(ValidatorHelper.getXJCLSchema());
+        }
+        u.setEventHandler(handler);
+        Object result = u.unmarshal(new StreamSource(new StringReader(xml)));
+
+        // Only one that finished cleanly goes back, without the caller's handler
+        u.setEventHandler(null);
+        unmarshallers.offer(u);
+        return result;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.persistence.AdaptiveCheckpointAlgorithm;
+
+public class AdaptiveCheckpointTest {
+
+	private static final int ITEMS = 500;
+
+	private static JobOperator jobOp = null;
+
+	static List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	/*
+	 * Items taking 1 ms each and a 50 ms target: the chunks grow from the
+	 * item-count of 2 to somewhere under 50 items.
+	 */
+	@Test
+	public void testConvergesOnTarget() throws Exception {
+		long execId = jobOp.start("adaptiveCheckpoint", null);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 400 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+
+		assertEquals(Integer.valueOf(2), chunkSizes.get(0));
+		int last = chunkSizes.get(chunkSizes.size() - 2);  // The very last is whatever's left
+		assertTrue("Chunk size " + last, last >= 10 && last <= 50);
+		for (Metric metric : jobOp.getStepExecutions(execId).get(0).getMetrics()) {
+			if (metric.getType() == Metric.MetricType.WRITE_COUNT) {
+				assertEquals(ITEMS, metric.getValue());
+			}
+		}
+	}
+
+	/*
+	 * Items that take no time at all double the chunk each time, up to the maximum.
+	 */
+	@Test
+	public void testGrowthAndMaximum() throws Exception {
+		AdaptiveCheckpointAlgorithm algorithm = new AdaptiveCheckpointAlgorithm();
+		algorithm.setItemCount(2);
+		algorithm.setMaxItemCount(20);
+		algorithm.setTargetMillis(10000);
+		assertEquals("[2, 4, 8, 16, 20, 20]", chunks(algorithm, 6, 0).toString());
+	}
+
+	/*
+	 * Items slower than the whole target still make chunks of the minimum.
+	 */
+	@Test
+	public void testMinimum() throws Exception {
+		AdaptiveCheckpointAlgorithm algorithm = new AdaptiveCheckpointAlgorithm();
+		algorithm.setItemCount(10);
+		algorithm.setMinItemCount(3);
+		algorithm.setTargetMillis(1);
+		assertEquals("[10, 3, 3]", chunks(algorithm, 3, 2).toString());
+	}
+
+	private static List<Integer> chunks(AdaptiveCheckpointAlgorithm algorithm, int chunks, long millisPerItem) throws Exception {
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (int i = 0; i < chunks; i++) {
+			algorithm.beginCheckpoint();
+			int items = 0;
+			do {
+				items++;
+				Thread.sleep(millisPerItem);
+			} while (!algorithm.isReadyToCheckpoint());
+			algorithm.commitStarting();
+			algorithm.endCheckpoint();
+			sizes.add(items);
+		}
+		return sizes;
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		int i = 0;
+
+		@Override
+		public Object readItem() throws Exception {
+			if (i == ITEMS) {
+				return null;
+			}
+			Thread.sleep(1);
+			return ++i;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) {
+			chunkSizes.add(items.size());
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.chunk.listener.AbstractChunkListener;
+import javax.batch.api.chunk.listener.RetryWriteListener;
+import javax.batch.api.chunk.listener.SkipWriteListener;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BisectRetryTest {
+
+	private static final int ITEMS = 200;
+
+	private static JobOperator jobOp = null;
+
+	static List<Object> written = new ArrayList<Object>();
+	static List<Object> skipped = new ArrayList<Object>();
+	static int retries = 0;
+	static int commits = 0;
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	@Before
+	public void reset() {
+		written.clear();
+		skipped.clear();
+		retries = 0;
+		commits = 0;
+	}
+
+	/*
+	 * A writer that fails on one item of a 100 item chunk: bisecting finds it in a
+	 * handful of transactions rather than 100, with the same items written and the
+	 * same skip and retry listener calls.
+	 */
+	@Test
+	public void testBisectMatchesOneByOne() throws Exception {
+		long oneByOneSkips = run(false);
+		List<Object> oneByOneWritten = new ArrayList<Object>(written);
+		List<Object> oneByOneSkipped = new ArrayList<Object>(skipped);
+		int oneByOneRetries = retries;
+		int oneByOneCommits = commits;
+
+		reset();
+		long bisectSkips = run(true);
+		assertEquals(oneByOneWritten, written);
+		assertEquals(oneByOneSkipped, skipped);
+		assertEquals(oneByOneRetries, retries);
+		assertEquals(oneByOneSkips, bisectSkips);
+
+		assertEquals(ITEMS - 1, written.size());
+		assertEquals("[[37]]", skipped.toString());
+		assertEquals(1, retries);
+		assertTrue("Bisecting took " + commits + " chunks", commits < 20);
+		assertTrue("Bisecting took " + commits + " chunks, one by one " + oneByOneCommits, commits < oneByOneCommits);
+	}
+
+	private long run(boolean bisect) throws Exception {
+		Properties params = new Properties();
+		params.setProperty("bisect", Boolean.toString(bisect));
+		long execId = jobOp.start("bisectRetry", params);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 200 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+		for (Metric metric : jobOp.getStepExecutions(execId).get(0).getMetrics()) {
+			if (metric.getType() == Metric.MetricType.WRITE_SKIP_COUNT) {
+				return metric.getValue();
+			}
+		}
+		return -1;
+	}
+
+	public static class BadItem extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		int i = 0;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			i = checkpoint == null ? 0 : (Integer) checkpoint;
+		}
+
+		@Override
+		public Object readItem() {
+			return i < ITEMS ? ++i : null;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return i;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) throws Exception {
+			if (items.contains(37)) {
+				throw new BadItem();
+			}
+			written.addAll(items);
+		}
+	}
+
+	public static class Listener extends AbstractChunkListener implements SkipWriteListener, RetryWriteListener {
+		@Override
+		public void afterChunk() {
+			commits++;
+		}
+
+		@Override
+		public void onSkipWriteItem(List<Object> items, Exception ex) {
+			skipped.add(new ArrayList<Object>(items));
+		}
+
+		@Override
+		public void onRetryWriteException(List<Object> items, Exception ex) {
+			retries++;
+		}
+	}
+}
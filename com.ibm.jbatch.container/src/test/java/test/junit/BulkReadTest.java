@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.chunk.listener.AbstractItemReadListener;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.api.BulkItemReader;
+
+public class BulkReadTest {
+
+	private static JobOperator jobOp = null;
+
+	static List<Object> written = new ArrayList<Object>();
+	static List<Integer> positionsAtWrite = new ArrayList<Integer>();
+	static AtomicInteger readCalls = new AtomicInteger();
+	static AtomicInteger beforeReads = new AtomicInteger();
+	static AtomicInteger afterReads = new AtomicInteger();
+	static AtomicInteger readErrors = new AtomicInteger();
+	static volatile int position = 0;
+	// Static rather than batch properties, which aren't injected into a subclass's inherited fields
+	static volatile int numToRead;
+	// The item whose afterRead() fails, 0 for none
+	static volatile int failAfterRead;
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	@Before
+	public void reset() {
+		written.clear();
+		positionsAtWrite.clear();
+		readCalls.set(0);
+		beforeReads.set(0);
+		afterReads.set(0);
+		readErrors.set(0);
+		failAfterRead = 0;
+	}
+
+	/*
+	 * Same items written at the same chunk boundaries, same listener calls and
+	 * same metrics as reading one item at a time, with a skipped read in the middle.
+	 */
+	@Test
+	public void testBulkMatchesPerItem() throws Exception {
+		Map<Metric.MetricType, Long> perItemMetrics = run(Reader.class, 100);
+		List<Object> perItemWritten = new ArrayList<Object>(written);
+		List<Integer> perItemPositions = new ArrayList<Integer>(positionsAtWrite);
+		int[] perItemListenerCalls = { beforeReads.get(), afterReads.get(), readErrors.get() };
+		int perItemCalls = readCalls.get();
+
+		reset();
+		Map<Metric.MetricType, Long> bulkMetrics = run(BulkReader.class, 100);
+		assertEquals(perItemWritten, written);
+		assertEquals(perItemPositions, positionsAtWrite);
+		assertEquals(perItemListenerCalls[0], beforeReads.get());
+		assertEquals(perItemListenerCalls[1], afterReads.get());
+		assertEquals(perItemListenerCalls[2], readErrors.get());
+		assertEquals(perItemMetrics, bulkMetrics);
+		assertEquals(Long.valueOf(1), bulkMetrics.get(Metric.MetricType.READ_SKIP_COUNT));
+		assertTrue("Expected fewer reader calls than " + perItemCalls + ", got " + readCalls.get(), readCalls.get() < perItemCalls / 5);
+	}
+
+	/*
+	 * A listener failing for an item in the middle of a bulk read loses that
+	 * item alone, with its own error and skip, as reading one at a time does.
+	 */
+	@Test
+	public void testListenerFailureSkipsOneItem() throws Exception {
+		Map<Metric.MetricType, Long> bulkMetrics = runWithFailingListener("bulkRead", 47);
+		assertEquals(2, readErrors.get());
+		assertEquals(Long.valueOf(2), bulkMetrics.get(Metric.MetricType.READ_SKIP_COUNT));
+		assertEquals(100 - 2, written.size());
+		assertFalse(written.contains(47));
+		assertTrue(written.contains(46) && written.contains(48));
+	}
+
+	/*
+	 * Retried without rollback, the item the listener failed for is read past,
+	 * as it is reading one at a time, and nothing else is lost.
+	 */
+	@Test
+	public void testListenerFailureRetriesOneItem() throws Exception {
+		Map<Metric.MetricType, Long> bulkMetrics = runWithFailingListener("bulkReadRetry", 64);
+		assertEquals(2, readErrors.get());
+		assertEquals(Long.valueOf(1), bulkMetrics.get(Metric.MetricType.READ_SKIP_COUNT));
+		assertEquals(100 - 2, written.size());
+		assertFalse(written.contains(64));
+		assertTrue(written.contains(63) && written.contains(65));
+	}
+
+	private Map<Metric.MetricType, Long> runWithFailingListener(String job, int item) throws Exception {
+		failAfterRead = item;
+		Map<Metric.MetricType, Long> perItemMetrics = run(job, Reader.class, 100);
+		List<Object> perItemWritten = new ArrayList<Object>(written);
+		List<Integer> perItemPositions = new ArrayList<Integer>(positionsAtWrite);
+		int[] perItemListenerCalls = { beforeReads.get(), afterReads.get(), readErrors.get() };
+
+		reset();
+		failAfterRead = item;
+		Map<Metric.MetricType, Long> bulkMetrics = run(job, BulkReader.class, 100);
+		assertEquals(perItemWritten, written);
+		assertEquals(perItemPositions, positionsAtWrite);
+		assertEquals(perItemListenerCalls[0], beforeReads.get());
+		assertEquals(perItemListenerCalls[1], afterReads.get());
+		assertEquals(perItemListenerCalls[2], readErrors.get());
+		assertEquals(perItemMetrics, bulkMetrics);
+		return bulkMetrics;
+	}
+
+	private Map<Metric.MetricType, Long> run(Class<?> reader, int numToRead) throws Exception {
+		return run("bulkRead", reader, numToRead);
+	}
+
+	private Map<Metric.MetricType, Long> run(String job, Class<?> reader, int numToRead) throws Exception {
+		BulkReadTest.numToRead = numToRead;
+		Properties params = new Properties();
+		params.setProperty("reader", reader.getName());
+		long execId = jobOp.start(job, params);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 600 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+		Map<Metric.MetricType, Long> metrics = new HashMap<Metric.MetricType, Long>();
+		for (Metric metric : jobOp.getStepExecutions(execId).get(0).getMetrics()) {
+			metrics.put(metric.getType(), metric.getValue());
+		}
+		return metrics;
+	}
+
+	public static class SkipMe extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		@Override
+		public void open(Serializable checkpoint) {
+			position = checkpoint == null ? 0 : (Integer) checkpoint;
+		}
+
+		@Override
+		public Object readItem() throws Exception {
+			call();
+			if (position == numToRead) {
+				return null;
+			}
+			if (++position == 33) {
+				throw new SkipMe();
+			}
+			return position;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return position;
+		}
+
+		void call() {
+			readCalls.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Hands back the items up to a bad one, and fails on the bad one when it's first.
+	 */
+	public static class BulkReader extends Reader implements BulkItemReader {
+
+		@Override
+		public List<Object> readItems(int max) throws Exception {
+			call();
+			List<Object> items = new ArrayList<Object>();
+			while (items.size() < max && position < numToRead) {
+				if (position + 1 == 33) {
+					if (items.isEmpty()) {
+						position++;
+						throw new SkipMe();
+					}
+					break;
+				}
+				items.add(++position);
+			}
+			return items;
+		}
+	}
+
+	public static class ReadListener extends AbstractItemReadListener {
+		@Override
+		public void beforeRead() {
+			beforeReads.incrementAndGet();
+		}
+
+		@Override
+		public void afterRead(Object item) throws Exception {
+			afterReads.incrementAndGet();
+			if (item != null && (Integer) item == failAfterRead) {
+				throw new IllegalStateException("Failing after reading " + item);
+			}
+		}
+
+		@Override
+		public void onReadError(Exception e) {
+			readErrors.incrementAndGet();
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) {
+			written.addAll(items);
+			positionsAtWrite.add(position);
+		}
+	}
+}
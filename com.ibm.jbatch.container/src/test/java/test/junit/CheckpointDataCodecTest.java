@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataCodec;
+
+public class CheckpointDataCodecTest {
+
+	@Test
+	public void testScalarTokens() throws Exception {
+		assertEquals(Long.valueOf(42L), roundTrip(42L));
+		assertEquals(Integer.valueOf(-7), roundTrip(-7));
+		assertEquals("line 1234 \u00e9\u4e2d", roundTrip("line 1234 \u00e9\u4e2d"));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) roundTrip(new byte[] { 1, 2, 3 }));
+		assertNull(roundTrip(null));
+	}
+
+	@Test
+	public void testMapTokensKeepTheirClass() throws Exception {
+		HashMap<String, Object> hashMap = new HashMap<String, Object>();
+		hashMap.put("offset", 10L);
+		hashMap.put("file", "input.csv");
+		hashMap.put("none", null);
+		Serializable decoded = roundTrip(hashMap);
+		assertEquals(HashMap.class, decoded.getClass());
+		assertEquals(hashMap, decoded);
+
+		LinkedHashMap<Integer, String> linkedMap = new LinkedHashMap<Integer, String>();
+		linkedMap.put(3, "c");
+		linkedMap.put(1, "a");
+		decoded = roundTrip(linkedMap);
+		assertEquals(LinkedHashMap.class, decoded.getClass());
+		assertEquals(new ArrayList<Object>(linkedMap.keySet()), new ArrayList<Object>(((Map<?, ?>) decoded).keySet()));
+
+		TreeMap<String, Long> treeMap = new TreeMap<String, Long>();
+		treeMap.put("a", 1L);
+		decoded = roundTrip(treeMap);
+		assertEquals(TreeMap.class, decoded.getClass());
+		assertEquals(treeMap, decoded);
+	}
+
+	@Test
+	public void testOtherTokensFallBackToSerialization() throws Exception {
+		List<String> list = new ArrayList<String>();
+		list.add("x");
+		assertEquals(list, roundTrip((Serializable) list));
+
+		HashMap<String, Object> nested = new HashMap<String, Object>();
+		nested.put("list", list);
+		assertEquals(nested, roundTrip(nested));
+	}
+
+	@Test
+	public void testCheckpointDataRoundTrip() throws Exception {
+		CheckpointData data = new CheckpointData(17L, "step1", "READER");
+		data.setRestartToken(CheckpointDataCodec.encodeToken(99L));
+
+		CheckpointData decoded = CheckpointDataCodec.decode(CheckpointDataCodec.encode(data));
+		assertEquals(17L, decoded.getjobInstanceId());
+		assertEquals("step1", decoded.getStepName());
+		assertEquals("READER", decoded.getBatchDataStreamName());
+		assertEquals(Long.valueOf(99L), CheckpointDataCodec.decodeToken(decoded.getRestartToken()));
+	}
+
+	@Test
+	public void testLegacyCheckpointDataIsReadable() throws Exception {
+		// The format written before: Java serialized token inside a Java serialized CheckpointData.
+		CheckpointData legacy = new CheckpointData(17L, "step1", "WRITER");
+		legacy.setRestartToken(javaSerialize(12345L));
+		byte[] legacyRow = javaSerialize(legacy);
+
+		CheckpointData decoded = CheckpointDataCodec.decode(legacyRow);
+		assertEquals("WRITER", decoded.getBatchDataStreamName());
+		assertEquals(Long.valueOf(12345L), CheckpointDataCodec.decodeToken(decoded.getRestartToken()));
+
+		CheckpointData compact = new CheckpointData(17L, "step1", "WRITER");
+		compact.setRestartToken(CheckpointDataCodec.encodeToken(12345L));
+		byte[] compactRow = CheckpointDataCodec.encode(compact);
+		assertTrue(compactRow.length < legacyRow.length);
+	}
+
+	private Serializable roundTrip(Serializable token) throws Exception {
+		return CheckpointDataCodec.decodeToken(CheckpointDataCodec.encodeToken(token));
+	}
+
+	private byte[] javaSerialize(Object o) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(baos);
+		oout.writeObject(o);
+		oout.close();
+		return baos.toByteArray();
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Properties;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.listener.AbstractStepListener;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+import javax.batch.runtime.StepExecution;
+import javax.batch.runtime.context.StepContext;
+import javax.inject.Inject;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.artifact.proxy.InjectionReferences;
+import com.ibm.jbatch.container.artifact.proxy.ItemReaderProxy;
+import com.ibm.jbatch.container.artifact.proxy.ItemWriterProxy;
+import com.ibm.jbatch.container.artifact.proxy.ProxyFactory;
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.persistence.CheckpointDataCodec;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.CheckpointManager;
+import com.ibm.jbatch.container.persistence.ItemCheckpointAlgorithm;
+import com.ibm.jbatch.container.persistence.PersistentDataWrapper;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+
+public class CheckpointSkipTest {
+
+	private static JobOperator jobOp = null;
+	private static int sleepTime = 2000;
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	/*
+	 * The reader's checkpoint only moves every other chunk, the writer's is always
+	 * null and the user data never changes, so most of the chunks' writes are skipped.
+	 * The restart still has to pick up from the last checkpoint that was written.
+	 */
+	@Test
+	public void testRestartAfterSkippedWrites() throws Exception {
+		Properties params = new Properties();
+		params.setProperty("failAt", "15");
+		long execId = jobOp.start("checkpointSkip", params);
+		Thread.sleep(sleepTime);
+		assertEquals("Didn't fail as expected", BatchStatus.FAILED, jobOp.getJobExecution(execId).getBatchStatus());
+
+		long restartId = jobOp.restart(execId, new Properties());
+		Thread.sleep(sleepTime);
+		assertEquals("Didn't complete successfully", BatchStatus.COMPLETED, jobOp.getJobExecution(restartId).getBatchStatus());
+
+		List<StepExecution> steps = jobOp.getStepExecutions(restartId);
+		assertEquals(1, steps.size());
+		// Items 13 and 14 were the last chunk before the failure, but their checkpoint was the same as 11 and 12's
+		assertEquals("restarted from 12", steps.get(0).getExitStatus());
+		assertEquals("unchanged", steps.get(0).getPersistentUserData());
+	}
+
+	/*
+	 * The count of skipped writes is there on the step context for the step's own
+	 * artifacts, or anything else holding it, to look at.
+	 */
+	@Test
+	public void testSkippedWriteCountOnStepContext() throws Exception {
+		StepListener.skippedWrites = -1;
+		long execId = jobOp.start("checkpointSkip", new Properties());
+		Thread.sleep(sleepTime);
+		assertEquals(BatchStatus.COMPLETED, jobOp.getJobExecution(execId).getBatchStatus());
+		// The reader's checkpoint is the same as the chunk before's at every other
+		// chunk, so at least 5 of its writes were skipped
+		assertTrue("Skipped " + StepListener.skippedWrites, StepListener.skippedWrites >= 5);
+	}
+
+	@Test
+	public void testSkippedWriteCount() throws Exception {
+		IPersistenceManagerService ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		JobInstance jobInstance = ps.createJobInstance("checkpointSkipCount", "test", null);
+		long instanceId = jobInstance.getInstanceId();
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.STARTED);
+		JobStatus jobStatus = ps.createJobStatus(instanceId);
+		jobStatus.setJobInstance(jobInstance);
+		jobStatus.setLatestExecutionId(jobExecution.getExecutionId());
+		ps.updateJobStatus(instanceId, jobStatus);
+		StepContextImpl stepContext = new StepContextImpl("step1");
+		long stepExecId = ps.createStepExecution(jobExecution.getExecutionId(), stepContext).getStepExecutionId();
+		StepStatus stepStatus = ps.createStepStatus(stepExecId);
+		stepStatus.setBatchStatus(BatchStatus.STARTED);
+
+		InjectionReferences injectionRefs = new InjectionReferences(null, stepContext, null);
+		ItemReaderProxy reader = ProxyFactory.createItemReaderProxy(FixedCheckpointReader.class.getName(), injectionRefs, stepContext);
+		ItemWriterProxy writer = ProxyFactory.createItemWriterProxy(FixedCheckpointWriter.class.getName(), injectionRefs, stepContext);
+		FixedCheckpointReader readerCheckpoint = (FixedCheckpointReader) reader.getDelegate();
+		FixedCheckpointWriter writerCheckpoint = (FixedCheckpointWriter) writer.getDelegate();
+		CheckpointManager checkpointManager = new CheckpointManager(reader, writer, new ItemCheckpointAlgorithm(),
+				jobExecution.getExecutionId(), instanceId, "step1");
+
+		// Everything changes every time, so nothing's skipped
+		for (int i = 1; i <= 3; i++) {
+			readerCheckpoint.checkpoint = i;
+			writerCheckpoint.checkpoint = i;
+			stepStatus.setPersistentUserData(new PersistentDataWrapper(new byte[] { (byte) i }));
+			checkpointManager.checkpoint(stepStatus);
+			assertEquals(0, checkpointManager.getSkippedWriteCount());
+		}
+
+		// Nothing's changed, so all three are skipped
+		stepStatus.setPersistentUserData(new PersistentDataWrapper(new byte[] { 3 }));
+		checkpointManager.checkpoint(stepStatus);
+		assertEquals(3, checkpointManager.getSkippedWriteCount());
+
+		// Only the reader's moved
+		readerCheckpoint.checkpoint = 4;
+		checkpointManager.checkpoint(stepStatus);
+		assertEquals(5, checkpointManager.getSkippedWriteCount());
+
+		assertArrayEquals(CheckpointDataCodec.encodeToken(4),
+				ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "READER")).getRestartToken());
+		assertArrayEquals(CheckpointDataCodec.encodeToken(3),
+				ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "WRITER")).getRestartToken());
+	}
+
+	@Test
+	public void testStepStatusUnchangedFrom() {
+		StepStatus stepStatus = new StepStatus(1);
+		stepStatus.setPersistentUserData(new PersistentDataWrapper(new byte[] { 1, 2 }));
+		StepStatus written = stepStatus.clone();
+		assertTrue(stepStatus.isUnchangedFrom(written));
+
+		// Same bytes in a new wrapper, which is what capturing the user data again gives
+		stepStatus.setPersistentUserData(new PersistentDataWrapper(new byte[] { 1, 2 }));
+		assertTrue(stepStatus.isUnchangedFrom(written));
+
+		stepStatus.setPersistentUserData(new PersistentDataWrapper(new byte[] { 1, 3 }));
+		assertFalse(stepStatus.isUnchangedFrom(written));
+
+		stepStatus = written.clone();
+		stepStatus.setBatchStatus(BatchStatus.STARTED);
+		assertFalse(stepStatus.isUnchangedFrom(written));
+
+		stepStatus = written.clone();
+		stepStatus.setNumPartitions(3);
+		assertFalse(stepStatus.isUnchangedFrom(written));
+
+		assertFalse(written.isUnchangedFrom(null));
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		@BatchProperty
+		String failAt;
+
+		@Inject StepContext stepCtx;
+
+		int i = 0;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			if (checkpoint != null) {
+				i = (Integer) checkpoint;
+				stepCtx.setExitStatus("restarted from " + i);
+			}
+		}
+
+		@Override
+		public Object readItem() {
+			if (i == 20) {
+				return null;
+			}
+			if (++i == Integer.parseInt(failAt)) {
+				throw new IllegalStateException("Failing at item " + i);
+			}
+			return i;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return (i / 4) * 4;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+
+		@Inject StepContext stepCtx;
+
+		@Override
+		public void writeItems(List<Object> items) {
+			stepCtx.setPersistentUserData("unchanged");
+		}
+	}
+
+	public static class StepListener extends AbstractStepListener {
+
+		static volatile long skippedWrites;
+
+		@Inject StepContext stepCtx;
+
+		@Override
+		public void afterStep() {
+			skippedWrites = ((StepContextImpl) stepCtx).getSkippedCheckpointWriteCount();
+		}
+	}
+
+	public static class FixedCheckpointReader extends AbstractItemReader {
+
+		Integer checkpoint;
+
+		@Override
+		public Object readItem() {
+			return null;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return checkpoint;
+		}
+	}
+
+	public static class FixedCheckpointWriter extends AbstractItemWriter {
+
+		Integer checkpoint;
+
+		@Override
+		public void writeItems(List<Object> items) {
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return checkpoint;
+		}
+	}
+}
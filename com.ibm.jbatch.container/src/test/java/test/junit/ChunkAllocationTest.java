@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Properties;
+
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.chunk.ItemProcessor;
+import javax.batch.api.chunk.listener.AbstractChunkListener;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Bytes allocated per item by the chunk loop itself, on the step's thread, for
+ * items that cost nothing to read, process or write.  Needs a JVM that can count
+ * each thread's allocations (HotSpot's com.sun.management.ThreadMXBean), and is
+ * skipped on one that can't.  That interface is only looked up by reflection, so
+ * the test still loads where it doesn't exist.
+ */
+public class ChunkAllocationTest {
+
+	private static final int WARMUP_ITEMS = 50000;
+	private static final int MEASURED_ITEMS = 200000;
+
+	private static final Object ITEM = new Object();
+
+	private static JobOperator jobOp = null;
+	private static ThreadMXBean threadBean = null;
+	private static Method getThreadAllocatedBytes = null;
+
+	static volatile long allocatedAtStart;
+	static volatile long allocatedAtEnd;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		jobOp = BatchRuntime.getJobOperator();
+		threadBean = ManagementFactory.getThreadMXBean();
+		try {
+			Class<?> hotSpotBean = Class.forName("com.sun.management.ThreadMXBean");
+			if (hotSpotBean.isInstance(threadBean)
+					&& (Boolean) hotSpotBean.getMethod("isThreadAllocatedMemorySupported").invoke(threadBean)) {
+				hotSpotBean.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threadBean, true);
+				if ((Boolean) hotSpotBean.getMethod("isThreadAllocatedMemoryEnabled").invoke(threadBean)) {
+					getThreadAllocatedBytes = hotSpotBean.getMethod("getThreadAllocatedBytes", long.class);
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			// Not HotSpot, nothing to count allocations with
+		}
+	}
+
+	@Test
+	public void testBytesPerItem() throws Exception {
+		// Skipped on a JVM that can't count the bytes a thread allocates
+		Assume.assumeTrue(getThreadAllocatedBytes != null);
+
+		// Large chunks, so the checkpoint once a chunk hardly counts
+		long largeChunks = run(1000);
+		assertTrue("Allocated " + largeChunks + " bytes per item", largeChunks < 16);
+	}
+
+	private long run(int itemCount) throws Exception {
+		Properties params = new Properties();
+		params.setProperty("itemCount", Integer.toString(itemCount));
+		long execId = jobOp.start("chunkAllocation", params);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 600 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+		return (allocatedAtEnd - allocatedAtStart) / MEASURED_ITEMS;
+	}
+
+	private static long allocatedBytes() {
+		try {
+			return (Long) getThreadAllocatedBytes.invoke(threadBean, Thread.currentThread().getId());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		int i = 0;
+
+		@Override
+		public Object readItem() {
+			if (i == WARMUP_ITEMS) {
+				allocatedAtStart = allocatedBytes();
+			} else if (i == WARMUP_ITEMS + MEASURED_ITEMS) {
+				allocatedAtEnd = allocatedBytes();
+				return null;
+			}
+			i++;
+			return ITEM;
+		}
+	}
+
+	public static class Processor implements ItemProcessor {
+		@Override
+		public Object processItem(Object item) {
+			return item;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) {
+		}
+	}
+
+	public static class ChunkListener extends AbstractChunkListener {
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+
+/**
+ * Writing the chunk boundary data as a single ChunkCommitUnit, on whatever database
+ * the runtime is configured with (embedded Derby by default), leaves the same thing
+ * behind as the two checkpoint updates and step status update it replaces.
+ */
+public class ChunkCommitUnitTest {
+
+	private static final int NUM_CHUNKS = 20;
+
+	static IPersistenceManagerService ps = null;
+
+	@BeforeClass
+	public static void setup() {
+		ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+	}
+
+	@Test
+	public void testSeparateUpdates() throws Exception {
+		runChunks(false);
+	}
+
+	@Test
+	public void testCommitUnit() throws Exception {
+		runChunks(true);
+	}
+
+	private void runChunks(boolean useCommitUnit) {
+		JobInstance jobInstance = ps.createJobInstance("chunkCommitUnit", "test", null);
+		// The instance stays in the runtime DB, so give it the job status a real one would have.
+		JobStatus jobStatus = ps.createJobStatus(jobInstance.getInstanceId());
+		jobStatus.setJobInstance(jobInstance);
+		ps.updateJobStatus(jobInstance.getInstanceId(), jobStatus);
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.STARTING);
+		StepExecutionImpl stepExecution = ps.createStepExecution(jobExecution.getExecutionId(), new StepContextImpl("step1"));
+		long stepExecId = stepExecution.getStepExecutionId();
+		StepStatus stepStatus = ps.createStepStatus(stepExecId);
+
+		long instanceId = jobInstance.getInstanceId();
+		CheckpointDataKey readerKey = new CheckpointDataKey(instanceId, "step1", "READER");
+		CheckpointDataKey writerKey = new CheckpointDataKey(instanceId, "step1", "WRITER");
+
+		byte[] lastToken = null;
+		for (int i = 0; i < NUM_CHUNKS; i++) {
+			lastToken = Integer.toString(i).getBytes();
+			CheckpointData readerData = new CheckpointData(instanceId, "step1", "READER");
+			readerData.setRestartToken(lastToken);
+			CheckpointData writerData = new CheckpointData(instanceId, "step1", "WRITER");
+			writerData.setRestartToken(lastToken);
+
+			if (useCommitUnit) {
+				ps.updateChunkCommitUnit(new ChunkCommitUnit(readerKey, readerData, writerKey, writerData, stepExecId, stepStatus));
+			} else {
+				ps.updateCheckpointData(readerKey, readerData);
+				ps.updateCheckpointData(writerKey, writerData);
+				ps.updateStepStatus(stepExecId, stepStatus);
+			}
+		}
+
+		// Both paths have to leave the same thing behind.
+		assertArrayEquals(lastToken, ps.getCheckpointData(readerKey).getRestartToken());
+		assertArrayEquals(lastToken, ps.getCheckpointData(writerKey).getRestartToken());
+		assertEquals(stepExecId, ps.getStepStatus(instanceId, "step1").getStepExecutionId());
+	}
+}
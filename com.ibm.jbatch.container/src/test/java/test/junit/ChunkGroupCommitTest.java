@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.impl.BatchConfigImpl;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+import com.ibm.jbatch.container.services.impl.JDBCPersistenceManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
+import com.ibm.jbatch.spi.DatabaseConfigurationBean;
+
+/**
+ * Concurrent partitions writing their chunk commits, on embedded Derby, each in
+ * its own transaction and with group commit, leave the same data behind.
+ */
+public class ChunkGroupCommitTest {
+
+	private static final int CHUNKS_PER_PARTITION = 10;
+
+	static JDBCPersistenceManagerImpl separate = null;
+	static JDBCPersistenceManagerImpl grouped = null;
+	static long parentInstanceId;
+
+	@BeforeClass
+	public static void setup() {
+		separate = newPersistence(0);
+		grouped = newPersistence(64);
+
+		// Partitions hang off a top-level instance, which stays in the runtime DB
+		JobInstance jobInstance = separate.createJobInstance("chunkGroupCommit", "test", null);
+		parentInstanceId = jobInstance.getInstanceId();
+		JobStatus jobStatus = separate.createJobStatus(parentInstanceId);
+		jobStatus.setJobInstance(jobInstance);
+		RuntimeJobExecution jobExecution = separate.createJobExecution(jobInstance, null, BatchStatus.COMPLETED);
+		jobStatus.setLatestExecutionId(jobExecution.getExecutionId());
+		jobStatus.setBatchStatus(BatchStatus.COMPLETED);
+		separate.updateJobStatus(parentInstanceId, jobStatus);
+	}
+
+	@AfterClass
+	public static void cleanup() {
+		separate.shutdown();
+		grouped.shutdown();
+	}
+
+	@Test
+	public void testSeparateCommits() throws Exception {
+		for (int partitions : new int[] { 8, 32 }) {
+			runPartitions(separate, partitions);
+		}
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		for (int partitions : new int[] { 8, 32 }) {
+			runPartitions(grouped, partitions);
+		}
+	}
+
+	private static JDBCPersistenceManagerImpl newPersistence(int groupCommitMaxBatch) {
+		DatabaseConfigurationBean databaseConfig = new DatabaseConfigurationBean();
+		databaseConfig.setJdbcDriver(BatchContainerConstants.DEFAULT_JDBC_DRIVER);
+		databaseConfig.setJdbcUrl(BatchContainerConstants.DEFAULT_JDBC_URL);
+		databaseConfig.setSchema(BatchContainerConstants.DEFAULT_DB_SCHEMA);
+		Properties props = new Properties();
+		props.setProperty(BatchContainerConstants.JDBC_GROUP_COMMIT_MAX_BATCH, Integer.toString(groupCommitMaxBatch));
+		BatchConfigImpl batchConfig = new BatchConfigImpl();
+		batchConfig.setJ2seMode(true);
+		batchConfig.setDatabaseConfigurationBean(databaseConfig);
+		batchConfig.setConfigProperties(props);
+		JDBCPersistenceManagerImpl ps = new JDBCPersistenceManagerImpl();
+		ps.init(batchConfig);
+		return ps;
+	}
+
+	private void runPartitions(final JDBCPersistenceManagerImpl ps, int partitions) throws Exception {
+		final CountDownLatch ready = new CountDownLatch(partitions);
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(partitions);
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+		try {
+			for (int i = 0; i < partitions; i++) {
+				final String name = ":" + parentInstanceId + ":step1:" + i;
+				results.add(executor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						return runPartition(ps, name, ready, start);
+					}
+				}));
+			}
+			// All the partitions commit at once, so group commit has something to group
+			ready.await();
+			start.countDown();
+			for (Future<Long> result : results) {
+				// Each partition's last chunk is what's left behind
+				long instanceId = result.get();
+				assertArrayEquals(token(CHUNKS_PER_PARTITION - 1), ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "READER")).getRestartToken());
+				assertArrayEquals(token(CHUNKS_PER_PARTITION - 1), ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "WRITER")).getRestartToken());
+				assertEquals(BatchStatus.STARTED, ps.getStepStatus(instanceId, "step1").getBatchStatus());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private long runPartition(JDBCPersistenceManagerImpl ps, String name, CountDownLatch ready, CountDownLatch start) throws InterruptedException {
+		JobInstance jobInstance = ps.createSubJobInstance(name, "test");
+		long instanceId = jobInstance.getInstanceId();
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.STARTED);
+		StepExecutionImpl stepExecution = ps.createStepExecution(jobExecution.getExecutionId(), new StepContextImpl("step1"));
+		long stepExecId = stepExecution.getStepExecutionId();
+		StepStatus stepStatus = ps.createStepStatus(stepExecId);
+		stepStatus.setBatchStatus(BatchStatus.STARTED);
+		CheckpointDataKey readerKey = new CheckpointDataKey(instanceId, "step1", "READER");
+		CheckpointDataKey writerKey = new CheckpointDataKey(instanceId, "step1", "WRITER");
+
+		ready.countDown();
+		start.await();
+		for (int i = 0; i < CHUNKS_PER_PARTITION; i++) {
+			CheckpointData readerData = new CheckpointData(instanceId, "step1", "READER");
+			readerData.setRestartToken(token(i));
+			CheckpointData writerData = new CheckpointData(instanceId, "step1", "WRITER");
+			writerData.setRestartToken(token(i));
+			ps.updateChunkCommitUnit(new ChunkCommitUnit(readerKey, readerData, writerKey, writerData, stepExecId, stepStatus));
+		}
+		ps.updateWithFinalExecutionStatusesAndTimestamps(jobExecution.getExecutionId(), BatchStatus.COMPLETED, "COMPLETED",
+				new java.sql.Timestamp(System.currentTimeMillis()));
+		return instanceId;
+	}
+
+	private static byte[] token(int chunk) {
+		return Integer.toString(chunk).getBytes();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.ibm.jbatch.container.impl.ExceptionClassMatcher;
+
+public class ExceptionClassMatcherTest {
+
+	@Test
+	public void testIncludeAndExclude() {
+		ExceptionClassMatcher matcher = new ExceptionClassMatcher(
+				Arrays.asList("java.io.IOException", "no.such.Exception"),
+				Arrays.asList("java.io.FileNotFoundException"));
+		assertTrue(matcher.matches(new IOException()));
+		assertTrue(matcher.matches(new java.io.EOFException()));
+		assertFalse(matcher.matches(new FileNotFoundException()));
+		assertFalse(matcher.matches(new RuntimeException()));
+		// Same answers the second time round, from what was remembered
+		assertTrue(matcher.matches(new IOException()));
+		assertFalse(matcher.matches(new FileNotFoundException()));
+	}
+
+	@Test
+	public void testNothingIncluded() {
+		ExceptionClassMatcher matcher = new ExceptionClassMatcher(Collections.<String>emptySet(), Collections.<String>emptySet());
+		assertFalse(matcher.matches(new Exception()));
+	}
+
+	/*
+	 * The classes are loaded when the matcher is made, not for each exception.
+	 */
+	@Test
+	public void testClassesLoadedOnce() {
+		CountingClassLoader loader = new CountingClassLoader();
+		ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(loader);
+		ExceptionClassMatcher matcher;
+		try {
+			matcher = new ExceptionClassMatcher(Arrays.asList("java.io.IOException"), Arrays.asList("java.io.FileNotFoundException"));
+		} finally {
+			Thread.currentThread().setContextClassLoader(tccl);
+		}
+		for (int i = 0; i < 1000; i++) {
+			matcher.matches(new IOException());
+			matcher.matches(new IllegalStateException());
+		}
+		assertEquals(2, loader.loads);
+	}
+
+	private static class CountingClassLoader extends ClassLoader {
+		int loads = 0;
+
+		CountingClassLoader() {
+			super(ExceptionClassMatcherTest.class.getClassLoader());
+		}
+
+		@Override
+		public Class<?> loadClass(String name) throws ClassNotFoundException {
+			loads++;
+			return super.loadClass(name);
+		}
+	}
+}
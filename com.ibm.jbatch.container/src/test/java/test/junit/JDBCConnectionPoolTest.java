@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.services.impl.JDBCConnectionPool;
+
+public class JDBCConnectionPoolTest {
+
+	private static final String URL = "jdbc:derby:memory:pooltest;create=true";
+
+	private JDBCConnectionPool pool;
+
+	@BeforeClass
+	public static void loadDriver() throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+	}
+
+	@After
+	public void closePool() {
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testConnectionsAreReused() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 2, 1000, true, 300, 8);
+
+		for (int i = 0; i < 10; i++) {
+			Connection conn = pool.getConnection();
+			assertEquals(1, pool.getActiveCount());
+			assertEquals(1.0 / 2, pool.getUtilization(), 0.0);
+			conn.close();
+			// Closing twice, as cleanupConnection can, must not return it twice.
+			conn.close();
+			assertTrue(conn.isClosed());
+		}
+
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(1, pool.getCreatedCount());
+		assertEquals(10, pool.getBorrowCount());
+	}
+
+	@Test
+	public void testClosedHandleIsUnusable() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 8);
+
+		Connection conn = pool.getConnection();
+		conn.close();
+		try {
+			conn.prepareStatement("VALUES 1");
+			fail("Expected SQLException using a connection returned to the pool");
+		} catch (SQLException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBorrowTimesOutWhenExhausted() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 50, false, 0, 8);
+
+		Connection held = pool.getConnection();
+		try {
+			pool.getConnection();
+			fail("Expected SQLException with the only connection checked out");
+		} catch (SQLException e) {
+			// expected
+		}
+		assertEquals(1, pool.getTimeoutCount());
+		assertTrue(pool.getMaxWaitMillis() >= 40);
+
+		held.close();
+		pool.getConnection().close();
+	}
+
+	@Test
+	public void testStatementsAreCachedPerConnection() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 8);
+
+		for (int i = 0; i < 5; i++) {
+			Connection conn = pool.getConnection();
+			PreparedStatement ps = conn.prepareStatement("VALUES CAST(? AS INT)");
+			ps.setInt(1, i);
+			ResultSet rs = ps.executeQuery();
+			assertTrue(rs.next());
+			assertEquals(i, rs.getInt(1));
+			ps.close();
+			rs.close();
+			conn.close();
+		}
+
+		assertEquals(1, pool.getStatementCacheMisses());
+		assertEquals(4, pool.getStatementCacheHits());
+	}
+
+	@Test
+	public void testStatementSettingsAreResetOnReturn() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 8);
+
+		Connection conn = pool.getConnection();
+		PreparedStatement ps = conn.prepareStatement("VALUES 1, 2, 3");
+		int queryTimeout = ps.getQueryTimeout();
+		int fetchSize = ps.getFetchSize();
+		// Derby won't take a fetch size larger than the max rows already set
+		ps.setFetchSize(fetchSize + 5);
+		ps.setQueryTimeout(queryTimeout + 5);
+		ps.setMaxRows(1);
+		ps.close();
+		conn.close();
+
+		conn = pool.getConnection();
+		ps = conn.prepareStatement("VALUES 1, 2, 3");
+		assertEquals(0, ps.getMaxRows());
+		assertEquals(queryTimeout, ps.getQueryTimeout());
+		assertEquals(fetchSize, ps.getFetchSize());
+		ResultSet rs = ps.executeQuery();
+		int rows = 0;
+		while (rs.next()) {
+			rows++;
+		}
+		assertEquals(3, rows);
+		rs.close();
+		ps.close();
+		conn.close();
+		assertEquals(1, pool.getStatementCacheHits());
+	}
+
+	@Test
+	public void testNestedUseOfSameStatement() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 8);
+
+		Connection conn = pool.getConnection();
+		PreparedStatement outer = conn.prepareStatement("VALUES 1");
+		PreparedStatement inner = conn.prepareStatement("VALUES 1");
+		inner.executeQuery().close();
+		inner.close();
+		outer.executeQuery().close();
+		outer.close();
+		assertTrue(outer.isClosed());
+		conn.close();
+	}
+
+	@Test
+	public void testStatementEvictedInUseIsClosedOnReturn() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 1);
+
+		Connection conn = pool.getConnection();
+		PreparedStatement evicted = conn.prepareStatement("VALUES 1");
+		PreparedStatement physical = evicted.unwrap(PreparedStatement.class);
+		// Pushes the first statement out of the cache while it's still checked out
+		conn.prepareStatement("VALUES 2").close();
+		assertFalse(physical.isClosed());
+
+		// Never closed by the borrower, so it's closed when the connection goes back
+		conn.close();
+		assertTrue(evicted.isClosed());
+		assertTrue(physical.isClosed());
+	}
+
+	@Test
+	public void testResultSetGivesBackPooledStatement() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 8);
+
+		Connection conn = pool.getConnection();
+		PreparedStatement ps = conn.prepareStatement("VALUES 1");
+		ResultSet rs = ps.executeQuery();
+		assertSame(ps, rs.getStatement());
+		rs.close();
+		// Only checks the statement back in
+		rs.getStatement().close();
+		assertTrue(ps.isClosed());
+		conn.close();
+
+		conn = pool.getConnection();
+		ps = conn.prepareStatement("VALUES 1");
+		rs = ps.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(1, rs.getInt(1));
+		rs.close();
+		ps.close();
+		conn.close();
+		assertEquals(1, pool.getStatementCacheHits());
+	}
+
+	@Test
+	public void testUncommittedWorkIsRolledBackOnReturn() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 1, 1000, false, 0, 8);
+
+		Connection conn = pool.getConnection();
+		conn.setAutoCommit(false);
+		conn.close();
+
+		conn = pool.getConnection();
+		assertTrue(conn.getAutoCommit());
+		conn.close();
+	}
+
+	@Test
+	public void testIdleConnectionsAreEvicted() throws Exception {
+		pool = new JDBCConnectionPool(URL, "", "", 2, 1000, false, 1, 8);
+
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		first.close();
+		second.close();
+		assertEquals(2, pool.getIdleCount());
+
+		Thread.sleep(1100);
+		pool.getConnection().close();
+
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(2, pool.getDestroyedCount());
+		assertEquals(3, pool.getCreatedCount());
+		assertFalse(pool.getOpenCount() > 1);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.batch.operations.JobOperator;
+import javax.batch.operations.NoSuchJobException;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+
+public class JobInstancePagingTest {
+
+	private static final int NUM_INSTANCES = 7;
+
+	static IPersistenceManagerService ps = null;
+	static String jobName = null;
+	// Newest first, the order the JobOperator hands them back in
+	static List<Long> expected = new ArrayList<Long>();
+
+	@BeforeClass
+	public static void setup() {
+		ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		// The runtime DB outlives the build, so don't count on being the only instances of a fixed name.
+		jobName = "jobInstancePaging" + System.currentTimeMillis();
+		for (int i = 0; i < NUM_INSTANCES; i++) {
+			String appTag = i % 2 == 0 ? "even" : "odd";
+			JobInstance jobInstance = ps.createJobInstance(jobName, appTag, null);
+			// Left in the runtime DB, so give it the status and execution a real instance would have
+			JobStatus jobStatus = ps.createJobStatus(jobInstance.getInstanceId());
+			jobStatus.setJobInstance(jobInstance);
+			RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.COMPLETED);
+			jobStatus.setLatestExecutionId(jobExecution.getExecutionId());
+			jobStatus.setBatchStatus(BatchStatus.COMPLETED);
+			ps.updateJobStatus(jobInstance.getInstanceId(), jobStatus);
+			expected.add(jobInstance.getInstanceId());
+		}
+		Collections.reverse(expected);
+	}
+
+	@Test
+	public void testPages() {
+		assertEquals(expected, ps.jobOperatorGetJobInstanceIds(jobName, 0, 100));
+		assertEquals(expected.subList(0, 3), ps.jobOperatorGetJobInstanceIds(jobName, 0, 3));
+		assertEquals(expected.subList(3, 6), ps.jobOperatorGetJobInstanceIds(jobName, 3, 3));
+		assertEquals(expected.subList(6, 7), ps.jobOperatorGetJobInstanceIds(jobName, 6, 3));
+		assertTrue(ps.jobOperatorGetJobInstanceIds(jobName, NUM_INSTANCES, 3).isEmpty());
+	}
+
+	/*
+	 * The persistence service gives an empty page past the end, but the JobOperator
+	 * still fails the way it did when it took the page with subList(): a start just
+	 * past the last instance finds no job, and one further out is an illegal argument.
+	 */
+	@Test
+	public void testJobOperatorPagePastTheEnd() {
+		JobOperator jobOp = BatchRuntime.getJobOperator();
+		assertEquals(3, jobOp.getJobInstances(jobName, 4, 3).size());
+		try {
+			jobOp.getJobInstances(jobName, NUM_INSTANCES, 3);
+			fail("Expected NoSuchJobException");
+		} catch (NoSuchJobException e) {
+			// expected
+		}
+		try {
+			jobOp.getJobInstances(jobName, NUM_INSTANCES + 1, 3);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPagesWithAppTag() {
+		// expected is newest first, so instance 6 ("even") leads
+		List<Long> even = new ArrayList<Long>();
+		for (int i = 0; i < expected.size(); i += 2) {
+			even.add(expected.get(i));
+		}
+		assertEquals(even, ps.jobOperatorGetJobInstanceIds(jobName, "even", 0, 100));
+		assertEquals(even.subList(1, 3), ps.jobOperatorGetJobInstanceIds(jobName, "even", 1, 2));
+	}
+
+	@Test
+	public void testKeysetPages() {
+		List<Long> walked = new ArrayList<Long>();
+		long last = Long.MAX_VALUE;
+		List<Long> page;
+		while (!(page = ps.jobOperatorGetJobInstanceIdsAfter(jobName, last, 3)).isEmpty()) {
+			walked.addAll(page);
+			last = page.get(page.size() - 1);
+		}
+		assertEquals(expected, walked);
+
+		// After instance 6 come the even instances 4 and 2, at positions 2 and 4
+		List<Long> evenPage = ps.jobOperatorGetJobInstanceIdsAfter(jobName, "even", expected.get(0), 2);
+		assertEquals(2, evenPage.size());
+		assertEquals(expected.get(2), evenPage.get(0));
+		assertEquals(expected.get(4), evenPage.get(1));
+	}
+}
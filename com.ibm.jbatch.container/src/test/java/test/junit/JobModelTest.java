@@ -18,7 +18,9 @@ package test.junit;
 
 import static org.junit.Assert.*;
 
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Scanner;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -28,6 +30,8 @@ import javax.xml.bind.Unmarshaller;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.ibm.jbatch.container.jsl.ModelResolverFactory;
+import com.ibm.jbatch.container.jsl.ModelSerializerFactory;
 import com.ibm.jbatch.jsl.model.Batchlet;
 import com.ibm.jbatch.jsl.model.JSLJob;
 import com.ibm.jbatch.jsl.model.Step;
@@ -109,5 +113,53 @@ public class JobModelTest {
     
     // Empty string is schema-valid so deleting previous test in this place.
 
+    /*
+     * Resolving the same XML again comes from the cache, as a copy of its own
+     * that's the same as a fresh parse and can be changed without affecting
+     * what the next caller gets.
+     */
+    @Test
+    public void testResolvedModelIsCopy() throws Exception {
+        String jobXML = readResource("/job2.xml");
+
+        JAXBContext ctx = JAXBContext.newInstance("com.ibm.jbatch.jsl.model");
+        JSLJob parsed = (JSLJob)((JAXBElement)ctx.createUnmarshaller().unmarshal(this.getClass().getResource("/job2.xml"))).getValue();
+        String expected = ModelSerializerFactory.createJobModelSerializer().serializeModel(parsed);
+
+        JSLJob first = ModelResolverFactory.createJobResolver().resolveModel(jobXML);
+        assertEquals(expected, ModelSerializerFactory.createJobModelSerializer().serializeModel(first));
+
+        Step step = (Step)first.getExecutionElements().get(0);
+        step.getProperties().getPropertyList().get(0).setValue("changed");
+        step.getChunk().getWriter().setRef("changed");
+        first.getExecutionElements().remove(1);
+
+        JSLJob second = ModelResolverFactory.createJobResolver().resolveModel(jobXML);
+        assertNotSame(first, second);
+        assertEquals(expected, ModelSerializerFactory.createJobModelSerializer().serializeModel(second));
+    }
+
+    @Test
+    public void testInvalidNotCached() throws Exception {
+        String jobXML = readResource("/invalid.job1.xml");
+        for (int i = 0; i < 2; i++) {
+            try {
+                ModelResolverFactory.createJobResolver().resolveModel(jobXML);
+                fail("Expected the invalid job to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private String readResource(String name) throws Exception {
+        InputStream in = this.getClass().getResourceAsStream(name);
+        try {
+            return new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+        } finally {
+            in.close();
+        }
+    }
+
 
 }
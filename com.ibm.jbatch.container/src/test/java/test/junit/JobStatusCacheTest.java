@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.services.IJobStatusManagerService;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+
+public class JobStatusCacheTest {
+
+	static IPersistenceManagerService ps = null;
+	static IJobStatusManagerService jobStatusService = null;
+
+	@BeforeClass
+	public static void setup() {
+		ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		jobStatusService = ServicesManagerImpl.getInstance().getJobStatusManagerService();
+	}
+
+	@Test
+	public void testRunningInstanceIsWrittenThrough() {
+		long instanceId = createInstance();
+		jobStatusService.registerRunningInstance(instanceId);
+		try {
+			jobStatusService.updateJobStatusWithNewExecution(instanceId, 1234L);
+			jobStatusService.updateJobCurrentStep(instanceId, "step1");
+			jobStatusService.updateJobBatchStatus(instanceId, BatchStatus.STARTED);
+
+			// Every update reached the database...
+			JobStatus persisted = ps.getJobStatus(instanceId);
+			assertEquals("step1", persisted.getCurrentStepId());
+			assertEquals(BatchStatus.STARTED, persisted.getBatchStatus());
+			assertEquals(1234L, persisted.getLatestExecutionId());
+
+			// ...and changing what a read hands back doesn't change the cached status
+			JobStatus read = jobStatusService.getJobStatus(instanceId);
+			assertEquals("step1", read.getCurrentStepId());
+			read.setCurrentStepId("notPersisted");
+			assertEquals("step1", jobStatusService.getJobStatus(instanceId).getCurrentStepId());
+		} finally {
+			jobStatusService.updateJobExecutionStatus(instanceId, BatchStatus.COMPLETED, "COMPLETED");
+			jobStatusService.unregisterRunningInstance(instanceId);
+		}
+		assertEquals(BatchStatus.COMPLETED, ps.getJobStatus(instanceId).getBatchStatus());
+	}
+
+	@Test
+	public void testInstanceIsReadFreshOnceUnregistered() {
+		long instanceId = createInstance();
+		jobStatusService.registerRunningInstance(instanceId);
+		jobStatusService.updateJobCurrentStep(instanceId, "step1");
+		jobStatusService.unregisterRunningInstance(instanceId);
+
+		JobStatus elsewhere = ps.getJobStatus(instanceId);
+		elsewhere.setCurrentStepId("step2");
+		ps.updateJobStatus(instanceId, elsewhere);
+
+		assertEquals("step2", jobStatusService.getJobStatus(instanceId).getCurrentStepId());
+	}
+
+	private long createInstance() {
+		JobInstance jobInstance = ps.createJobInstance("jobStatusCache", "test", null);
+		JobStatus jobStatus = jobStatusService.createJobStatus(jobInstance.getInstanceId());
+		jobStatus.setJobInstance(jobInstance);
+		// Left in the runtime DB, so give it an execution like a real instance
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.COMPLETED);
+		jobStatus.setLatestExecutionId(jobExecution.getExecutionId());
+		jobStatusService.updateJobStatus(jobStatus);
+		return jobInstance.getInstanceId();
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.context.impl.MetricImpl;
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.impl.BatchConfigImpl;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+import com.ibm.jbatch.container.persistence.Journal;
+import com.ibm.jbatch.container.services.impl.JournalPersistenceManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
+
+public class JournalPersistenceTest {
+
+	private static final int CHUNKS_PER_JOB = 10;
+
+	private static final Journal.FrameHandler IGNORE_FRAMES = new Journal.FrameHandler() {
+		@Override
+		public void handle(byte[] frame) {
+		}
+	};
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("journal", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testReplay() {
+		JournalPersistenceManagerImpl ps = open(16 * 1024, 0);
+		Properties params = new Properties();
+		params.setProperty("p", "1");
+		long instanceId = runJob(ps, params);
+		long execId = ps.getMostRecentExecutionId(instanceId);
+
+		// Replayed before the first is shut down, the way it would be if the JVM died
+		JournalPersistenceManagerImpl replayed = open(16 * 1024, 0);
+		ps.shutdown();
+		assertEquals(BatchStatus.COMPLETED, replayed.getJobStatus(instanceId).getBatchStatus());
+		assertEquals(execId, replayed.getJobStatus(instanceId).getLatestExecutionId());
+		assertEquals("COMPLETED", replayed.jobOperatorQueryJobExecutionBatchStatus(execId));
+		assertEquals("1", replayed.getParameters(execId).getProperty("p"));
+		assertEquals(BatchStatus.STARTED, replayed.getStepStatus(instanceId, "step1").getBatchStatus());
+		assertArrayEquals(token(CHUNKS_PER_JOB - 1), replayed.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "READER")).getRestartToken());
+		assertEquals(CHUNKS_PER_JOB, replayed.getStepExecutionsForJobExecution(execId).get(0).getMetrics()[0].getValue());
+
+		// Ids carry on from where they left off
+		assertTrue(runJob(replayed, null) > instanceId);
+		replayed.shutdown();
+	}
+
+	@Test
+	public void testDeletedCheckpointsStayDeleted() {
+		JournalPersistenceManagerImpl ps = open(16 * 1024, 0);
+		long deleted = runJob(ps, null);
+		long kept = runJob(ps, null);
+		ps.deleteCheckpointData(deleted, "step1");
+		assertNull(ps.getCheckpointData(new CheckpointDataKey(deleted, "step1", "READER")));
+		ps.shutdown();
+
+		JournalPersistenceManagerImpl replayed = open(16 * 1024, 0);
+		assertNull(replayed.getCheckpointData(new CheckpointDataKey(deleted, "step1", "READER")));
+		assertNull(replayed.getCheckpointData(new CheckpointDataKey(deleted, "step1", "WRITER")));
+		assertArrayEquals(token(CHUNKS_PER_JOB - 1), replayed.getCheckpointData(new CheckpointDataKey(kept, "step1", "READER")).getRestartToken());
+		replayed.shutdown();
+	}
+
+	@Test
+	public void testCompaction() {
+		// Small segments, so the jobs fill several
+		JournalPersistenceManagerImpl ps = open(4096, 0);
+		long first = runJob(ps, null);
+		ps.createJobInstance("journal", "purged", null);
+		for (int i = 0; i < 20; i++) {
+			runJob(ps, null);
+		}
+		ps.purge("purged");
+		List<String> compacted = Arrays.asList(directory.list());
+		assertTrue(compacted.size() > 2);
+		ps.compact();
+		long last = runJob(ps, null);
+		ps.shutdown();
+
+		int snapshots = 0;
+		for (String name : directory.list()) {
+			if (name.startsWith("snapshot-")) {
+				snapshots++;
+			} else {
+				assertFalse(name + " should have been compacted", compacted.contains(name));
+			}
+		}
+		assertEquals(1, snapshots);
+
+		JournalPersistenceManagerImpl replayed = open(4096, 0);
+		assertEquals(22, replayed.jobOperatorGetJobInstanceCount("journal"));
+		assertEquals(BatchStatus.COMPLETED, replayed.getJobStatus(first).getBatchStatus());
+		assertEquals(BatchStatus.COMPLETED, replayed.getJobStatus(last).getBatchStatus());
+		assertArrayEquals(token(CHUNKS_PER_JOB - 1), replayed.getCheckpointData(new CheckpointDataKey(first, "step1", "WRITER")).getRestartToken());
+		replayed.shutdown();
+	}
+
+	@Test
+	public void testTornFrameIsIgnored() throws IOException {
+		JournalPersistenceManagerImpl ps = open(16 * 1024, 0);
+		long instanceId = runJob(ps, null);
+		ps.shutdown();
+
+		// A frame whose length made it out but whose bytes didn't, after the last good one
+		File[] files = directory.listFiles();
+		Arrays.sort(files);
+		RandomAccessFile segment = new RandomAccessFile(files[files.length - 1], "rw");
+		try {
+			int length;
+			while ((length = segment.readInt()) != 0) {
+				segment.seek(segment.getFilePointer() + 4 + length);
+			}
+			segment.seek(segment.getFilePointer() - 4);
+			segment.writeInt(100);
+			segment.writeInt(12345);
+			segment.write(new byte[] { 1, 2, 3 });
+		} finally {
+			segment.close();
+		}
+
+		JournalPersistenceManagerImpl replayed = open(16 * 1024, 0);
+		assertEquals(BatchStatus.COMPLETED, replayed.getJobStatus(instanceId).getBatchStatus());
+		long next = runJob(replayed, null);
+		replayed.shutdown();
+
+		JournalPersistenceManagerImpl again = open(16 * 1024, 0);
+		assertEquals(BatchStatus.COMPLETED, again.getJobStatus(next).getBatchStatus());
+		again.shutdown();
+	}
+
+	/*
+	 * Segments filling up in the background get compacted without losing anything.
+	 */
+	@Test
+	public void testBackgroundCompaction() {
+		JournalPersistenceManagerImpl ps = open(4096, 4);
+		List<Long> instanceIds = new ArrayList<Long>();
+		for (int i = 0; i < 20; i++) {
+			instanceIds.add(runJob(ps, null));
+		}
+		ps.shutdown();
+
+		int snapshots = 0;
+		for (String name : directory.list()) {
+			if (name.startsWith("snapshot-")) {
+				snapshots++;
+			}
+		}
+		assertEquals(1, snapshots);
+
+		JournalPersistenceManagerImpl replayed = open(4096, 0);
+		assertEquals(20, replayed.jobOperatorGetJobInstanceCount("journal"));
+		for (long instanceId : instanceIds) {
+			assertEquals(BatchStatus.COMPLETED, replayed.getJobStatus(instanceId).getBatchStatus());
+		}
+		replayed.shutdown();
+	}
+
+	/*
+	 * Without force, segments that fill up aren't kept mapped waiting for a force
+	 * that never comes.
+	 */
+	@Test
+	public void testUnforcedSegmentsAreReleased() throws Exception {
+		Journal journal = new Journal(directory, 4096, false);
+		journal.open(IGNORE_FRAMES);
+		for (int i = 0; i < 100; i++) {
+			journal.sync(journal.append(new byte[1000]));
+		}
+		assertTrue(journal.getSegmentsSinceSnapshot() > 10);
+		assertEquals(0, dirtySegments(journal).size());
+		journal.close();
+
+		Journal forced = new Journal(directory, 4096, true);
+		forced.open(IGNORE_FRAMES);
+		for (int i = 0; i < 100; i++) {
+			forced.sync(forced.append(new byte[1000]));
+		}
+		// Just the segment being appended to
+		assertEquals(1, dirtySegments(forced).size());
+		forced.close();
+	}
+
+	private static List<?> dirtySegments(Journal journal) throws Exception {
+		Field dirtySegments = Journal.class.getDeclaredField("dirtySegments");
+		dirtySegments.setAccessible(true);
+		return (List<?>) dirtySegments.get(journal);
+	}
+
+	private JournalPersistenceManagerImpl open(int segmentSize, int compactSegments) {
+		Properties props = new Properties();
+		props.setProperty(BatchContainerConstants.JOURNAL_DIRECTORY, directory.getAbsolutePath());
+		props.setProperty(BatchContainerConstants.JOURNAL_SEGMENT_SIZE, Integer.toString(segmentSize));
+		props.setProperty(BatchContainerConstants.JOURNAL_COMPACT_SEGMENTS, Integer.toString(compactSegments));
+		BatchConfigImpl batchConfig = new BatchConfigImpl();
+		batchConfig.setConfigProperties(props);
+		JournalPersistenceManagerImpl ps = new JournalPersistenceManagerImpl();
+		ps.init(batchConfig);
+		return ps;
+	}
+
+	private static byte[] token(int chunk) {
+		return Integer.toString(chunk).getBytes();
+	}
+
+	private long runJob(JournalPersistenceManagerImpl ps, Properties params) {
+		JobInstance jobInstance = ps.createJobInstance("journal", "test", null);
+		long instanceId = jobInstance.getInstanceId();
+		JobStatus jobStatus = ps.createJobStatus(instanceId);
+		jobStatus.setJobInstance(jobInstance);
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, params, BatchStatus.STARTING);
+		long execId = jobExecution.getExecutionId();
+		jobStatus.setLatestExecutionId(execId);
+		ps.updateJobStatus(instanceId, jobStatus);
+		ps.markJobStarted(execId, new Timestamp(System.currentTimeMillis()));
+
+		StepContextImpl stepContext = new StepContextImpl("step1");
+		StepExecutionImpl stepExecution = ps.createStepExecution(execId, stepContext);
+		long stepExecId = stepExecution.getStepExecutionId();
+		stepContext.setStepExecutionId(stepExecId);
+		StepStatus stepStatus = ps.createStepStatus(stepExecId);
+		stepStatus.setBatchStatus(BatchStatus.STARTED);
+		CheckpointDataKey readerKey = new CheckpointDataKey(instanceId, "step1", "READER");
+		CheckpointDataKey writerKey = new CheckpointDataKey(instanceId, "step1", "WRITER");
+		for (int i = 0; i < CHUNKS_PER_JOB; i++) {
+			CheckpointData readerData = new CheckpointData(instanceId, "step1", "READER");
+			readerData.setRestartToken(token(i));
+			CheckpointData writerData = new CheckpointData(instanceId, "step1", "WRITER");
+			writerData.setRestartToken(token(i));
+			ps.updateChunkCommitUnit(new ChunkCommitUnit(readerKey, readerData, writerKey, writerData, stepExecId, stepStatus));
+		}
+		stepContext.addMetric(MetricImpl.MetricType.READ_COUNT, CHUNKS_PER_JOB);
+		stepContext.setBatchStatus(BatchStatus.COMPLETED);
+		ps.updateStepExecution(stepContext);
+
+		jobStatus.setBatchStatus(BatchStatus.COMPLETED);
+		ps.updateJobStatus(instanceId, jobStatus);
+		ps.updateWithFinalExecutionStatusesAndTimestamps(execId, BatchStatus.COMPLETED, "COMPLETED", new Timestamp(System.currentTimeMillis()));
+		return instanceId;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.api.AbstractBatchlet;
+import javax.batch.api.BatchProperty;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.inject.Inject;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+
+public class LazyPartitionTest {
+
+	private static final int PARTITIONS = 2000;
+	private static final int THREADS = 4;
+
+	private static JobOperator jobOp = null;
+
+	static AtomicInteger started = new AtomicInteger();
+	static AtomicInteger runs = new AtomicInteger();
+	static CountDownLatch release = null;
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	/*
+	 * 2000 partitions on 4 threads: while the first 4 are held running, no other
+	 * partition's been built, rather than all 2000 being built up front.
+	 */
+	@Test
+	public void testOnlyAsManyPartitionsBuiltAsThreads() throws Exception {
+		started.set(0);
+		runs.set(0);
+		release = new CountDownLatch(1);
+		Properties params = new Properties();
+		params.setProperty("partitions", Integer.toString(PARTITIONS));
+		long execId = jobOp.start("lazyPartition", params);
+		try {
+			for (int i = 0; i < 1200 && started.get() < THREADS; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(THREADS, started.get());
+			assertEquals(THREADS, countSubJobInstances(jobOp.getJobInstance(execId).getInstanceId()));
+		} finally {
+			release.countDown();
+		}
+
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 1200 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+		assertEquals(PARTITIONS, runs.get());
+		assertEquals(PARTITIONS, countSubJobInstances(jobOp.getJobInstance(execId).getInstanceId()));
+	}
+
+	private int countSubJobInstances(long instanceId) throws Exception {
+		IPersistenceManagerService ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		int count = 0;
+		for (int i = 0; i < PARTITIONS; i++) {
+			count += ps.jobOperatorGetJobInstanceCount(":" + instanceId + ":step1:" + i);
+		}
+		return count;
+	}
+
+	public static class Mapper implements PartitionMapper {
+
+		@Inject @BatchProperty
+		String partitions;
+
+		@Override
+		public PartitionPlan mapPartitions() {
+			PartitionPlan plan = new PartitionPlanImpl();
+			plan.setPartitions(Integer.parseInt(partitions));
+			plan.setThreads(THREADS);
+			return plan;
+		}
+	}
+
+	public static class Batchlet extends AbstractBatchlet {
+		@Override
+		public String process() throws Exception {
+			started.incrementAndGet();
+			assertTrue("Partition never released", release.await(60, TimeUnit.SECONDS));
+			runs.incrementAndGet();
+			return null;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.exception.PersistenceException;
+import com.ibm.jbatch.container.impl.BatchConfigImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.services.impl.JDBCPersistenceManagerImpl;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
+import com.ibm.jbatch.spi.DatabaseConfigurationBean;
+
+/**
+ * Moving checkpoints out of the old CHECKPOINTDATA table, in more than one batch
+ * and picking up again after a migration that didn't finish.
+ */
+public class LegacyCheckpointMigrationTest {
+
+	private static final String URL = "jdbc:derby:memory:legacyCheckpointMigration;create=true";
+
+	// More than two batches' worth
+	private static final int LEGACY_ROWS = 1201;
+
+	private Connection conn;
+
+	@Before
+	public void setup() throws Exception {
+		// Creates the schema and the current tables
+		newPersistence().shutdown();
+
+		Class.forName(BatchContainerConstants.DEFAULT_JDBC_DRIVER);
+		conn = DriverManager.getConnection(URL);
+		Statement statement = conn.createStatement();
+		try {
+			statement.execute("CREATE TABLE " + BatchContainerConstants.DEFAULT_DB_SCHEMA + ".CHECKPOINTDATA(id VARCHAR(512),obj BLOB)");
+		} finally {
+			statement.close();
+		}
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		Statement statement = conn.createStatement();
+		try {
+			statement.execute("DROP TABLE " + BatchContainerConstants.DEFAULT_DB_SCHEMA + ".CHECKPOINTDATA");
+		} finally {
+			statement.close();
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testMigratesInBatches() throws Exception {
+		for (int i = 0; i < LEGACY_ROWS; i++) {
+			insertLegacy(i + ",step1,READER", token(i));
+		}
+		insertLegacy("not a checkpoint key", token(-1));
+
+		JDBCPersistenceManagerImpl ps = newPersistence();
+		try {
+			for (int i = 0; i < LEGACY_ROWS; i++) {
+				CheckpointData data = ps.getCheckpointData(new CheckpointDataKey(i, "step1", "READER"));
+				assertArrayEquals(token(i), data.getRestartToken());
+			}
+		} finally {
+			ps.shutdown();
+		}
+
+		// Only the row that couldn't be moved is left behind
+		assertEquals(1, countLegacy());
+	}
+
+	@Test
+	public void testResumesInterruptedMigration() throws Exception {
+		// As if a migration stopped part way, with some rows moved and the rest not
+		for (int i = 0; i < 10; i++) {
+			insertLegacy(i + ",step1,WRITER", token(i));
+		}
+		JDBCPersistenceManagerImpl ps = newPersistence();
+		try {
+			for (int i = 10; i < 20; i++) {
+				insertLegacy(i + ",step1,WRITER", token(i));
+			}
+			// A row moved but not yet deleted, which is overwritten with the same data
+			insertLegacy("0,step1,WRITER", token(0));
+		} finally {
+			ps.shutdown();
+		}
+		assertEquals(11, countLegacy());
+
+		ps = newPersistence();
+		try {
+			for (int i = 0; i < 20; i++) {
+				CheckpointData data = ps.getCheckpointData(new CheckpointDataKey(i, "step1", "WRITER"));
+				assertArrayEquals(token(i), data.getRestartToken());
+			}
+		} finally {
+			ps.shutdown();
+		}
+		assertEquals(0, countLegacy());
+	}
+
+	@Test
+	public void testDuplicateLegacyIds() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			insertLegacy(i + ",step1,READER", token(i));
+		}
+		insertLegacy("5,step1,READER", token(5));
+		insertLegacy("5,step1,READER", token(5));
+
+		JDBCPersistenceManagerImpl ps = newPersistence();
+		try {
+			for (int i = 0; i < 20; i++) {
+				CheckpointData data = ps.getCheckpointData(new CheckpointDataKey(i, "step1", "READER"));
+				assertArrayEquals(token(i), data.getRestartToken());
+			}
+		} finally {
+			ps.shutdown();
+		}
+		assertEquals(0, countLegacy());
+	}
+
+	@Test
+	public void testLongStepName() throws Exception {
+		// Partition step names run long; the longest a legacy key can hold must survive migration,
+		// without clashing with another step name it shares a prefix with
+		String legacyStepName = longStepName(512 - "1,".length() - ",READER".length());
+		insertLegacy("1," + legacyStepName + ",READER", token(1));
+		insertLegacy("1," + legacyStepName.substring(0, 128) + ",READER", token(2));
+
+		JDBCPersistenceManagerImpl ps = newPersistence();
+		try {
+			assertArrayEquals(token(1), ps.getCheckpointData(new CheckpointDataKey(1, legacyStepName, "READER")).getRestartToken());
+			assertArrayEquals(token(2), ps.getCheckpointData(new CheckpointDataKey(1, legacyStepName.substring(0, 128), "READER")).getRestartToken());
+
+			// And the longest the new table takes, written and then overwritten
+			String stepName = longStepName(512);
+			CheckpointDataKey key = new CheckpointDataKey(1, stepName, "WRITER");
+			CheckpointData data = new CheckpointData(1, stepName, "WRITER");
+			data.setRestartToken(token(3));
+			ps.updateCheckpointData(key, data);
+			data.setRestartToken(token(4));
+			ps.updateCheckpointData(key, data);
+			assertArrayEquals(token(4), ps.getCheckpointData(key).getRestartToken());
+		} finally {
+			ps.shutdown();
+		}
+		assertEquals(0, countLegacy());
+	}
+
+	@Test
+	public void testStepNameTooLong() throws Exception {
+		StringBuilder stepName = new StringBuilder();
+		while (stepName.length() <= 512) {
+			stepName.append("step");
+		}
+		JDBCPersistenceManagerImpl ps = newPersistence();
+		try {
+			ps.getCheckpointData(new CheckpointDataKey(1, stepName.toString(), "READER"));
+			fail("Read checkpoints under a step name too long for the table");
+		} catch (PersistenceException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("shorter step id"));
+		} finally {
+			ps.shutdown();
+		}
+	}
+
+	private static JDBCPersistenceManagerImpl newPersistence() {
+		DatabaseConfigurationBean databaseConfig = new DatabaseConfigurationBean();
+		databaseConfig.setJdbcDriver(BatchContainerConstants.DEFAULT_JDBC_DRIVER);
+		databaseConfig.setJdbcUrl(URL);
+		databaseConfig.setSchema(BatchContainerConstants.DEFAULT_DB_SCHEMA);
+		BatchConfigImpl batchConfig = new BatchConfigImpl();
+		batchConfig.setJ2seMode(true);
+		batchConfig.setDatabaseConfigurationBean(databaseConfig);
+		batchConfig.setConfigProperties(new Properties());
+		JDBCPersistenceManagerImpl ps = new JDBCPersistenceManagerImpl();
+		ps.init(batchConfig);
+		return ps;
+	}
+
+	private void insertLegacy(String id, byte[] restartToken) throws SQLException, IOException {
+		int first = id.indexOf(',');
+		int last = id.lastIndexOf(',');
+		CheckpointData data = first > 0 && last > first
+				? new CheckpointData(Long.parseLong(id.substring(0, first)), id.substring(first + 1, last), id.substring(last + 1))
+				: new CheckpointData(0, "step1", "READER");
+		data.setRestartToken(restartToken);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(data);
+		out.close();
+
+		PreparedStatement statement = conn.prepareStatement("INSERT INTO " + BatchContainerConstants.DEFAULT_DB_SCHEMA + ".CHECKPOINTDATA VALUES(?, ?)");
+		try {
+			statement.setString(1, id);
+			statement.setBytes(2, bytes.toByteArray());
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private int countLegacy() throws SQLException {
+		Statement statement = conn.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + BatchContainerConstants.DEFAULT_DB_SCHEMA + ".CHECKPOINTDATA");
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static String longStepName(int length) {
+		StringBuilder stepName = new StringBuilder();
+		while (stepName.length() < length) {
+			stepName.append("step1:partition");
+		}
+		return stepName.substring(0, length);
+	}
+
+	private static byte[] token(int i) {
+		return Integer.toString(i).getBytes();
+	}
+}
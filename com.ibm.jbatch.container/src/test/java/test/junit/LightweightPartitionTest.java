@@ -0,0 +1,287 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.impl.BatchKernelImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataCodec;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.PartitionStatuses;
+
+public class LightweightPartitionTest {
+
+	private static JobOperator jobOp = null;
+	private static Field inMemoryPartitionMode = null;
+	private static boolean configuredMode;
+
+	static Set<Integer> opened = Collections.synchronizedSet(new TreeSet<Integer>());
+	static volatile int failPartition = -1;
+	static volatile boolean checkUserData = false;
+	static volatile Object userDataAtOpen = null;
+	static List<Object> readerCheckpointsAtWrite = Collections.synchronizedList(new ArrayList<Object>());
+	static List<Object> userDataAtWrite = Collections.synchronizedList(new ArrayList<Object>());
+
+	@BeforeClass
+	public static void init() throws Exception {
+		jobOp = BatchRuntime.getJobOperator();
+		// PARTITION_MODE is read once, as the kernel starts, so switch it underneath
+		inMemoryPartitionMode = BatchKernelImpl.class.getDeclaredField("inMemoryPartitionMode");
+		inMemoryPartitionMode.setAccessible(true);
+		configuredMode = inMemoryPartitionMode.getBoolean(ServicesManagerImpl.getInstance().getBatchKernelService());
+	}
+
+	@After
+	public void restoreMode() throws Exception {
+		setLightweight(configuredMode);
+		checkUserData = false;
+	}
+
+	/*
+	 * Lightweight partitions run without a subjob instance, execution and step
+	 * execution of their own in the repository.
+	 */
+	@Test
+	public void testNoSubJobInstances() throws Exception {
+		assertEquals(20, countSubJobInstances(false, 20));
+		assertEquals(0, countSubJobInstances(true, 20));
+	}
+
+	/*
+	 * One partition fails part way through: the restart runs only that one, from its
+	 * last checkpoint, and the step's metrics come out the same as for subjobs.
+	 */
+	@Test
+	public void testRestartOnlyFailedPartition() throws Exception {
+		Map<Metric.MetricType, Long> subJobMetrics = runAndRestart(false);
+		Map<Metric.MetricType, Long> lightweightMetrics = runAndRestart(true);
+		assertEquals(subJobMetrics, lightweightMetrics);
+		assertEquals(Long.valueOf(40), lightweightMetrics.get(Metric.MetricType.READ_COUNT));
+		assertEquals(Long.valueOf(40), lightweightMetrics.get(Metric.MetricType.WRITE_COUNT));
+	}
+
+	/*
+	 * A lightweight partition's user data is checkpointed along with its reader and
+	 * writer, so that what's in the repository at any point goes together, as it
+	 * would be if the partition were cut short there.
+	 */
+	@Test
+	public void testUserDataCheckpointedWithReader() throws Exception {
+		setLightweight(true);
+		failPartition = -1;
+		checkUserData = true;
+		readerCheckpointsAtWrite.clear();
+		userDataAtWrite.clear();
+		long execId = jobOp.start("lightweightPartition", params(4, 10));
+		assertEquals(BatchStatus.COMPLETED, waitFor(execId).getBatchStatus());
+		// Every partition saw the checkpoints of its 3 earlier chunks
+		assertEquals(12, readerCheckpointsAtWrite.size());
+		assertEquals(readerCheckpointsAtWrite, userDataAtWrite);
+	}
+
+	private Map<Metric.MetricType, Long> runAndRestart(boolean lightweight) throws Exception {
+		setLightweight(lightweight);
+		opened.clear();
+		failPartition = 2;
+		long execId = jobOp.start("lightweightPartition", params(4, 10));
+		assertEquals(BatchStatus.FAILED, waitFor(execId).getBatchStatus());
+		assertEquals("[0, 1, 2, 3]", opened.toString());
+
+		opened.clear();
+		failPartition = -1;
+		long restartId = jobOp.restart(execId, params(4, 10));
+		assertEquals(BatchStatus.COMPLETED, waitFor(restartId).getBatchStatus());
+		assertEquals("[2]", opened.toString());
+		// The user data it failed with, which is where it last checkpointed
+		assertEquals(6, userDataAtOpen);
+
+		Map<Metric.MetricType, Long> metrics = new HashMap<Metric.MetricType, Long>();
+		for (Metric metric : jobOp.getStepExecutions(restartId).get(0).getMetrics()) {
+			metrics.put(metric.getType(), metric.getValue());
+		}
+		return metrics;
+	}
+
+	private int countSubJobInstances(boolean lightweight, int partitions) throws Exception {
+		setLightweight(lightweight);
+		long execId = jobOp.start("lightweightPartition", params(partitions, 0));
+		assertEquals(BatchStatus.COMPLETED, waitFor(execId).getBatchStatus());
+		long instanceId = jobOp.getJobInstance(execId).getInstanceId();
+		IPersistenceManagerService ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		int count = 0;
+		for (int i = 0; i < partitions; i++) {
+			count += ps.jobOperatorGetJobInstanceCount(":" + instanceId + ":step1:" + i);
+		}
+		return count;
+	}
+
+	private static Properties params(int partitions, int numToRead) {
+		Properties params = new Properties();
+		params.setProperty("partitions", Integer.toString(partitions));
+		params.setProperty("numToRead", Integer.toString(numToRead));
+		return params;
+	}
+
+	private static JobExecution waitFor(long execId) throws Exception {
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 1200 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(10);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		return jobExecution;
+	}
+
+	private static void setLightweight(boolean lightweight) throws Exception {
+		inMemoryPartitionMode.setBoolean(ServicesManagerImpl.getInstance().getBatchKernelService(), lightweight);
+	}
+
+	public static class Mapper implements PartitionMapper {
+
+		@Inject @BatchProperty
+		String partitions;
+
+		@Override
+		public PartitionPlan mapPartitions() {
+			PartitionPlan plan = new PartitionPlanImpl();
+			int count = Integer.parseInt(partitions);
+			Properties[] partitionProperties = new Properties[count];
+			for (int i = 0; i < count; i++) {
+				partitionProperties[i] = new Properties();
+				partitionProperties[i].setProperty("partition", Integer.toString(i));
+			}
+			plan.setPartitions(count);
+			plan.setThreads(8);
+			plan.setPartitionProperties(partitionProperties);
+			return plan;
+		}
+	}
+
+	public static class PartitionFailure extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		@Inject
+		StepContext stepContext;
+
+		@Inject @BatchProperty
+		String partition;
+
+		@Inject @BatchProperty
+		String numToRead;
+
+		int i = 0;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			opened.add(Integer.valueOf(partition));
+			i = checkpoint == null ? 0 : (Integer) checkpoint;
+			userDataAtOpen = stepContext.getPersistentUserData();
+		}
+
+		@Override
+		public Object readItem() throws Exception {
+			if (i == Integer.parseInt(numToRead)) {
+				return null;
+			}
+			if (++i == 7 && Integer.parseInt(partition) == failPartition) {
+				throw new PartitionFailure();
+			}
+			stepContext.setPersistentUserData(i);
+			return i;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return i;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+
+		@Inject
+		JobContext jobContext;
+
+		@Inject @BatchProperty
+		String partition;
+
+		/*
+		 * What the repository holds for this partition while the chunk is being written,
+		 * which is what the last chunk checkpointed.
+		 */
+		@Override
+		public void writeItems(List<Object> items) throws Exception {
+			if (!checkUserData) {
+				return;
+			}
+			long instanceId = jobOp.getJobInstance(jobContext.getExecutionId()).getInstanceId();
+			// The step's first start, so the first partition plan
+			String stepName = new PartitionStatuses(1).getCheckpointStepName("step1", Integer.parseInt(partition));
+			IPersistenceManagerService ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+			CheckpointData reader = ps.getCheckpointData(new CheckpointDataKey(instanceId, stepName, "READER"));
+			CheckpointData userData = ps.getCheckpointData(new CheckpointDataKey(instanceId, stepName, "USERDATA"));
+			if (reader == null) {
+				assertNull(userData);
+				return;
+			}
+			Object readerCheckpoint = CheckpointDataCodec.decodeToken(reader.getRestartToken());
+			Object userDataCheckpoint = userData == null ? null
+					: new ObjectInputStream(new ByteArrayInputStream(userData.getRestartToken())).readObject();
+			synchronized (readerCheckpointsAtWrite) {
+				readerCheckpointsAtWrite.add(readerCheckpoint);
+				userDataAtWrite.add(userDataCheckpoint);
+			}
+		}
+	}
+}
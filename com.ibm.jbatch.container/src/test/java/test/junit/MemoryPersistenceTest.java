@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.Properties;
+
+import javax.batch.operations.NoSuchJobExecutionException;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobInstance;
+import javax.batch.runtime.StepExecution;
+
+import org.junit.Test;
+
+import com.ibm.jbatch.container.context.impl.MetricImpl;
+import com.ibm.jbatch.container.context.impl.StepContextImpl;
+import com.ibm.jbatch.container.impl.BatchConfigImpl;
+import com.ibm.jbatch.container.jobinstance.RuntimeJobExecution;
+import com.ibm.jbatch.container.jobinstance.StepExecutionImpl;
+import com.ibm.jbatch.container.persistence.CheckpointData;
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.persistence.ChunkCommitUnit;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.services.impl.MemoryPersistenceManagerImpl;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.JobStatus;
+import com.ibm.jbatch.container.status.StepStatus;
+import com.ibm.jbatch.container.util.BatchContainerConstants;
+
+public class MemoryPersistenceTest {
+
+	private static final int CHUNKS_PER_JOB = 10;
+
+	@Test
+	public void testStoredDataIsCopied() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(0, 0);
+		JobInstance jobInstance = ps.createJobInstance("copied", "test", null);
+		long instanceId = jobInstance.getInstanceId();
+
+		JobStatus jobStatus = ps.createJobStatus(instanceId);
+		jobStatus.setCurrentStepId("step1");
+		ps.updateJobStatus(instanceId, jobStatus);
+		jobStatus.setCurrentStepId("notStored");
+		assertEquals("step1", ps.getJobStatus(instanceId).getCurrentStepId());
+
+		Properties params = new Properties();
+		params.setProperty("p", "1");
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, params, BatchStatus.STARTING);
+		params.setProperty("p", "2");
+		ps.getParameters(jobExecution.getExecutionId()).setProperty("p", "3");
+		assertEquals("1", ps.getParameters(jobExecution.getExecutionId()).getProperty("p"));
+
+		StepContextImpl stepContext = new StepContextImpl("step1");
+		StepExecutionImpl stepExecution = ps.createStepExecution(jobExecution.getExecutionId(), stepContext);
+		StepStatus stepStatus = ps.createStepStatus(stepExecution.getStepExecutionId());
+		stepStatus.setBatchStatus(BatchStatus.STARTED);
+		ps.updateStepStatus(stepExecution.getStepExecutionId(), stepStatus);
+		stepStatus.setBatchStatus(BatchStatus.FAILED);
+		assertEquals(BatchStatus.STARTED, ps.getStepStatus(instanceId, "step1").getBatchStatus());
+
+		CheckpointDataKey key = new CheckpointDataKey(instanceId, "step1", "READER");
+		CheckpointData data = new CheckpointData(instanceId, "step1", "READER");
+		data.setRestartToken("a".getBytes());
+		ps.createCheckpointData(key, data);
+		data.setRestartToken("b".getBytes());
+		assertArrayEquals("a".getBytes(), ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "READER")).getRestartToken());
+	}
+
+	@Test(expected = NoSuchJobExecutionException.class)
+	public void testUnknownExecution() {
+		newMemoryPersistence(0, 0).getParameters(12345L);
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUpdated() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(2, 0);
+		long first = runJob(ps, "evict", BatchStatus.COMPLETED);
+		long second = runJob(ps, "evict", BatchStatus.COMPLETED);
+		// Updating the first makes the second the least recently updated
+		ps.updateJobStatus(first, ps.getJobStatus(first));
+		long third = runJob(ps, "evict", BatchStatus.COMPLETED);
+
+		assertEquals(1, ps.getEvictedCount());
+		assertNull(ps.getJobStatus(second));
+		assertEquals(first, ps.getJobStatus(first).getJobInstanceId());
+		assertEquals(third, ps.getJobStatus(third).getJobInstanceId());
+		assertEquals(2, ps.jobOperatorGetJobInstanceCount("evict"));
+	}
+
+	@Test
+	public void testKeepsRunningInstances() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(1, 0);
+		long running = runJob(ps, "running", BatchStatus.STARTED);
+		long done = runJob(ps, "running", BatchStatus.COMPLETED);
+		runJob(ps, "running", BatchStatus.COMPLETED);
+
+		// Over the limit, but the running instance stays
+		assertEquals(1, ps.getEvictedCount());
+		assertEquals(running, ps.getJobStatus(running).getJobInstanceId());
+		assertNull(ps.getJobStatus(done));
+	}
+
+	@Test
+	public void testEvictsSubJobsWithTheirParent() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(1, 0);
+		long parent = runJob(ps, "parent", BatchStatus.COMPLETED);
+		JobInstance partition = ps.createSubJobInstance(":" + parent + ":step1:0", "test");
+		RuntimeJobExecution partitionExecution = ps.createJobExecution(partition, null, BatchStatus.COMPLETED);
+		// Subjobs don't count against the limit
+		assertEquals(1, ps.getRetainedCount());
+
+		runJob(ps, "parent", BatchStatus.COMPLETED);
+		assertEquals(1, ps.getEvictedCount());
+		assertEquals(-1, ps.getMostRecentExecutionId(partition.getInstanceId()));
+		assertNull(ps.jobOperatorGetJobExecution(partitionExecution.getExecutionId()));
+	}
+
+	@Test
+	public void testPartitionAggregate() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(0, 0);
+		JobInstance jobInstance = ps.createJobInstance("aggregate", "test", null);
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.STARTED);
+		StepContextImpl stepContext = new StepContextImpl("step1");
+		StepExecutionImpl stepExecution = ps.createStepExecution(jobExecution.getExecutionId(), stepContext);
+		stepContext.setStepExecutionId(stepExecution.getStepExecutionId());
+
+		for (int i = 0; i < 3; i++) {
+			JobInstance partition = ps.createSubJobInstance(":" + jobInstance.getInstanceId() + ":step1:" + i, "test");
+			RuntimeJobExecution partitionExecution = ps.createJobExecution(partition, null, BatchStatus.COMPLETED);
+			StepContextImpl partitionContext = new StepContextImpl("step1");
+			partitionContext.addMetric(MetricImpl.MetricType.READ_COUNT, 10);
+			ps.createStepExecution(partitionExecution.getExecutionId(), partitionContext);
+		}
+
+		ps.updateWithFinalPartitionAggregateStepExecution(jobExecution.getExecutionId(), stepContext);
+		StepExecution aggregate = ps.getStepExecutionByStepExecutionId(stepExecution.getStepExecutionId());
+		// getMetrics() lists READ_COUNT first
+		assertEquals(30, aggregate.getMetrics()[0].getValue());
+	}
+
+	@Test
+	public void testKeepsInstancesWithoutExecutions() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(1, 0);
+		JobInstance pending = ps.createJobInstance("pending", "test", null);
+		// Over the limit, but the first hasn't had its execution created yet
+		long done = runJob(ps, "pending", BatchStatus.COMPLETED);
+
+		assertEquals(0, ps.getEvictedCount());
+		assertEquals("test", ps.getJobCurrentTag(pending.getInstanceId()));
+		assertEquals(done, ps.getJobStatus(done).getJobInstanceId());
+	}
+
+	@Test
+	public void testEvictsByAgeWhenIdle() throws Exception {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(0, 1);
+		try {
+			long done = runJob(ps, "idle", BatchStatus.COMPLETED);
+			long running = runJob(ps, "idle", BatchStatus.STARTED);
+
+			// Nothing else is created, so only the timer can evict it
+			long deadline = System.currentTimeMillis() + 10000;
+			while (ps.getEvictedCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+			}
+			assertEquals(1, ps.getEvictedCount());
+			assertNull(ps.getJobStatus(done));
+			assertEquals(running, ps.getJobStatus(running).getJobInstanceId());
+		} finally {
+			ps.shutdown();
+		}
+	}
+
+	@Test
+	public void testCountAndPurgeByApptag() {
+		MemoryPersistenceManagerImpl ps = newMemoryPersistence(0, 0);
+		ps.createJobInstance("tagged", "a", null);
+		ps.createJobInstance("tagged", "a", null);
+		ps.createJobInstance("tagged", "b", null);
+		ps.createJobInstance("other", "a", null);
+		JobInstance untagged = ps.createJobInstance("tagged", null, null);
+
+		assertEquals(2, ps.jobOperatorGetJobInstanceCount("tagged", "a"));
+		assertEquals(1, ps.jobOperatorGetJobInstanceCount("tagged", "b"));
+		assertEquals(4, ps.jobOperatorGetJobInstanceCount("tagged"));
+
+		ps.purge("a");
+		assertEquals(0, ps.jobOperatorGetJobInstanceCount("tagged", "a"));
+		assertEquals(0, ps.jobOperatorGetJobInstanceCount("other"));
+		assertEquals(2, ps.jobOperatorGetJobInstanceCount("tagged"));
+
+		ps.purge(null);
+		assertNull(ps.getJobCurrentTag(untagged.getInstanceId()));
+		assertEquals(1, ps.jobOperatorGetJobInstanceCount("tagged"));
+	}
+
+	@Test
+	public void testSameResultsAsJdbc() {
+		IPersistenceManagerService jdbc = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		for (IPersistenceManagerService ps : new IPersistenceManagerService[] { jdbc, newMemoryPersistence(0, 0) }) {
+			long instanceId = runJob(ps, "memoryPersistenceCompared", BatchStatus.COMPLETED);
+			assertEquals(BatchStatus.COMPLETED, ps.getJobStatus(instanceId).getBatchStatus());
+			assertArrayEquals(Integer.toString(CHUNKS_PER_JOB - 1).getBytes(),
+					ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1", "WRITER")).getRestartToken());
+			StepExecution stepExecution = ps.getMostRecentStepExecutionsForJobInstance(instanceId).get("step1");
+			assertNotNull(stepExecution);
+			assertEquals(BatchStatus.COMPLETED, stepExecution.getBatchStatus());
+			long execId = ps.getMostRecentExecutionId(instanceId);
+			assertTrue(execId > 0);
+			assertEquals(BatchStatus.COMPLETED.name(), ps.jobOperatorQueryJobExecutionBatchStatus(execId));
+		}
+	}
+
+	private MemoryPersistenceManagerImpl newMemoryPersistence(int maxInstances, int maxAgeSeconds) {
+		Properties props = new Properties();
+		props.setProperty(BatchContainerConstants.MEMORY_PERSISTENCE_MAX_INSTANCES, Integer.toString(maxInstances));
+		props.setProperty(BatchContainerConstants.MEMORY_PERSISTENCE_MAX_AGE_SECONDS, Integer.toString(maxAgeSeconds));
+		BatchConfigImpl batchConfig = new BatchConfigImpl();
+		batchConfig.setConfigProperties(props);
+		MemoryPersistenceManagerImpl ps = new MemoryPersistenceManagerImpl();
+		ps.init(batchConfig);
+		return ps;
+	}
+
+	/*
+	 * Roughly the calls the runtime makes for a single step chunk job.
+	 */
+	private long runJob(IPersistenceManagerService ps, String jobName, BatchStatus finalStatus) {
+		JobInstance jobInstance = ps.createJobInstance(jobName, "test", null);
+		long instanceId = jobInstance.getInstanceId();
+		JobStatus jobStatus = ps.createJobStatus(instanceId);
+		jobStatus.setJobInstance(jobInstance);
+		RuntimeJobExecution jobExecution = ps.createJobExecution(jobInstance, null, BatchStatus.STARTING);
+		long execId = jobExecution.getExecutionId();
+		jobStatus.setLatestExecutionId(execId);
+		ps.updateJobStatus(instanceId, jobStatus);
+		ps.markJobStarted(execId, new Timestamp(System.currentTimeMillis()));
+
+		StepContextImpl stepContext = new StepContextImpl("step1");
+		StepExecutionImpl stepExecution = ps.createStepExecution(execId, stepContext);
+		long stepExecId = stepExecution.getStepExecutionId();
+		stepContext.setStepExecutionId(stepExecId);
+		StepStatus stepStatus = ps.createStepStatus(stepExecId);
+		CheckpointDataKey readerKey = new CheckpointDataKey(instanceId, "step1", "READER");
+		CheckpointDataKey writerKey = new CheckpointDataKey(instanceId, "step1", "WRITER");
+		for (int i = 0; i < CHUNKS_PER_JOB; i++) {
+			CheckpointData readerData = new CheckpointData(instanceId, "step1", "READER");
+			readerData.setRestartToken(Integer.toString(i).getBytes());
+			CheckpointData writerData = new CheckpointData(instanceId, "step1", "WRITER");
+			writerData.setRestartToken(Integer.toString(i).getBytes());
+			ps.updateChunkCommitUnit(new ChunkCommitUnit(readerKey, readerData, writerKey, writerData, stepExecId, stepStatus));
+		}
+		stepContext.setBatchStatus(BatchStatus.COMPLETED);
+		ps.updateStepExecution(stepContext);
+
+		jobStatus.setBatchStatus(finalStatus);
+		ps.updateJobStatus(instanceId, jobStatus);
+		if (finalStatus == BatchStatus.STARTED) {
+			ps.updateBatchStatusOnly(execId, finalStatus, new Timestamp(System.currentTimeMillis()));
+		} else {
+			ps.updateWithFinalExecutionStatusesAndTimestamps(execId, finalStatus, finalStatus.name(), new Timestamp(System.currentTimeMillis()));
+		}
+		return instanceId;
+	}
+}
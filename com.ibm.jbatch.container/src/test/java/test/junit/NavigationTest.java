@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.ibm.jbatch.container.jsl.ExecutionElement;
+import com.ibm.jbatch.container.jsl.IllegalTransitionException;
+import com.ibm.jbatch.container.jsl.Transition;
+import com.ibm.jbatch.container.navigator.JobNavigatorImpl;
+import com.ibm.jbatch.container.navigator.NavigatorFactory;
+import com.ibm.jbatch.container.status.ExecutionStatus;
+import com.ibm.jbatch.container.status.ExtendedBatchStatus;
+import com.ibm.jbatch.jsl.model.End;
+import com.ibm.jbatch.jsl.model.Fail;
+import com.ibm.jbatch.jsl.model.JSLJob;
+import com.ibm.jbatch.jsl.model.Next;
+import com.ibm.jbatch.jsl.model.ObjectFactory;
+import com.ibm.jbatch.jsl.model.Step;
+
+public class NavigationTest {
+
+	private static final ObjectFactory jslFactory = new ObjectFactory();
+
+	/*
+	 * Transition elements are tried in order, then the @next attribute.
+	 */
+	@Test
+	public void testTransitions() throws Exception {
+		JSLJob job = jslFactory.createJSLJob();
+		job.setId("navigation");
+		Step step1 = step("step1", "step3");
+		step1.getTransitionElements().add(fail("FAIL*"));
+		step1.getTransitionElements().add(end("*_END"));
+		step1.getTransitionElements().add(next("GO?", "step2"));
+		step1.getTransitionElements().add(next("MISSING", "step4"));
+		job.getExecutionElements().add(step1);
+		job.getExecutionElements().add(step("step2", null));
+		job.getExecutionElements().add(step("step3", null));
+
+		assertTrue(transition(job, "FAILED").getTransitionElement() instanceof Fail);
+		assertTrue(transition(job, "NOW_END").getTransitionElement() instanceof End);
+		assertEquals("step2", transition(job, "GO1").getNextExecutionElement().getId());
+		assertEquals("step3", transition(job, "GO12").getNextExecutionElement().getId());
+		try {
+			transition(job, "MISSING");
+			fail("Went to a step that isn't there");
+		} catch (IllegalTransitionException e) {
+			// expected
+		}
+
+		JobNavigatorImpl navigator = NavigatorFactory.createJobNavigator(job);
+		ExecutionElement step3 = navigator.getFirstExecutionElement("step3");
+		assertSame(job.getExecutionElements().get(2), step3);
+		assertTrue(navigator.getNextTransition(step3, completed("COMPLETED")).isFinishedTransitioning());
+	}
+
+	/*
+	 * A transition never looks through the steps for the one it goes to, so it takes
+	 * as many lookups of a step's id however many steps there are to choose from.
+	 */
+	@Test
+	public void testLargeJob() throws Exception {
+		int smallLookups = idLookupsPerTransition(100);
+		assertEquals(smallLookups, idLookupsPerTransition(2000));
+		assertTrue(smallLookups + " lookups per transition", smallLookups <= 2);
+	}
+
+	private static int idLookupsPerTransition(int steps) throws Exception {
+		JSLJob job = jslFactory.createJSLJob();
+		job.setId("chain");
+		for (int i = 0; i < steps; i++) {
+			Step step = new CountingStep();
+			step.setId("step" + i);
+			step.getTransitionElements().add(fail("FAILED"));
+			step.getTransitionElements().add(end("*ABORTED"));
+			if (i < steps - 1) {
+				step.getTransitionElements().add(next("COMPLETED", "step" + (i + 1)));
+			}
+			job.getExecutionElements().add(step);
+		}
+
+		JobNavigatorImpl navigator = NavigatorFactory.createJobNavigator(job);
+		ExecutionElement current = navigator.getFirstExecutionElement();
+		CountingStep.idLookups = 0;
+		int transitions = 0;
+		while (current != null) {
+			current = navigator.getNextTransition(current, completed("COMPLETED")).getNextExecutionElement();
+			transitions++;
+		}
+		assertEquals(steps, transitions);
+		return CountingStep.idLookups / steps;
+	}
+
+	/**
+	 * Counts how often any step's id is looked at, as a search through the steps would.
+	 */
+	static class CountingStep extends Step {
+
+		static int idLookups = 0;
+
+		@Override
+		public String getId() {
+			idLookups++;
+			return super.getId();
+		}
+	}
+
+	private static Transition transition(JSLJob job, String exitStatus) throws Exception {
+		JobNavigatorImpl navigator = NavigatorFactory.createJobNavigator(job);
+		ExecutionElement first = navigator.getFirstExecutionElement();
+		Transition transition = navigator.getNextTransition(first, completed(exitStatus));
+		if (transition.getTransitionElement() != null) {
+			assertNull(transition.getNextExecutionElement());
+		}
+		return transition;
+	}
+
+	private static ExecutionStatus completed(String exitStatus) {
+		return new ExecutionStatus(ExtendedBatchStatus.NORMAL_COMPLETION, exitStatus);
+	}
+
+	private static Step step(String id, String next) {
+		Step step = jslFactory.createStep();
+		step.setId(id);
+		step.setNextFromAttribute(next);
+		return step;
+	}
+
+	private static Next next(String on, String to) {
+		Next next = jslFactory.createNext();
+		next.setOn(on);
+		next.setTo(to);
+		return next;
+	}
+
+	private static Fail fail(String on) {
+		Fail fail = jslFactory.createFail();
+		fail.setOn(on);
+		return fail;
+	}
+
+	private static End end(String on) {
+		End end = jslFactory.createEnd();
+		end.setOn(on);
+		return end;
+	}
+}
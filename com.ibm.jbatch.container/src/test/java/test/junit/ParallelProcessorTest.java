@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.chunk.ItemProcessor;
+import javax.batch.api.chunk.listener.RetryProcessListener;
+import javax.batch.api.chunk.listener.SkipProcessListener;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelProcessorTest {
+
+	private static JobOperator jobOp = null;
+
+	static List<Object> written = Collections.synchronizedList(new ArrayList<Object>());
+	static AtomicBoolean retried = new AtomicBoolean();
+	static AtomicInteger skips = new AtomicInteger();
+	static AtomicInteger retries = new AtomicInteger();
+	// Whether items were processed on the step's own thread, on the processor threads, or both
+	static Set<Boolean> onProcessorThread = Collections.newSetFromMap(new ConcurrentHashMap<Boolean, Boolean>());
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	@Before
+	public void reset() {
+		written.clear();
+		retried.set(false);
+		skips.set(0);
+		retries.set(0);
+		onProcessorThread.clear();
+	}
+
+	/*
+	 * Filtered, skipped and retried (with rollback) items, in parallel, come out
+	 * just as they do one at a time.
+	 */
+	@Test
+	public void testOrderFilterSkipAndRetry() throws Exception {
+		List<Object> serial = run(1, 200, 100);
+		assertEquals(expected(200), serial);
+
+		reset();
+		List<Object> parallel = run(4, 200, 100);
+		assertEquals(expected(200), parallel);
+	}
+
+	/*
+	 * Item 53 is skipped in the same chunk as item 45 is retried with rollback, so
+	 * would be skipped twice if it were looked at before the chunk was replayed.
+	 */
+	@Test
+	public void testSkipAndRetryCountsMatchSerial() throws Exception {
+		run(1, 200, 100);
+		int serialSkips = skips.get();
+		int serialRetries = retries.get();
+		assertEquals(4, serialSkips);
+		assertEquals(1, serialRetries);
+
+		for (int threads : new int[] { 2, 4, 8 }) {
+			reset();
+			run(threads, 200, 100);
+			assertEquals(serialSkips, skips.get());
+			assertEquals(serialRetries, retries.get());
+		}
+	}
+
+	@Test
+	public void testSameItemsForAnyThreadCount() throws Exception {
+		for (int threads = 1; threads <= 8; threads *= 2) {
+			reset();
+			assertEquals(expected(400), run(threads, 400, 10000));
+		}
+	}
+
+	/*
+	 * The processor threads would be outside a transactional step's transaction, so
+	 * its items are processed on the step thread however many threads it asks for.
+	 */
+	@Test
+	public void testTransactionalStepProcessesSerially() throws Exception {
+		assertEquals(expected(200), run(4, 200, 100, false));
+		assertTrue(onProcessorThread.contains(true));
+
+		reset();
+		assertEquals(expected(200), run(4, 200, 100, true));
+		assertFalse(onProcessorThread.contains(true));
+		assertEquals(4, skips.get());
+		assertEquals(1, retries.get());
+	}
+
+	private List<Object> run(int threads, int numToRead, int work) throws Exception {
+		return run(threads, numToRead, work, false);
+	}
+
+	private List<Object> run(int threads, int numToRead, int work, boolean transactional) throws Exception {
+		Properties params = new Properties();
+		params.setProperty("threads", Integer.toString(threads));
+		params.setProperty("transactional", Boolean.toString(transactional));
+		params.setProperty("numToRead", Integer.toString(numToRead));
+		params.setProperty("work", Integer.toString(work));
+		long execId = jobOp.start("parallelProcessor", params);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 600 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+		for (Metric metric : jobOp.getStepExecutions(execId).get(0).getMetrics()) {
+			if (metric.getType() == Metric.MetricType.PROCESS_SKIP_COUNT) {
+				assertEquals(numToRead / 50, metric.getValue());
+			}
+		}
+		return new ArrayList<Object>(written);
+	}
+
+	private static List<Object> expected(int numToRead) {
+		List<Object> items = new ArrayList<Object>();
+		for (int i = 1; i <= numToRead; i++) {
+			if (i % 7 != 0 && i % 50 != 3) {
+				items.add(i);
+			}
+		}
+		return items;
+	}
+
+	public static class SkipMe extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static class RetryMe extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		@BatchProperty
+		String numToRead;
+
+		int i = 0;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			i = checkpoint == null ? 0 : (Integer) checkpoint;
+		}
+
+		@Override
+		public Object readItem() {
+			return i < Integer.parseInt(numToRead) ? ++i : null;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return i;
+		}
+	}
+
+	public static class Processor implements ItemProcessor {
+
+		@BatchProperty
+		String work;
+
+		@Override
+		public Object processItem(Object item) throws Exception {
+			onProcessorThread.add(Thread.currentThread().getName().startsWith("Batch item processor"));
+			int i = (Integer) item;
+			if (i == 45 && retried.compareAndSet(false, true)) {
+				throw new RetryMe();
+			}
+			if (i % 50 == 3) {
+				throw new SkipMe();
+			}
+			if (i % 7 == 0) {
+				return null;
+			}
+			long x = i;
+			for (int n = Integer.parseInt(work); n > 0; n--) {
+				x = x * 6364136223846793005L + 1442695040888963407L;
+			}
+			// Never true, but keeps the loop from being optimized away
+			return x == 0 ? null : item;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) {
+			written.addAll(items);
+		}
+	}
+
+	public static class SkipRetryListener implements SkipProcessListener, RetryProcessListener {
+		@Override
+		public void onSkipProcessItem(Object item, Exception ex) {
+			skips.incrementAndGet();
+		}
+
+		@Override
+		public void onRetryProcessException(Object item, Exception ex) {
+			retries.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+import javax.batch.runtime.StepExecution;
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+import com.ibm.jbatch.container.status.StepStatus;
+
+public class PipelinedChunkTest {
+
+	private static final int ITEMS = 20;
+
+	private static JobOperator jobOp = null;
+
+	static List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+
+	// Reads that finished while a chunk was being written
+	static AtomicInteger writesInProgress = new AtomicInteger();
+	static AtomicInteger readsDuringWrites = new AtomicInteger();
+
+	// The last item of the chunk before each one written, and the persistent user data persisted with it
+	static List<Integer> lastWrittenAtWrite = Collections.synchronizedList(new ArrayList<Integer>());
+	static List<Serializable> userDataAtWrite = Collections.synchronizedList(new ArrayList<Serializable>());
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	@Before
+	public void clearWritten() {
+		written.clear();
+		readsDuringWrites.set(0);
+		lastWrittenAtWrite.clear();
+		userDataAtWrite.clear();
+	}
+
+	@Test
+	public void testPipelinedMatchesSerial() throws Exception {
+		Properties params = new Properties();
+		params.setProperty("readMillis", "5");
+		params.setProperty("writeMillis", "10");
+
+		params.setProperty("pipeline", "false");
+		waitFor(start(params), BatchStatus.COMPLETED);
+		List<Integer> serialWritten = new ArrayList<Integer>(written);
+		assertEquals(0, readsDuringWrites.get());
+
+		written.clear();
+		params.setProperty("pipeline", "true");
+		waitFor(start(params), BatchStatus.COMPLETED);
+		assertEquals(serialWritten, written);
+		assertEquals(expected(1, ITEMS), written);
+		// The next chunk is read while the last is written
+		assertTrue(readsDuringWrites.get() > 0);
+	}
+
+	/*
+	 * The reader gets ahead of the writer, so the reader checkpoint persisted with
+	 * each chunk has to be the one from that chunk's boundary, not the reader's latest.
+	 */
+	@Test
+	public void testRestartAfterWriteFailure() throws Exception {
+		Properties params = new Properties();
+		params.setProperty("pipeline", "true");
+		params.setProperty("failAt", "9");
+		params.setProperty("writeMillis", "10");
+		long execId = start(params);
+		waitFor(execId, BatchStatus.FAILED);
+		assertEquals(expected(1, 8), written);
+		// The reader keeps its position in the persistent user data too, and what's
+		// checkpointed with each chunk has to be from the same boundary as the reader checkpoint
+		assertEquals(lastWrittenAtWrite, userDataAtWrite);
+		assertEquals(4, userDataAtWrite.size());
+
+		written.clear();
+		long restartId = jobOp.restart(execId, params(params, "failAt", "0"));
+		waitFor(restartId, BatchStatus.COMPLETED);
+		assertEquals(expected(9, ITEMS), written);
+
+		StepExecution stepExecution = jobOp.getStepExecutions(restartId).get(0);
+		for (Metric metric : stepExecution.getMetrics()) {
+			if (metric.getType() == Metric.MetricType.READ_COUNT) {
+				assertEquals(ITEMS - 8, metric.getValue());
+			}
+		}
+	}
+
+	private long start(Properties params) {
+		return jobOp.start("pipelinedChunk", params);
+	}
+
+	private void waitFor(long execId, BatchStatus expected) throws InterruptedException {
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 200 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(50);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(expected, jobExecution.getBatchStatus());
+	}
+
+	private static Properties params(Properties params, String name, String value) {
+		Properties copy = new Properties();
+		copy.putAll(params);
+		copy.setProperty(name, value);
+		return copy;
+	}
+
+	private static List<Integer> expected(int from, int to) {
+		List<Integer> items = new ArrayList<Integer>();
+		for (int i = from; i <= to; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		@BatchProperty
+		String readMillis;
+
+		@Inject
+		StepContext stepContext;
+
+		int i = 0;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			if (checkpoint != null) {
+				i = (Integer) checkpoint;
+			}
+		}
+
+		@Override
+		public Object readItem() throws Exception {
+			if (i == ITEMS) {
+				return null;
+			}
+			Thread.sleep(Long.parseLong(readMillis));
+			if (writesInProgress.get() > 0) {
+				readsDuringWrites.incrementAndGet();
+			}
+			stepContext.setPersistentUserData(++i);
+			return i;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return i;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+
+		@Inject
+		JobContext jobContext;
+
+		@BatchProperty
+		String writeMillis;
+
+		@BatchProperty
+		String failAt;
+
+		@Override
+		public void writeItems(List<Object> items) throws Exception {
+			int first = (Integer) items.get(0);
+			if (first > 1) {
+				// The chunk before has been checkpointed, and the reader has moved on since
+				StepStatus stepStatus = ServicesManagerImpl.getInstance().getJobStatusManagerService().getStepStatus(jobContext.getInstanceId(), "step1");
+				lastWrittenAtWrite.add(first - 1);
+				userDataAtWrite.add(stepStatus.getPersistentUserData());
+			}
+			writesInProgress.incrementAndGet();
+			try {
+				Thread.sleep(Long.parseLong(writeMillis));
+			} finally {
+				writesInProgress.decrementAndGet();
+			}
+			for (Object item : items) {
+				if ((Integer) item == Integer.parseInt(failAt)) {
+					throw new IllegalStateException("Failing at item " + item);
+				}
+			}
+			for (Object item : items) {
+				written.add((Integer) item);
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.ibm.jbatch.container.jsl.ModelResolverFactory;
+import com.ibm.jbatch.container.modelresolver.PropertyResolverFactory;
+import com.ibm.jbatch.jsl.model.JSLJob;
+import com.ibm.jbatch.jsl.model.Step;
+
+public class PropertySubstitutionTest {
+
+	private static final String JOB_XML = "<job id=\"job\" version=\"1.0\" xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\">\n"
+			+ "  <properties>\n"
+			+ "    <property name=\"dir\" value=\"#{jobParameters['dir']}?:/tmp;\"/>\n"
+			+ "    <property name=\"sys\" value=\"#{systemProperties['propertySubstitutionTest']}\"/>\n"
+			+ "  </properties>\n"
+			+ "  <step id=\"step1\" start-limit=\"#{jobParameters['missing']}\">\n"
+			+ "    <properties>\n"
+			+ "      <property name=\"file\" value=\"#{jobProperties['dir']}/#{partitionPlan['name']}.#{jobParameters['ext']}\"/>\n"
+			+ "      <property name=\"both\" value=\"#{jobParameters['ext']}_#{jobParameters['ext']}\"/>\n"
+			+ "      <property name=\"unknown\" value=\"#{jobParameters['ext']}#{nonsense}#{jobParameters['ext']}\"/>\n"
+			+ "      <property name=\"around\" value=\"#{jobParameters['ext']}-#{partitionPlan['name']}-#{jobParameters['ext']}\"/>\n"
+			+ "    </properties>\n"
+			+ "    <batchlet ref=\"#{jobParameters['empty']}?:#{jobProperties['sys']}Batchlet;\"/>\n"
+			+ "  </step>\n"
+			+ "</job>";
+
+	@Test
+	public void testSubstitution() throws Exception {
+		System.setProperty("propertySubstitutionTest", "my");
+		Properties params = new Properties();
+		params.setProperty("ext", "csv");
+		params.setProperty("empty", "");
+
+		JSLJob job = ModelResolverFactory.createJobResolver().resolveModel(JOB_XML);
+		PropertyResolverFactory.createJobPropertyResolver(false).substituteProperties(job, params);
+
+		assertEquals("/tmp", job.getProperties().getPropertyList().get(0).getValue());
+		assertEquals("my", job.getProperties().getPropertyList().get(1).getValue());
+		Step step = (Step) job.getExecutionElements().get(0);
+		assertEquals("", step.getStartLimit());
+		assertEquals("myBatchlet", step.getBatchlet().getRef());
+		// Left for each partition from the partition plan reference on
+		assertEquals("/tmp/#{partitionPlan['name']}.#{jobParameters['ext']}", step.getProperties().getPropertyList().get(0).getValue());
+		assertEquals("csv_csv", step.getProperties().getPropertyList().get(1).getValue());
+		// Except for the same references as were resolved before it
+		assertEquals("csv#{nonsense}csv", step.getProperties().getPropertyList().get(2).getValue());
+		assertEquals("csv-#{partitionPlan['name']}-csv", step.getProperties().getPropertyList().get(3).getValue());
+
+		// A partition resolves what's left with its plan's properties
+		Properties partitionProps = new Properties();
+		partitionProps.setProperty("name", "part0");
+		partitionProps.setProperty("ext", "txt");
+		PropertyResolverFactory.createStepPropertyResolver(true).substituteProperties(step, partitionProps, null);
+		assertEquals("/tmp/part0.txt", step.getProperties().getPropertyList().get(0).getValue());
+		assertEquals("csv-part0-csv", step.getProperties().getPropertyList().get(3).getValue());
+	}
+}
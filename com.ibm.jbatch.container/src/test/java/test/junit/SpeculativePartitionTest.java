@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+import javax.inject.Inject;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.persistence.CheckpointDataKey;
+import com.ibm.jbatch.container.services.IPersistenceManagerService;
+import com.ibm.jbatch.container.servicesmanager.ServicesManagerImpl;
+
+public class SpeculativePartitionTest {
+
+	private static final int PARTITIONS = 8;
+	private static final int THREADS = 4;
+	private static final int ITEMS = 200;
+
+	// The first run of this partition is held on its first item until the copy of it is done,
+	// or when timed, takes 20 ms an item rather than 1 ms
+	private static final int SLOW_PARTITION = 5;
+
+	// Set to true to run testStragglerTailLatency
+	public static final String TIMING_PROPERTY = "test.junit.SpeculativePartitionTest.timing";
+
+	private static JobOperator jobOp = null;
+
+	static AtomicInteger slowPartitionOpens = new AtomicInteger();
+	static AtomicInteger slowPartitionCloses = new AtomicInteger();
+	static CountDownLatch copyDone = null;
+	static volatile boolean timed = false;
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	@Before
+	public void reset() {
+		slowPartitionOpens.set(0);
+		slowPartitionCloses.set(0);
+		copyDone = new CountDownLatch(1);
+		timed = false;
+	}
+
+	/*
+	 * One partition stalls while the rest finish: a copy of it on a free thread completes
+	 * first, the stalled one's discarded, so only the copy's items count, and neither
+	 * copy's checkpoints are left behind under the copy's step name.
+	 */
+	@Test
+	public void testStragglerIsCopied() throws Exception {
+		Properties params = new Properties();
+		params.setProperty("speculative", "true");
+		long execId = jobOp.start("speculativePartition", params);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 1000 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(10);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+		assertEquals(2, slowPartitionOpens.get());
+		assertEquals(2, slowPartitionCloses.get());
+
+		// The stalled partition read at least one item, which isn't counted
+		for (Metric metric : jobOp.getStepExecutions(execId).get(0).getMetrics()) {
+			if (metric.getType() == Metric.MetricType.READ_COUNT || metric.getType() == Metric.MetricType.WRITE_COUNT) {
+				assertEquals(PARTITIONS * ITEMS, metric.getValue());
+			}
+		}
+
+		IPersistenceManagerService ps = ServicesManagerImpl.getInstance().getPersistenceManagerService();
+		long instanceId = jobOp.getJobInstance(execId).getInstanceId();
+		assertNotNull(ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1:1:" + SLOW_PARTITION, "READER")));
+		assertNull(ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1:1:" + SLOW_PARTITION + ":copy" + execId, "READER")));
+		assertNull(ps.getCheckpointData(new CheckpointDataKey(instanceId, "step1:1:" + SLOW_PARTITION + ":copy" + execId, "WRITER")));
+	}
+
+	/*
+	 * How much sooner the step ends with a speculative copy of a partition running 20
+	 * times slower than the rest, rather than held.  That depends on the machine, so
+	 * it's only run when asked for, with -Dtest.junit.SpeculativePartitionTest.timing=true.
+	 */
+	@Test
+	public void testStragglerTailLatency() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean(TIMING_PROPERTY));
+		timed = true;
+		long plainMillis = time(false);
+		assertEquals(1, slowPartitionOpens.get());
+
+		reset();
+		timed = true;
+		long speculativeMillis = time(true);
+		assertEquals(2, slowPartitionOpens.get());
+
+		System.out.println(PARTITIONS + " partitions of " + ITEMS + " 1 ms items on " + THREADS + " threads, one at 20 ms an item: " 
+				+ plainMillis + " ms, with a speculative copy " + speculativeMillis + " ms");
+		assertTrue("Speculating took " + speculativeMillis + " ms, without " + plainMillis + " ms", speculativeMillis < plainMillis * 0.6);
+	}
+
+	private long time(boolean speculative) throws Exception {
+		Properties params = new Properties();
+		params.setProperty("speculative", Boolean.toString(speculative));
+		long start = System.currentTimeMillis();
+		long execId = jobOp.start("speculativePartition", params);
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 1000 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(10);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		long millis = System.currentTimeMillis() - start;
+		assertEquals(BatchStatus.COMPLETED, jobExecution.getBatchStatus());
+
+		for (Metric metric : jobOp.getStepExecutions(execId).get(0).getMetrics()) {
+			if (metric.getType() == Metric.MetricType.WRITE_COUNT) {
+				assertEquals(PARTITIONS * ITEMS, metric.getValue());
+			}
+		}
+		return millis;
+	}
+
+	public static class Mapper implements PartitionMapper {
+		@Override
+		public PartitionPlan mapPartitions() {
+			Properties[] partitionProperties = new Properties[PARTITIONS];
+			for (int i = 0; i < PARTITIONS; i++) {
+				partitionProperties[i] = new Properties();
+				partitionProperties[i].setProperty("partition", Integer.toString(i));
+			}
+			PartitionPlan plan = new PartitionPlanImpl();
+			plan.setPartitions(PARTITIONS);
+			plan.setThreads(THREADS);
+			plan.setPartitionProperties(partitionProperties);
+			return plan;
+		}
+	}
+
+	public static class Reader extends AbstractItemReader {
+
+		@Inject @BatchProperty
+		String partition;
+
+		int i;
+		boolean stalled;
+		boolean copy;
+		long millisPerItem;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			i = checkpoint == null ? 0 : (Integer) checkpoint;
+			if (Integer.parseInt(partition) == SLOW_PARTITION) {
+				int opens = slowPartitionOpens.getAndIncrement();
+				stalled = opens == 0 && !timed;
+				copy = opens == 1;
+				millisPerItem = opens == 0 && timed ? 20 : 1;
+			} else {
+				millisPerItem = 1;
+			}
+		}
+
+		@Override
+		public Object readItem() throws Exception {
+			if (i == ITEMS) {
+				return null;
+			}
+			if (stalled && i == 0) {
+				assertTrue("Partition " + partition + " was never copied", copyDone.await(60, TimeUnit.SECONDS));
+			}
+			Thread.sleep(millisPerItem);
+			return ++i;
+		}
+
+		@Override
+		public void close() {
+			if (Integer.parseInt(partition) == SLOW_PARTITION) {
+				slowPartitionCloses.incrementAndGet();
+			}
+			if (copy) {
+				copyDone.countDown();
+			}
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return i;
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) {
+		}
+	}
+}
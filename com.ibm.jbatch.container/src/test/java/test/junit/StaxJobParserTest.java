@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import javax.xml.bind.JAXBElement;
+
+import org.junit.Test;
+
+import com.ibm.jbatch.container.jsl.ModelSerializerFactory;
+import com.ibm.jbatch.container.jsl.impl.StaxJobParser;
+import com.ibm.jbatch.container.jsl.impl.UnmarshalledJSLComparator;
+import com.ibm.jbatch.jsl.model.JSLJob;
+import com.ibm.jbatch.jsl.util.JSLContextHelper;
+import com.ibm.jbatch.jsl.util.JSLValidationEventHandler;
+
+public class StaxJobParserTest {
+
+	private static final String JOB_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<job id=\"job\" version=\"1.0\" xmlns=\"" + StaxJobParser.JSL_NAMESPACE + "\">\n";
+
+	/*
+	 * Every job XML in the tests, a large generated one and one with the odd
+	 * corners of XML in it come out the same as from JAXB.
+	 */
+	@Test
+	public void testSameModelAsJAXB() throws Exception {
+		List<String> jobXMLs = new ArrayList<String>();
+		jobXMLs.add(readResource("/job1.xml"));
+		jobXMLs.add(readResource("/job2.xml"));
+		File batchJobs = new File(this.getClass().getResource("/META-INF/batch-jobs").toURI());
+		for (String name : batchJobs.list()) {
+			jobXMLs.add(readResource("/META-INF/batch-jobs/" + name));
+		}
+		jobXMLs.add(largeJob(50));
+		jobXMLs.add("<?xml version=\"1.0\"?>\n<!-- before -->\n"
+				+ "<job id=\" job \" version=\"1.0\" xmlns=\"" + StaxJobParser.JSL_NAMESPACE + "\"\n"
+				+ "  xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"" + StaxJobParser.JSL_NAMESPACE + " jobXML_1_0.xsd\">\n"
+				+ "  <?pi data?>\n"
+				+ "  <step id=\"s1\" next=\"\ts2 \"><!-- a comment --><batchlet ref=\"a&amp;b\"/></step>\n"
+				+ "  <jsl:step id=\"s2\" xmlns:jsl=\"" + StaxJobParser.JSL_NAMESPACE + "\"><![CDATA[ ]]></jsl:step>\n"
+				+ "  <split id=\"split\"/>\n"
+				+ "  <flow id=\"flow\"><next on=\"*\" to=\"s1\"/></flow>\n"
+				+ "  <decision id=\"d\" ref=\"decider\"/>\n"
+				+ "</job>\n<!-- after -->\n");
+
+		for (String jobXML : jobXMLs) {
+			JSLJob expected = unmarshal(jobXML);
+			JSLJob actual = new StaxJobParser().parse(jobXML);
+			assertEquals(serialize(expected), serialize(actual));
+			assertTrue(UnmarshalledJSLComparator.equals(expected, actual));
+		}
+	}
+
+	/*
+	 * Whatever the schema rejects, the parser rejects too.
+	 */
+	@Test
+	public void testRejectsWhatJAXBRejects() throws Exception {
+		List<String> jobXMLs = new ArrayList<String>();
+		jobXMLs.add(readResource("/invalid.job1.xml"));
+		jobXMLs.add(JOB_START.replace("1.0\" xmlns", "2.0\" xmlns") + "</job>");
+		jobXMLs.add(JOB_START.replace(StaxJobParser.JSL_NAMESPACE, "urn:other") + "</job>");
+		jobXMLs.add(JOB_START.replace("id=\"job\" ", "") + "</job>");
+		String[] bodies = {
+				"<step id=\"s\"><chunk><reader ref=\"r\"/></chunk></step>",
+				"<step id=\"s\"><chunk><writer ref=\"w\"/><reader ref=\"r\"/></chunk></step>",
+				"<step id=\"s\"><batchlet ref=\"b\"/></step><step id=\"s\"><batchlet ref=\"b\"/></step>",
+				"<step id=\"s\"/><flow id=\" s\"/>",
+				"<step id=\"1s\"/>",
+				"<step id=\"s\"><batchlet ref=\"b\"/><properties/></step>",
+				"<step id=\"s\"><batchlet ref=\"b\"/><batchlet ref=\"b\"/></step>",
+				"<step id=\"s\"><next on=\"x\" to=\"y\"/><batchlet ref=\"b\"/></step>",
+				"<step id=\"s\" foo=\"x\"><batchlet ref=\"b\"/></step>",
+				"<step id=\"s\"><batchlet/></step>",
+				"<step id=\"s\">text<batchlet ref=\"b\"/></step>",
+				"<step id=\"s\"><bogus/></step>",
+				"<step id=\"s\"><batchlet ref=\"b\"/><next on=\"x\"/></step>",
+				"<step id=\"s\"><batchlet ref=\"b\"><properties/><properties/></batchlet></step>",
+				"<step id=\"s\"><partition><plan/><mapper ref=\"m\"/></partition></step>",
+				"<step id=\"s\"><chunk><reader ref=\"r\"/><writer ref=\"w\"/>"
+						+ "<skippable-exception-classes><exclude class=\"a\"/><include class=\"b\"/></skippable-exception-classes></chunk></step>",
+				"<step id=\"s\"><properties><property name=\"n\"/></properties></step>",
+				"<split id=\"split\"><step id=\"s\"/></split>",
+				"<decision id=\"d\"/>",
+				"<listeners><listener ref=\"l\"/></listeners><properties/>",
+				"<end on=\"x\"/>",
+		};
+		for (String body : bodies) {
+			jobXMLs.add(JOB_START + body + "</job>");
+		}
+
+		for (String jobXML : jobXMLs) {
+			try {
+				unmarshal(jobXML);
+				fail("Expected JAXB to reject " + jobXML);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				new StaxJobParser().parse(jobXML);
+				fail("Expected the parser to reject " + jobXML);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Parses as the JAXB path of JobModelResolverImpl does.
+	 */
+	@SuppressWarnings("unchecked")
+	private static JSLJob unmarshal(String jobXML) throws Exception {
+		JSLValidationEventHandler handler = new JSLValidationEventHandler();
+		Object result;
+		try {
+			result = JSLContextHelper.unmarshal(jobXML, handler);
+		} catch (javax.xml.bind.JAXBException e) {
+			throw new IllegalArgumentException(e);
+		}
+		if (handler.eventOccurred()) {
+			throw new IllegalArgumentException("xJCL invalid per schema");
+		}
+		return ((JAXBElement<JSLJob>) result).getValue();
+	}
+
+	private static String serialize(JSLJob job) {
+		return ModelSerializerFactory.createJobModelSerializer().serializeModel(job);
+	}
+
+	/**
+	 * A job of partitioned chunk steps with a bit of everything, and a split of
+	 * two flows at the end.
+	 */
+	private static String largeJob(int steps) {
+		StringBuilder xml = new StringBuilder(JOB_START);
+		xml.append("  <properties><property name=\"jobProp\" value=\"#{jobParameters['p']}\"/></properties>\n");
+		xml.append("  <listeners><listener ref=\"jobListener\"/></listeners>\n");
+		for (int i = 0; i < steps; i++) {
+			xml.append("  <step id=\"step").append(i).append("\" next=\"step").append(i + 1).append("\">\n");
+			xml.append("    <properties>");
+			for (int j = 0; j < 5; j++) {
+				xml.append("<property name=\"name").append(j).append("\" value=\"value").append(j).append("\"/>");
+			}
+			xml.append("</properties>\n");
+			xml.append("    <listeners><listener ref=\"stepListener\"/><listener ref=\"chunkListener\"/></listeners>\n");
+			xml.append("    <chunk item-count=\"100\" skip-limit=\"10\">\n");
+			xml.append("      <reader ref=\"reader\"><properties><property name=\"file\" value=\"#{partitionPlan['file']}\"/></properties></reader>\n");
+			xml.append("      <processor ref=\"processor\"/>\n");
+			xml.append("      <writer ref=\"writer\"/>\n");
+			xml.append("      <skippable-exception-classes><include class=\"java.lang.Exception\"/>"
+					+ "<exclude class=\"java.io.IOException\"/></skippable-exception-classes>\n");
+			xml.append("    </chunk>\n");
+			xml.append("    <partition>\n      <plan partitions=\"4\" threads=\"2\">\n");
+			for (int p = 0; p < 4; p++) {
+				xml.append("        <properties partition=\"").append(p).append("\"><property name=\"file\" value=\"part")
+						.append(p).append(".csv\"/></properties>\n");
+			}
+			xml.append("      </plan>\n      <collector ref=\"collector\"/>\n      <analyzer ref=\"analyzer\"/>\n    </partition>\n");
+			xml.append("    <stop on=\"STOP\" exit-status=\"STOPPED\" restart=\"step").append(i).append("\"/>\n");
+			xml.append("    <fail on=\"FAIL*\"/>\n");
+			xml.append("  </step>\n");
+		}
+		xml.append("  <split id=\"step").append(steps).append("\">\n");
+		for (int f = 0; f < 2; f++) {
+			xml.append("    <flow id=\"flow").append(f).append("\"><step id=\"flowStep").append(f)
+					.append("\"><batchlet ref=\"batchlet\"/><end on=\"*\"/></step></flow>\n");
+		}
+		xml.append("  </split>\n</job>\n");
+		return xml.toString();
+	}
+
+	private String readResource(String name) throws Exception {
+		InputStream in = this.getClass().getResourceAsStream(name);
+		try {
+			return new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.operations.JobOperator;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.Metric;
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.jbatch.container.status.PartitionStatuses;
+import com.ibm.jbatch.container.status.StepStatus;
+
+public class WorkQueuePartitionTest {
+
+	// 40 keys, the first 10 with 140 items each and the rest with 20: 2000 items
+	private static final int KEYS = 40;
+	private static final int THREADS = 4;
+
+	private static JobOperator jobOp = null;
+
+	static Set<Integer> openedKeys = Collections.synchronizedSet(new TreeSet<Integer>());
+	static volatile int failKey = -1;
+
+	// Each range as it's first opened, and how many ranges had been closed by then
+	static List<int[]> firstOpens = Collections.synchronizedList(new ArrayList<int[]>());
+	static AtomicInteger closedRanges = new AtomicInteger();
+	static volatile int holdKey = -1;
+	static CountDownLatch release = new CountDownLatch(0);
+
+	@BeforeClass
+	public static void init() {
+		jobOp = BatchRuntime.getJobOperator();
+	}
+
+	@Before
+	public void reset() {
+		openedKeys.clear();
+		failKey = -1;
+		firstOpens.clear();
+		closedRanges.set(0);
+		holdKey = -1;
+		release = new CountDownLatch(0);
+	}
+
+	private static int itemsFor(int key) {
+		return key < 10 ? 140 : 20;
+	}
+
+	/*
+	 * While one thread's held on the first range, the other three share out the rest
+	 * of the queue between them, claiming each only as one of theirs is done.
+	 */
+	@Test
+	public void testRangesClaimedInOrderAsThreadsFree() throws Exception {
+		holdKey = 0;
+		release = new CountDownLatch(1);
+		long execId = jobOp.start("workQueuePartition", params(true, KEYS));
+		try {
+			for (int i = 0; i < 1200 && closedRanges.get() < KEYS - 1; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(KEYS - 1, closedRanges.get());
+			assertTrue(openedKeys.contains(0));
+		} finally {
+			release.countDown();
+		}
+		assertEquals(BatchStatus.COMPLETED, waitFor(execId).getBatchStatus());
+		assertEquals(KEYS, closedRanges.get());
+
+		List<int[]> opens = new ArrayList<int[]>(firstOpens);
+		assertEquals(KEYS, opens.size());
+		Set<Integer> firstClaimed = new TreeSet<Integer>();
+		for (int[] open : opens.subList(0, THREADS)) {
+			firstClaimed.add(open[0]);
+		}
+		assertEquals("[0, 1, 2, 3]", firstClaimed.toString());
+		for (int[] open : opens) {
+			int key = open[0];
+			assertTrue("Range " + key + " opened with " + open[1] + " closed", open[1] >= key - THREADS + 1);
+		}
+	}
+
+	/*
+	 * A range that fails is the only one the restart runs, and all the items get written
+	 * between the two executions.
+	 */
+	/*
+	 * Ranges finishing in order, with the odd one failing, are a few runs of completed
+	 * ones however many there are, so the step status persisted doesn't grow with them.
+	 */
+	@Test
+	public void testFinishedRangesKeptAsRuns() throws Exception {
+		PartitionStatuses small = recordInOrder(1000);
+		PartitionStatuses large = recordInOrder(100000);
+
+		assertEquals(3, large.getCompletedRunCount());
+		assertTrue(large.isCompleted(0));
+		assertFalse(large.isCompleted(500));
+		assertEquals(BatchStatus.FAILED, large.getStepStatus(500).getBatchStatus());
+		assertTrue(large.isCompleted(501));
+		assertFalse(large.isCompleted(100000));
+		assertNull(large.getStepStatus(501));
+		assertEquals(serializedSize(small), serializedSize(large));
+
+		// The failed range completing on a restart joins the runs either side
+		StepStatus completed = new StepStatus(1);
+		completed.setBatchStatus(BatchStatus.COMPLETED);
+		large.record(500, completed, new Metric[0]);
+		assertEquals(2, large.getCompletedRunCount());
+		assertNull(large.getStepStatus(500));
+	}
+
+	private static PartitionStatuses recordInOrder(int ranges) {
+		PartitionStatuses partitionStatuses = new PartitionStatuses(1);
+		for (int i = 0; i < ranges; i++) {
+			StepStatus stepStatus = new StepStatus(i);
+			stepStatus.setBatchStatus(i == 500 || i == 900 ? BatchStatus.FAILED : BatchStatus.COMPLETED);
+			partitionStatuses.record(i, stepStatus, new Metric[0]);
+		}
+		return partitionStatuses;
+	}
+
+	private static int serializedSize(Serializable object) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.size();
+	}
+
+	@Test
+	public void testRestartRunsUnfinishedRanges() throws Exception {
+		failKey = 25;
+		long execId = jobOp.start("workQueuePartition", params(true, KEYS));
+		assertEquals(BatchStatus.FAILED, waitFor(execId).getBatchStatus());
+		assertEquals(KEYS, openedKeys.size());
+
+		openedKeys.clear();
+		failKey = -1;
+		long restartId = jobOp.restart(execId, params(true, KEYS));
+		assertEquals(BatchStatus.COMPLETED, waitFor(restartId).getBatchStatus());
+		assertEquals("[25]", openedKeys.toString());
+
+		for (Metric metric : jobOp.getStepExecutions(restartId).get(0).getMetrics()) {
+			if (metric.getType() == Metric.MetricType.WRITE_COUNT) {
+				assertEquals(2000, metric.getValue());
+			}
+		}
+	}
+
+	private static Properties params(boolean workQueue, int ranges) {
+		Properties params = new Properties();
+		params.setProperty("workQueue", Boolean.toString(workQueue));
+		params.setProperty("ranges", Integer.toString(ranges));
+		return params;
+	}
+
+	private static JobExecution waitFor(long execId) throws Exception {
+		JobExecution jobExecution = jobOp.getJobExecution(execId);
+		for (int i = 0; i < 1200 && jobExecution.getEndTime() == null; i++) {
+			Thread.sleep(10);
+			jobExecution = jobOp.getJobExecution(execId);
+		}
+		return jobExecution;
+	}
+
+	/**
+	 * Divides the keys evenly between the ranges.
+	 */
+	public static class Mapper implements PartitionMapper {
+
+		@Inject @BatchProperty
+		String ranges;
+
+		@Override
+		public PartitionPlan mapPartitions() {
+			int count = Integer.parseInt(ranges);
+			Properties[] partitionProperties = new Properties[count];
+			for (int i = 0; i < count; i++) {
+				partitionProperties[i] = new Properties();
+				partitionProperties[i].setProperty("fromKey", Integer.toString(i * KEYS / count));
+				partitionProperties[i].setProperty("toKey", Integer.toString((i + 1) * KEYS / count));
+			}
+			PartitionPlan plan = new PartitionPlanImpl();
+			plan.setPartitions(count);
+			plan.setThreads(THREADS);
+			plan.setPartitionProperties(partitionProperties);
+			return plan;
+		}
+	}
+
+	public static class PartitionFailure extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Reads the items of its keys, taking 1 ms over each.  The range of holdKey
+	 * waits to be released before it reads anything.
+	 */
+	public static class Reader extends AbstractItemReader {
+
+		@Inject @BatchProperty
+		String fromKey;
+
+		@Inject @BatchProperty
+		String toKey;
+
+		int key;
+		int item;
+
+		@Override
+		public void open(Serializable checkpoint) {
+			key = Integer.parseInt(fromKey);
+			item = 0;
+			if (checkpoint != null) {
+				int[] position = (int[]) checkpoint;
+				key = position[0];
+				item = position[1];
+			}
+			for (int k = Integer.parseInt(fromKey); k < Integer.parseInt(toKey); k++) {
+				openedKeys.add(k);
+			}
+			if (checkpoint == null) {
+				firstOpens.add(new int[] { key, closedRanges.get() });
+			}
+		}
+
+		@Override
+		public void close() {
+			closedRanges.incrementAndGet();
+		}
+
+		@Override
+		public Object readItem() throws Exception {
+			if (key == holdKey && item == 0) {
+				assertTrue("Range " + key + " never released", release.await(60, TimeUnit.SECONDS));
+			}
+			while (key < Integer.parseInt(toKey) && item == itemsFor(key)) {
+				key++;
+				item = 0;
+			}
+			if (key == Integer.parseInt(toKey)) {
+				return null;
+			}
+			if (key == failKey && item == 3) {
+				throw new PartitionFailure();
+			}
+			Thread.sleep(1);
+			return key + ":" + item++;
+		}
+
+		@Override
+		public Serializable checkpointInfo() {
+			return new int[] { key, item };
+		}
+	}
+
+	public static class Writer extends AbstractItemWriter {
+		@Override
+		public void writeItems(List<Object> items) {
+		}
+	}
+}
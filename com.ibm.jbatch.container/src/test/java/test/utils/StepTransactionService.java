@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.utils;
+
+import java.util.Properties;
+
+import javax.batch.runtime.context.StepContext;
+import javax.transaction.Status;
+
+import com.ibm.jbatch.container.exception.TransactionManagementException;
+import com.ibm.jbatch.container.services.impl.BatchTransactionServiceImpl;
+import com.ibm.jbatch.spi.services.TransactionManagerAdapter;
+
+/**
+ * The SE transaction service, except that a step with the property
+ * test.utils.transactional=true is given a transaction manager the container
+ * takes to be a real one.  Its transactions don't do anything.
+ */
+public class StepTransactionService extends BatchTransactionServiceImpl {
+
+	public static final String TRANSACTIONAL_PROPERTY = "test.utils.transactional";
+
+	@Override
+	public TransactionManagerAdapter getTransactionManager(StepContext stepContext) throws TransactionManagementException {
+		Properties p = stepContext.getProperties();
+		if (p != null && Boolean.parseBoolean(p.getProperty(TRANSACTIONAL_PROPERTY))) {
+			return new Transactional();
+		}
+		return super.getTransactionManager(stepContext);
+	}
+
+	private static class Transactional implements TransactionManagerAdapter {
+
+		private int status = Status.STATUS_NO_TRANSACTION;
+
+		@Override
+		public void begin() {
+			status = Status.STATUS_ACTIVE;
+		}
+
+		@Override
+		public void commit() {
+			status = Status.STATUS_COMMITTED;
+		}
+
+		@Override
+		public int getStatus() {
+			return status;
+		}
+
+		@Override
+		public void rollback() {
+			status = Status.STATUS_ROLLEDBACK;
+		}
+
+		@Override
+		public void setRollbackOnly() {
+			status = Status.STATUS_MARKED_ROLLBACK;
+		}
+
+		@Override
+		public void setTransactionTimeout(int arg0) {
+		}
+	}
+}